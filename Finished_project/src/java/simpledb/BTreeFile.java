@@ -0,0 +1,730 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * BTreeFile is a B+ tree index over one INT or STRING column of a table. It
+ * is a DbFile of its own, kept in a file next to the table's, whose pages are
+ * BTreePages read through the BufferPool and locked like any other page: a
+ * lookup takes shared locks on the pages it reads, and an update takes an
+ * exclusive lock on the leaf it changes and on every node a split changes.
+ * <p>
+ * The tree holds one entry per tuple of the table: the tuple's value of the
+ * column, the key, and where the tuple is stored. Entries are kept in key
+ * order in leaves chained from left to right, so a range is read by finding
+ * its first leaf and following the chain. Keys need not be unique. Page 0
+ * is a header page naming the root and the height of the tree.
+ * <p>
+ * The catalog keeps the index up to date: BufferPool.insertTuple and
+ * deleteTuple pass each tuple of the table they insert or delete to
+ * insertTuple and deleteTuple here. Leaves left empty by deletes stay in
+ * the tree until it is rebuilt.
+ *
+ * @see Catalog#addIndex
+ * @see IndexScan
+ */
+public class BTreeFile implements DbFile {
+
+    private static final long serialVersionUID = 1L;
+
+    private final File file;
+
+    private final int tableId;
+
+    private final int keyField;
+
+    private final Type keyType;
+
+    private final TupleDesc td;
+
+    private transient volatile FileChannel channel;
+
+    //cached number of pages, or -1 until it is first read from the file
+    private transient volatile int numPages = -1;
+
+    /** Returns the file the index of a column of a heap file is kept in. */
+    public static File fileFor(File heapFile, int column) {
+
+        return new File(heapFile.getPath() + "." + column + ".idx");
+
+    }
+
+    /**
+     * Constructs an index backed by the specified file, which is empty or
+     * does not exist yet for a new index.
+     *
+     * @param f the file the index is stored in
+     * @param tableId the table the index is on
+     * @param keyField the column of that table the index is on
+     */
+    public BTreeFile(File f, int tableId, int keyField) {
+
+        this.file = f;
+
+        this.tableId = tableId;
+
+        this.keyField = keyField;
+
+        TupleDesc tableTd = Database.getCatalog().getTupleDesc(tableId);
+
+        this.keyType = tableTd.getFieldType(keyField);
+
+        this.td = new TupleDesc(new Type[] { keyType, Type.INT_TYPE, Type.INT_TYPE },
+                new String[] { tableTd.getFieldName(keyField), "page", "slot" });
+
+    }
+
+    public File getFile() {
+
+        return file;
+
+    }
+
+    public int getId() {
+
+        return file.getAbsoluteFile().hashCode();
+
+    }
+
+    /** Returns the table the index is on. */
+    public int getTableId() {
+
+        return tableId;
+
+    }
+
+    /** Returns the column of the table the index is on. */
+    public int getKeyField() {
+
+        return keyField;
+
+    }
+
+    public Type getKeyType() {
+
+        return keyType;
+
+    }
+
+    /**
+     * Returns the TupleDesc of the entries of the index, as returned by its
+     * iterators: the key, then the page number and slot of the tuple.
+     */
+    public TupleDesc getTupleDesc() {
+
+        return td;
+
+    }
+
+    /** Orders two keys of the same type. */
+    static int compare(Field a, Field b) {
+
+        if (a.getType() == Type.INT_TYPE) return Integer.compare(((IntField) a).getValue(), ((IntField) b).getValue());
+
+        return ((StringField) a).getValue().compareTo(((StringField) b).getValue());
+    }
+
+    private FileChannel channel() throws IOException {
+
+        FileChannel ch = channel;
+
+        if (ch == null) {
+
+            synchronized (this) {
+
+                if (channel == null) {
+
+                    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                            StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+
+                }
+
+                ch = channel;
+
+            }
+        }
+
+        return ch;
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+
+        try {
+
+            ByteBuffer buf = ByteBuffer.allocate(BufferPool.PAGE_SIZE);
+
+            long offset = (long) pid.pageNumber() * BufferPool.PAGE_SIZE;
+
+            while (buf.hasRemaining()) {
+
+                if (channel().read(buf, offset + buf.position()) < 0) break;
+
+            }
+
+            return new BTreePage((HeapPageId) pid, keyType, buf.array());
+
+        } catch (IOException e) {
+
+            e.printStackTrace();
+
+        }
+
+        return null;
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+
+        ByteBuffer buf = ByteBuffer.allocate(BufferPool.PAGE_SIZE);
+
+        page.writePageData(buf);
+
+        buf.flip();
+
+        long offset = (long) page.getId().pageNumber() * BufferPool.PAGE_SIZE;
+
+        while (buf.hasRemaining()) {
+
+            channel().write(buf, offset + buf.position());
+
+        }
+
+        synchronized (this) {
+
+            if (numPages() <= page.getId().pageNumber()) numPages = page.getId().pageNumber() + 1;
+
+        }
+    }
+
+    /**
+     * Returns the number of pages in the index.
+     */
+    public int numPages() {
+
+        int n = numPages;
+
+        if (n < 0) {
+
+            synchronized (this) {
+
+                if (numPages < 0) numPages = (int) (file.length() / BufferPool.PAGE_SIZE);
+
+                n = numPages;
+
+            }
+        }
+
+        return n;
+    }
+
+    private BTreePage getPage(TransactionId tid, int pageNo, Permissions perm)
+            throws DbException, TransactionAbortedException {
+
+        return (BTreePage) Database.getBufferPool().getPage(tid, new HeapPageId(getId(), pageNo), perm);
+
+    }
+
+    //appends an empty page to the file and makes it a page of the given kind for tid
+    private BTreePage newPage(TransactionId tid, int kind)
+            throws DbException, IOException, TransactionAbortedException {
+
+        int pageNo;
+
+        synchronized (this) {
+
+            pageNo = numPages();
+
+            writePage(new BTreePage(new HeapPageId(getId(), pageNo), keyType, BTreePage.createEmptyPageData()));
+
+        }
+
+        BTreePage page = getPage(tid, pageNo, Permissions.READ_WRITE);
+
+        page.init(kind);
+
+        page.markDirty(true, tid);
+
+        return page;
+    }
+
+    /**
+     * Descends from the root to the leaf that may hold key: the leftmost one
+     * when looking it up, the rightmost one when adding it. Internal nodes
+     * are read with shared locks and the numbers of those on the way are
+     * added to path, if given.
+     *
+     * @return the leaf, or null if the tree is empty
+     */
+    private BTreePage findLeaf(TransactionId tid, Field key, boolean leftmost, Permissions perm,
+            List<Integer> path) throws DbException, TransactionAbortedException {
+
+        if (numPages() == 0) return null;
+
+        BTreePage header = getPage(tid, 0, Permissions.READ_ONLY);
+
+        int pageNo = header.root();
+
+        if (pageNo == 0) return null;
+
+        for (int level = 1; level < header.height(); level++) {
+
+            if (path != null) path.add(pageNo);
+
+            BTreePage node = getPage(tid, pageNo, Permissions.READ_ONLY);
+
+            pageNo = key == null ? node.child(0) : node.findChild(key, leftmost);
+
+        }
+
+        return getPage(tid, pageNo, perm);
+    }
+
+    /**
+     * Adds the entry of a tuple of the indexed table, whose RecordId is set,
+     * to the index. Splits the leaf it goes to if it is full, and so on up
+     * the tree.
+     *
+     * @return the pages of the index that were changed
+     */
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+
+        Field key = t.getField(keyField);
+
+        RecordId rid = t.getRecordId();
+
+        ArrayList<Page> dirtied = new ArrayList<Page>();
+
+        synchronized (this) {
+
+            if (numPages() == 0) writePage(new BTreePage(new HeapPageId(getId(), 0), keyType, BTreePage.createEmptyPageData()));
+
+        }
+
+        ArrayList<Integer> path = new ArrayList<Integer>();
+
+        BTreePage leaf = findLeaf(tid, key, false, Permissions.READ_WRITE, path);
+
+        if (leaf == null) {
+
+            BTreePage header = getPage(tid, 0, Permissions.READ_WRITE);
+
+            //another transaction may have started the tree while this one waited for the lock
+            leaf = findLeaf(tid, key, false, Permissions.READ_WRITE, path);
+
+            if (leaf == null) {
+
+                leaf = newPage(tid, BTreePage.LEAF);
+
+                header.setRoot(leaf.getId().pageNumber(), 1);
+
+                header.markDirty(true, tid);
+
+                dirtied.add(header);
+
+            }
+        }
+
+        leaf.insertEntry(key, rid.getPageId().pageNumber(), rid.tupleno());
+
+        leaf.markDirty(true, tid);
+
+        dirtied.add(leaf);
+
+        BTreePage page = leaf;
+
+        int level = path.size() - 1;
+
+        while (page.overflows()) {
+
+            BTreePage right = newPage(tid, page.kind());
+
+            Field separator = page.splitInto(right);
+
+            dirtied.add(right);
+
+            if (level < 0) {
+
+                //the root was split; a new root goes on top of it
+                BTreePage header = getPage(tid, 0, Permissions.READ_WRITE);
+
+                BTreePage root = newPage(tid, BTreePage.INTERNAL);
+
+                root.initRoot(page.getId().pageNumber(), separator, right.getId().pageNumber());
+
+                header.setRoot(root.getId().pageNumber(), header.height() + 1);
+
+                header.markDirty(true, tid);
+
+                dirtied.add(root);
+
+                dirtied.add(header);
+
+                break;
+
+            }
+
+            BTreePage parent = getPage(tid, path.get(level--), Permissions.READ_WRITE);
+
+            parent.insertChild(page.getId().pageNumber(), separator, right.getId().pageNumber());
+
+            parent.markDirty(true, tid);
+
+            dirtied.add(parent);
+
+            page = parent;
+
+        }
+
+        return dirtied;
+    }
+
+    /**
+     * Removes the entry of a tuple of the indexed table, whose RecordId is
+     * set, from the index.
+     *
+     * @return the leaf that held the entry
+     * @throws DbException if the index has no entry for the tuple
+     */
+    public Page deleteTuple(TransactionId tid, Tuple t) throws DbException, TransactionAbortedException {
+
+        Field key = t.getField(keyField);
+
+        RecordId rid = t.getRecordId();
+
+        BTreePage leaf = findLeaf(tid, key, true, Permissions.READ_WRITE, null);
+
+        //equal keys may go on over several leaves
+        while (leaf != null) {
+
+            if (leaf.deleteEntry(key, rid.getPageId().pageNumber(), rid.tupleno())) {
+
+                leaf.markDirty(true, tid);
+
+                return leaf;
+
+            }
+
+            if (leaf.size() > 0 && compare(leaf.key(leaf.size() - 1), key) > 0) break;
+
+            leaf = leaf.nextLeaf() == 0 ? null : getPage(tid, leaf.nextLeaf(), Permissions.READ_WRITE);
+
+        }
+
+        throw new DbException("tuple is not in the index");
+    }
+
+    /**
+     * Builds the index of an empty file from the tuples of its table,
+     * filling each page and writing it straight to the file. Bypasses the
+     * buffer pool and the lock manager, so it is only meant for an index no
+     * transaction uses yet.
+     */
+    public void build() throws DbException, IOException, TransactionAbortedException {
+
+        if (numPages() > 0) throw new DbException("the index is not empty");
+
+        ArrayList<Field> keys = new ArrayList<Field>();
+
+        ArrayList<RecordId> rids = new ArrayList<RecordId>();
+
+        TransactionId tid = new TransactionId();
+
+        DbFileIterator it = Database.getCatalog().getDbFile(tableId).iterator(tid);
+
+        it.open();
+
+        while (it.hasNext()) {
+
+            Tuple t = it.next();
+
+            keys.add(t.getField(keyField));
+
+            rids.add(t.getRecordId());
+
+        }
+
+        it.close();
+
+        Database.getBufferPool().transactionComplete(tid);
+
+        //sort the entries as leaves keep them
+        Integer[] order = new Integer[keys.size()];
+
+        for (int i = 0; i < order.length; i++) order[i] = i;
+
+        Arrays.sort(order, (a, b) -> {
+
+            int c = compare(keys.get(a), keys.get(b));
+
+            if (c != 0) return c;
+
+            RecordId ra = rids.get(a), rb = rids.get(b);
+
+            if (ra.getPageId().pageNumber() != rb.getPageId().pageNumber())
+                return Integer.compare(ra.getPageId().pageNumber(), rb.getPageId().pageNumber());
+
+            return Integer.compare(ra.tupleno(), rb.tupleno());
+        });
+
+        Field[] sortedKeys = new Field[order.length];
+
+        int[] pages = new int[order.length];
+
+        int[] slots = new int[order.length];
+
+        for (int i = 0; i < order.length; i++) {
+
+            sortedKeys[i] = keys.get(order[i]);
+
+            pages[i] = rids.get(order[i]).getPageId().pageNumber();
+
+            slots[i] = rids.get(order[i]).tupleno();
+
+        }
+
+        BTreePage header = new BTreePage(new HeapPageId(getId(), 0), keyType, BTreePage.createEmptyPageData());
+
+        if (order.length > 0) {
+
+            //leaves take pages 1..n in order, so each knows the next one's number
+            int perLeaf = BTreePage.maxEntries(keyType);
+
+            int leaves = (order.length + perLeaf - 1) / perLeaf;
+
+            int[] level = new int[leaves];
+
+            Field[] lowKeys = new Field[leaves];
+
+            for (int l = 0; l < leaves; l++) {
+
+                int from = l * perLeaf, to = Math.min(order.length, from + perLeaf);
+
+                BTreePage leaf = new BTreePage(new HeapPageId(getId(), l + 1), keyType, BTreePage.createEmptyPageData());
+
+                leaf.fillLeaf(sortedKeys, pages, slots, from, to, l + 1 < leaves ? l + 2 : 0);
+
+                writePage(leaf);
+
+                level[l] = l + 1;
+
+                lowKeys[l] = sortedKeys[from];
+
+            }
+
+            int height = 1;
+
+            int perNode = BTreePage.maxKeys(keyType) + 1;
+
+            //each level of internal nodes over the one below, until one node is left
+            while (level.length > 1) {
+
+                int nodes = (level.length + perNode - 1) / perNode;
+
+                int[] above = new int[nodes];
+
+                Field[] aboveLow = new Field[nodes];
+
+                for (int n = 0; n < nodes; n++) {
+
+                    int from = n * perNode, to = Math.min(level.length, from + perNode);
+
+                    BTreePage node = new BTreePage(new HeapPageId(getId(), numPages()), keyType, BTreePage.createEmptyPageData());
+
+                    node.fillInternal(level, lowKeys, from, to);
+
+                    writePage(node);
+
+                    above[n] = node.getId().pageNumber();
+
+                    aboveLow[n] = lowKeys[from];
+
+                }
+
+                level = above;
+
+                lowKeys = aboveLow;
+
+                height++;
+
+            }
+
+            header.setRoot(level[0], height);
+
+        }
+
+        writePage(header);
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+
+        return new EntryIterator(tid, null, null);
+
+    }
+
+    /**
+     * Returns an iterator over the entries whose key satisfies key op
+     * operand, in key order. Equality and range predicates only read the
+     * leaves holding matching entries; other predicates read every leaf.
+     */
+    public DbFileIterator indexIterator(TransactionId tid, Predicate.Op op, Field operand) {
+
+        return new EntryIterator(tid, op, operand);
+
+    }
+
+    private class EntryIterator implements DbFileIterator {
+
+        private static final long serialVersionUID = 1L;
+
+        private final TransactionId tid;
+
+        private final Predicate.Op op;
+
+        private final Field operand;
+
+        //the entries of the current leaf from where the iterator got to it, copied so that
+        //the iterator's own transaction can delete what it has read; the leaf is null once done
+        private BTreePage leaf;
+
+        private final Field[] keys = new Field[BTreePage.maxEntries(keyType) + 1];
+
+        private final int[] pages = new int[keys.length];
+
+        private final int[] slots = new int[keys.length];
+
+        private int size;
+
+        private int pos;
+
+        private Tuple next;
+
+        EntryIterator(TransactionId tid, Predicate.Op op, Field operand) {
+
+            this.tid = tid;
+
+            this.op = op;
+
+            this.operand = operand;
+
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+
+            next = null;
+
+            boolean seek = op == Predicate.Op.EQUALS || op == Predicate.Op.GREATER_THAN
+                    || op == Predicate.Op.GREATER_THAN_OR_EQ;
+
+            leaf = findLeaf(tid, seek ? operand : null, true, Permissions.READ_ONLY, null);
+
+            if (leaf != null) readLeaf(seek ? leaf.lowerBound(operand) : 0);
+
+        }
+
+        private void readLeaf(int from) {
+
+            size = leaf.copyEntries(from, keys, pages, slots);
+
+            pos = 0;
+
+        }
+
+        private Tuple fetchNext() throws DbException, TransactionAbortedException {
+
+            while (leaf != null) {
+
+                if (pos >= size) {
+
+                    leaf = leaf.nextLeaf() == 0 ? null : getPage(tid, leaf.nextLeaf(), Permissions.READ_ONLY);
+
+                    if (leaf != null) readLeaf(0);
+
+                    continue;
+
+                }
+
+                int i = pos++;
+
+                Field key = keys[i];
+
+                if (op != null) {
+
+                    int c = compare(key, operand);
+
+                    //entries come in key order, so the first one past the range ends it
+                    if (op == Predicate.Op.EQUALS || op == Predicate.Op.LESS_THAN_OR_EQ) {
+
+                        if (c > 0) break;
+
+                        if (op == Predicate.Op.EQUALS && c < 0) continue;
+
+                    } else if (op == Predicate.Op.LESS_THAN) {
+
+                        if (c >= 0) break;
+
+                    } else if (!key.compare(op, operand)) {
+
+                        continue;
+
+                    }
+                }
+
+                Tuple t = new Tuple(td);
+
+                t.setField(0, key);
+
+                t.setField(1, new IntField(pages[i]));
+
+                t.setField(2, new IntField(slots[i]));
+
+                return t;
+
+            }
+
+            leaf = null;
+
+            return null;
+        }
+
+        public boolean hasNext() throws DbException, TransactionAbortedException {
+
+            if (next == null) next = fetchNext();
+
+            return next != null;
+        }
+
+        public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+
+            if (!hasNext()) throw new NoSuchElementException();
+
+            Tuple t = next;
+
+            next = null;
+
+            return t;
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+
+            close();
+
+            open();
+
+        }
+
+        public void close() {
+
+            leaf = null;
+
+            next = null;
+
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * Each instance of BTreePage stores one page of a BTreeFile: its header page,
+ * a leaf or an internal node. Every page starts with an 8 byte header:
+ * <ul>
+ * <li>byte 0: the kind of page, HEADER, LEAF or INTERNAL</li>
+ * <li>bytes 2-3: the number of entries of a leaf, the number of keys of an
+ * internal node, or the height of the tree on the header page</li>
+ * <li>bytes 4-7: the next leaf (0 for the last leaf), or the root on the
+ * header page (0 while the tree is empty)</li>
+ * </ul>
+ * A leaf then holds its entries in order, each a key followed by the page
+ * number and slot of the indexed tuple. An internal node holds n keys and
+ * n + 1 children, laid out as child 0, then key i and child i + 1 for each
+ * key: child i holds the keys between key i - 1 and key i, both included,
+ * since equal keys may end up on either side of a split.
+ * <p>
+ * An all zero page is a header page of an empty tree, so a new page is
+ * written as zeros and given its kind once it is in the buffer pool.
+ *
+ * @see BTreeFile
+ */
+public class BTreePage implements Page {
+
+    /** The kinds of page. */
+    static final int HEADER = 0, LEAF = 1, INTERNAL = 2;
+
+    private static final int HEADER_SIZE = 8;
+
+    private final HeapPageId pid;
+    private final Type keyType;
+
+    private int kind;
+    private int count;
+    private int next;
+
+    //entries of a leaf, or keys of an internal node; one more than fits, so a page can overflow until it is split
+    private Field[] keys;
+    //page and slot of each leaf entry
+    private int[] pages;
+    private int[] slots;
+    //children of an internal node
+    private int[] children;
+
+    private TransactionId tid;
+    //the bytes before the first change since the last setBeforeImage, or null if there was none; guarded by this
+    private byte[] oldData;
+
+    /**
+     * Create a BTreePage from the bytes of a page of the BTreeFile with the
+     * id of the page's table, as read from disk.
+     */
+    public BTreePage(HeapPageId id, byte[] data) throws IOException {
+        this(id, ((BTreeFile) Database.getCatalog().getDbFile(id.getTableId())).getKeyType(), data);
+    }
+
+    BTreePage(HeapPageId id, Type keyType, byte[] data) throws IOException {
+        this.pid = id;
+        this.keyType = keyType;
+        keys = new Field[Math.max(maxEntries(keyType), maxKeys(keyType)) + 1];
+        pages = new int[keys.length];
+        slots = new int[keys.length];
+        children = new int[keys.length + 1];
+
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        kind = buf.get(0);
+        count = buf.getShort(2);
+        next = buf.getInt(4);
+        int keyLen = keyType.getLen();
+        if (kind == LEAF) {
+            for (int i = 0, off = HEADER_SIZE; i < count; i++, off += keyLen + 8) {
+                keys[i] = keyType.parse(data, off);
+                pages[i] = buf.getInt(off + keyLen);
+                slots[i] = buf.getInt(off + keyLen + 4);
+            }
+        } else if (kind == INTERNAL) {
+            children[0] = buf.getInt(HEADER_SIZE);
+            for (int i = 0, off = HEADER_SIZE + 4; i < count; i++, off += keyLen + 4) {
+                keys[i] = keyType.parse(data, off);
+                children[i + 1] = buf.getInt(off + keyLen);
+            }
+        }
+    }
+
+    /** @return the number of entries that fit on a leaf with keys of the given type */
+    static int maxEntries(Type keyType) {
+        return (BufferPool.PAGE_SIZE - HEADER_SIZE) / (keyType.getLen() + 8);
+    }
+
+    /** @return the number of keys that fit on an internal node with keys of the given type */
+    static int maxKeys(Type keyType) {
+        return (BufferPool.PAGE_SIZE - HEADER_SIZE - 4) / (keyType.getLen() + 4);
+    }
+
+    public static byte[] createEmptyPageData() {
+        return new byte[BufferPool.PAGE_SIZE];
+    }
+
+    public HeapPageId getId() {
+        return pid;
+    }
+
+    int kind() {
+        return kind;
+    }
+
+    /** Makes a new, empty page a leaf or an internal node. */
+    synchronized void init(int kind) {
+        beforeWrite();
+        this.kind = kind;
+        count = 0;
+        next = 0;
+    }
+
+    /** @return the number of entries of a leaf, or of keys of an internal node */
+    int size() {
+        return count;
+    }
+
+    /** @return whether the page holds more than fits on disk and has to be split */
+    boolean overflows() {
+        return count > (kind == LEAF ? maxEntries(keyType) : maxKeys(keyType));
+    }
+
+    Field key(int i) {
+        return keys[i];
+    }
+
+    int entryPage(int i) {
+        return pages[i];
+    }
+
+    int entrySlot(int i) {
+        return slots[i];
+    }
+
+    int child(int i) {
+        return children[i];
+    }
+
+    /** @return the next leaf after this leaf, or 0 if this is the last one */
+    int nextLeaf() {
+        return next;
+    }
+
+    /** @return the root of the tree on the header page, or 0 if it is empty */
+    int root() {
+        return next;
+    }
+
+    /** @return the number of levels of the tree on the header page */
+    int height() {
+        return count;
+    }
+
+    synchronized void setRoot(int root, int height) {
+        beforeWrite();
+        next = root;
+        count = height;
+    }
+
+    /** @return the first entry of a leaf whose key is not less than key, or size() if there is none */
+    int lowerBound(Field key) {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (BTreeFile.compare(keys[mid], key) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * @return the child of an internal node to descend into for key: the
+     *         leftmost one that may hold it, or the rightmost one it may go to
+     */
+    int findChild(Field key, boolean leftmost) {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = BTreeFile.compare(keys[mid], key);
+            if (c < 0 || (c == 0 && !leftmost)) lo = mid + 1;
+            else hi = mid;
+        }
+        return children[lo];
+    }
+
+    //orders leaf entries by key, then by where the tuple is, so that each entry has one place
+    private int compareEntry(int i, Field key, int page, int slot) {
+        int c = BTreeFile.compare(keys[i], key);
+        if (c != 0) return c;
+        if (pages[i] != page) return pages[i] < page ? -1 : 1;
+        return slots[i] < slot ? -1 : slots[i] == slot ? 0 : 1;
+    }
+
+    /**
+     * Copies the entries of a leaf from the given one on, so that an
+     * iterator can go on over them while the leaf changes.
+     *
+     * @return the number of entries copied
+     */
+    synchronized int copyEntries(int from, Field[] keys, int[] pages, int[] slots) {
+        int n = Math.max(0, count - from);
+        System.arraycopy(this.keys, from, keys, 0, n);
+        System.arraycopy(this.pages, from, pages, 0, n);
+        System.arraycopy(this.slots, from, slots, 0, n);
+        return n;
+    }
+
+    /** Adds an entry to a leaf, in order. The leaf may overflow. */
+    synchronized void insertEntry(Field key, int page, int slot) {
+        beforeWrite();
+        int i = count;
+        while (i > 0 && compareEntry(i - 1, key, page, slot) > 0) {
+            keys[i] = keys[i - 1];
+            pages[i] = pages[i - 1];
+            slots[i] = slots[i - 1];
+            i--;
+        }
+        keys[i] = key;
+        pages[i] = page;
+        slots[i] = slot;
+        count++;
+    }
+
+    /** Removes an entry from a leaf; returns false if the leaf does not hold it. */
+    synchronized boolean deleteEntry(Field key, int page, int slot) {
+        for (int i = lowerBound(key); i < count && BTreeFile.compare(keys[i], key) == 0; i++) {
+            if (pages[i] == page && slots[i] == slot) {
+                beforeWrite();
+                count--;
+                System.arraycopy(keys, i + 1, keys, i, count - i);
+                System.arraycopy(pages, i + 1, pages, i, count - i);
+                System.arraycopy(slots, i + 1, slots, i, count - i);
+                keys[count] = null;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Makes a new internal node the root over two children. */
+    synchronized void initRoot(int left, Field key, int right) {
+        init(INTERNAL);
+        children[0] = left;
+        keys[0] = key;
+        children[1] = right;
+        count = 1;
+    }
+
+    /**
+     * Adds key and the child right of it to an internal node, just after the
+     * child left. The node may overflow.
+     */
+    synchronized void insertChild(int left, Field key, int right) {
+        beforeWrite();
+        int i = 0;
+        while (children[i] != left) i++;
+        System.arraycopy(keys, i, keys, i + 1, count - i);
+        System.arraycopy(children, i + 1, children, i + 2, count - i);
+        keys[i] = key;
+        children[i + 1] = right;
+        count++;
+    }
+
+    /**
+     * Moves the upper half of this page to the new, empty page right of the
+     * same kind, and returns the key that separates them in their parent.
+     * A leaf keeps its separator, the first key of right; an internal node
+     * gives it up to the parent.
+     */
+    synchronized Field splitInto(BTreePage right) {
+        beforeWrite();
+        right.beforeWrite();
+        int half = count / 2;
+        Field separator;
+        if (kind == LEAF) {
+            right.count = count - half;
+            System.arraycopy(keys, half, right.keys, 0, right.count);
+            System.arraycopy(pages, half, right.pages, 0, right.count);
+            System.arraycopy(slots, half, right.slots, 0, right.count);
+            right.next = next;
+            next = right.pid.pageNumber();
+            separator = keys[half];
+        } else {
+            right.count = count - half - 1;
+            System.arraycopy(keys, half + 1, right.keys, 0, right.count);
+            System.arraycopy(children, half + 1, right.children, 0, right.count + 1);
+            separator = keys[half];
+        }
+        for (int i = half; i < count; i++) keys[i] = null;
+        count = half;
+        return separator;
+    }
+
+    /**
+     * Fills a new leaf with entries, in order; used to build a tree from
+     * scratch.
+     */
+    void fillLeaf(Field[] keys, int[] pages, int[] slots, int from, int to, int next) {
+        kind = LEAF;
+        count = to - from;
+        System.arraycopy(keys, from, this.keys, 0, count);
+        System.arraycopy(pages, from, this.pages, 0, count);
+        System.arraycopy(slots, from, this.slots, 0, count);
+        this.next = next;
+    }
+
+    /**
+     * Fills a new internal node with children, in order, and the keys
+     * between them; used to build a tree from scratch.
+     */
+    void fillInternal(int[] children, Field[] keys, int from, int to) {
+        kind = INTERNAL;
+        count = to - from - 1;
+        System.arraycopy(children, from, this.children, 0, count + 1);
+        System.arraycopy(keys, from + 1, this.keys, 0, count);
+    }
+
+    public synchronized byte[] getPageData() {
+        ByteBuffer buf = ByteBuffer.allocate(BufferPool.PAGE_SIZE);
+        writePageData(buf);
+        return buf.array();
+    }
+
+    public synchronized void writePageData(ByteBuffer buf) {
+        int start = buf.position();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(BufferPool.PAGE_SIZE);
+        DataOutputStream dos = new DataOutputStream(bytes);
+        try {
+            dos.writeByte(kind);
+            dos.writeByte(0);
+            dos.writeShort(count);
+            dos.writeInt(next);
+            if (kind == INTERNAL) dos.writeInt(children[0]);
+            for (int i = 0; i < count && kind != HEADER; i++) {
+                //a dictionary encoded string is stored as its string
+                keys[i].serialize(dos);
+                if (kind == LEAF) {
+                    dos.writeInt(pages[i]);
+                    dos.writeInt(slots[i]);
+                } else {
+                    dos.writeInt(children[i + 1]);
+                }
+            }
+            dos.flush();
+        } catch (IOException e) {
+            //writing to a byte array does not fail
+            throw new RuntimeException(e);
+        }
+        buf.put(bytes.toByteArray());
+        while (buf.position() < start + BufferPool.PAGE_SIZE) buf.put((byte) 0);
+    }
+
+    /** Return a view of this page before it was modified -- used by recovery */
+    public BTreePage getBeforeImage() {
+        try {
+            byte[] before;
+            synchronized (this) {
+                before = oldData != null ? oldData : getPageData();
+            }
+            return new BTreePage(pid, keyType, before);
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public synchronized void setBeforeImage() {
+        oldData = null;
+    }
+
+    //copies the bytes aside before the first change since the last setBeforeImage
+    private synchronized void beforeWrite() {
+        if (oldData == null) oldData = getPageData();
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        if (dirty) {
+            beforeWrite();
+            this.tid = tid;
+        } else {
+            this.tid = null;
+        }
+    }
+
+    public TransactionId isDirty() {
+        return tid;
+    }
+}
@@ -0,0 +1,254 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * BlockNestedLoopJoin is a nested-loop join that reads its outer child a
+ * block of tuples at a time and streams the inner child once per block,
+ * matching each inner tuple against the whole block. Where Join rescans the
+ * inner child for every outer tuple, this rescans it once per block, so a
+ * join whose outer side fits in one block reads each child once.
+ * <p>
+ * Tuples come grouped by block, in the order of the inner child within a
+ * block, so the order of the outer child is not kept.
+ */
+public class BlockNestedLoopJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The default size of an outer block, in pages of tuples: as many as the default buffer pool holds */
+    public static final int DEFAULT_BLOCK_PAGES = BufferPool.DEFAULT_PAGES;
+
+    private final JoinPredicate p;
+
+    private DbIterator child1, child2;
+
+    private final TupleDesc td;
+
+    private int blockTuples;
+
+    private ArrayList<Tuple> block;
+
+    //whether the inner child has been read, so has to be rewound for the next block
+    private boolean innerRead;
+
+    private Tuple inner;
+
+    private int pos;
+
+    /**
+     * Constructor, with blocks of DEFAULT_BLOCK_PAGES.
+     *
+     * @param p
+     *            The predicate to use to join the children
+     * @param child1
+     *            Iterator for the left(outer) relation to join
+     * @param child2
+     *            Iterator for the right(inner) relation to join
+     */
+    public BlockNestedLoopJoin(JoinPredicate p, DbIterator child1, DbIterator child2) {
+
+        this(p, child1, child2, DEFAULT_BLOCK_PAGES);
+
+    }
+
+    /**
+     * Constructor with the size of an outer block.
+     *
+     * @param blockPages
+     *            how many pages' worth of outer tuples a block holds
+     */
+    public BlockNestedLoopJoin(JoinPredicate p, DbIterator child1, DbIterator child2, int blockPages) {
+
+        this.p = p;
+
+        this.child1 = child1;
+
+        this.child2 = child2;
+
+        td = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+
+        blockTuples = (int) Math.max(1, Math.min(Integer.MAX_VALUE,
+                (long) blockPages * BufferPool.PAGE_SIZE / child1.getTupleDesc().getSize()));
+
+    }
+
+    /**
+     * @return a BlockNestedLoopJoin whose outer blocks hold blockTuples
+     *         tuples
+     */
+    public static BlockNestedLoopJoin withBlockTuples(JoinPredicate p, DbIterator child1, DbIterator child2,
+            int blockTuples) {
+
+        BlockNestedLoopJoin j = new BlockNestedLoopJoin(p, child1, child2);
+
+        j.blockTuples = Math.max(1, blockTuples);
+
+        return j;
+    }
+
+    /** @return how many outer tuples a block holds */
+    public int getBlockTuples() {
+
+        return blockTuples;
+
+    }
+
+    public JoinPredicate getJoinPredicate() {
+
+        return p;
+
+    }
+
+    /** @return the field name of join field1, quantified by alias */
+    public String getJoinField1Name() {
+
+        return child1.getTupleDesc().getFieldName(p.getField1());
+
+    }
+
+    /** @return the field name of join field2, quantified by alias */
+    public String getJoinField2Name() {
+
+        return child2.getTupleDesc().getFieldName(p.getField2());
+
+    }
+
+    public TupleDesc getTupleDesc() {
+
+        return td;
+
+    }
+
+    public void open() throws DbException, NoSuchElementException, TransactionAbortedException {
+
+        child1.open();
+
+        child2.open();
+
+        super.open();
+
+        start();
+    }
+
+    public void close() {
+
+        super.close();
+
+        child2.close();
+
+        child1.close();
+
+        block = null;
+
+        inner = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+
+        child1.rewind();
+
+        child2.rewind();
+
+        start();
+    }
+
+    private void start() {
+
+        block = new ArrayList<Tuple>();
+
+        innerRead = false;
+
+        inner = null;
+    }
+
+    /**
+     * Reads the next block of outer tuples, and rewinds the inner child if
+     * an earlier block read it.
+     *
+     * @return false if the outer child has no tuples left
+     */
+    private boolean nextBlock() throws DbException, TransactionAbortedException {
+
+        block.clear();
+
+        while (block.size() < blockTuples && child1.hasNext())
+            block.add(child1.next().detached());
+
+        if (block.isEmpty()) return false;
+
+        if (innerRead) child2.rewind();
+
+        innerRead = true;
+
+        return true;
+    }
+
+    /**
+     * Returns the next tuple generated by the join, or null if there are no
+     * more tuples. Tuples are the concatenation of the outer and the inner
+     * tuple, as for Join.
+     *
+     * @return The next matching tuple.
+     * @see JoinPredicate#filter
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+
+        while (true) {
+
+            if (inner != null) {
+
+                while (pos < block.size()) {
+
+                    Tuple outer = block.get(pos++);
+
+                    if (p.filter(outer, inner)) return merge(outer, inner);
+                }
+
+                inner = null;
+            }
+
+            if (!block.isEmpty() && child2.hasNext()) {
+
+                inner = child2.next();
+
+                pos = 0;
+
+                continue;
+            }
+
+            if (!nextBlock()) return null;
+        }
+    }
+
+    private Tuple merge(Tuple c1, Tuple c2) {
+
+        Tuple res = new Tuple(td);
+
+        int l1 = c1.getTupleDesc().numFields();
+
+        for (int i = 0; i < l1; i++)
+            res.setField(i, c1.getField(i));
+
+        for (int i = 0; i < c2.getTupleDesc().numFields(); i++)
+            res.setField(l1 + i, c2.getField(i));
+
+        return res;
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+
+        return new DbIterator[] { child1, child2 };
+
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+
+        child1 = children[0];
+
+        child2 = children[1];
+
+    }
+}
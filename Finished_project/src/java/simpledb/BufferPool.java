@@ -2,7 +2,9 @@ package simpledb;
 
 import java.io.*;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 /**
  * BufferPool manages the reading and writing of pages into memory from
  * disk. Access methods call into it to retrieve pages, and it fetches
@@ -11,6 +13,28 @@ import java.util.concurrent.ConcurrentHashMap;
  * The BufferPool is also responsible for locking;  when a transaction fetches
  * a page, BufferPool checks that the transaction has the appropriate
  * locks to read/write the page.
+ * <p>
+ * Cached pages are spread over shards by the hash of their PageId. Each
+ * shard has its own latch and its own ReplacementPolicy, so that hits on
+ * different shards do not contend. The pool-wide page count is kept apart
+ * from the shards; when the pool is full, the clean page chosen by the
+ * policy of some shard is evicted, visiting the shards in turn. A miss
+ * reads its page from disk without holding the shard latch: it leaves a
+ * Loading placeholder in the shard, and other requests for that page wait
+ * on the placeholder while hits on the rest of the shard go on.
+ * <p>
+ * Only clean, unpinned pages can be chosen by the replacement policies:
+ * dirty and pinned pages are handed to ReplacementPolicy.pagePinned, which
+ * keeps what the policy knows about them but takes them out of its choice.
+ * Choosing a victim therefore never has to step over them. A commit writes
+ * out only the pages its transaction has locked, which include every page
+ * it dirtied, rather than looking at every cached page. While
+ * insertTuple or deleteTuple runs, the page it fetched last is pinned, so
+ * that it cannot be evicted between being changed and being marked dirty.
+ * <p>
+ * Sequential scans can ask for pages to be read ahead of them by a small
+ * pool of background threads (see prefetch and ReadAhead). This is on by
+ * default on machines with more than one processor.
  */
 public class BufferPool {
     /** Bytes per page, including header. */
@@ -21,13 +45,48 @@ public class BufferPool {
     constructor instead. */
     public static final int DEFAULT_PAGES = 50;
 
+    /** Default number of shards the page table is split into. */
+    public static final int DEFAULT_SHARDS = 16;
+
+    /** Number of background threads reading pages ahead of scans. */
+    public static final int READ_AHEAD_THREADS = 2;
+
+    //read-ahead requests that may wait for a thread; more are dropped
+    private static final int READ_AHEAD_QUEUE = 128;
+
     private volatile int numPages;
 
-    private volatile LRUCache cache;
+    private final Shard[] shards;
+
+    //guards numCached and numLoading; taken before a shard latch, never after
+    private final Object frameLatch = new Object();
+
+    //pages cached across all shards plus frames reserved for loads, never more than numPages
+    private int numCached;
+
+    //frames reserved by loads that have not installed their page yet
+    private int numLoading;
+
+    //shard that the next eviction starts looking in
+    private final AtomicInteger evictionHand = new AtomicInteger();
 
     private volatile LockManager lockManager;
-    
-    private volatile Map<TransactionId, Long> transactions;
+
+    private final AtomicLong numAborts = new AtomicLong();
+
+    private final AtomicLong numHits = new AtomicLong();
+
+    private final AtomicLong numMisses = new AtomicLong();
+
+    private final AtomicLong numFailedEvictions = new AtomicLong();
+
+    //holds the page pinned by the insertTuple or deleteTuple running on this thread, if any
+    private final ThreadLocal<PageId[]> pinned = new ThreadLocal<PageId[]>();
+
+    //reading ahead only pays off if it can run while the scan uses the CPU
+    private volatile boolean readAheadEnabled = Runtime.getRuntime().availableProcessors() > 1;
+
+    private final ThreadPoolExecutor readAheadThreads;
     /**
      * Creates a BufferPool that caches up to numPages pages.
      *
@@ -35,13 +94,40 @@ public class BufferPool {
      */
     public BufferPool(int numPages) {
 
+        this(numPages, ReplacementPolicy.Kind.LRU);
+
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages and evicts them
+     * according to the given replacement policy.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param policy the replacement policy used by every shard
+     */
+    public BufferPool(int numPages, ReplacementPolicy.Kind policy) {
+
         this.numPages = numPages;
-  
-        cache = new LRUCache(numPages);
+
+        shards = new Shard[Math.max(1, Math.min(DEFAULT_SHARDS, numPages))];
+
+        int perShard = (numPages + shards.length - 1) / shards.length;
+
+        for (int i = 0; i < shards.length; i++) shards[i] = new Shard(policy.create(perShard));
+
+        readAheadThreads = new ThreadPoolExecutor(READ_AHEAD_THREADS, READ_AHEAD_THREADS, 1, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(READ_AHEAD_QUEUE), new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "read-ahead");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+
+        //idle pools, e.g. of a reset Database, keep no threads
+        readAheadThreads.allowCoreThreadTimeOut(true);
 
         lockManager = new LockManager();
-    
-        transactions = new ConcurrentHashMap<TransactionId, Long>();
 
     }
 
@@ -65,44 +151,312 @@ public class BufferPool {
         // some code goes here
 
         if(tid != null){
-            
-            if (!transactions.containsKey(tid)) {
+            //blocks in the lock manager's wait queue; aborts if tid is picked as a deadlock victim
+            lockManager.acquireLock(pid, tid, perm);
+
+        }
+
+        Shard shard = shardOf(pid);
 
-                long t = System.currentTimeMillis();
+        PageId[] pin = pinned.get();
 
-                transactions.put(tid, t);
+        //only the page fetched last is in hand
+        if (pin != null) unpin(pin);
+
+        synchronized (shard) {
+
+            Page page = shard.get(pid);
+
+            if (page != null) {
+
+                numHits.incrementAndGet();
+
+                if (pin != null) pin(shard, pid, pin);
+
+                return page;
 
             }
-                //acquire locks and detect deadlocks.
-                boolean res = lockManager.acquireLock(pid, tid, perm);
+        }
+
+        numMisses.incrementAndGet();
+
+        return load(shard, pid, pin);
+    }
+
+    //pins a cached page for the running insertTuple or deleteTuple; called with the shard latch held
+    private void pin(Shard shard, PageId pid, PageId[] pin) {
 
-                while(!res){
+        shard.pin(pid);
 
-                    if ((System.currentTimeMillis() - transactions.get(tid)) > 500) {
+        pin[0] = pid;
+
+    }
+
+    private void unpin(PageId[] pin) {
+
+        if (pin[0] == null) return;
+
+        Shard shard = shardOf(pin[0]);
+
+        synchronized (shard) {
+
+            shard.unpin(pin[0]);
+
+        }
+
+        pin[0] = null;
+    }
+
+    //reads a page that missed in the cache from disk into its shard
+    private Page load(Shard shard, PageId pid, PageId[] pin) throws DbException {
+
+        reserveFrame();
+
+        return fill(shard, pid, pin);
+    }
+
+    //reads a page into a frame reserved for it, unless it was loaded meanwhile; releases the reservation
+    private Page fill(Shard shard, PageId pid, PageId[] pin) throws DbException {
+
+        boolean used = false;
+
+        try {
+
+            while (true) {
+
+                Loading load;
+
+                boolean reader = false;
+
+                synchronized (shard) {
+
+                    Page page = shard.get(pid);
+
+                    //another thread may have loaded it while we were making room
+                    if (page != null) {
+
+                        if (pin != null) pin(shard, pid, pin);
+
+                        return page;
 
-                        throw new TransactionAbortedException();
                     }
 
-                    try {
+                    load = shard.loading.get(pid);
 
-                        Thread.sleep(10);
+                    if (load == null) {
 
-                        res = lockManager.acquireLock(pid, tid, perm);
+                        load = new Loading();
 
-                    } catch (InterruptedException e){
+                        shard.loading.put(pid, load);
 
-                        e.printStackTrace();
+                        reader = true;
 
                     }
                 }
-            
+
+                if (!reader) {
+
+                    //another thread is reading it: wait for that read, not for the shard
+                    load.await();
+
+                    continue;
+
+                }
+
+                //the disk read is done without the shard latch, so hits on the shard go on meanwhile
+                Page page = null;
+
+                try {
+
+                    page = Database.getCatalog().getDbFile(pid.getTableId()).readPage(pid);
+
+                    if (page == null) throw new DbException("could not read page " + pid);
+
+                    synchronized (shard) {
+
+                        shard.install(pid, page);
+
+                        used = true;
+
+                        if (pin != null) pin(shard, pid, pin);
+
+                    }
+
+                    return page;
+
+                } finally {
+
+                    synchronized (shard) {
+
+                        shard.loading.remove(pid);
+
+                    }
+
+                    //if the read failed, the waiters try it again themselves
+                    load.finish();
+
+                }
+            }
+
+        } finally {
+
+            synchronized (frameLatch) {
+
+                if (!used) numCached--;
+
+                numLoading--;
+
+                frameLatch.notifyAll();
+
+            }
+
         }
+    }
+
+    //takes one page worth of room in the pool, evicting a page if it is full
+    private void reserveFrame() throws DbException {
+
+        synchronized (frameLatch) {
+
+            while (numCached >= numPages && !evictPage()) {
+
+                //pages still being read by other threads will be evictable once installed
+                if (numLoading == 0) {
+
+                    numFailedEvictions.incrementAndGet();
+
+                    throw new DbException("Cannot be evicted since all pages in bufferpool are dirty");
+
+                }
 
-        //get pages from LRU
-        return cache.get(pid);
-            
+                try {
+
+                    frameLatch.wait();
+
+                } catch (InterruptedException e) {
+
+                    Thread.currentThread().interrupt();
+
+                    throw new DbException("interrupted while waiting for a free page");
+
+                }
+            }
+
+            numCached++;
+
+            numLoading++;
+
+        }
     }
 
+    //like reserveFrame, but gives up rather than wait or fail
+    private boolean tryReserveFrame() {
+
+        synchronized (frameLatch) {
+
+            if (numCached >= numPages && !evictPage()) return false;
+
+            numCached++;
+
+            numLoading++;
+
+            return true;
+        }
+    }
+
+    /**
+     * Asks for a page to be read into the buffer pool in the background,
+     * ahead of a scan that is about to need it. No lock is taken: the page
+     * only goes into a free frame or that of a page the replacement policy
+     * may evict, so read-ahead never evicts a dirty or pinned page and
+     * never fails a transaction.
+     *
+     * @param pid the ID of the page to read
+     * @return true if a read was queued; false if read-ahead is off, the
+     *     page is already cached, or too many reads are queued
+     */
+    public boolean prefetch(final PageId pid) {
+
+        if (!readAheadEnabled || isCachedOrLoading(pid)) return false;
+
+        try {
+
+            readAheadThreads.execute(new Runnable() {
+                public void run() {
+                    readAhead(pid);
+                }
+            });
+
+            return true;
+
+        } catch (RejectedExecutionException e) {
+
+            return false;
+
+        }
+    }
+
+    //runs on a read-ahead thread
+    private void readAhead(PageId pid) {
+
+        if (isCachedOrLoading(pid) || !tryReserveFrame()) return;
+
+        try {
+
+            fill(shardOf(pid), pid, null);
+
+        } catch (DbException e) {
+
+            //the scan will read it, and see the error, itself
+
+        }
+    }
+
+    /** Return true if the page is in the buffer pool, without counting a hit */
+    public boolean isCached(PageId pid) {
+
+        Shard shard = shardOf(pid);
+
+        synchronized (shard) {
+
+            return shard.peek(pid) != null;
+
+        }
+    }
+
+    private boolean isCachedOrLoading(PageId pid) {
+
+        Shard shard = shardOf(pid);
+
+        synchronized (shard) {
+
+            return shard.peek(pid) != null || shard.loading.containsKey(pid);
+
+        }
+    }
+
+    /** Turns reading pages ahead of sequential scans on or off. */
+    public void setReadAheadEnabled(boolean enabled) {
+
+        readAheadEnabled = enabled;
+
+    }
+
+    /** Return the maximum number of pages in this buffer pool */
+    public int getCapacity() {
+
+        return numPages;
+
+    }
+
+    private Shard shardOf(PageId pid) {
+
+        int h = pid.hashCode();
+
+        h ^= (h >>> 16);
+
+        return shards[(h & 0x7fffffff) % shards.length];
+    }
 
     /**
      * Releases the lock on a page.
@@ -137,6 +491,41 @@ public class BufferPool {
         return lockManager.holdsLock(tid, p);
     }
 
+    /** Return the number of deadlocks detected by the lock manager */
+    public long getNumDeadlocks() {
+
+        return lockManager.getNumDeadlocks();
+
+    }
+
+    /** Return the number of transactions completed with an abort */
+    public long getNumAborts() {
+
+        return numAborts.get();
+
+    }
+
+    /** Return the number of getPage calls that found the page in the pool */
+    public long getNumHits() {
+
+        return numHits.get();
+
+    }
+
+    /** Return the number of getPage calls that had to read the page from disk */
+    public long getNumMisses() {
+
+        return numMisses.get();
+
+    }
+
+    /** Return the number of times no page could be evicted because every page was dirty or pinned */
+    public long getNumFailedEvictions() {
+
+        return numFailedEvictions.get();
+
+    }
+
     /**
      * Commit or abort a given transaction; release all locks associated to
      * the transaction.
@@ -148,8 +537,6 @@ public class BufferPool {
         throws IOException {
         // some code goes here
         // not necessary for proj1
- 
-        transactions.remove(tid);
 
         if(commit == true){
 
@@ -157,39 +544,37 @@ public class BufferPool {
 
         }else{
 
-            try{
-                //restore pages in caches
-                if(lockManager.tdReadLocks.get(tid) != null){
+            numAborts.incrementAndGet();
 
-                    for (PageId pid : lockManager.tdReadLocks.get(tid)){
-
-                            if(cache.access(pid) != null){
+                //restore pages in caches
+                for (PageId pid : lockManager.getLockedPages(tid)){
 
-                                cache.put(pid, cache.access(pid).getBeforeImage());
+                    Shard shard = shardOf(pid);
 
-                            }
+                    Page restored = null;
 
-                    }
-                }
+                    synchronized (shard) {
 
-                if(lockManager.tdWriteLocks.get(tid) != null){
+                        Page page = shard.peek(pid);
 
-                    for (PageId pid : lockManager.tdWriteLocks.get(tid)){
+                        if (page != null) {
 
-                        if(cache.access(pid) != null){
+                            restored = page.getBeforeImage();
 
-                            cache.put(pid, cache.access(pid).getBeforeImage());
+                            shard.replace(pid, restored);
 
                         }
-
                     }
-                }
 
-            }catch(DbException e){
+                    //the undone inserts may have filled the page in the free space map
+                    if (restored != null) {
 
-                e.printStackTrace();
+                        DbFile file = Database.getCatalog().getDbFile(pid.getTableId());
 
-            }
+                        if (file instanceof HeapFile) ((HeapFile) file).pageRestored(restored);
+
+                    }
+                }
         }
         //release all related locks
         lockManager.releaseTid(tid);
@@ -204,6 +589,7 @@ public class BufferPool {
      * Marks any pages that were dirtied by the operation as dirty by calling
      * their markDirty bit, and updates cached versions of any pages that have 
      * been dirtied so that future requests see up-to-date pages. 
+     * The tuple is also added to every index on the table.
      *
      * @param tid the transaction adding the tuple
      * @param tableId the table to add the tuple to
@@ -212,14 +598,39 @@ public class BufferPool {
     public void insertTuple(TransactionId tid, int tableId, Tuple t)
         throws DbException, IOException, TransactionAbortedException {
         // some code goes here
-            Database.getCatalog().getDbFile(tableId).insertTuple(tid, t);
-        //marked and cached in heapfile.insertTuuple
+        PageId[] pin = startPinning();
+
+        try {
+
+            ArrayList<Page> dirtied = Database.getCatalog().getDbFile(tableId).insertTuple(tid, t);
+
+            //t now has a RecordId, for the entries of the table's indexes
+            for (BTreeFile index : Database.getCatalog().getIndexes(tableId)) {
+
+                dirtied.addAll(index.insertTuple(tid, t));
+
+            }
+
+            for (Page page : dirtied) {
+
+                page.markDirty(true, tid);
+
+                pageDirtied(page.getId());
+
+            }
+
+        } finally {
+
+            stopPinning(pin);
+
+        }
     }
 
     /**
      * Remove the specified tuple from the buffer pool.
      * Will acquire a write lock on the page the tuple is removed from. May block if
-     * the lock cannot be acquired.
+     * the lock cannot be acquired. The tuple is also removed from every index
+     * on its table.
      *
      * Marks any pages that were dirtied by the operation as dirty by calling
      * their markDirty bit.  Does not need to update cached versions of any pages that have 
@@ -234,14 +645,65 @@ public class BufferPool {
         // some code goes here
         int tableId=t.getRecordId().getPageId().getTableId();
 
-        HeapFile f = (HeapFile) Database.getCatalog().getDbFile(tableId);
+        DbFile f = Database.getCatalog().getDbFile(tableId);
+
+        PageId[] pin = startPinning();
+
+        try {
+
+            for (BTreeFile index : Database.getCatalog().getIndexes(tableId)) {
+
+                Page entryPage = index.deleteTuple(tid, t);
+
+                entryPage.markDirty(true, tid);
+
+                pageDirtied(entryPage.getId());
+
+            }
+
+            Page page = f.deleteTuple(tid, t);
+
+            page.markDirty(true, tid);
+
+            pageDirtied(page.getId());
+
+        } finally {
+
+            stopPinning(pin);
+
+        }
+    }
+
+    //makes getPage keep the page it returned last on this thread pinned until stopPinning
+    private PageId[] startPinning() {
+
+        PageId[] pin = new PageId[1];
+
+        pinned.set(pin);
 
-        f.deleteTuple(tid, t);
+        return pin;
+    }
+
+    private void stopPinning(PageId[] pin) {
+
+        pinned.remove();
 
-        //marked and cached in heapfile.deleteTuple
+        unpin(pin);
 
     }
 
+    //moves a page that has just been marked dirty out of its shard's replacement policy
+    private void pageDirtied(PageId pid) {
+
+        Shard shard = shardOf(pid);
+
+        synchronized (shard) {
+
+            shard.refresh(pid);
+
+        }
+    }
+
     /**
      * Flush all dirty pages to disk.
      * NB: Be careful using this routine -- it writes dirty data to disk so will
@@ -249,16 +711,11 @@ public class BufferPool {
      */
     public synchronized void flushAllPages() throws IOException {
         // some code goes here
-        Node cur = cache.getHead();
-
-        while(cur != null){
+        for (Shard shard : shards) {
 
-            flushPage(cur.pid);
-
-            cur = cache.getNext(cur);
+            for (PageId pid : shard.pageIds()) flushPage(pid);
 
         }
-
     }
 
     /** Remove the specific page id from the buffer pool.
@@ -269,6 +726,16 @@ public class BufferPool {
     public synchronized void discardPage(PageId pid) {
         // some code goes here
 	// not necessary for proj1
+        Shard shard = shardOf(pid);
+
+        synchronized (frameLatch) {
+
+            synchronized (shard) {
+
+                if (shard.remove(pid)) numCached--;
+
+            }
+        }
     }
 
     /**
@@ -277,13 +744,21 @@ public class BufferPool {
      */
     private synchronized  void flushPage(PageId pid) throws IOException {
         // some code goes here
-        HeapPage fPage = (HeapPage) cache.access(pid);
-        
+        Page fPage;
+
+        Shard shard = shardOf(pid);
+
+        synchronized (shard) {
+
+            fPage = shard.peek(pid);
+
+        }
+
         if(fPage == null) return;
 
         if(fPage.isDirty() != null){
 
-            HeapFile table = (HeapFile) Database.getCatalog().getDbFile(pid.getTableId());
+            DbFile table = Database.getCatalog().getDbFile(pid.getTableId());
 
             fPage.markDirty(false, null);
 
@@ -291,6 +766,12 @@ public class BufferPool {
 
             table.writePage(fPage);
 
+            //clean again, so it goes back to the replacement policy
+            synchronized (shard) {
+
+                shard.refresh(pid);
+
+            }
         }
 
     }
@@ -299,13 +780,20 @@ public class BufferPool {
      */
     public synchronized  void flushPages(TransactionId tid) throws IOException {
         // some code goes here
-        Node cur = cache.getHead();
+        //a page tid dirtied is write locked by tid until it completes
+        for (PageId pid : lockManager.getLockedPages(tid)) {
 
-        while(cur != null){
+            Page page;
 
-            if(cur.page.isDirty() == tid) flushPage(cur.pid);
+            Shard shard = shardOf(pid);
 
-            cur = cache.getNext(cur);
+            synchronized (shard) {
+
+                page = shard.peek(pid);
+
+            }
+
+            if (page != null && page.isDirty() != null && page.isDirty().equals(tid)) flushPage(pid);
 
         }
     }
@@ -313,318 +801,241 @@ public class BufferPool {
     /**
      * Discards a page from the buffer pool.
      * Flushes the page to disk to ensure dirty pages are updated on disk.
+     * <p>
+     * Under NO STEAL only clean pages may be evicted, so nothing is written
+     * out here. The shards are visited in turn, starting one further on at
+     * each call, and the page chosen by the policy of the first shard that
+     * has a clean, unpinned page is dropped. As the policies know only such
+     * pages this costs O(shards), not O(pages). Called with frameLatch held;
+     * only one shard latch is held at a time.
+     *
+     * @return false if no cached page could be evicted
      */
-    private synchronized  void evictPage() throws DbException {
+    private boolean evictPage() {
         // some code goes here
-        Node cur = cache.getHead();
+        int start = evictionHand.getAndIncrement();
 
-        while(cur != null){
+        for (int i = 0; i < shards.length; i++) {
 
-            if(cur.page.isDirty() == null) {
+            Shard shard = shards[((start + i) & 0x7fffffff) % shards.length];
 
-                cache.ca.remove(cur.pid);
+            synchronized (shard) {
 
-                cache.remove(cur);
+                if (shard.evictClean()) {
 
-                break;
+                    numCached--;
 
-            } 
-
-            cur = cache.getNext(cur);
+                    return true;
 
+                }
+            }
         }
-        
-        if(cur == null)  throw new DbException("Cannot be evicted since all pages in bufferpool are dirty");
-    }
-
-    public class LRUCache {
-    //a linked list of pages
-    private volatile Map<PageId, Node> ca; //pageId to pages
-    private volatile Node head;
-    private volatile Node tail;
-    private volatile int c; //capacity
-
-    public LRUCache(int capacity) {
-
-        this.c = capacity;
-
-        this.ca = new ConcurrentHashMap<PageId, Node>();
 
+        return false;
     }
-    
-    public Node getHead() {
 
-        return this.head;
+    /** A page being read from disk, which other requests for it wait on. */
+    private static class Loading {
 
-    }
+        private boolean done;
 
-    public Node getNext(Node node) {
+        public synchronized void await() throws DbException {
 
-        return node.next;
+            try {
 
-    }
+                while (!done) wait();
 
-    public Page get(PageId pid) throws DbException {//get from cache or from disk, move it to the tail
+            } catch (InterruptedException e) {
 
-        Node node = this.ca.get(pid);
+                Thread.currentThread().interrupt();
 
-        if(node != null){
+                throw new DbException("interrupted while waiting for a page to be read");
 
-            remove(node);
-
-            addToTail(node);
-
-            return node.page;
-
-        }else{
-
-            HeapFile table = (HeapFile) Database.getCatalog().getDbFile(pid.getTableId());
+            }
+        }
 
-            HeapPage newPage = (HeapPage) table.readPage(pid);
+        public synchronized void finish() {
 
-            this.put(pid, newPage);
+            done = true;
 
-            return newPage;
+            notifyAll();
 
         }
-        
     }
 
-    public Page access(PageId pid) {//get pages
+    /** A cached page with its pin count. */
+    private static class Frame {
 
-        Node node = this.ca.get(pid);
+        Page page;
 
-        if(node != null){
+        int pins;
 
-            return node.page;
+        //whether the replacement policy has been told the page is pinned, i.e. is pinned or dirty
+        boolean held;
 
-        }else{
+        Frame(Page page) {
 
-            return null;
+            this.page = page;
 
         }
     }
-       
-    
-    public void put(PageId pid, Page page) throws DbException {//put pages to the tail and evict undirty pages if it is full.
-
-        Node node = new Node(pid, page);
-
-        if(this.ca.containsKey(pid)){
 
-            remove(this.ca.get(pid));
-
-        } else if(this.ca.size() >= c){
-
-            evictPage();
-
-        }
-
-        addToTail(node);
-
-        ca.put(pid,node);
-    }
-    
-    public void remove(Node node){//removes page node from the linked list
+    /**
+     * A partition of the page table; guarded by its own monitor. Every page
+     * is known to the replacement policy, which may only evict the clean,
+     * unpinned ones.
+     */
+    private static class Shard {
 
-        if(node == null) return;
+        private final HashMap<PageId, Frame> frames = new HashMap<PageId, Frame>();
 
-        if(node.prev!=null){
+        //pages being read from disk, not yet in frames
+        private final HashMap<PageId, Loading> loading = new HashMap<PageId, Loading>();
 
-            node.prev.next = node.next;
+        private final ReplacementPolicy policy;
 
-        } else {
+        Shard(ReplacementPolicy policy) {
 
-            head = node.next;
+            this.policy = policy;
 
         }
 
-        if(node.next!=null){
+        //looks up a page, counting it as a hit for the policy
+        public Page get(PageId pid) {
 
-            node.next.prev = node.prev;
+            Frame frame = frames.get(pid);
 
-        } else {
+            if (frame == null) return null;
 
-            tail = node.prev;
+            policy.pageHit(pid);
 
+            return frame.page;
         }
-    }
-
-    
-    public void addToTail(Node node){
 
-        if(tail == null){
+        //looks up a page without touching the policy
+        public Page peek(PageId pid) {
 
-            head = node;
+            Frame frame = frames.get(pid);
 
-            tail = node;
-
-        } else {
-
-            tail.next = node;
-
-            node.prev = tail;
-
-            node.next = null;
-
-            tail = node;
-        }
-    }
-    
-    
-}
-
-public class Node {//linked list node of pages
-        private volatile Node prev;
-        private volatile Node next;
-        private volatile PageId pid;
-        private volatile Page page;
-
-        public Node(PageId pid, Page page){
-            this.pid = pid;
-            this.page = page;
+            return frame == null ? null : frame.page;
         }
 
-    }
-private class LockManager {//read and write locks of pages to tid, tid to pages
-
-        private Map<PageId, Set<TransactionId>> pageReadLocks;
-
-        private Map<PageId, TransactionId> pageWriteLocks;
+        public void install(PageId pid, Page page) {
 
-        private Map<TransactionId, Set<PageId>> tdReadLocks;
+            Frame frame = new Frame(page);
 
-        private Map<TransactionId, Set<PageId>> tdWriteLocks;
+            frames.put(pid, frame);
 
-        
-        public LockManager(){
+            policy.pageLoaded(pid);
 
-            pageReadLocks = new ConcurrentHashMap<PageId, Set<TransactionId>>();
+            track(pid, frame);
 
-            pageWriteLocks = new ConcurrentHashMap<PageId, TransactionId>();
-
-            tdReadLocks = new ConcurrentHashMap<TransactionId, Set<PageId>>();
-
-            tdWriteLocks = new ConcurrentHashMap<TransactionId, Set<PageId>>();
         }
 
-        
-        public boolean holdsLock(TransactionId tid, PageId pid){
+        public void replace(PageId pid, Page page) {
 
-            return (pageReadLocks.get(pid).contains(tid) || pageWriteLocks.get(pid).equals(tid));
-        }
+            Frame frame = frames.get(pid);
 
-        
-        public synchronized void releasePage(PageId pid, TransactionId tid){
+            frame.page = page;
 
-            if (pageReadLocks.containsKey(pid)){
+            track(pid, frame);
 
-                pageReadLocks.get(pid).remove(tid);
-            }
+        }
 
-            pageWriteLocks.remove(pid);
+        public boolean remove(PageId pid) {
 
-            if (tdReadLocks.containsKey(tid)){
+            Frame frame = frames.remove(pid);
 
-                tdReadLocks.get(tid).remove(pid);
-            }
+            if (frame == null) return false;
 
-            if (tdWriteLocks.containsKey(tid)) {
-
-                tdWriteLocks.get(tid).remove(pid);
-            }
+            policy.pageRemoved(pid);
 
+            return true;
         }
-        
-        public synchronized void releaseTid(TransactionId tid){
 
-            for (PageId pid : pageWriteLocks.keySet()) {
+        public void pin(PageId pid) {
 
-                if (pageWriteLocks.containsKey(pid) && pageWriteLocks.get(pid).equals(tid)) {
+            Frame frame = frames.get(pid);
 
-                     pageWriteLocks.remove(pid);
+            frame.pins++;
 
-                }
+            track(pid, frame);
 
-            }
-        
-            for (PageId pid : pageReadLocks.keySet()) {
+        }
 
-                if (pageReadLocks.containsKey(pid)) {
+        public void unpin(PageId pid) {
 
-                    pageReadLocks.get(pid).remove(tid);
+            Frame frame = frames.get(pid);
 
-                }
-            }
+            if (frame == null) return;
 
-            tdReadLocks.remove(tid);
+            frame.pins--;
 
-            tdWriteLocks.remove(tid);
+            track(pid, frame);
 
-            
-    }
-
-        public synchronized boolean acquireLock(PageId pid, TransactionId tid, Permissions perm){
-
-            if (perm.equals(Permissions.READ_ONLY)){// read
+        }
 
-                if ( !pageWriteLocks.containsKey(pid) || pageWriteLocks.get(pid).equals(tid)) {//not have other write block, add read lock
+        //rechecks whether a page is dirty after it was marked or flushed
+        public void refresh(PageId pid) {
 
-                    if (!pageReadLocks.containsKey(pid)){
+            Frame frame = frames.get(pid);
 
-                        pageReadLocks.put(pid, new HashSet<TransactionId>());
+            if (frame != null) track(pid, frame);
 
-                    }
+        }
 
-                    pageReadLocks.get(pid).add(tid);
+        public synchronized List<PageId> pageIds() {
 
-                    if (!tdReadLocks.containsKey(tid)) {
+            return new ArrayList<PageId>(frames.keySet());
 
-                        tdReadLocks.put(tid, new HashSet<PageId>());
+        }
 
-                    }
+        //drops the clean page the policy picks; returns false if every page is dirty or pinned
+        public boolean evictClean() {
 
-                    tdReadLocks.get(tid).add(pid);
+            final List<PageId> dirtied = new ArrayList<PageId>();
 
-                    return true;
+            PageId pid = policy.evict(new ReplacementPolicy.Filter() {
+                public boolean evictable(PageId p) {
 
-                } else {
+                    if (frames.get(p).page.isDirty() == null) return true;
 
-                    return false;//have other write block
+                    //marked dirty behind the pool's back, so the policy was not told
+                    dirtied.add(p);
 
+                    return false;
                 }
+            });
 
-            } else {
-
-                if (pageReadLocks.containsKey(pid)){
+            //from now on the policy holds them, and skips them without looking at them
+            for (PageId p : dirtied) track(p, frames.get(p));
 
-                    Set<TransactionId> set = pageReadLocks.get(pid);
-                    //has another read lock
-                    if(set.size() > 1 || (set.size() == 1 && !set.contains(tid)))
+            if (pid == null) return false;
 
-                        return false;
+            frames.remove(pid);
 
-                }
+            return true;
+        }
 
-                if (pageWriteLocks.containsKey(pid) && !pageWriteLocks.get(pid).equals(tid)){//has another write lock
+        //tells the policy whether a page may be evicted, after its page or pins changed
+        private void track(PageId pid, Frame frame) {
 
-                    return false;
+            boolean isDirty = frame.page.isDirty() != null;
 
-                } else {//add write lock
+            boolean evictable = frame.pins == 0 && !isDirty;
 
-                    pageWriteLocks.put(pid, tid);
+            if (evictable && frame.held) {
 
-                    if (!tdWriteLocks.containsKey(tid)){
+                policy.pageUnpinned(pid);
 
-                        tdWriteLocks.put(tid, new HashSet<PageId>());
+                frame.held = false;
 
-                    }
+            } else if (!evictable && !frame.held) {
 
-                    tdWriteLocks.get(tid).add(pid);
+                policy.pagePinned(pid);
 
-                    return true;
+                frame.held = true;
 
-                }
             }
         }
     }
@@ -29,6 +29,11 @@ public class Catalog {
 
     private Map<String, Integer> name2id;
 
+    private Map<Integer, BTreeFile> id2index;
+
+    //indexes of each table that has any
+    private Map<Integer, List<BTreeFile>> id2indexes;
+
     public Catalog() {
 
         id2file = new HashMap<Integer,DbFile>();
@@ -38,6 +43,10 @@ public class Catalog {
         id2pkeyField = new HashMap<Integer, String>();
 
         name2id = new HashMap<String, Integer>();
+
+        id2index = new HashMap<Integer, BTreeFile>();
+
+        id2indexes = new HashMap<Integer, List<BTreeFile>>();
         
     }
 
@@ -83,6 +92,56 @@ public class Catalog {
 
     }
 
+    /**
+     * Add an index on a table already in the catalog. Its pages can then be
+     * read through the buffer pool, and tuples inserted into or deleted from
+     * the table through the buffer pool are added to or removed from it.
+     * @param index the index to add; index.getId() identifies it for getDbFile
+     */
+    public void addIndex(BTreeFile index) {
+
+        id2index.put(index.getId(), index);
+
+        List<BTreeFile> indexes = id2indexes.get(index.getTableId());
+
+        if (indexes == null) {
+
+            indexes = new ArrayList<BTreeFile>();
+
+            id2indexes.put(index.getTableId(), indexes);
+
+        }
+
+        indexes.add(index);
+
+    }
+
+    /**
+     * Returns the indexes on the specified table, which may be none.
+     */
+    public List<BTreeFile> getIndexes(int tableid) {
+
+        List<BTreeFile> indexes = id2indexes.get(tableid);
+
+        return indexes == null ? Collections.<BTreeFile>emptyList() : indexes;
+
+    }
+
+    /**
+     * Returns an index on a column of the specified table, or null if there
+     * is none.
+     */
+    public BTreeFile getIndex(int tableid, int field) {
+
+        for (BTreeFile index : getIndexes(tableid)) {
+
+            if (index.getKeyField() == field) return index;
+
+        }
+
+        return null;
+    }
+
     /**
      * Return the id of the table with a specified name,
      * @throws NoSuchElementException if the table doesn't exist
@@ -125,14 +184,16 @@ public class Catalog {
 
     /**
      * Returns the DbFile that can be used to read the contents of the
-     * specified table.
+     * specified table, or of the specified index.
      * @param tableid The id of the table, as specified by the DbFile.getId()
-     *     function passed to addTable
+     *     function passed to addTable or addIndex
      */
     public DbFile getDbFile(int tableid) throws NoSuchElementException {
         
         DbFile file = id2file.get(tableid);
 
+        if (file == null) file = id2index.get(tableid);
+
         if( file == null){
 
             throw new NoSuchElementException("Table doesn't exist.");
@@ -172,10 +233,18 @@ public class Catalog {
         id2pkeyField.clear();
 
         name2id.clear();
+
+        id2index.clear();
+
+        id2indexes.clear();
     }
     
     /**
      * Reads the schema from a file and creates the appropriate tables in the database.
+     * A string column annotated "dict" is stored dictionary encoded; see
+     * HeapFile.setDictionaryColumns. A table whose file was written without
+     * the dictionaries is refused. A column annotated "index" gets a
+     * BTreeFile, built from the table if its file does not exist yet.
      * @param catalogFile
      */
     public void loadSchema(String catalogFile) {
@@ -185,7 +254,7 @@ public class Catalog {
             BufferedReader br = new BufferedReader(new FileReader(new File(catalogFile)));
             
             while ((line = br.readLine()) != null) {
-                //assume line is of the format name (field type, field type, ...)
+                //assume line is of the format name (field type [pk] [dict] [index], field type, ...) [format]
                 String name = line.substring(0, line.indexOf("(")).trim();
                 //System.out.println("TABLE NAME: " + name);
                 String fields = line.substring(line.indexOf("(") + 1, line.indexOf(")")).trim();
@@ -193,6 +262,8 @@ public class Catalog {
                 ArrayList<String> names = new ArrayList<String>();
                 ArrayList<Type> types = new ArrayList<Type>();
                 String primaryKey = "";
+                ArrayList<Integer> dictColumns = new ArrayList<Integer>();
+                ArrayList<Integer> indexColumns = new ArrayList<Integer>();
                 for (String e : els) {
                     String[] els2 = e.trim().split(" ");
                     names.add(els2[0].trim());
@@ -204,11 +275,15 @@ public class Catalog {
                         System.out.println("Unknown type " + els2[1]);
                         System.exit(0);
                     }
-                    if (els2.length == 3) {
-                        if (els2[2].trim().equals("pk"))
+                    for (int i = 2; i < els2.length; i++) {
+                        if (els2[i].trim().equals("pk"))
                             primaryKey = els2[0].trim();
+                        else if (els2[i].trim().equals("dict") && types.get(types.size() - 1) == Type.STRING_TYPE)
+                            dictColumns.add(names.size() - 1);
+                        else if (els2[i].trim().equals("index"))
+                            indexColumns.add(names.size() - 1);
                         else {
-                            System.out.println("Unknown annotation " + els2[2]);
+                            System.out.println("Unknown annotation " + els2[i]);
                             System.exit(0);
                         }
                     }
@@ -216,10 +291,45 @@ public class Catalog {
                 Type[] typeAr = types.toArray(new Type[0]);
                 String[] namesAr = names.toArray(new String[0]);
                 TupleDesc t = new TupleDesc(typeAr, namesAr);
-                HeapFile tabHf = new HeapFile(new File(baseFolder+"/"+name + ".dat"), t);
+                String format = line.substring(line.indexOf(")") + 1).trim().toLowerCase();
+                File tabFile = new File(baseFolder+"/"+name + ".dat");
+                HeapFile tabHf;
+                if (format.equals("") || format.equals("heap"))
+                    tabHf = new HeapFile(tabFile, t);
+                else if (format.equals("slotted"))
+                    tabHf = new SlottedHeapFile(tabFile, t);
+                else if (format.equals("columnar"))
+                    tabHf = new ColumnHeapFile(tabFile, t);
+                else if (format.equals("compressed"))
+                    tabHf = new CompressedHeapFile(tabFile, t);
+                else {
+                    System.out.println("Unknown table format " + format);
+                    System.exit(0);
+                    return;
+                }
+                if (!dictColumns.isEmpty()) {
+                    int[] columns = new int[dictColumns.size()];
+                    for (int i = 0; i < columns.length; i++)
+                        columns[i] = dictColumns.get(i);
+                    try {
+                        tabHf.setDictionaryColumns(columns);
+                    } catch (DbException e) {
+                        System.out.println("Could not open table " + name + " : " + e.getMessage());
+                        System.exit(0);
+                    }
+                }
                 addTable(tabHf,name,primaryKey);
                 System.out.println("Added table : " + name + " with schema " + t);
+                for (int column : indexColumns) {
+                    BTreeFile index = new BTreeFile(BTreeFile.fileFor(tabFile, column), tabHf.getId(), column);
+                    addIndex(index);
+                    if (index.numPages() == 0)
+                        index.build();
+                }
             }
+        } catch (DbException | TransactionAbortedException e) {
+            System.out.println ("Could not build index : " + e.getMessage());
+            System.exit(0);
         } catch (IOException e) {
             e.printStackTrace();
             System.exit(0);
@@ -0,0 +1,161 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * CLOCK replacement, a cheap approximation of LRU. Pages sit on a ring with a
+ * reference bit that a hit sets; the hand sweeps the ring clearing set bits
+ * and evicts the first page whose bit was already clear. A hit costs one
+ * field write and never reorders anything. A pinned page is taken off the
+ * ring but keeps its bit, and goes back just behind the hand.
+ */
+public class ClockPolicy implements ReplacementPolicy {
+
+    private static class Frame {
+
+        final PageId pid;
+
+        boolean referenced;
+
+        //off the ring while pinned
+        boolean pinned;
+
+        Frame prev, next;
+
+        Frame(PageId pid) {
+
+            this.pid = pid;
+
+        }
+    }
+
+    private final HashMap<PageId, Frame> frames = new HashMap<PageId, Frame>();
+
+    //next frame the hand looks at; null when the ring is empty
+    private Frame hand;
+
+    //frames on the ring, i.e. not pinned
+    private int ringSize;
+
+    public void pageLoaded(PageId pid) {
+
+        Frame frame = new Frame(pid);
+
+        frames.put(pid, frame);
+
+        link(frame);
+
+    }
+
+    //hits on a pinned page still set its bit, which it keeps when it is unpinned
+    public void pageHit(PageId pid) {
+
+        Frame frame = frames.get(pid);
+
+        if (frame != null) frame.referenced = true;
+
+    }
+
+    public void pageRemoved(PageId pid) {
+
+        Frame frame = frames.remove(pid);
+
+        if (frame != null && !frame.pinned) unlink(frame);
+
+    }
+
+    public void pagePinned(PageId pid) {
+
+        Frame frame = frames.get(pid);
+
+        if (frame == null || frame.pinned) return;
+
+        frame.pinned = true;
+
+        unlink(frame);
+
+    }
+
+    public void pageUnpinned(PageId pid) {
+
+        Frame frame = frames.get(pid);
+
+        if (frame == null || !frame.pinned) return;
+
+        frame.pinned = false;
+
+        link(frame);
+
+    }
+
+    public PageId evict(Filter filter) {
+
+        //two turns clear every reference bit, so anything evictable is found by then
+        for (int i = 2 * ringSize; i > 0; i--) {
+
+            Frame frame = hand;
+
+            hand = hand.next;
+
+            if (frame.referenced) {
+
+                frame.referenced = false;
+
+            } else if (filter.evictable(frame.pid)) {
+
+                frames.remove(frame.pid);
+
+                unlink(frame);
+
+                return frame.pid;
+
+            }
+        }
+
+        return null;
+    }
+
+    private void link(Frame frame) {
+
+        ringSize++;
+
+        if (hand == null) {
+
+            frame.prev = frame.next = frame;
+
+            hand = frame;
+
+        } else {
+
+            //just behind the hand, so a new page gets a full sweep before it is looked at
+            frame.prev = hand.prev;
+
+            frame.next = hand;
+
+            hand.prev.next = frame;
+
+            hand.prev = frame;
+
+        }
+    }
+
+    private void unlink(Frame frame) {
+
+        ringSize--;
+
+        if (frame.next == frame) {
+
+            hand = null;
+
+            return;
+
+        }
+
+        frame.prev.next = frame.next;
+
+        frame.next.prev = frame.prev;
+
+        if (hand == frame) hand = frame.next;
+
+    }
+}
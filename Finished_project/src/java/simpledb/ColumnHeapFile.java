@@ -0,0 +1,27 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * ColumnHeapFile is a HeapFile whose pages are ColumnPages, which store each
+ * column of the page's tuples together.
+ * <p>
+ * A table is stored in this format by adding "columnar" after its column
+ * list in the catalog file. Such tables can be created with
+ * HeapFileEncoder.convert or loaded from another table with load.
+ *
+ * @see ColumnPage
+ * @see Catalog#loadSchema
+ */
+public class ColumnHeapFile extends HeapFile {
+
+    public ColumnHeapFile(File f, TupleDesc td) {
+        super(f, td);
+    }
+
+    protected TuplePage createPage(HeapPageId pid, ByteBuffer data) throws IOException {
+        return new ColumnPage(pid, data);
+    }
+}
@@ -0,0 +1,43 @@
+package simpledb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * ColumnPage is the page format of ColumnHeapFile. It has the same header and
+ * the same number of slots as a HeapPage, but lays the slots out by column
+ * (PAX): the first field of every slot, then the second field of every slot,
+ * and so on. A scan that only uses a few columns of a wide table reads them
+ * from a few contiguous runs of bytes, and, as with HeapPage, only decodes
+ * the fields it asks for.
+ *
+ * @see HeapPage
+ * @see ColumnHeapFile
+ */
+public class ColumnPage extends HeapPage {
+
+    /**
+     * Create a ColumnPage from a set of bytes of data read from disk.
+     */
+    public ColumnPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Create a ColumnPage from the bytes between the position and the limit
+     * of a buffer, copying them into the page. The buffer's position is left
+     * unchanged.
+     */
+    public ColumnPage(HeapPageId id, ByteBuffer data) throws IOException {
+        super(id, data, true);
+    }
+
+    public ColumnPage getBeforeImage() {
+        try {
+            return new ColumnPage(getId(), beforeImageData());
+        } catch (IOException e) {
+            //we parsed it OK before
+            throw new RuntimeException(e);
+        }
+    }
+}
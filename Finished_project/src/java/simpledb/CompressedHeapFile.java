@@ -0,0 +1,310 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.jcraft.jzlib.JZlib;
+import com.jcraft.jzlib.ZStream;
+
+/**
+ * CompressedHeapFile is a HeapFile whose pages are deflated on disk. The
+ * buffer pool holds them inflated, as ordinary HeapPages, so only readPage
+ * and writePage see the compressed bytes. Fixed-length pages of short
+ * strings are mostly zero padding and shrink many times over.
+ * <p>
+ * Compressed pages are stored one after another in the table's file, each
+ * in a slot of a multiple of SLOT_ALIGNMENT bytes. A page map kept next to
+ * the file, in a file named after it with ".map", holds the offset, the
+ * compressed length and the slot size of every page, in order of page
+ * number, ENTRY_SIZE bytes each. A page that no longer fits its slot when
+ * written is moved to a new slot of at least twice the size, so that a page
+ * that keeps growing moves only a few times. The new slot is the first free
+ * one large enough, or else at the end of the file, and the old slot is
+ * free once the page map no longer points at it. Free slots are whatever
+ * the page map leaves between the slots in use, so they are found again
+ * when the map is loaded. A page that does not get smaller is stored as
+ * is, with a length of PAGE_SIZE, and a page without a slot reads as zeros.
+ * <p>
+ * A table is stored in this format by adding "compressed" after its column
+ * list in the catalog file, and can be loaded from another table with load.
+ *
+ * @see Catalog#loadSchema
+ */
+public class CompressedHeapFile extends HeapFile {
+
+    /** Bytes per page in the page map. */
+    public static final int ENTRY_SIZE = 16;
+
+    /** Slots for compressed pages are rounded up to a multiple of this many bytes. */
+    public static final int SLOT_ALIGNMENT = 64;
+
+    //deflate level, and a window as large as a page
+    private static final int LEVEL = JZlib.Z_BEST_SPEED;
+    private static final int WINDOW_BITS = 12;
+
+    //per-thread buffers for the inflated and the deflated bytes of a page
+    private static final ThreadLocal<byte[][]> scratch = new ThreadLocal<byte[][]>() {
+        protected byte[][] initialValue() {
+            return new byte[][] { new byte[BufferPool.PAGE_SIZE], new byte[BufferPool.PAGE_SIZE] };
+        }
+    };
+
+    private final File mapFile;
+
+    //the page map, loaded on first use; guarded by this
+    private FileChannel mapChannel;
+    private long[] offsets;
+    private int[] lengths;
+    private int[] slots;
+    private int entries;
+
+    //end of the last slot in the file
+    private long end;
+
+    //offset to size of the unused stretches of the file before end, none adjacent
+    private TreeMap<Long, Integer> free;
+
+    public CompressedHeapFile(File f, TupleDesc td) {
+        super(f, td);
+        this.mapFile = mapFileFor(f);
+    }
+
+    /** Returns the file the page map of a compressed heap file is kept in. */
+    public static File mapFileFor(File file) {
+        return new File(file.getPath() + ".map");
+    }
+
+    /**
+     * Compressed pages cannot be parsed out of a mapping of the file, so
+     * they are always read through the channel.
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        super.setMemoryMapped(false);
+    }
+
+    private synchronized void loadMap() throws IOException {
+        if (mapChannel != null) return;
+
+        mapChannel = FileChannel.open(mapFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE);
+
+        int n = (int) (mapChannel.size() / ENTRY_SIZE);
+        ByteBuffer buf = ByteBuffer.allocate(n * ENTRY_SIZE);
+        while (buf.hasRemaining() && mapChannel.read(buf, buf.position()) >= 0);
+        buf.flip();
+
+        offsets = new long[Math.max(n, 16)];
+        lengths = new int[offsets.length];
+        slots = new int[offsets.length];
+        for (int i = 0; i < n; i++) {
+            offsets[i] = buf.getLong();
+            lengths[i] = buf.getInt();
+            slots[i] = buf.getInt();
+        }
+        entries = n;
+        end = channel().size();
+
+        //whatever lies between the slots in use is free
+        TreeMap<Long, Integer> used = new TreeMap<Long, Integer>();
+        for (int i = 0; i < n; i++) {
+            if (slots[i] > 0) used.put(offsets[i], slots[i]);
+        }
+        free = new TreeMap<Long, Integer>();
+        long pos = 0;
+        for (Map.Entry<Long, Integer> e : used.entrySet()) {
+            if (e.getKey() > pos) free.put(pos, (int) (e.getKey() - pos));
+            pos = Math.max(pos, e.getKey() + e.getValue());
+        }
+        if (end > pos) free.put(pos, (int) (end - pos));
+    }
+
+    protected int countPages() {
+        try {
+            loadMap();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        synchronized (this) {
+            return entries;
+        }
+    }
+
+    protected synchronized long storedLength() {
+        return end;
+    }
+
+    protected void readPageBytes(int pageNo, ByteBuffer buf) throws IOException {
+        loadMap();
+
+        long offset;
+        int length;
+        synchronized (this) {
+            offset = pageNo < entries ? offsets[pageNo] : 0;
+            length = pageNo < entries ? lengths[pageNo] : 0;
+        }
+
+        if (length == 0) {
+            while (buf.hasRemaining()) buf.put((byte) 0);
+            return;
+        }
+
+        byte[][] bufs = scratch.get();
+        ByteBuffer packed = ByteBuffer.wrap(bufs[1], 0, length);
+        FileChannel ch = channel();
+        while (packed.hasRemaining()) {
+            if (ch.read(packed, offset + packed.position()) < 0)
+                throw new IOException("compressed page " + pageNo + " is past the end of the file");
+        }
+
+        if (length == BufferPool.PAGE_SIZE) {
+            buf.put(bufs[1]);
+        } else {
+            inflate(bufs[1], length, bufs[0]);
+            buf.put(bufs[0]);
+        }
+    }
+
+    protected synchronized void writePageBytes(int pageNo, ByteBuffer buf) throws IOException {
+        loadMap();
+
+        byte[][] bufs = scratch.get();
+        buf.get(bufs[0]);
+
+        int length = deflate(bufs[0], bufs[1]);
+        if (length == BufferPool.PAGE_SIZE) System.arraycopy(bufs[0], 0, bufs[1], 0, length);
+
+        if (pageNo >= entries) grow(pageNo + 1);
+
+        //a page that no longer fits its slot moves to a new one, with room to grow
+        long offset = offsets[pageNo];
+        int slot = slots[pageNo];
+        long oldOffset = offset;
+        int oldSlot = slot;
+        if (length > slot) {
+            slot = Math.min(BufferPool.PAGE_SIZE,
+                    Math.max(2 * oldSlot, (length + SLOT_ALIGNMENT - 1) / SLOT_ALIGNMENT * SLOT_ALIGNMENT));
+            offset = allocate(slot);
+        }
+
+        //the whole slot is written, so that the file ends where the last slot does
+        Arrays.fill(bufs[1], length, slot, (byte) 0);
+        write(channel(), ByteBuffer.wrap(bufs[1], 0, slot), offset);
+
+        offsets[pageNo] = offset;
+        lengths[pageNo] = length;
+        slots[pageNo] = slot;
+
+        //the entry is written after the page, so it never points at a slot not written yet
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+        entry.putLong(offset).putInt(length).putInt(slot).flip();
+        write(mapChannel, entry, (long) pageNo * ENTRY_SIZE);
+
+        //only now that nothing points at the old slot can it be written over
+        if (offset != oldOffset && oldSlot > 0) release(oldOffset, oldSlot);
+    }
+
+    //finds a free stretch of size bytes for a slot, first fit, or else takes it at the end
+    private long allocate(int size) {
+        for (Map.Entry<Long, Integer> e : free.entrySet()) {
+            long offset = e.getKey();
+            int room = e.getValue();
+            if (room >= size) {
+                free.remove(offset);
+                if (room > size) free.put(offset + size, room - size);
+                return offset;
+            }
+        }
+
+        //a free stretch at the end of the file is extended
+        Map.Entry<Long, Integer> last = free.lastEntry();
+        long offset = end;
+        if (last != null && last.getKey() + last.getValue() == end) {
+            free.remove(last.getKey());
+            offset = last.getKey();
+        }
+        end = offset + size;
+        return offset;
+    }
+
+    //marks a slot free, merging it with the free stretches next to it
+    private void release(long offset, int size) {
+        Map.Entry<Long, Integer> before = free.lowerEntry(offset);
+        if (before != null && before.getKey() + before.getValue() == offset) {
+            free.remove(before.getKey());
+            offset = before.getKey();
+            size += before.getValue();
+        }
+        Integer after = free.remove(offset + size);
+        if (after != null) size += after;
+        free.put(offset, size);
+    }
+
+    //adds entries for pages without a slot up to n pages
+    private void grow(int n) throws IOException {
+        if (n > offsets.length) {
+            int capacity = Math.max(n, offsets.length * 2);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            slots = Arrays.copyOf(slots, capacity);
+        }
+        if (entries < n - 1) {
+            ByteBuffer empty = ByteBuffer.allocate((n - 1 - entries) * ENTRY_SIZE);
+            write(mapChannel, empty, (long) entries * ENTRY_SIZE);
+        }
+        entries = n;
+    }
+
+    private static void write(FileChannel ch, ByteBuffer buf, long offset) throws IOException {
+        long start = offset - buf.position();
+        while (buf.hasRemaining()) ch.write(buf, start + buf.position());
+    }
+
+    /**
+     * Deflates a page into out, which is PAGE_SIZE bytes long.
+     *
+     * @return the length of the deflated page, or PAGE_SIZE if it does not
+     *         get any smaller
+     */
+    static int deflate(byte[] page, byte[] out) {
+        ZStream z = new ZStream();
+        z.deflateInit(LEVEL, WINDOW_BITS);
+        z.next_in = page;
+        z.next_in_index = 0;
+        z.avail_in = BufferPool.PAGE_SIZE;
+        z.next_out = out;
+        z.next_out_index = 0;
+        //anything that would not be smaller does not fit
+        z.avail_out = BufferPool.PAGE_SIZE - 1;
+
+        int err = z.deflate(JZlib.Z_FINISH);
+        int length = (int) z.total_out;
+        z.deflateEnd();
+
+        return err == JZlib.Z_STREAM_END ? length : BufferPool.PAGE_SIZE;
+    }
+
+    /** Inflates the first length bytes of packed into page, which is PAGE_SIZE bytes long. */
+    static void inflate(byte[] packed, int length, byte[] page) throws IOException {
+        ZStream z = new ZStream();
+        z.inflateInit(WINDOW_BITS);
+        z.next_in = packed;
+        z.next_in_index = 0;
+        z.avail_in = length;
+        z.next_out = page;
+        z.next_out_index = 0;
+        z.avail_out = BufferPool.PAGE_SIZE;
+
+        int err = z.inflate(JZlib.Z_FINISH);
+        long inflated = z.total_out;
+        z.inflateEnd();
+
+        if (err != JZlib.Z_STREAM_END || inflated != BufferPool.PAGE_SIZE)
+            throw new IOException("corrupt compressed page: " + z.msg);
+    }
+}
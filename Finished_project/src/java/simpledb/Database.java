@@ -54,6 +54,12 @@ public class Database {
         return _instance._bufferpool;
     }
 
+    //create a new bufferpool with the given replacement policy
+    public static BufferPool resetBufferPool(int pages, ReplacementPolicy.Kind policy) {
+        _instance._bufferpool = new BufferPool(pages, policy);
+        return _instance._bufferpool;
+    }
+
     //reset the database, used for unit tests only.
     public static void reset() {
     	_instance = new Database();
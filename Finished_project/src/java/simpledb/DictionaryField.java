@@ -0,0 +1,78 @@
+package simpledb;
+
+/**
+ * A StringField read from a dictionary encoded column. It carries the code
+ * of its value in the column's StringDictionary, so that comparing it for
+ * equality with another value of the same column compares two ints instead
+ * of two strings. Compared to any other StringField it behaves as a plain
+ * StringField, and its hashCode is that of the string, which the string
+ * caches.
+ *
+ * @see StringDictionary
+ */
+public class DictionaryField extends StringField {
+
+    private static final long serialVersionUID = 1L;
+
+    //null once deserialized, when codes can no longer be trusted
+    private final transient StringDictionary dictionary;
+
+    private final int code;
+
+    DictionaryField(String s, StringDictionary dictionary, int code) {
+
+        super(s, Type.STRING_LEN);
+
+        this.dictionary = dictionary;
+
+        this.code = code;
+
+    }
+
+    /** Returns the dictionary this value was read from. */
+    public StringDictionary getDictionary() {
+
+        return dictionary;
+
+    }
+
+    /** Returns the code of this value in its dictionary. */
+    public int getCode() {
+
+        return code;
+
+    }
+
+    //whether codes can be compared instead of values
+    private boolean sameDictionary(Object field) {
+
+        return dictionary != null && field instanceof DictionaryField
+                && ((DictionaryField) field).dictionary == dictionary;
+    }
+
+    public boolean equals(Object field) {
+
+        if (sameDictionary(field)) return code == ((DictionaryField) field).code;
+
+        return super.equals(field);
+    }
+
+    public int hashCode() {
+
+        return super.hashCode();
+
+    }
+
+    public boolean compare(Predicate.Op op, Field val) {
+
+        if (sameDictionary(val)) {
+
+            if (op == Predicate.Op.EQUALS) return code == ((DictionaryField) val).code;
+
+            if (op == Predicate.Op.NOT_EQUALS) return code != ((DictionaryField) val).code;
+
+        }
+
+        return super.compare(op, val);
+    }
+}
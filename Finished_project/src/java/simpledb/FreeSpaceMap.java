@@ -0,0 +1,187 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+/**
+ * FreeSpaceMap keeps one bit per page of a HeapFile telling whether the page
+ * may have a free slot, so that inserts can go straight to such a page.
+ * <p>
+ * The map is a hint. A set bit may be stale, so the inserter checks the page
+ * and clears the bit if the page is full; a clear bit only wastes room. In
+ * memory the map follows inserts and deletes as they happen, and pages
+ * restored when a transaction aborts. On disk it is kept next to the heap
+ * file, in a file named after it with ".fsm", and follows the pages as they
+ * are written: the file holds the length of the
+ * heap file when the map was last written, followed by the bitmap. If that
+ * length does not match the heap file, e.g. because the heap file was
+ * rewritten by something else, the map is ignored and every page counts as
+ * possibly free until it has been looked at.
+ */
+public class FreeSpaceMap {
+
+    private static final int HEADER_SIZE = 8;
+
+    private final File file;
+
+    private final BitSet free = new BitSet();
+
+    //length of the heap file as last recorded in the map file
+    private long heapLength;
+
+    private FileChannel channel;
+
+    /** Returns the file the free space map of a heap file is kept in. */
+    public static File fileFor(File heapFile) {
+
+        return new File(heapFile.getPath() + ".fsm");
+
+    }
+
+    /**
+     * Loads the free space map of a heap file.
+     *
+     * @param heapFile the heap file the map belongs to
+     * @param numPages the number of pages in the heap file
+     */
+    public FreeSpaceMap(File heapFile, int numPages) {
+
+        this.file = fileFor(heapFile);
+
+        this.heapLength = heapFile.length();
+
+        boolean loaded = false;
+
+        if (file.exists()) {
+
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+
+                if (in.readLong() == heapLength) {
+
+                    byte[] bits = new byte[(numPages + 7) / 8];
+
+                    in.readFully(bits);
+
+                    free.or(BitSet.valueOf(bits));
+
+                    loaded = true;
+
+                }
+
+            } catch (IOException e) {
+
+                //unreadable or short; start over below
+
+            }
+        }
+
+        if (!loaded) {
+
+            free.clear();
+
+            free.set(0, numPages);
+
+        }
+    }
+
+    /**
+     * Returns the first page at or after from that may have a free slot, or
+     * -1 if there is none before numPages.
+     */
+    public synchronized int firstFree(int from, int numPages) {
+
+        int pageNo = free.nextSetBit(from);
+
+        return pageNo >= 0 && pageNo < numPages ? pageNo : -1;
+    }
+
+    /** Records in memory whether a page has a free slot. */
+    public synchronized void setFree(int pageNo, boolean hasRoom) {
+
+        free.set(pageNo, hasRoom);
+
+    }
+
+    /**
+     * Records whether a page that has just been written to the heap file has
+     * a free slot, and writes the change to the map file.
+     *
+     * @param heapLength the length of the heap file after the write
+     */
+    public synchronized void pageWritten(int pageNo, boolean hasRoom, long heapLength) throws IOException {
+
+        free.set(pageNo, hasRoom);
+
+        FileChannel ch = channel();
+
+        if (heapLength != this.heapLength) {
+
+            this.heapLength = heapLength;
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+            header.putLong(0, heapLength);
+
+            write(ch, header, 0);
+
+        }
+
+        //rewrite the one byte holding this page's bit
+        byte b = 0;
+
+        for (int i = 0; i < 8; i++) {
+
+            if (free.get((pageNo & ~7) + i)) b |= 1 << i;
+
+        }
+
+        write(ch, ByteBuffer.wrap(new byte[] { b }), HEADER_SIZE + pageNo / 8);
+    }
+
+    private FileChannel channel() throws IOException {
+
+        if (channel == null) {
+
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE);
+
+            //a new map, or one ignored on load, is replaced by the map in memory
+            if (readLength(channel) != heapLength) {
+
+                channel.truncate(0);
+
+                byte[] bits = free.toByteArray();
+
+                ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + bits.length);
+
+                buf.putLong(heapLength).put(bits).flip();
+
+                write(channel, buf, 0);
+
+            }
+        }
+
+        return channel;
+    }
+
+    //the heap file length recorded in a map file, or -1 if there is none
+    private static long readLength(FileChannel ch) throws IOException {
+
+        if (ch.size() < HEADER_SIZE) return -1;
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+        while (header.hasRemaining() && ch.read(header, header.position()) >= 0);
+
+        return header.getLong(0);
+    }
+
+    private static void write(FileChannel ch, ByteBuffer buf, long offset) throws IOException {
+
+        while (buf.hasRemaining()) ch.write(buf, offset + buf.position());
+
+    }
+}
@@ -3,21 +3,74 @@ package simpledb;
 import java.util.*;
 
 /**
- * The Join operator implements the relational join operation.
+ * The HashEquiJoin operator implements an equality join by hashing. It
+ * builds a hash table of its left child and probes it with the tuples of
+ * its right child.
+ * <p>
+ * The hash table is held to a memory budget. When the left child does not
+ * fit, this is a hybrid (Grace) hash join: both children are split into
+ * partitions by the hash of the join field. Partitions of the left child
+ * stay in memory, to be joined as the right child streams by, until the
+ * budget runs out; then the largest is spilled to a SpillFile, along with
+ * the tuples of the right child that fall in it. Spilled pairs of
+ * partitions are joined afterwards, partitioned again if they still do not
+ * fit. So each child is read once, and each spilled tuple written and read
+ * once per level of partitioning. Should partitioning not help, as when
+ * most tuples share a key, a partition is joined a budget's worth of tuples
+ * at a time.
  */
 public class HashEquiJoin extends Operator {
 
     private static final long serialVersionUID = 1L;
+
+    /** The default memory budget of the hash table, in pages of tuples */
+    public static final int DEFAULT_MEMORY_PAGES = 500;
+
+    //partitions made at a time, and how many times a partition is split
+    private static final int MAX_PARTITIONS = 8;
+
+    private static final int MAX_DEPTH = 3;
+
     private JoinPredicate pred;
     private DbIterator child1, child2;
     private TupleDesc comboTD;
-    transient private Tuple t1 = null;
+    private final int memoryPages;
     transient private Tuple t2 = null;
 
+    /**
+     * A left and a right input to join: the children, or a pair of spilled
+     * partitions of them.
+     */
+    private static class Pass {
+        final DbIterator build, probe;
+        final SpillFile buildFile, probeFile;
+        final int depth;
+
+        Pass(DbIterator build, DbIterator probe, SpillFile buildFile, SpillFile probeFile, int depth) {
+            this.build = build;
+            this.probe = probe;
+            this.buildFile = buildFile;
+            this.probeFile = probeFile;
+            this.depth = depth;
+        }
+    }
+
+    transient private Pass pass;
+    transient private Deque<Pass> pending;
+
+    //the left tuples of pass in memory, by partition, and whether that is all of them
+    transient private ArrayList<HashMap<Field, ArrayList<Tuple>>> maps;
+    transient private int[] partTuples;
+    transient private int mapTuples;
+    transient private boolean buildDone;
+
+    //the files of the spilled partitions of pass, if it is partitioned
+    transient private SpillFile[] buildParts, probeParts;
+
     /**
      * Constructor. Accepts to children to join and the predicate to join them
      * on
-     * 
+     *
      * @param p
      *            The predicate to use to join the children
      * @param child1
@@ -26,9 +79,21 @@ public class HashEquiJoin extends Operator {
      *            Iterator for the right(inner) relation to join
      */
     public HashEquiJoin(JoinPredicate p, DbIterator child1, DbIterator child2) {
+        this(p, child1, child2, DEFAULT_MEMORY_PAGES);
+    }
+
+    /**
+     * Constructor with a memory budget.
+     *
+     * @param memoryPages
+     *            how many pages' worth of left tuples the hash table may
+     *            hold before it spills
+     */
+    public HashEquiJoin(JoinPredicate p, DbIterator child1, DbIterator child2, int memoryPages) {
         this.pred = p;
         this.child1 = child1;
         this.child2 = child2;
+        this.memoryPages = memoryPages;
         comboTD = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
     }
 
@@ -39,7 +104,7 @@ public class HashEquiJoin extends Operator {
     public TupleDesc getTupleDesc() {
         return comboTD;
     }
-    
+
     public String getJoinField1Name()
     {
 	return this.child1.getTupleDesc().getFieldName(this.pred.getField1());
@@ -49,73 +114,174 @@ public class HashEquiJoin extends Operator {
     {
 	return this.child2.getTupleDesc().getFieldName(this.pred.getField2());
     }
-    
-    HashMap<Object, ArrayList<Tuple>> map = new HashMap<Object, ArrayList<Tuple>>();
-    public final static int MAP_SIZE = 20000;
-
-    private boolean loadMap() throws DbException, TransactionAbortedException {
-        int cnt = 0;
-        map.clear();
-        while (child1.hasNext()) {
-            t1 = child1.next();
-            ArrayList<Tuple> list = map.get(t1.getField(pred.getField1()));
-            if (list == null) {
-                list = new ArrayList<Tuple>();
-                map.put(t1.getField(pred.getField1()), list);
-            }
-            list.add(t1);
-            if (cnt++ == MAP_SIZE)
-                return true;
-        }
-        return cnt > 0;
-
-    }
-
 
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         child1.open();
         child2.open();
-        loadMap();
+        super.open();
+        start();
     }
 
     public void close() {
         super.close();
+        stop();
         child2.close();
         child1.close();
-        this.t1=null;
-        this.t2=null;
-        this.listIt=null;
-        this.map.clear();
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
+        stop();
         child1.rewind();
         child2.rewind();
+        start();
     }
 
-    transient Iterator<Tuple> listIt = null;
+    private void start() throws DbException, TransactionAbortedException {
+        pending = new ArrayDeque<Pass>();
+        begin(new Pass(child1, child2, null, null, 0));
+    }
+
+    //drops the passes left, and their spill files
+    private void stop() {
+        if (pass != null)
+            end(pass);
+        if (pending != null)
+            for (Pass p : pending)
+                end(p);
+        if (buildParts != null)
+            for (int i = 0; i < buildParts.length; i++) {
+                buildParts[i].delete();
+                probeParts[i].delete();
+            }
+        pass = null;
+        pending = null;
+        buildParts = probeParts = null;
+        maps = null;
+        listIt = null;
+        t2 = null;
+    }
+
+    private void begin(Pass p) throws DbException, TransactionAbortedException {
+        pass = p;
+        buildParts = probeParts = null;
+        if (p.buildFile != null) {
+            p.build.open();
+            p.probe.open();
+        }
+        load();
+    }
+
+    private void end(Pass p) {
+        if (p.buildFile != null) {
+            p.build.close();
+            p.probe.close();
+            p.buildFile.delete();
+            p.probeFile.delete();
+        }
+    }
+
+    private boolean overBudget() {
+        return (long) mapTuples * child1.getTupleDesc().getSize() > (long) memoryPages * BufferPool.PAGE_SIZE;
+    }
+
+    private void put(int part, Tuple t) {
+        //kept apart from its page, which the budget does not count
+        t = t.detached();
+        Field key = t.getField(pred.getField1());
+        ArrayList<Tuple> list = maps.get(part).get(key);
+        if (list == null) {
+            list = new ArrayList<Tuple>();
+            maps.get(part).put(key, list);
+        }
+        list.add(t);
+        partTuples[part]++;
+        mapTuples++;
+    }
+
+    //makes n empty partitions in memory
+    private void clearMaps(int n) {
+        maps = new ArrayList<HashMap<Field, ArrayList<Tuple>>>(n);
+        for (int i = 0; i < n; i++)
+            maps.add(new HashMap<Field, ArrayList<Tuple>>());
+        partTuples = new int[n];
+        mapTuples = 0;
+    }
+
+    //the partition of key; each depth hashes differently
+    private int partition(Field key) {
+        if (maps.size() == 1)
+            return 0;
+        int h = key.hashCode() ^ (0x9e3779b9 * (pass.depth + 1));
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return (h & 0x7fffffff) % maps.size();
+    }
 
     /**
-     * Returns the next tuple generated by the join, or null if there are no
-     * more tuples. Logically, this is the next tuple in r1 cross r2 that
-     * satisfies the join predicate. There are many possible implementations;
-     * the simplest is a nested loops join.
-     * <p>
-     * Note that the tuples returned from this particular implementation of Join
-     * are simply the concatenation of joining tuples from the left and right
-     * relation. Therefore, there will be two copies of the join attribute in
-     * the results. (Removing such duplicate columns can be done with an
-     * additional projection operator if needed.)
-     * <p>
-     * For example, if one tuple is {1,2,3} and the other tuple is {1,5,6},
-     * joined on equality of the first column, then this returns {1,2,3,1,5,6}.
-     * 
-     * @return The next matching tuple.
-     * @see JoinPredicate#filter
+     * Reads the left input of the current pass into the hash table, up to
+     * the memory budget, partitioning the pass when it does not fit.
      */
-    private Tuple processList() throws TransactionAbortedException, DbException {
-        t1 = listIt.next();
+    private void load() throws DbException, TransactionAbortedException {
+        if (buildParts == null)
+            clearMaps(1);
+        buildDone = false;
+        while (pass.build.hasNext()) {
+            Tuple t = pass.build.next();
+            int part = partition(t.getField(pred.getField1()));
+            if (buildParts != null && buildParts[part].size() > 0) {
+                buildParts[part].add(t);
+                continue;
+            }
+            put(part, t);
+            if (!overBudget())
+                continue;
+            if (buildParts != null)
+                spillLargest();
+            else if (pass.depth < MAX_DEPTH)
+                split();
+            else
+                return; // joined a budget at a time
+        }
+        buildDone = true;
+    }
+
+    //starts partitioning the current pass, with all partitions in memory
+    private void split() throws DbException {
+        int n = Math.max(2, Math.min(MAX_PARTITIONS, memoryPages / 2));
+        buildParts = new SpillFile[n];
+        probeParts = new SpillFile[n];
+        for (int i = 0; i < n; i++) {
+            buildParts[i] = new SpillFile(child1.getTupleDesc());
+            probeParts[i] = new SpillFile(child2.getTupleDesc());
+        }
+        HashMap<Field, ArrayList<Tuple>> loaded = maps.get(0);
+        clearMaps(n);
+        for (ArrayList<Tuple> list : loaded.values())
+            for (Tuple t : list)
+                put(partition(t.getField(pred.getField1())), t);
+        spillLargest();
+    }
+
+    //spills the largest partition in memory, and the tuples still to come of it
+    private void spillLargest() throws DbException {
+        int largest = 0;
+        for (int i = 1; i < partTuples.length; i++)
+            if (partTuples[i] > partTuples[largest])
+                largest = i;
+        for (ArrayList<Tuple> list : maps.get(largest).values())
+            for (Tuple t : list)
+                buildParts[largest].add(t);
+        maps.get(largest).clear();
+        mapTuples -= partTuples[largest];
+        partTuples[largest] = 0;
+    }
+
+    transient Iterator<Tuple> listIt = null;
+
+    private Tuple processList() {
+        Tuple t1 = listIt.next();
 
         int td1n = t1.getTupleDesc().numFields();
         int td2n = t2.getTupleDesc().numFields();
@@ -130,34 +296,72 @@ public class HashEquiJoin extends Operator {
 
     }
 
-
+    /**
+     * Returns the next tuple generated by the join, or null if there are no
+     * more tuples. Logically, this is the next tuple in r1 cross r2 that
+     * satisfies the join predicate.
+     * <p>
+     * Note that the tuples returned from this particular implementation of Join
+     * are simply the concatenation of joining tuples from the left and right
+     * relation. Therefore, there will be two copies of the join attribute in
+     * the results. (Removing such duplicate columns can be done with an
+     * additional projection operator if needed.)
+     * <p>
+     * For example, if one tuple is {1,2,3} and the other tuple is {1,5,6},
+     * joined on equality of the first column, then this returns {1,2,3,1,5,6}.
+     * Tuples come in no particular order.
+     *
+     * @return The next matching tuple.
+     * @see JoinPredicate#filter
+     */
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
-        if (listIt != null && listIt.hasNext()) {
-            return processList();
-        }
-
-        // loop around child2
-        while (child2.hasNext()) {
-            t2 = child2.next();
+        while (true) {
+            if (listIt != null && listIt.hasNext())
+                return processList();
+            listIt = null;
+            if (pass == null)
+                return null;
 
-            // if match, create a combined tuple and fill it with the values
-            // from both tuples
-            ArrayList<Tuple> l = map.get(t2.getField(pred.getField2()));
-            if (l == null)
+            if (pass.probe.hasNext()) {
+                t2 = pass.probe.next();
+                Field key = t2.getField(pred.getField2());
+                int part = partition(key);
+                if (buildParts != null && buildParts[part].size() > 0) {
+                    probeParts[part].add(t2);
+                    continue;
+                }
+                ArrayList<Tuple> l = maps.get(part).get(key);
+                if (l != null)
+                    listIt = l.iterator();
                 continue;
-            listIt = l.iterator();
-
-            return processList();
+            }
 
-        }
+            // the right input is done: join the next budget of the left one
+            if (!buildDone) {
+                pass.probe.rewind();
+                load();
+                continue;
+            }
 
-        // child2 is done: advance child1
-        child2.rewind();
-        if (loadMap()) {
-            return fetchNext();
+            // or the next pair of partitions
+            if (buildParts != null) {
+                for (int i = 0; i < buildParts.length; i++) {
+                    if (buildParts[i].size() > 0 && probeParts[i].size() > 0) {
+                        pending.push(new Pass(buildParts[i].iterator(), probeParts[i].iterator(),
+                                buildParts[i], probeParts[i], pass.depth + 1));
+                    } else {
+                        buildParts[i].delete();
+                        probeParts[i].delete();
+                    }
+                }
+                buildParts = probeParts = null;
+            }
+            end(pass);
+            pass = null;
+            maps = null;
+            if (!pending.isEmpty())
+                begin(pending.pop());
         }
-
-        return null;
     }
 
     @Override
@@ -170,6 +374,6 @@ public class HashEquiJoin extends Operator {
         this.child1 = children[0];
         this.child2 = children[1];
     }
-    
+
 
 }
@@ -1,6 +1,10 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 
 /**
@@ -9,6 +13,27 @@ import java.util.*;
  * size, and the file is simply a collection of those pages. HeapFile works
  * closely with HeapPage. The format of HeapPages is described in the HeapPage
  * constructor.
+ * <p>
+ * Page I/O goes through one FileChannel per HeapFile, opened on first use and
+ * kept open, with positional reads and writes so that concurrent threads do
+ * not share a file position. The number of pages is read from the file once
+ * and then kept up to date as writePage extends the file.
+ * <p>
+ * In memory-mapped mode, meant for read-mostly tables, readPage parses pages
+ * straight out of a read-only mapping of the file instead of copying them
+ * into an array first. The file is mapped in chunks of MAP_CHUNK_PAGES pages,
+ * and a chunk is mapped again once the file has grown into it. Writes still
+ * go through the channel.
+ * <p>
+ * A FreeSpaceMap kept next to the file tells insertTuple which pages may have
+ * a free slot.
+ * <p>
+ * String columns with few distinct values can be stored as int codes of a
+ * dictionary per column; see setDictionaryColumns.
+ * <p>
+ * Subclasses can store the same tuples in another page format by overriding
+ * createPage, and store pages in another way by overriding readPageBytes,
+ * writePageBytes, countPages and storedLength.
  * 
  * @see simpledb.HeapPage#HeapPage
  * @author Sam Madden
@@ -17,7 +42,33 @@ public class HeapFile implements DbFile {
 
      private TupleDesc td;
 
+     /** Number of pages mapped at a time in memory-mapped mode. */
+     public static final int MAP_CHUNK_PAGES = 256;
+
      private File file;
+
+     private transient volatile boolean memoryMapped;
+
+     //mappings of consecutive MAP_CHUNK_PAGES page chunks, null until first read; guarded by this
+     private transient ArrayList<MappedByteBuffer> chunks;
+
+     //loaded on first insert or write; guarded by this
+     private transient FreeSpaceMap freeSpace;
+
+     private transient volatile FileChannel channel;
+
+     //per-thread direct buffer that pages are read into and written from, sparing the channel a copy of its own
+     private static final ThreadLocal<ByteBuffer> pageBuffer = new ThreadLocal<ByteBuffer>() {
+         protected ByteBuffer initialValue() {
+             return ByteBuffer.allocateDirect(BufferPool.PAGE_SIZE);
+         }
+     };
+
+     //dictionaries of the dictionary encoded columns, by column, or null if there are none
+     private transient volatile StringDictionary[] dictionaries;
+
+     //cached number of pages, or -1 until it is first read from the file
+     private transient volatile int numPages = -1;
     /**
      * Constructs a heap file backed by the specified file.
      * 
@@ -33,6 +84,84 @@ public class HeapFile implements DbFile {
 
     }
 
+    /**
+     * Constructs a heap file backed by the specified file, optionally reading
+     * it through a memory mapping.
+     *
+     * @param memoryMapped whether readPage should read from a mapping of f
+     */
+    public HeapFile(File f, TupleDesc td, boolean memoryMapped) {
+
+        this(f, td);
+
+        setMemoryMapped(memoryMapped);
+
+    }
+
+    /** Turns reading pages through a memory mapping on or off. */
+    public synchronized void setMemoryMapped(boolean memoryMapped) {
+
+        this.memoryMapped = memoryMapped;
+
+        //dropped mappings are unmapped once they are garbage collected
+        chunks = memoryMapped ? new ArrayList<MappedByteBuffer>() : null;
+
+    }
+
+    public boolean isMemoryMapped() {
+
+        return memoryMapped;
+
+    }
+
+    /**
+     * Stores the given string columns as codes of a StringDictionary per
+     * column, kept next to the file. Which columns are encoded is part of the
+     * file's format: it has to be set before the file is first read, and the
+     * same every time the file is opened. HeapPage and ColumnPage store the
+     * codes; SlottedPage stores the strings themselves.
+     * <p>
+     * A file that already has pages but no dictionary for a column, such as
+     * one written by HeapFileEncoder, stores the strings themselves and is
+     * refused. Pages whose codes the dictionaries do not have, because they
+     * were written without them, fail to read.
+     *
+     * @throws IllegalArgumentException if a column is not a string column
+     * @throws DbException if the file has pages but no dictionary for a column
+     */
+    public synchronized void setDictionaryColumns(int... columns) throws IOException, DbException {
+
+        StringDictionary[] dicts = new StringDictionary[td.numFields()];
+
+        for (int column : columns) {
+
+            if (td.getFieldType(column) != Type.STRING_TYPE)
+                throw new IllegalArgumentException("column " + column + " is not a string column");
+
+            File dictFile = StringDictionary.fileFor(file, column);
+
+            if (numPages() > 0 && !dictFile.exists())
+                throw new DbException("column " + column + " of " + file + " is not dictionary encoded: "
+                        + dictFile + " does not exist");
+
+            dicts[column] = new StringDictionary(dictFile);
+
+        }
+
+        dictionaries = columns.length == 0 ? null : dicts;
+    }
+
+    /**
+     * Returns the dictionaries of the dictionary encoded columns, indexed by
+     * column and null for the other columns, or null if no column is
+     * encoded.
+     */
+    public StringDictionary[] getDictionaries() {
+
+        return dictionaries;
+
+    }
+
     /**
      * Returns the File backing this HeapFile on disk.
      * 
@@ -67,22 +196,53 @@ public class HeapFile implements DbFile {
         return td;
     }
 
+    /** Opens the channel used for all page I/O of this file, creating the file if needed. */
+    protected FileChannel channel() throws IOException {
+
+        FileChannel ch = channel;
+
+        if (ch == null) {
+
+            synchronized (this) {
+
+                if (channel == null) {
+
+                    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                            StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+
+                }
+
+                ch = channel;
+
+            }
+        }
+
+        return ch;
+    }
+
     // see DbFile.java for javadocs
     public Page readPage(PageId pid){
         // some code goes here
-        try (RandomAccessFile temp = new RandomAccessFile(file, "r")){
+        try {
 
-            int offset = pid.pageNumber() * BufferPool.PAGE_SIZE;
+            if (memoryMapped) {
 
-            temp.seek(offset);
+                ByteBuffer mapped = mappedPage(pid.pageNumber());
 
-            byte[] data = new byte[BufferPool.PAGE_SIZE];
+                if (mapped != null) return createPage((HeapPageId) pid, mapped);
 
-            temp.read(data, 0, BufferPool.PAGE_SIZE);
+            }
 
-            temp.close();
+            //the page copies what is read, so the buffer can be reused
+            ByteBuffer buf = pageBuffer.get();
 
-            return new HeapPage((HeapPageId) pid, data);
+            buf.clear();
+
+            readPageBytes(pid.pageNumber(), buf);
+
+            buf.flip();
+
+            return createPage((HeapPageId) pid, buf);
 
         }catch(IOException e) {
 
@@ -94,20 +254,208 @@ public class HeapFile implements DbFile {
         
     }
 
+    /**
+     * Reads the stored bytes of a page into an empty buffer of PAGE_SIZE
+     * bytes, filling it. The part of a page past the end of the file reads
+     * as zeros.
+     */
+    protected void readPageBytes(int pageNo, ByteBuffer buf) throws IOException {
+
+        long offset = (long) pageNo * BufferPool.PAGE_SIZE;
+
+        FileChannel ch = channel();
+
+        //a positional read may return less than asked for; past the end the page is zeroed
+        while (buf.hasRemaining()) {
+
+            if (ch.read(buf, offset + buf.position()) < 0) break;
+
+        }
+
+        while (buf.hasRemaining()) buf.put((byte) 0);
+
+    }
+
+    /**
+     * Stores the PAGE_SIZE bytes of a page between the position and the
+     * limit of buf.
+     */
+    protected void writePageBytes(int pageNo, ByteBuffer buf) throws IOException {
+
+        long offset = (long) pageNo * BufferPool.PAGE_SIZE;
+
+        FileChannel ch = channel();
+
+        while (buf.hasRemaining()) {
+
+            ch.write(buf, offset + buf.position());
+
+        }
+    }
+
+    /**
+     * Creates a page of this file from its bytes on disk, which are all zero
+     * for a new page. The buffer's position is left unchanged.
+     */
+    protected TuplePage createPage(HeapPageId pid, ByteBuffer data) throws IOException {
+
+        return new HeapPage(pid, data);
+
+    }
+
+    /**
+     * Appends the tuples of it to new pages at the end of this file, filling
+     * each page before writing it. Bypasses the buffer pool and the lock
+     * manager, so it is only meant for loading a table no transaction uses yet.
+     */
+    public void load(DbFileIterator it) throws DbException, IOException, TransactionAbortedException {
+
+        TuplePage page = null;
+
+        it.open();
+
+        while (it.hasNext()) {
+
+            Tuple t = it.next();
+
+            if (page != null && !page.hasRoomFor(t)) {
+
+                writePage(page);
+
+                page = null;
+
+            }
+
+            if (page == null) {
+
+                page = createPage(new HeapPageId(getId(), numPages()), ByteBuffer.wrap(HeapPage.createEmptyPageData()));
+
+            }
+
+            //copied, so the source tuple keeps its RecordId
+            Tuple copy = new Tuple(td);
+
+            for (int i = 0; i < td.numFields(); i++) copy.setField(i, t.getField(i));
+
+            page.insertTuple(copy);
+
+        }
+
+        it.close();
+
+        if (page != null) writePage(page);
+
+    }
+
+    //returns a page of the mapped file, or null if it is past the end of the file
+    private synchronized ByteBuffer mappedPage(int pageNo) throws IOException {
+
+        if (chunks == null || pageNo >= numPages()) return null;
+
+        int c = pageNo / MAP_CHUNK_PAGES;
+
+        int first = c * MAP_CHUNK_PAGES;
+
+        while (chunks.size() <= c) chunks.add(null);
+
+        MappedByteBuffer chunk = chunks.get(c);
+
+        //not mapped yet, or mapped before the file grew into this page
+        if (chunk == null || (pageNo - first) * BufferPool.PAGE_SIZE >= chunk.capacity()) {
+
+            int pages = Math.min(MAP_CHUNK_PAGES, numPages() - first);
+
+            chunk = channel().map(FileChannel.MapMode.READ_ONLY, (long) first * BufferPool.PAGE_SIZE,
+                    (long) pages * BufferPool.PAGE_SIZE);
+
+            chunks.set(c, chunk);
+
+        }
+
+        ByteBuffer page = chunk.duplicate();
+
+        page.position((pageNo - first) * BufferPool.PAGE_SIZE);
+
+        page.limit(page.position() + BufferPool.PAGE_SIZE);
+
+        return page.slice();
+    }
+
     // see DbFile.java for javadocs
     public void writePage(Page page) throws IOException {
         // some code goes here
-        RandomAccessFile temp = new RandomAccessFile(file, "rw");
-
         PageId pid = page.getId();
 
-        int offset = pid.pageNumber() * BufferPool.PAGE_SIZE;
+        ByteBuffer buf = pageBuffer.get();
+
+        buf.clear();
+
+        page.writePageData(buf);
+
+        buf.flip();
+
+        writePageBytes(pid.pageNumber(), buf);
+
+        extendTo(pid.pageNumber() + 1);
+
+        if (page instanceof TuplePage) {
 
-        temp.seek(offset);
+            boolean hasRoom = ((TuplePage) page).hasRoom();
 
-        temp.write(page.getPageData());
+            freeSpace().pageWritten(pid.pageNumber(), hasRoom, storedLength());
+
+        }
+    }
+
+    /**
+     * Called by the BufferPool when an aborted transaction's changes to a
+     * page are undone, so that the free space map again says whether the
+     * page has room. Only the map in memory changes: the page is as it was
+     * when it was last written, and so is its bit in the map file.
+     *
+     * @param page the page as it is again, its before-image
+     */
+    public void pageRestored(Page page) {
+
+        if (page instanceof TuplePage) {
+
+            freeSpace().setFree(page.getId().pageNumber(), ((TuplePage) page).hasRoom());
+
+        }
+    }
+
+    /**
+     * Returns the length of the file once the pages written so far are on
+     * disk, which the free space map is checked against when it is loaded.
+     */
+    protected long storedLength() {
+
+        return (long) numPages() * BufferPool.PAGE_SIZE;
+
+    }
+
+    /**
+     * Reads the number of pages stored in the file; numPages caches it
+     * after the first call.
+     */
+    protected int countPages() {
+
+        return (int) (file.length() / BufferPool.PAGE_SIZE);
+
+    }
+
+    private synchronized FreeSpaceMap freeSpace() {
+
+        if (freeSpace == null) freeSpace = new FreeSpaceMap(file, numPages());
+
+        return freeSpace;
+    }
+
+    //records that the file now has at least n pages
+    private synchronized void extendTo(int n) {
+
+        if (numPages() < n) numPages = n;
 
-        temp.close();
     }
 
     /**
@@ -115,7 +463,20 @@ public class HeapFile implements DbFile {
      */
     public int numPages() {
         // some code goes here
-        return (int)Math.floor((file.length()/BufferPool.PAGE_SIZE));
+        int n = numPages;
+
+        if (n < 0) {
+
+            synchronized (this) {
+
+                if (numPages < 0) numPages = countPages();
+
+                n = numPages;
+
+            }
+        }
+
+        return n;
     }
 
     // see DbFile.java for javadocs
@@ -125,38 +486,38 @@ public class HeapFile implements DbFile {
 
         ArrayList<Page> res = new ArrayList<Page>();
 
-        HeapPage page = null;
+        TuplePage page = null;
 
-        int i = 0;
+        FreeSpaceMap fsm = freeSpace();
 
-        HeapPageId pid = null;
-        
-        while(i < numPages()) {
+        int i = fsm.firstFree(0, numPages());
 
-            pid = new HeapPageId(getId(), i);
+        //only pages the free space map points to are looked at
+        while (i >= 0) {
 
-            page = ((HeapPage) Database.getBufferPool().getPage(
-                       tid, pid, Permissions.READ_WRITE));
+            page = ((TuplePage) Database.getBufferPool().getPage(
+                       tid, new HeapPageId(getId(), i), Permissions.READ_WRITE));
 
-            if (page.getNumEmptySlots() > 0) {
+            if (page.hasRoomFor(t)) {
 
                 break;
 
             }
 
-            i++;
+            //the map was out of date, or the page only has room for smaller tuples
+            fsm.setFree(i, false);
+
+            i = fsm.firstFree(i + 1, numPages());
             
         }
-        //no empty slots in previous pages, add a new page and write to disk
-        if (i == numPages()) {
-
-            pid = new HeapPageId(getId(), numPages());
+        //no page with room, add a new page and write to disk
+        if (i < 0) {
 
-            page  = new HeapPage(pid, HeapPage.createEmptyPageData());
+            HeapPageId pid = new HeapPageId(getId(), numPages());
 
-            writePage(page);
+            writePage(createPage(pid, ByteBuffer.wrap(HeapPage.createEmptyPageData())));
 
-            page = ((HeapPage) Database.getBufferPool().getPage(
+            page = ((TuplePage) Database.getBufferPool().getPage(
                        tid, pid, Permissions.READ_WRITE));
 
         }
@@ -165,6 +526,8 @@ public class HeapFile implements DbFile {
 
         page.markDirty(true, tid);
 
+        if (!page.hasRoom()) fsm.setFree(page.getId().pageNumber(), false);
+
         res.add(page);
 
         return res;
@@ -176,11 +539,13 @@ public class HeapFile implements DbFile {
         // some code goes here
         PageId pid = t.getRecordId().getPageId();
 
-        HeapPage page = ((HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE));
+        TuplePage page = ((TuplePage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE));
        
         page.deleteTuple(t);
 
         page.markDirty(true, tid);
+
+        freeSpace().setFree(pid.pageNumber(), true);
        
         return page;
     }
@@ -201,6 +566,8 @@ public class HeapFile implements DbFile {
 
         private boolean open;
 
+        private ReadAhead readAhead;
+
         public HeapFileIterator(TransactionId tid) {
 
             this.tid = tid;
@@ -209,7 +576,9 @@ public class HeapFile implements DbFile {
         //tuples iterator in a page
         public Iterator<Tuple> pageIterator(HeapPageId pid) throws TransactionAbortedException, DbException{
 
-            HeapPage page = (HeapPage) Database.getBufferPool().getPage(this.tid, pid, Permissions.READ_ONLY);
+            readAhead.access(pid.pageNumber(), numPages());
+
+            TuplePage page = (TuplePage) Database.getBufferPool().getPage(this.tid, pid, Permissions.READ_ONLY);
 
             return page.iterator();
         }
@@ -270,6 +639,8 @@ public class HeapFile implements DbFile {
             open = true;
 
             pagePos = 0;
+
+            readAhead = new ReadAhead(getId());
             
             HeapPageId pid = new HeapPageId(getId(), pagePos);
 
@@ -90,6 +90,20 @@ public class HeapFileEncoder {
   public static void convert(File inFile, File outFile, int npagebytes,
                  int numFields, Type[] typeAr, char fieldSeparator)
       throws IOException {
+      convert(inFile,outFile,npagebytes,numFields,typeAr,fieldSeparator,false);
+  }
+
+   /** Convert the specified input text file into a binary page file, as
+    * convert(inFile, outFile, npagebytes, numFields, typeAr, fieldSeparator)
+    * does, or, with columnar set, into the column-wise layout of
+    * ColumnPage.
+    *
+    * @see ColumnPage
+    * @see ColumnHeapFile
+    */
+  public static void convert(File inFile, File outFile, int npagebytes,
+                 int numFields, Type[] typeAr, char fieldSeparator, boolean columnar)
+      throws IOException {
 
       int nrecbytes = 0;
       for (int i = 0; i < numFields ; i++) {
@@ -208,7 +222,10 @@ public class HeapFileEncoder {
             headerStream.flush();
             headerBAOS.writeTo(os);
             pageStream.flush();
-            pageBAOS.writeTo(os);
+            if (columnar)
+                os.write(toColumns(pageBAOS.toByteArray(), typeAr, nrecords));
+            else
+                pageBAOS.writeTo(os);
             
             // reset header and body for next page
             headerBAOS = new ByteArrayOutputStream(nheaderbytes);
@@ -223,4 +240,21 @@ public class HeapFileEncoder {
     br.close();
     os.close();
   }
+
+  /** Rearranges the records of a page, stored one after another, by column. */
+  private static byte[] toColumns(byte[] rows, Type[] typeAr, int nrecords) {
+      int nrecbytes = 0;
+      for (Type t : typeAr)
+          nrecbytes += t.getLen();
+
+      byte[] columns = new byte[rows.length];
+      int prefix = 0;
+      for (Type t : typeAr) {
+          int len = t.getLen();
+          for (int r = 0; r < nrecords; r++)
+              System.arraycopy(rows, r * nrecbytes + prefix, columns, prefix * nrecords + r * len, len);
+          prefix += len;
+      }
+      return columns;
+  }
 }
@@ -2,6 +2,8 @@ package simpledb;
 
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Each instance of HeapPage stores data for one page of HeapFiles and 
@@ -11,15 +13,34 @@ import java.io.*;
  * @see BufferPool
  *
  */
-public class HeapPage implements Page {
+public class HeapPage implements TuplePage {
 
     private HeapPageId pid;
     private TupleDesc td;
-    private byte header[];
-    private Tuple tuples[];
+    //the page as it is on disk: the header bits, then the tuple slots
+    private byte[] data;
+    //tuples handed out so far, read from data on first access
+    private AtomicReferenceArray<Tuple> tuples;
     private TransactionId tid;
+    //the bytes before the first change since the last setBeforeImage, or null if there was none; guarded by this
     private byte[] oldData;
     private int numTuples;
+    private int tupleSize;
+    private int headerSize;
+    //field j of slot i starts at fieldStart[j] + i * fieldStride[j] and takes fieldLength[j] bytes
+    private int[] fieldStart;
+
+    private int[] fieldLength;
+    private int[] fieldStride;
+
+    //dictionaries of the columns stored as codes, by column, or null if there are none
+    private StringDictionary[] dictionaries;
+    //the header bits again, 64 slots to a word, so slots can be found a word at a time
+    private long[] used;
+    private int numUsed;
+    //inserts into this page so far, and by slot the insert that last filled it; null until the first insert
+    private int inserts;
+    private int[] filled;
     /**
      * Create a HeapPage from a set of bytes of data read from disk.
      * The format of a HeapPage is a set of header bytes indicating
@@ -32,33 +53,97 @@ public class HeapPage implements Page {
      * <p>
      *      ceiling(no. tuple slots / 8)
      * <p>
+     * The bytes are copied once and tuples are only built from them, one
+     * field at a time, when they are asked for.
+     * <p>
+     * A string column the table's HeapFile keeps a StringDictionary for is
+     * stored as a four byte code, which counts as its size above.
      * @see Database#getCatalog
      * @see Catalog#getTupleDesc
      * @see BufferPool#PAGE_SIZE
      */
     public HeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Create a HeapPage from the bytes between the position and the limit of
+     * a buffer, e.g. a slice of a memory-mapped file, copying them straight
+     * into the page. The buffer's position is left unchanged.
+     *
+     * @see #HeapPage(HeapPageId, byte[])
+     */
+    public HeapPage(HeapPageId id, ByteBuffer data) throws IOException {
+        this(id, data, false);
+    }
+
+    /**
+     * Create a HeapPage whose tuple slots are laid out by rows, as described
+     * above, or by columns: then field j of every slot is stored together,
+     * after field j - 1 of every slot.
+     *
+     * @see ColumnPage
+     */
+    HeapPage(HeapPageId id, ByteBuffer data, boolean columnar) throws IOException {
         this.pid = id;
-        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
-        this.numTuples = (int)Math.floor((BufferPool.PAGE_SIZE * 8) / (td.getSize() * 8 + 1));
+        DbFile file = Database.getCatalog().getDbFile(id.getTableId());
+        this.td = file.getTupleDesc();
+        this.dictionaries = file instanceof HeapFile ? ((HeapFile) file).getDictionaries() : null;
+
+        fieldLength = new int[td.numFields()];
+        for (int j = 0; j < fieldLength.length; j++) {
+            boolean coded = dictionaries != null && dictionaries[j] != null;
+            fieldLength[j] = coded ? Type.INT_TYPE.getLen() : td.getFieldType(j).getLen();
+            tupleSize += fieldLength[j];
+        }
+        this.numTuples = (int)Math.floor((BufferPool.PAGE_SIZE * 8) / (tupleSize * 8 + 1));
+        this.headerSize = (int) Math.ceil(numTuples / 8.0);
+
+        fieldStart = new int[td.numFields()];
+        fieldStride = new int[td.numFields()];
+        int prefix = 0;
+        for (int j = 0; j < fieldStart.length; j++) {
+            fieldStart[j] = headerSize + (columnar ? prefix * numTuples : prefix);
+            fieldStride[j] = columnar ? fieldLength[j] : tupleSize;
+            prefix += fieldLength[j];
+        }
 
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        this.data = new byte[BufferPool.PAGE_SIZE];
+        data.duplicate().get(this.data, 0, Math.min(data.remaining(), BufferPool.PAGE_SIZE));
 
-        header = new byte[getHeaderSize()];
-        for (int i=0; i<header.length; i++)
-            header[i] = dis.readByte();
+        tuples = new AtomicReferenceArray<Tuple>(this.numTuples);
 
-        try{
-            tuples = new Tuple[this.numTuples];
-            for (int i=0; i<tuples.length; i++){
-                tuples[i] = readNextTuple(dis,i);
-            }
-        }catch(NoSuchElementException e){
-            e.printStackTrace();
+        used = new long[(numTuples + 63) / 64];
+        for (int i = 0; i < headerSize; i++) {
+            //bits past the last slot are ignored
+            long bits = this.data[i] & 0xff & (i == headerSize - 1 ? lastHeaderByteMask() : 0xff);
+            used[i >> 3] |= bits << ((i & 7) * 8);
+            numUsed += Long.bitCount(bits);
         }
 
-        dis.close();
+        if (dictionaries != null) checkCodes();
+    }
 
-        setBeforeImage();
+    //a code the dictionary does not have means the page was not written with it
+    private void checkCodes() throws IOException {
+        for (int j = 0; j < dictionaries.length; j++) {
+            if (dictionaries[j] == null) continue;
+            int size = dictionaries[j].size();
+            for (int i = 0; i < numTuples; i++) {
+                if (!isSlotUsed(i)) continue;
+                int offset = fieldStart[j] + i * fieldStride[j];
+                int code = ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16)
+                        | ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+                if (code < 0 || code >= size)
+                    throw new IOException("page " + pid.pageNumber() + " of table " + pid.getTableId()
+                            + " holds code " + code + " in column " + j + ", which is not in its dictionary");
+            }
+        }
+    }
+
+    private int lastHeaderByteMask() {
+        int rest = numTuples - (headerSize - 1) * 8;
+        return (1 << rest) - 1;
     }
 
     /** Retrieve the number of tuples on this page.
@@ -78,7 +163,7 @@ public class HeapPage implements Page {
     private int getHeaderSize() {        
         
         // some code goes here
-        return (int) Math.ceil(getNumTuples() / 8.0);
+        return headerSize;
                  
     }
     
@@ -86,7 +171,7 @@ public class HeapPage implements Page {
         -- used by recovery */
     public HeapPage getBeforeImage(){
         try {
-            return new HeapPage(pid,oldData);
+            return new HeapPage(pid, beforeImageData());
         } catch (IOException e) {
             e.printStackTrace();
             //should never happen -- we parsed it OK before!
@@ -95,8 +180,24 @@ public class HeapPage implements Page {
         return null;
     }
     
-    public void setBeforeImage() {
-        oldData = getPageData().clone();
+    //the bytes of the before image, not to be changed
+    synchronized byte[] beforeImageData() {
+        return oldData != null ? oldData : data;
+    }
+
+    /**
+     * Makes the current contents the before image. They are only copied
+     * aside once the page is changed again, so pages that are only read
+     * never pay for a before image.
+     */
+
+    public synchronized void setBeforeImage() {
+        oldData = null;
+    }
+
+    //copies the bytes aside before the first change since the last setBeforeImage
+    private synchronized void beforeWrite() {
+        if (oldData == null) oldData = data.clone();
     }
 
     /**
@@ -108,37 +209,28 @@ public class HeapPage implements Page {
     }
 
     /**
-     * Suck up tuples from the source file.
+     * Returns the tuple in a used slot, creating it over the page bytes the
+     * first time it is asked for.
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
-        if (!isSlotUsed(slotId)) {
-            for (int i=0; i<td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
-            }
-            return null;
+    private Tuple tuple(int slotId) {
+        Tuple t = tuples.get(slotId);
+        if (t == null) {
+            t = new Tuple(td, data, slotId, fieldStart, fieldStride, dictionaries);
+            t.setRecordId(new RecordId(pid, slotId));
+            //two readers may race here; both go on with the one that got in first
+            if (!tuples.compareAndSet(slotId, null, t))
+                t = tuples.get(slotId);
         }
+        return t;
+    }
 
-        // read fields in the tuple
-        Tuple t = new Tuple(td);
-        RecordId rid = new RecordId(pid, slotId);
-        t.setRecordId(rid);
-        try {
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
-                t.setField(j, f);
-            }
-        } catch (java.text.ParseException e) {
-            e.printStackTrace();
-            throw new NoSuchElementException("parsing error!");
-        }
+    public Tuple getTuple(int slot) {
+        if (slot < 0 || slot >= numTuples || !isSlotUsed(slot)) return null;
+        return tuple(slot);
+    }
 
-        return t;
+    private int fieldOffset(int slotId, int field) {
+        return fieldStart[field] + slotId * fieldStride[field];
     }
 
     /**
@@ -153,64 +245,17 @@ public class HeapPage implements Page {
      * @return A byte array correspond to the bytes of this page.
      */
     public byte[] getPageData() {
-        int len = BufferPool.PAGE_SIZE;
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-        DataOutputStream dos = new DataOutputStream(baos);
-
-        // create the header of the page
-        for (int i=0; i<header.length; i++) {
-            try {
-                dos.writeByte(header[i]);
-            } catch (IOException e) {
-                // this really shouldn't happen
-                e.printStackTrace();
-            }
-        }
-
-        // create the tuples
-        for (int i=0; i<tuples.length; i++) {
-
-            // empty slot
-            if (!isSlotUsed(i)) {
-                for (int j=0; j<td.getSize(); j++) {
-                    try {
-                        dos.writeByte(0);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-
-                }
-                continue;
-            }
-
-            // non-empty slot
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = tuples[i].getField(j);
-                try {
-                    f.serialize(dos);
-                
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-
-        // padding
-        int zerolen = BufferPool.PAGE_SIZE - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
-        byte[] zeroes = new byte[zerolen];
-        try {
-            dos.write(zeroes, 0, zerolen);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        try {
-            dos.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        //insertTuple and deleteTuple keep the bytes up to date
+        return data.clone();
+    }
 
-        return baos.toByteArray();
+    /**
+     * Writes the bytes of this page into buf with a single bulk put.
+     *
+     * @see #getPageData
+     */
+    public synchronized void writePageData(ByteBuffer buf) {
+        buf.put(data);
     }
 
     /**
@@ -234,7 +279,7 @@ public class HeapPage implements Page {
      *         already empty.
      * @param t The tuple to delete
      */
-    public void deleteTuple(Tuple t) throws DbException {
+    public synchronized void deleteTuple(Tuple t) throws DbException {
 
         if (!t.getRecordId().getPageId().equals(pid)){
 
@@ -251,7 +296,15 @@ public class HeapPage implements Page {
 
         } else{
 
-            tuples[slotId] = null;
+            //whoever still holds the tuple keeps its values once the slot is reused
+            beforeWrite();
+
+            Tuple old = tuples.getAndSet(slotId, null);
+
+            if (old != null) old.materialize();
+
+            for (int j = 0; j < td.numFields(); j++)
+                Arrays.fill(data, fieldOffset(slotId, j), fieldOffset(slotId, j) + fieldLength[j], (byte) 0);
         
             markSlotUsed(slotId, false);
 
@@ -268,7 +321,7 @@ public class HeapPage implements Page {
      *         is mismatch.
      * @param t The tuple to add.
      */
-    public void insertTuple(Tuple t) throws DbException {
+    public synchronized void insertTuple(Tuple t) throws DbException {
         // some code goes here
 
         if(getNumEmptySlots() == 0){
@@ -286,26 +339,72 @@ public class HeapPage implements Page {
         }
         
 
-        for(int i = 0; i < getNumTuples(); i++){
+        int i = firstFreeSlot();
 
-            if(this.isSlotUsed(i) == false){
+        beforeWrite();
 
-                RecordId rid = new RecordId(this.pid, i);
+        writeTuple(i, t);
 
-                t.setRecordId(rid);
+        RecordId rid = new RecordId(this.pid, i);
 
-                tuples[i] = t;
+        t.setRecordId(rid);
 
-                markSlotUsed(i, true);
+        tuples.set(i, t);
 
-                break;
+        markSlotUsed(i, true);
+
+        if (filled == null) filled = new int[numTuples];
+        filled[i] = ++inserts;
+    }
 
-            } 
+    //the lowest free slot; there must be one
+    private int firstFreeSlot() {
+
+        for (int w = 0; ; w++) {
+
+            long free = ~used[w];
+
+            if (free != 0) return w * 64 + Long.numberOfTrailingZeros(free);
 
         }
+    }
 
+    //serializes the fields of t into slot i
+    private void writeTuple(int i, Tuple t) throws DbException {
 
-        
+        ByteBuffer buf = ByteBuffer.wrap(data);
+
+        DataOutputStream dos = new DataOutputStream(new ByteBufferOutputStream(buf));
+
+        try {
+
+            for (int j = 0; j < td.numFields(); j++) {
+
+                int offset = fieldOffset(i, j);
+
+                buf.limit(offset + fieldLength[j]).position(offset);
+
+                if (dictionaries != null && dictionaries[j] != null)
+                    dos.writeInt(code(dictionaries[j], (StringField) t.getField(j)));
+                else
+                    t.getField(j).serialize(dos);
+
+            }
+
+        } catch (IOException e) {
+
+            throw new DbException("couldn't write tuple: " + e.getMessage());
+
+        }
+    }
+
+    //the code of a value in a dictionary, which gives it one if it is new
+    private static int code(StringDictionary dictionary, StringField f) throws IOException {
+
+        if (f instanceof DictionaryField && ((DictionaryField) f).getDictionary() == dictionary)
+            return ((DictionaryField) f).getCode();
+
+        return dictionary.encode(f.getValue());
     }
 
     /**
@@ -315,6 +414,8 @@ public class HeapPage implements Page {
     public void markDirty(boolean dirty, TransactionId tid) {
         // some code goes here
 	   if (dirty == true) {
+
+            beforeWrite();
            
             this.tid = tid;
         
@@ -339,19 +440,15 @@ public class HeapPage implements Page {
      */
     public int getNumEmptySlots() {
         // some code goes here
-        int count = 0;
-
-        for (int i = 0; i < getNumTuples(); i++) {
-
-            if (!isSlotUsed(i)) {
-
-                count++;
-
-            }
+        return numTuples - numUsed;
+    }
 
-        }
+    public boolean hasRoomFor(Tuple t) {
+        return getNumEmptySlots() > 0;
+    }
 
-        return count;
+    public boolean hasRoom() {
+        return getNumEmptySlots() > 0;
     }
 
     /**
@@ -359,13 +456,7 @@ public class HeapPage implements Page {
      */
     public boolean isSlotUsed(int i) {
         // some code goes here
-        int a = i / 8;
-
-        int b = i % 8;
-
-        byte temp = (byte)(1 << b);
-
-        return (header[a] & temp) != 0;
+        return (used[i >> 6] & (1L << i)) != 0;
     }
 
 
@@ -374,19 +465,27 @@ public class HeapPage implements Page {
      */
     private void markSlotUsed(int i, boolean value) {
         // some code goes here
+        if (isSlotUsed(i) == value) return;
+
         int a = i/8;
 
         int b = i%8;
 
         if(value == true){
 
-            header[a] |= 1 << b;
+            data[a] |= 1 << b;
 
-            
+            used[i >> 6] |= 1L << i;
+
+            numUsed++;
 
         }else{
 
-            header[a] &= ~(1 << b);
+            data[a] &= ~(1 << b);
+
+            used[i >> 6] &= ~(1L << i);
+
+            numUsed--;
 
         }
 
@@ -396,19 +495,72 @@ public class HeapPage implements Page {
      * @return an iterator over all tuples on this page (calling remove on this iterator throws an UnsupportedOperationException)
      * (note that this iterator shouldn't return tuples in empty slots!)
      */
-    public Iterator<Tuple> iterator() {
+    public synchronized Iterator<Tuple> iterator() {
         // some code goes here
-        List<Tuple> temp = new LinkedList<Tuple>();
+        return new SlotIterator(used.clone(), inserts);
+    }
+
+    //whether slot holds a tuple inserted no later than the given insert count
+    private boolean usedSince(int slot, int count) {
+        int[] f = filled;
+        return isSlotUsed(slot) && (f == null || f[slot] <= count);
+    }
+
+    /**
+     * Walks a copy of the slot bitmap taken when the iteration started, so
+     * tuples inserted while it runs are not returned. Slots emptied since
+     * are skipped, and so are slots filled again after the iteration started.
+     */
+    private class SlotIterator implements Iterator<Tuple> {
+
+        private final long[] slots;
+        //the page's insert count when the iteration started
+        private final int created;
 
-        for (int i = 0; i < getNumTuples(); i++){
+        //index of the word being walked, and its bits not returned yet
+        private int word = -1;
+        private long bits;
 
-            if (isSlotUsed(i))
+        SlotIterator(long[] slots, int created) {
+            this.slots = slots;
+            this.created = created;
+        }
 
-                temp.add(tuples[i]);
+        public boolean hasNext() {
+            while (true) {
+                while (bits == 0) {
+                    if (++word >= slots.length) return false;
+                    bits = slots[word];
+                }
+                if (usedSince(word * 64 + Long.numberOfTrailingZeros(bits), created)) return true;
+                bits &= bits - 1;
+            }
         }
 
-        return temp.iterator();
+        public Tuple next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            int slot = word * 64 + Long.numberOfTrailingZeros(bits);
+            bits &= bits - 1;
+            return tuple(slot);
+        }
     }
 
-}
 
+    /** Writes a stream into a ByteBuffer, so tuples can be serialized straight into a page. */
+    private static class ByteBufferOutputStream extends OutputStream {
+
+        private final ByteBuffer buf;
+
+        ByteBufferOutputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        public void write(int b) {
+            buf.put((byte) b);
+        }
+
+        public void write(byte[] b, int off, int len) {
+            buf.put(b, off, len);
+        }
+    }
+}
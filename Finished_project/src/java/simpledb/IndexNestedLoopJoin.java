@@ -0,0 +1,285 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * IndexNestedLoopJoin joins its outer child to a table that has a BTreeFile
+ * on the inner join field. Instead of rescanning the inner child for every
+ * outer tuple, as Join does, it looks the matching inner tuples up in the
+ * index, so each outer tuple costs an index probe plus one page read per
+ * match.
+ * <p>
+ * The inner child is a SeqScan or an IndexScan of the indexed table,
+ * possibly under Filters. It is never opened: its predicates are applied to
+ * the tuples the index returns.
+ */
+public class IndexNestedLoopJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final JoinPredicate p;
+
+    private DbIterator child1, child2;
+
+    private final BTreeFile index;
+
+    //set up by open() from the inner child
+    private TransactionId tid;
+
+    private String innerAlias;
+
+    private ArrayList<Predicate> innerPredicates;
+
+    private TupleDesc td;
+
+    private Tuple outer;
+
+    private IndexScan probe;
+
+    /**
+     * Constructor.
+     *
+     * @param p
+     *            the predicate to join on; its second field has to be the
+     *            key field of the index
+     * @param child1
+     *            the outer relation
+     * @param child2
+     *            the inner relation: a scan of the index's table, possibly
+     *            under Filters
+     * @param index
+     *            the index on the inner join field
+     */
+    public IndexNestedLoopJoin(JoinPredicate p, DbIterator child1, DbIterator child2, BTreeFile index) {
+
+        this.p = p;
+
+        this.child1 = child1;
+
+        this.child2 = child2;
+
+        this.index = index;
+
+    }
+
+    /**
+     * @return the SeqScan or IndexScan under the Filters of plan, or null if
+     *         plan is not a scan of a single table
+     */
+    public static DbIterator scanOf(DbIterator plan) {
+
+        while (plan instanceof Filter)
+            plan = ((Filter) plan).getChildren()[0];
+
+        return plan instanceof SeqScan || plan instanceof IndexScan ? plan : null;
+    }
+
+    /**
+     * @return the index on field of the table plan scans, if plan is a scan
+     *         and the index answers op by a range; null otherwise
+     */
+    public static BTreeFile indexFor(DbIterator plan, int field, Predicate.Op op) {
+
+        DbIterator scan = scanOf(plan);
+
+        if (scan == null || !IndexScan.isRange(op)) return null;
+
+        int tableId = scan instanceof SeqScan ? Database.getCatalog().getTableId(((SeqScan) scan).getTableName())
+                : ((IndexScan) scan).getIndex().getTableId();
+
+        return Database.getCatalog().getIndex(tableId, field);
+    }
+
+    public JoinPredicate getJoinPredicate() {
+
+        return p;
+
+    }
+
+    public BTreeFile getIndex() {
+
+        return index;
+
+    }
+
+    /** @return the field name of join field1, quantified by alias */
+    public String getJoinField1Name() {
+
+        return child1.getTupleDesc().getFieldName(p.getField1());
+
+    }
+
+    /** @return the field name of join field2, quantified by alias */
+    public String getJoinField2Name() {
+
+        return child2.getTupleDesc().getFieldName(p.getField2());
+
+    }
+
+    public TupleDesc getTupleDesc() {
+
+        return TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+
+    }
+
+    public void open() throws DbException, NoSuchElementException, TransactionAbortedException {
+
+        innerPredicates = new ArrayList<Predicate>();
+
+        DbIterator plan = child2;
+
+        while (plan instanceof Filter) {
+
+            innerPredicates.add(((Filter) plan).getPredicate());
+
+            plan = ((Filter) plan).getChildren()[0];
+
+        }
+
+        if (plan instanceof SeqScan) {
+
+            tid = ((SeqScan) plan).getTransactionId();
+
+            innerAlias = ((SeqScan) plan).getAlias();
+
+        } else if (plan instanceof IndexScan) {
+
+            tid = ((IndexScan) plan).getTransactionId();
+
+            innerAlias = ((IndexScan) plan).getAlias();
+
+            innerPredicates.add(((IndexScan) plan).getPredicate());
+
+        } else {
+
+            throw new DbException("the inner child of an index join has to be a scan");
+
+        }
+
+        td = getTupleDesc();
+
+        child1.open();
+
+        super.open();
+
+        outer = null;
+
+    }
+
+    public void close() {
+
+        if (probe != null) probe.close();
+
+        probe = null;
+
+        child1.close();
+
+        super.close();
+
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+
+        if (probe != null) probe.close();
+
+        probe = null;
+
+        child1.rewind();
+
+        outer = null;
+
+    }
+
+    /**
+     * Returns the next outer tuple concatenated with a matching inner tuple,
+     * as Join does, or null when there are no more. The inner tuples of one
+     * outer tuple come in the order of the index.
+     */
+    protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+
+        while (true) {
+
+            if (probe == null) {
+
+                if (!child1.hasNext()) return null;
+
+                outer = child1.next();
+
+                //outer op inner is inner reversed(op) outer
+                probe = new IndexScan(tid, index, innerAlias, reverse(p.getOperator()), outer.getField(p.getField1()));
+
+                probe.open();
+
+            }
+
+            while (probe.hasNext()) {
+
+                Tuple inner = probe.next();
+
+                if (matches(inner)) return merge(outer, inner);
+
+            }
+
+            probe.close();
+
+            probe = null;
+
+        }
+
+    }
+
+    private boolean matches(Tuple inner) {
+
+        for (Predicate pred : innerPredicates)
+            if (!pred.filter(inner)) return false;
+
+        return true;
+    }
+
+    private static Predicate.Op reverse(Predicate.Op op) {
+
+        switch (op) {
+        case LESS_THAN:
+            return Predicate.Op.GREATER_THAN;
+        case LESS_THAN_OR_EQ:
+            return Predicate.Op.GREATER_THAN_OR_EQ;
+        case GREATER_THAN:
+            return Predicate.Op.LESS_THAN;
+        case GREATER_THAN_OR_EQ:
+            return Predicate.Op.LESS_THAN_OR_EQ;
+        default:
+            return op;
+        }
+    }
+
+    private Tuple merge(Tuple c1, Tuple c2) {
+
+        Tuple res = new Tuple(td);
+
+        int l1 = child1.getTupleDesc().numFields();
+
+        for (int i = 0; i < l1; i++)
+            res.setField(i, c1.getField(i));
+
+        for (int i = l1; i < td.numFields(); i++)
+            res.setField(i, c2.getField(i - l1));
+
+        return res;
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+
+        return new DbIterator[] { child1, child2 };
+
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+
+        child1 = children[0];
+
+        child2 = children[1];
+
+    }
+}
@@ -0,0 +1,182 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * IndexScan is an access method that reads the tuples of a table whose
+ * indexed column satisfies a predicate, by looking them up in a BTreeFile
+ * on that column instead of scanning the whole table. Tuples come in the
+ * order of the column, each read from its page through the buffer pool.
+ * Equality and range predicates only read the part of the index that
+ * matches.
+ *
+ * @see BTreeFile#indexIterator
+ */
+public class IndexScan extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final TransactionId tid;
+
+    private final BTreeFile index;
+
+    private final String tableAlias;
+
+    private final Predicate.Op op;
+
+    private final Field operand;
+
+    private DbFileIterator entries;
+
+    /**
+     * Creates a scan of the tuples of the index's table whose value of the
+     * indexed column satisfies op operand.
+     *
+     * @param tid
+     *            The transaction this scan is running as a part of.
+     * @param index
+     *            the index to look the tuples up in
+     * @param tableAlias
+     *            the alias of the table; as for SeqScan, the returned
+     *            tupleDesc has fields named tableAlias.fieldName
+     * @param op
+     *            the comparison of the indexed column to the operand
+     * @param operand
+     *            the value to compare the indexed column to
+     */
+    public IndexScan(TransactionId tid, BTreeFile index, String tableAlias, Predicate.Op op, Field operand) {
+
+        this.tid = tid;
+
+        this.index = index;
+
+        this.tableAlias = tableAlias;
+
+        this.op = op;
+
+        this.operand = operand;
+
+    }
+
+    public IndexScan(TransactionId tid, BTreeFile index, Predicate.Op op, Field operand) {
+
+        this(tid, index, Database.getCatalog().getTableName(index.getTableId()), op, operand);
+
+    }
+
+    /** @return whether an index answers op by reading only the entries that match */
+    public static boolean isRange(Predicate.Op op) {
+
+        return op == Predicate.Op.EQUALS || op == Predicate.Op.LESS_THAN || op == Predicate.Op.LESS_THAN_OR_EQ
+                || op == Predicate.Op.GREATER_THAN || op == Predicate.Op.GREATER_THAN_OR_EQ;
+    }
+
+    public BTreeFile getIndex() {
+
+        return index;
+
+    }
+
+    /** @return the name of the table scanned, as in the catalog */
+    public String getTableName() {
+
+        return Database.getCatalog().getTableName(index.getTableId());
+
+    }
+
+    public String getAlias() {
+
+        return tableAlias;
+
+    }
+
+    /** @return the transaction this scan is running as a part of */
+    public TransactionId getTransactionId() {
+
+        return tid;
+
+    }
+
+    /** @return the predicate the indexed column has to satisfy */
+    public Predicate getPredicate() {
+
+        return new Predicate(index.getKeyField(), op, operand);
+
+    }
+
+    /**
+     * Returns the TupleDesc of the table, with field names prefixed with the
+     * table alias as by SeqScan.
+     */
+    public TupleDesc getTupleDesc() {
+
+        TupleDesc td = Database.getCatalog().getTupleDesc(index.getTableId());
+
+        Type[] types = new Type[td.numFields()];
+
+        String[] names = new String[td.numFields()];
+
+        for (int i = 0; i < types.length; i++) {
+
+            types[i] = td.getFieldType(i);
+
+            names[i] = tableAlias + "." + td.getFieldName(i);
+
+        }
+
+        return new TupleDesc(types, names);
+    }
+
+    public void open() throws DbException, NoSuchElementException, TransactionAbortedException {
+
+        entries = index.indexIterator(tid, op, operand);
+
+        entries.open();
+
+        super.open();
+
+    }
+
+    public void close() {
+
+        super.close();
+
+        if (entries != null) entries.close();
+
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+
+        entries.rewind();
+
+    }
+
+    protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+
+        while (entries.hasNext()) {
+
+            Tuple entry = entries.next();
+
+            HeapPageId pid = new HeapPageId(index.getTableId(), ((IntField) entry.getField(1)).getValue());
+
+            TuplePage page = (TuplePage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+
+            Tuple t = page.getTuple(((IntField) entry.getField(2)).getValue());
+
+            //an entry left behind by a tuple that is gone is skipped
+            if (t != null) return t;
+
+        }
+
+        return null;
+    }
+
+    public DbIterator[] getChildren() {
+
+        return new DbIterator[0];
+
+    }
+
+    public void setChildren(DbIterator[] children) {
+    }
+}
@@ -70,7 +70,19 @@ public class JoinOptimizer {
 
         JoinPredicate p = new JoinPredicate(t1id, lj.p, t2id);
 
-        j = new Join(p,plan1,plan2);
+        //the optimizer only picks an index join when plan2 is a scan of a table with the index
+        BTreeFile index = lj.method == LogicalJoinNode.Method.INDEX_NESTED_LOOP ? IndexNestedLoopJoin
+                .indexFor(plan2, t2id, lj.p) : null;
+
+        if (index != null)
+            j = new IndexNestedLoopJoin(p, plan1, plan2, index);
+        else if (lj.method == LogicalJoinNode.Method.HASH)
+            j = new HashEquiJoin(p, plan1, plan2);
+        else if (lj.method == LogicalJoinNode.Method.SORT_MERGE)
+            j = new SortMergeJoin(p, SortMergeJoin.sorted(plan1, t1id),
+                    SortMergeJoin.sorted(plan2, t2id));
+        else
+            j = new BlockNestedLoopJoin(p, plan1, plan2);
 
         return j;
 
@@ -84,7 +96,10 @@ public class JoinOptimizer {
      * the amount of data that must be read over the course of the query, as
      * well as the number of CPU opertions performed by your join. Assume that
      * the cost of a single predicate application is roughly 1.
-     * 
+     * <p>
+     * This is the cost of a BlockNestedLoopJoin; the optimizer
+     * weighs the other methods of running j with
+     * {@link #estimateJoinCost(LogicalJoinNode, LogicalJoinNode.Method, int, int, double, double, TableStats, boolean, boolean)}.
      * 
      * @param j
      *            A LogicalJoinNode representing the join operation being
@@ -104,18 +119,161 @@ public class JoinOptimizer {
      */
     public double estimateJoinCost(LogicalJoinNode j, int card1, int card2,
             double cost1, double cost2) {
+        return estimateJoinCost(j, LogicalJoinNode.Method.NESTED_LOOP, card1, card2,
+                cost1, cost2, null);
+    }
+
+    /**
+     * Estimate the cost of running a join by method m, with neither side
+     * known to be sorted on its join field.
+     * 
+     * @see #estimateJoinCost(LogicalJoinNode, LogicalJoinNode.Method, int, int, double, double, TableStats, boolean, boolean)
+     */
+    public double estimateJoinCost(LogicalJoinNode j, LogicalJoinNode.Method m,
+            int card1, int card2, double cost1, double cost2,
+            TableStats innerStats) {
+        return estimateJoinCost(j, m, card1, card2, cost1, cost2, innerStats,
+                false, false);
+    }
+
+    /**
+     * Estimate the cost of running a join by method m, as for
+     * {@link #estimateJoinCost(LogicalJoinNode, int, int, double, double)}.
+     * 
+     * @param innerStats
+     *            the stats of the right-hand table, if the right-hand side is
+     *            a base table rather than a join; null otherwise
+     * @param sorted1
+     *            whether the left-hand side comes in order of its join field
+     * @param sorted2
+     *            whether the right-hand side comes in order of its join field
+     * @return the estimated cost, or infinity if the join cannot be run by m
+     */
+    public double estimateJoinCost(LogicalJoinNode j, LogicalJoinNode.Method m,
+            int card1, int card2, double cost1, double cost2,
+            TableStats innerStats, boolean sorted1, boolean sorted2) {
         if (j instanceof LogicalSubplanJoinNode) {
             // A LogicalSubplanJoinNode represents a subquery.
             // You do not need to implement proper support for these for Project 3.
-            return card1 + cost1 + cost2;
+            return m == LogicalJoinNode.Method.NESTED_LOOP ? card1 + cost1 + cost2
+                    : Double.POSITIVE_INFINITY;
+        }
 
-        } else {
-            // some code goes here.
-            // HINT: You may need to use the variable "j" if you implemented
-            // a join algorithm that's more complicated than a basic nested-loops
-            // join.
+        switch (m) {
+        case INDEX_NESTED_LOOP:
+            BTreeFile index = innerStats == null ? null : innerIndex(j);
+            if (index == null)
+                return Double.POSITIVE_INFINITY;
+            //the tuples of t2 one probe finds, as the cardinality estimate has it
+            int ntups = Math.max(1, innerStats.totalTuples());
+            double matches = (double) estimateJoinCardinality(j, card1, ntups,
+                    isPkey(j.t1Alias, j.f1PureName), isPkey(j.t2Alias, j.f2PureName),
+                    null) / Math.max(1, card1);
+            matches = Math.min(ntups, Math.max(1, matches));
+            return cost1 + card1 * innerStats.estimateIndexScanCost(index, matches / ntups)
+                    + card1 * matches;
+        case HASH:
+            if (j.p != Predicate.Op.EQUALS)
+                return Double.POSITIVE_INFINITY;
+            double cost = cost1 + cost2 + card1 + card2;
+            //what does not fit in the memory budget is written out and read
+            //back once; the widths are those of the base tables, so this is
+            //low for a left side that is itself a join
+            double bytes1 = (double) card1 * tupleWidth(j.t1Alias);
+            double bytes2 = (double) card2 * tupleWidth(j.t2Alias);
+            double budget = (double) HashEquiJoin.DEFAULT_MEMORY_PAGES * BufferPool.PAGE_SIZE;
+            if (bytes1 > budget) {
+                double spilled = 1 - budget / bytes1;
+                cost += 2 * spilled * (bytes1 + bytes2) / BufferPool.PAGE_SIZE
+                        * TableStats.IOCOSTPERPAGE;
+            }
+            return cost;
+        case SORT_MERGE:
+            if (!SortMergeJoin.supports(j.p))
+                return Double.POSITIVE_INFINITY;
+            double mergeCost = cost1 + cost2 + card1 + card2;
+            if (!sorted1)
+                mergeCost += sortCost(card1, tupleWidth(j.t1Alias));
+            if (!sorted2)
+                mergeCost += sortCost(card2, tupleWidth(j.t2Alias));
+            //a range join reads each pair it returns from memory
+            if (j.p != Predicate.Op.EQUALS)
+                mergeCost += estimateJoinCardinality(j, card1, card2, false,
+                        false, null);
+            return mergeCost;
+        default:
+            //t2 is scanned once per block of t1; the width is that of the
+            //base table, so blocks are overestimated for a t1 that is a join
+            int width = tupleWidth(j.t1Alias);
+            double blocks = width == 0 ? 1 : Math.ceil((double) card1 * width
+                    / ((double) BlockNestedLoopJoin.DEFAULT_BLOCK_PAGES * BufferPool.PAGE_SIZE));
+            double loopCost = cost1 + Math.max(1, blocks) * cost2 + (double) card1 * card2;
+            //the pairs a range join returns, charged as for SORT_MERGE
+            if (j.p != Predicate.Op.EQUALS)
+                loopCost += estimateJoinCardinality(j, card1, card2, false,
+                        false, null);
+            return loopCost;
+        }
+    }
 
-            return (double)(cost1+card1*cost2+card1*card2);
+    /**
+     * @return the method with the least estimated cost of running join j
+     * @see #estimateJoinCost(LogicalJoinNode, LogicalJoinNode.Method, int, int, double, double, TableStats, boolean, boolean)
+     */
+    public LogicalJoinNode.Method bestJoinMethod(LogicalJoinNode j, int card1,
+            int card2, double cost1, double cost2, TableStats innerStats,
+            boolean sorted1, boolean sorted2) {
+        LogicalJoinNode.Method best = LogicalJoinNode.Method.NESTED_LOOP;
+        double bestCost = Double.POSITIVE_INFINITY;
+        for (LogicalJoinNode.Method m : LogicalJoinNode.Method.values()) {
+            double cost = estimateJoinCost(j, m, card1, card2, cost1, cost2,
+                    innerStats, sorted1, sorted2);
+            if (cost < bestCost) {
+                best = m;
+                bestCost = cost;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the cost of an OrderBy of card tuples of width bytes: the
+     *         comparisons, and if they do not fit its memory budget, writing
+     *         the runs out and reading them back once per merge pass
+     */
+    private static double sortCost(int card, int width) {
+        if (card < 2)
+            return 0;
+        double cost = card * (Math.log(card) / Math.log(2));
+        double pages = (double) card * width / BufferPool.PAGE_SIZE;
+        if (pages > OrderBy.DEFAULT_MEMORY_PAGES) {
+            double runs = Math.ceil(pages / OrderBy.DEFAULT_MEMORY_PAGES);
+            double passes = Math.ceil(Math.log(runs)
+                    / Math.log(OrderBy.DEFAULT_MEMORY_PAGES - 1));
+            cost += 2 * Math.max(1, passes) * pages * TableStats.IOCOSTPERPAGE;
+        }
+        return cost;
+    }
+
+    /** @return the bytes a tuple of the table with the given alias takes on a page */
+    private int tupleWidth(String alias) {
+        Integer tableId = alias == null ? null : p.getTableId(alias);
+        return tableId == null ? 0 : Database.getCatalog().getTupleDesc(tableId).getSize();
+    }
+
+    /**
+     * @return the index on t2.f2 that j can probe, or null if there is none
+     *         or the join predicate is not answered by a range of the index
+     */
+    private BTreeFile innerIndex(LogicalJoinNode j) {
+        if (j.t2Alias == null || !IndexScan.isRange(j.p))
+            return null;
+        int tableId = p.getTableId(j.t2Alias);
+        TupleDesc td = Database.getCatalog().getTupleDesc(tableId);
+        try {
+            return Database.getCatalog().getIndex(tableId, td.fieldNameToIndex(j.f2PureName));
+        } catch (NoSuchElementException e) {
+            return null;
         }
     }
 
@@ -246,7 +404,8 @@ public class JoinOptimizer {
         // should work.
 
         // some code goes here
-                
+        //a query over one table has nothing to order
+        if (joins.isEmpty()) return joins;
 
         PlanCache pc = new PlanCache();
 
@@ -369,6 +528,8 @@ public class JoinOptimizer {
         double t1cost, t2cost;
         int t1card, t2card;
         boolean leftPkey, rightPkey;
+        //the stats of each side that is a base table rather than a join
+        TableStats t1stats = null, t2stats = null;
 
         if (news.isEmpty()) { // base case -- both are base relations
             prevBest = new Vector<LogicalJoinNode>();
@@ -384,6 +545,8 @@ public class JoinOptimizer {
                             filterSelectivities.get(j.t2Alias));
             rightPkey = table2Alias == null ? false : isPkey(table2Alias,
                     j.f2PureName);
+            t1stats = stats.get(table1Name);
+            t2stats = table2Alias == null ? null : stats.get(table2Name);
         } else {
             // news is not empty -- figure best way to join j to news
             prevBest = pc.getOrder(news);
@@ -412,6 +575,7 @@ public class JoinOptimizer {
                                 filterSelectivities.get(j.t2Alias));
                 rightPkey = j.t2Alias == null ? false : isPkey(j.t2Alias,
                         j.f2PureName);
+                t2stats = j.t2Alias == null ? null : stats.get(table2Name);
             } else if (doesJoin(prevBest, j.t2Alias)) { // j.t2 is in prevbest
                                                         // (both
                 // shouldn't be)
@@ -425,6 +589,7 @@ public class JoinOptimizer {
                 t1card = stats.get(table1Name).estimateTableCardinality(
                         filterSelectivities.get(j.t1Alias));
                 leftPkey = isPkey(j.t1Alias, j.f1PureName);
+                t1stats = stats.get(table1Name);
 
             } else {
                 // don't consider this plan if one of j.t1 or j.t2
@@ -433,14 +598,25 @@ public class JoinOptimizer {
             }
         }
 
+        boolean t1sorted = isSorted(prevBest, j.t1Alias, j.f1PureName);
+        boolean t2sorted = j.t2Alias != null
+                && isSorted(prevBest, j.t2Alias, j.f2PureName);
+
         // case where prevbest is left
-        double cost1 = estimateJoinCost(j, t1card, t2card, t1cost, t2cost);
+        LogicalJoinNode.Method m1 = bestJoinMethod(j, t1card, t2card, t1cost,
+                t2cost, t2stats, t1sorted, t2sorted);
+        double cost1 = estimateJoinCost(j, m1, t1card, t2card, t1cost, t2cost,
+                t2stats, t1sorted, t2sorted);
 
         LogicalJoinNode j2 = j.swapInnerOuter();
-        double cost2 = estimateJoinCost(j2, t2card, t1card, t2cost, t1cost);
+        LogicalJoinNode.Method m2 = bestJoinMethod(j2, t2card, t1card, t2cost,
+                t1cost, t1stats, t2sorted, t1sorted);
+        double cost2 = estimateJoinCost(j2, m2, t2card, t1card, t2cost, t1cost,
+                t1stats, t2sorted, t1sorted);
         if (cost2 < cost1) {
             boolean tmp;
             j = j2;
+            m1 = m2;
             cost1 = cost2;
             tmp = rightPkey;
             rightPkey = leftPkey;
@@ -449,6 +625,10 @@ public class JoinOptimizer {
         if (cost1 >= bestCostSoFar)
             return null;
 
+        //the same join may be run differently in other subplans
+        if (m1 != LogicalJoinNode.Method.NESTED_LOOP)
+            j = j.withMethod(m1);
+
         CostCard cc = new CostCard();
 
         cc.card = estimateJoinCardinality(j, t1card, t2card, leftPkey,
@@ -463,7 +643,7 @@ public class JoinOptimizer {
      * Return true if the specified table is in the list of joins, false
      * otherwise
      */
-    private boolean doesJoin(Vector<LogicalJoinNode> joinlist, String table) {
+    private boolean doesJoin(List<LogicalJoinNode> joinlist, String table) {
         for (LogicalJoinNode j : joinlist) {
             if (j.t1Alias.equals(table)
                     || (j.t2Alias != null && j.t2Alias.equals(table)))
@@ -472,6 +652,47 @@ public class JoinOptimizer {
         return false;
     }
 
+    /**
+     * Return true if the tuples of the side of a join that holds the table
+     * alias come in ascending order of field, as SortMergeJoin#isSorted will
+     * find: the side is joined by plan, which keeps an order, or it is the
+     * table alone and read by an index on field.
+     * 
+     * @param field
+     *            The pure name of the field
+     */
+    private boolean isSorted(List<LogicalJoinNode> plan, String alias,
+            String field) {
+        if (!doesJoin(plan, alias))
+            return field.equals(p.getIndexScanField(alias));
+        LogicalJoinNode last = plan.get(plan.size() - 1);
+        List<LogicalJoinNode> rest = plan.subList(0, plan.size() - 1);
+        switch (last.method) {
+        case SORT_MERGE:
+            // in order of the field of the side that drives the merge
+            boolean onField1 = alias.equals(last.t1Alias)
+                    && field.equals(last.f1PureName);
+            boolean onField2 = alias.equals(last.t2Alias)
+                    && field.equals(last.f2PureName);
+            if (last.p == Predicate.Op.EQUALS)
+                return onField1 || onField2;
+            if (last.p == Predicate.Op.LESS_THAN
+                    || last.p == Predicate.Op.LESS_THAN_OR_EQ)
+                return onField2;
+            return onField1;
+        case HASH:
+            return false;
+        case INDEX_NESTED_LOOP:
+            // probes keep the order of the outer side
+            if (doesJoin(rest, last.t1Alias))
+                return doesJoin(rest, alias) && isSorted(rest, alias, field);
+            return alias.equals(last.t1Alias) && isSorted(rest, alias, field);
+        default:
+            // a block of the outer side comes in the order of the inner one
+            return false;
+        }
+    }
+
     /**
      * Return true if field is a primary key of the specified table, false
      * otherwise
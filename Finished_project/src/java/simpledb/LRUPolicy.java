@@ -0,0 +1,65 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * Least recently used replacement: evicts the page whose last hit is the
+ * oldest. A single sequential scan larger than the pool pushes every other
+ * page out.
+ */
+public class LRUPolicy implements ReplacementPolicy {
+
+    //access ordered, so iteration starts at the least recently used page
+    private final LinkedHashMap<PageId, Boolean> pages = new LinkedHashMap<PageId, Boolean>(16, 0.75f, true);
+
+    public void pageLoaded(PageId pid) {
+
+        pages.put(pid, Boolean.TRUE);
+
+    }
+
+    public void pageHit(PageId pid) {
+
+        pages.get(pid);
+
+    }
+
+    public void pageRemoved(PageId pid) {
+
+        pages.remove(pid);
+
+    }
+
+    //a pinned page leaves the order; it was in use, so it comes back as the most recently used
+    public void pagePinned(PageId pid) {
+
+        pages.remove(pid);
+
+    }
+
+    public void pageUnpinned(PageId pid) {
+
+        pages.put(pid, Boolean.TRUE);
+
+    }
+
+    public PageId evict(Filter filter) {
+
+        Iterator<PageId> it = pages.keySet().iterator();
+
+        while (it.hasNext()) {
+
+            PageId pid = it.next();
+
+            if (filter.evictable(pid)) {
+
+                it.remove();
+
+                return pid;
+
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,643 @@
+package simpledb;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * LockManager keeps track of the shared and exclusive page locks held by
+ * transactions on behalf of the BufferPool.
+ * <p>
+ * Each page has a FIFO queue of pending requests. A request that conflicts
+ * with the current holders (or with requests queued before it) waits on its
+ * own monitor. Releasing a lock hands it directly to the requests at the
+ * head of the queue that can now be granted and wakes up only their
+ * threads, instead of having every waiter poll or race for the lock.
+ * <p>
+ * A transaction that holds the only shared lock on a page may upgrade it to
+ * an exclusive lock; pending upgrades go to the front of the queue since no
+ * other request on that page can be granted before them.
+ * <p>
+ * Deadlocks are detected with a waits-for graph: every queued request
+ * records the transactions it is waiting for, and these edges are refreshed
+ * whenever the holders or the queue of its page change. When a request has
+ * to wait, the graph is searched for cycles through the requesting
+ * transaction, and the youngest transaction on each of them is aborted
+ * right away: all its pending requests fail with a
+ * TransactionAbortedException, and so do its later requests until the
+ * transaction completes.
+ * <p>
+ * The lock table is split into stripes by the hash of the PageId, each with
+ * its own monitor, so that requests on different pages do not contend with
+ * each other. The pages locked by each transaction are kept alongside, so
+ * that releasing a transaction's locks only visits those pages. The
+ * waits-for graph has a monitor of its own which is taken, after the stripe
+ * one, only by requests that have to wait. A deadlock victim's requests are
+ * failed after leaving the graph's monitor, one stripe at a time.
+ * <p>
+ * Threads are only woken up after all of these monitors have been released,
+ * and never while holding the monitor of a request.
+ */
+public class LockManager {
+
+    /** A request waiting in the queue of a page. */
+    private static class LockRequest {
+
+        private final PageId pid;
+
+        private final TransactionId tid;
+
+        private final boolean exclusive;
+
+        //transactions this request waits for, i.e. its edges in the waits-for graph
+        private final Set<TransactionId> blockers = new HashSet<TransactionId>();
+
+        private volatile boolean granted;
+
+        private volatile boolean aborted;
+
+        public LockRequest(PageId pid, TransactionId tid, boolean exclusive) {
+
+            this.pid = pid;
+
+            this.tid = tid;
+
+            this.exclusive = exclusive;
+
+        }
+    }
+
+    /** A partition of the lock table. */
+    private static class Stripe {
+
+        private final Map<PageId, LockState> lockTable = new HashMap<PageId, LockState>();
+
+    }
+
+    /** Holders and waiters of the lock on a single page. */
+    private static class LockState {
+
+        private final Set<TransactionId> sharedHolders = new HashSet<TransactionId>();
+
+        private TransactionId exclusiveHolder;
+
+        private final LinkedList<LockRequest> waiters = new LinkedList<LockRequest>();
+
+        public boolean isIdle() {
+
+            return exclusiveHolder == null && sharedHolders.isEmpty() && waiters.isEmpty();
+
+        }
+
+        public boolean isExclusiveHolder(TransactionId tid) {
+
+            return exclusiveHolder != null && exclusiveHolder.equals(tid);
+
+        }
+
+        public boolean holds(TransactionId tid, boolean exclusive) {
+
+            if (isExclusiveHolder(tid)) return true;
+
+            return !exclusive && sharedHolders.contains(tid);
+
+        }
+
+        //true if the lock could be handed to tid given only the current holders
+        public boolean compatible(TransactionId tid, boolean exclusive) {
+
+            if (exclusiveHolder != null) return exclusiveHolder.equals(tid);
+
+            if (!exclusive) return true;
+
+            return sharedHolders.isEmpty() || (sharedHolders.size() == 1 && sharedHolders.contains(tid));
+
+        }
+
+        public void grant(TransactionId tid, boolean exclusive) {
+
+            if (exclusive) {
+
+                sharedHolders.remove(tid);
+
+                exclusiveHolder = tid;
+
+            } else if (!isExclusiveHolder(tid)) {
+
+                sharedHolders.add(tid);
+
+            }
+        }
+
+        public void release(TransactionId tid) {
+
+            sharedHolders.remove(tid);
+
+            if (isExclusiveHolder(tid)) exclusiveHolder = null;
+
+        }
+
+        //recompute the waits-for edges of every queued request; the caller holds the graph's monitor
+        public void refreshBlockers() {
+
+            List<LockRequest> ahead = new ArrayList<LockRequest>();
+
+            for (LockRequest req : waiters) {
+
+                req.blockers.clear();
+
+                if (exclusiveHolder != null) {
+
+                    req.blockers.add(exclusiveHolder);
+
+                } else if (req.exclusive) {
+
+                    req.blockers.addAll(sharedHolders);
+
+                }
+
+                for (LockRequest r : ahead) {
+
+                    if (r.exclusive || req.exclusive) req.blockers.add(r.tid);
+
+                }
+
+                req.blockers.remove(req.tid);
+
+                ahead.add(req);
+
+            }
+        }
+    }
+
+    /** Default number of stripes the lock table is split into. */
+    public static final int DEFAULT_STRIPES = 64;
+
+    private final Stripe[] stripes;
+
+    private final Map<TransactionId, Set<PageId>> tidLocks;
+
+    //monitor of the waits-for graph, guarding tidWaits, victims, numDeadlocks and the blockers of requests
+    private final Object graph = new Object();
+
+    //the queued requests of each transaction, i.e. the nodes of the waits-for graph with outgoing edges
+    private final Map<TransactionId, Set<LockRequest>> tidWaits;
+
+    //transactions chosen as deadlock victims that have not completed yet
+    private final Set<TransactionId> victims;
+
+    private long numDeadlocks;
+
+    public LockManager() {
+
+        this(DEFAULT_STRIPES);
+
+    }
+
+    /**
+     * Creates a LockManager whose lock table is split into the specified
+     * number of stripes.
+     */
+    public LockManager(int numStripes) {
+
+        stripes = new Stripe[numStripes];
+
+        for (int i = 0; i < numStripes; i++) stripes[i] = new Stripe();
+
+        tidLocks = new ConcurrentHashMap<TransactionId, Set<PageId>>();
+
+        tidWaits = new HashMap<TransactionId, Set<LockRequest>>();
+
+        victims = ConcurrentHashMap.newKeySet();
+
+    }
+
+    /** Return true if the specified transaction has a lock on the specified page */
+    public boolean holdsLock(TransactionId tid, PageId pid) {
+
+        Stripe stripe = stripeOf(pid);
+
+        synchronized (stripe) {
+
+            LockState state = stripe.lockTable.get(pid);
+
+            return state != null && state.holds(tid, false);
+
+        }
+    }
+
+    /** Return the pages the specified transaction currently holds locks on */
+    public Set<PageId> getLockedPages(TransactionId tid) {
+
+        Set<PageId> pages = tidLocks.get(tid);
+
+        if (pages == null) return new HashSet<PageId>();
+
+        return new HashSet<PageId>(pages);
+
+    }
+
+    /** Return the number of deadlocks detected so far */
+    public long getNumDeadlocks() {
+
+        synchronized (graph) {
+
+            return numDeadlocks;
+
+        }
+    }
+
+    /**
+     * Acquire a lock on the specified page, blocking until it is granted.
+     *
+     * @param pid the page to lock
+     * @param tid the transaction requesting the lock
+     * @param perm READ_ONLY for a shared lock, READ_WRITE for an exclusive one
+     * @throws TransactionAbortedException if the transaction was chosen as
+     *   the victim of a deadlock, or the waiting thread was interrupted
+     */
+    public void acquireLock(PageId pid, TransactionId tid, Permissions perm)
+        throws TransactionAbortedException {
+
+        boolean exclusive = perm.equals(Permissions.READ_WRITE);
+
+        LockRequest req = new LockRequest(pid, tid, exclusive);
+
+        List<LockRequest> wake = new ArrayList<LockRequest>();
+
+        if (!enqueue(req, wake)) {
+
+            //req is queued: look for the deadlocks it closes
+            for (TransactionId victim : findVictims(tid)) abort(victim, wake);
+
+        }
+
+        wakeUp(wake);
+
+        try {
+
+            synchronized (req) {
+
+                while (!req.granted && !req.aborted) req.wait();
+
+            }
+
+        } catch (InterruptedException e) {
+
+            //fall through and withdraw the request
+
+        } finally {
+
+            if (!req.granted) {
+
+                wake = new ArrayList<LockRequest>();
+
+                cancel(req, wake);
+
+                wakeUp(wake);
+
+            }
+        }
+
+        if (!req.granted) throw new TransactionAbortedException();
+    }
+
+    //grants req right away if possible, otherwise queues it; returns true unless req was queued
+    private boolean enqueue(LockRequest req, List<LockRequest> wake) {
+
+        if (victims.contains(req.tid)) {
+
+            req.aborted = true;
+
+            return true;
+
+        }
+
+        Stripe stripe = stripeOf(req.pid);
+
+        synchronized (stripe) {
+
+            LockState state = stripe.lockTable.get(req.pid);
+
+            if (state == null) {
+
+                state = new LockState();
+
+                stripe.lockTable.put(req.pid, state);
+
+            }
+
+            if (state.holds(req.tid, req.exclusive)) {
+
+                req.granted = true;
+
+                return true;
+
+            }
+
+            //fast path: nobody is queued and the current holders allow it
+            if (state.waiters.isEmpty() && state.compatible(req.tid, req.exclusive)) {
+
+                grant(state, req);
+
+                return true;
+
+            }
+
+            if (req.exclusive && state.holds(req.tid, false)) {
+
+                state.waiters.addFirst(req);//upgrade
+
+            } else {
+
+                state.waiters.addLast(req);
+
+            }
+
+            synchronized (graph) {
+
+                Set<LockRequest> waits = tidWaits.get(req.tid);
+
+                if (waits == null) {
+
+                    waits = new HashSet<LockRequest>();
+
+                    tidWaits.put(req.tid, waits);
+
+                }
+
+                waits.add(req);
+
+            }
+
+            //an upgrade at the front may be grantable already
+            grantWaiters(stripe, state, req.pid, wake);
+
+            return req.granted;
+
+        }
+    }
+
+    //withdraws a request that was not granted, adding the requests this makes grantable to wake
+    private void cancel(LockRequest req, List<LockRequest> wake) {
+
+        Stripe stripe = stripeOf(req.pid);
+
+        synchronized (stripe) {
+
+            if (req.granted) return;
+
+            req.aborted = true;
+
+            LockState state = stripe.lockTable.get(req.pid);
+
+            if (state != null && state.waiters.remove(req)) {
+
+                forgetWait(req);
+
+                //requests queued behind this one may be grantable now
+                grantWaiters(stripe, state, req.pid, wake);
+
+            }
+        }
+    }
+
+    /** Release the lock held by the specified transaction on the specified page */
+    public void releasePage(PageId pid, TransactionId tid) {
+
+        List<LockRequest> wake = new ArrayList<LockRequest>();
+
+        Set<PageId> pages = tidLocks.get(tid);
+
+        if (pages != null) pages.remove(pid);
+
+        release(pid, tid, wake);
+
+        wakeUp(wake);
+    }
+
+    /**
+     * Release all locks held by the specified transaction, and withdraw the
+     * requests it is still waiting on. Only the stripes of the pages the
+     * transaction holds or waits for are visited.
+     */
+    public void releaseTid(TransactionId tid) {
+
+        List<LockRequest> wake = new ArrayList<LockRequest>();
+
+        abort(tid, wake);
+
+        Set<PageId> pages = tidLocks.remove(tid);
+
+        if (pages != null) {
+
+            for (PageId pid : pages) release(pid, tid, wake);
+
+        }
+
+        victims.remove(tid);
+
+        wakeUp(wake);
+    }
+
+    private void release(PageId pid, TransactionId tid, List<LockRequest> wake) {
+
+        Stripe stripe = stripeOf(pid);
+
+        synchronized (stripe) {
+
+            LockState state = stripe.lockTable.get(pid);
+
+            if (state == null) return;
+
+            state.release(tid);
+
+            grantWaiters(stripe, state, pid, wake);
+
+        }
+    }
+
+    //grants the requests at the head of the queue that are compatible with the holders,
+    //then brings the waits-for edges of the rest up to date; the caller holds the stripe's monitor
+    private void grantWaiters(Stripe stripe, LockState state, PageId pid, List<LockRequest> wake) {
+
+        while (!state.waiters.isEmpty()) {
+
+            LockRequest head = state.waiters.getFirst();
+
+            if (!state.compatible(head.tid, head.exclusive)) break;
+
+            state.waiters.removeFirst();
+
+            forgetWait(head);
+
+            grant(state, head);
+
+            wake.add(head);
+
+        }
+
+        if (state.isIdle()) {
+
+            stripe.lockTable.remove(pid);
+
+        } else if (!state.waiters.isEmpty()) {
+
+            synchronized (graph) {
+
+                state.refreshBlockers();
+
+            }
+        }
+    }
+
+    //fails every queued request of tid, adding them and the requests this makes grantable to wake
+    private void abort(TransactionId tid, List<LockRequest> wake) {
+
+        List<LockRequest> waiting;
+
+        synchronized (graph) {
+
+            Set<LockRequest> waits = tidWaits.get(tid);
+
+            if (waits == null) return;
+
+            waiting = new ArrayList<LockRequest>(waits);
+
+        }
+
+        for (LockRequest req : waiting) cancel(req, wake);
+
+        wake.addAll(waiting);
+    }
+
+    //searches the waits-for graph for cycles through tid; returns the transactions to abort, one on each
+    private List<TransactionId> findVictims(TransactionId tid) {
+
+        List<TransactionId> chosen = new ArrayList<TransactionId>();
+
+        synchronized (graph) {
+
+            //tid may close several cycles at once, and breaking one of them leaves the others
+            List<TransactionId> cycle;
+
+            while (!victims.contains(tid) && (cycle = findCycle(tid)) != null) {
+
+                //the youngest transaction on the cycle has done the least work
+                TransactionId victim = cycle.get(0);
+
+                for (TransactionId t : cycle) {
+
+                    if (t.getId() > victim.getId()) victim = t;
+
+                }
+
+                victims.add(victim);
+
+                numDeadlocks++;
+
+                chosen.add(victim);
+
+            }
+        }
+
+        return chosen;
+    }
+
+    //depth-first search of the waits-for graph for a path from tid back to itself
+    private List<TransactionId> findCycle(TransactionId tid) {
+
+        LinkedList<TransactionId> path = new LinkedList<TransactionId>();
+
+        path.add(tid);
+
+        if (findPath(tid, tid, path, new HashSet<TransactionId>())) return path;
+
+        return null;
+    }
+
+    private boolean findPath(TransactionId from, TransactionId target,
+                             LinkedList<TransactionId> path, Set<TransactionId> visited) {
+
+        Set<LockRequest> waits = tidWaits.get(from);
+
+        if (waits == null) return false;
+
+        for (LockRequest req : waits) {
+
+            for (TransactionId next : req.blockers) {
+
+                if (next.equals(target)) return true;
+
+                //a victim's requests are being withdrawn, so it breaks the cycles it is on
+                if (victims.contains(next) || !visited.add(next)) continue;
+
+                path.add(next);
+
+                if (findPath(next, target, path, visited)) return true;
+
+                path.removeLast();
+
+            }
+        }
+
+        return false;
+    }
+
+    private void forgetWait(LockRequest req) {
+
+        synchronized (graph) {
+
+            Set<LockRequest> waits = tidWaits.get(req.tid);
+
+            if (waits == null) return;
+
+            waits.remove(req);
+
+            if (waits.isEmpty()) tidWaits.remove(req.tid);
+
+        }
+    }
+
+    //called without holding any of the lock manager's monitors, see the class comment
+    private void wakeUp(List<LockRequest> wake) {
+
+        for (LockRequest req : wake) {
+
+            synchronized (req) {
+
+                req.notify();
+
+            }
+        }
+    }
+
+    private void grant(LockState state, LockRequest req) {
+
+        state.grant(req.tid, req.exclusive);
+
+        req.granted = true;
+
+        Set<PageId> pages = tidLocks.get(req.tid);
+
+        if (pages == null) {
+
+            pages = ConcurrentHashMap.newKeySet();
+
+            Set<PageId> prev = tidLocks.putIfAbsent(req.tid, pages);
+
+            if (prev != null) pages = prev;
+
+        }
+
+        pages.add(req.pid);
+    }
+
+    private Stripe stripeOf(PageId pid) {
+
+        int h = pid.hashCode();
+
+        h ^= (h >>> 16);
+
+        return stripes[(h & 0x7fffffff) % stripes.length];
+    }
+}
@@ -23,6 +23,21 @@ public class LogicalJoinNode {
     /** The join predicate */
     public Predicate.Op p;
 
+    /** The ways JoinOptimizer can run a join */
+    public enum Method {
+        /** a BlockNestedLoopJoin, rescanning t2 per block of tuples of t1 */
+        NESTED_LOOP,
+        /** an IndexNestedLoopJoin, probing an index on t2.f2 per tuple of t1 */
+        INDEX_NESTED_LOOP,
+        /** a HashEquiJoin, hashing t1 and probing it with t2 */
+        HASH,
+        /** a SortMergeJoin, sorting t1 and t2 on the join fields where they are not sorted yet */
+        SORT_MERGE
+    }
+
+    /** How the join is run; set by JoinOptimizer from the estimated costs */
+    public Method method = Method.NESTED_LOOP;
+
     public LogicalJoinNode() {
     }
 
@@ -63,6 +78,13 @@ public class LogicalJoinNode {
         return j2;
     }
     
+    /** Return a copy of this LogicalJoinNode to be run by method m. */
+    public LogicalJoinNode withMethod(Method m) {
+        LogicalJoinNode j2 = new LogicalJoinNode(t1Alias,t2Alias,f1PureName,f2PureName,p);
+        j2.method = m;
+        return j2;
+    }
+    
     @Override public boolean equals(Object o) {
         LogicalJoinNode j2 =(LogicalJoinNode)o;
         return (j2.t1Alias.equals(t1Alias)  || j2.t1Alias.equals(t2Alias)) && (j2.t2Alias.equals(t1Alias)  || j2.t2Alias.equals(t2Alias));
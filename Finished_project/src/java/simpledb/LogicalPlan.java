@@ -22,19 +22,26 @@ import java.util.NoSuchElementException;
  * best implementations for joins.
  */
 public class LogicalPlan {
+    /** The limit of a plan without a LIMIT clause */
+    public static final int NO_LIMIT = -1;
+
     private Vector<LogicalJoinNode> joins;
     private Vector<LogicalScanNode> tables;
     private Vector<LogicalFilterNode> filters;
     private HashMap<String,DbIterator> subplanMap;
     private HashMap<String,Integer> tableMap;
+    private HashMap<String,LogicalFilterNode> indexFilters = new HashMap<String,LogicalFilterNode>();
 
     private Vector<LogicalSelectListNode> selectList;
     private String groupByField = null;
     private boolean hasAgg = false;
     private String aggOp;
     private String aggField;
-    private boolean oByAsc, hasOrderBy = false;
-    private String oByField;
+    private boolean hasOrderBy = false;
+    private Vector<String> oByFields = new Vector<String>();
+    private Vector<Boolean> oByAsc = new Vector<Boolean>();
+    private int limit = NO_LIMIT;
+    private int offset = 0;
     private String query;
 //    private Query owner;
 
@@ -76,6 +83,14 @@ public class LogicalPlan {
         return tableMap.get(alias);
     }
     
+    /** Given a table alias, return the pure name of the field the table is read in order of,
+        by an IndexScan that {@link #physicalPlan} chose to answer a filter, or null if it is not.
+     */
+    public String getIndexScanField(String alias) {
+        LogicalFilterNode lf = indexFilters.get(alias);
+        return lf == null ? null : lf.fieldPureName;
+    }
+
     public HashMap<String,Integer> getTableAliasToIdMapping()
     {
         return this.tableMap;
@@ -203,19 +218,43 @@ public class LogicalPlan {
         hasAgg = true;
     }
 
-    /** Add an ORDER BY expression in the specified order on the specified field.  SimpleDb only supports
-        a single ORDER BY field.
+    /** Add an ORDER BY expression in the specified order on the specified field.  Fields added later
+        break ties of the ones added before.
         @param field the field to order by
         @param asc true if should be ordered in ascending order, false for descending order
      * @throws ParsingException 
     */
     public void addOrderBy(String field, boolean asc) throws ParsingException {
         field=disambiguateName(field);
-        oByField = field;
-        oByAsc = asc;
+        oByFields.add(field);
+        oByAsc.add(asc);
         hasOrderBy = true;
     }
 
+    /** Add a LIMIT and OFFSET: return at most limit tuples, after skipping the first offset of them.
+        With an ORDER BY, only the first offset + limit tuples of the order are found, in
+        memory if they fit in a sort's memory budget, and by a full sort otherwise.
+        @param limit the number of tuples to return at most
+        @param offset the number of tuples to skip
+     * @throws ParsingException if either is negative
+    */
+    public void setLimit(int limit, int offset) throws ParsingException {
+        if (limit < 0 || offset < 0)
+            throw new ParsingException("LIMIT and OFFSET must not be negative");
+        this.limit = limit;
+        this.offset = offset;
+    }
+
+    /** @return the LIMIT of the plan, or NO_LIMIT if it has none */
+    public int getLimit() {
+        return limit;
+    }
+
+    /** @return the OFFSET of the plan, 0 if it has none */
+    public int getOffset() {
+        return offset;
+    }
+
     /** Given a name of a field, try to figure out what table it belongs to by looking
      *   through all of the tables added via {@link #addScan}. 
      *  @return A fully qualified name of the form tableAlias.name.  If the name parameter is already qualified
@@ -271,6 +310,50 @@ public class LogicalPlan {
         throw new ParsingException("Unknown predicate " + s);
     }
 
+    /** Parse the constant of a filter as a field of the given type. */
+    private static Field constant(Type type, String c) {
+        if (type == Type.INT_TYPE)
+            return new IntField(new Integer(c).intValue());
+        else
+            return new StringField(c, Type.STRING_LEN);
+    }
+
+    /** For each table alias, find the filter on an indexed column that an
+     *  {@link IndexScan} answers most cheaply, if any costs less than scanning
+     *  the table according to {@link TableStats#estimateIndexScanCost}.
+     *  @param statsMap the TableStats of each table, by table name
+     *  @return the chosen filter of each table alias that has one
+     */
+    private HashMap<String,LogicalFilterNode> chooseIndexFilters(Map<String,TableStats> statsMap) throws ParsingException {
+        HashMap<String,LogicalFilterNode> chosen = new HashMap<String,LogicalFilterNode>();
+        HashMap<String,Double> bestCosts = new HashMap<String,Double>();
+        for (LogicalFilterNode lf : filters) {
+            if (!IndexScan.isRange(lf.p))
+                continue;
+            Integer tableId = getTableId(lf.tableAlias);
+            if (tableId == null)
+                continue;
+            TupleDesc td = Database.getCatalog().getTupleDesc(tableId);
+            BTreeFile index;
+            try {
+                index = Database.getCatalog().getIndex(tableId, td.fieldNameToIndex(lf.fieldPureName));
+            } catch (NoSuchElementException e) {
+                continue;
+            }
+            TableStats s = statsMap.get(Database.getCatalog().getTableName(tableId));
+            if (index == null || s == null)
+                continue;
+            double sel = s.estimateSelectivity(index.getKeyField(), lf.p, constant(index.getKeyType(), lf.c));
+            double cost = s.estimateIndexScanCost(index, sel);
+            Double best = bestCosts.get(lf.tableAlias);
+            if (cost < (best == null ? s.estimateScanCost() : best)) {
+                chosen.put(lf.tableAlias, lf);
+                bestCosts.put(lf.tableAlias, cost);
+            }
+        }
+        return chosen;
+    }
+
     /** Convert this LogicalPlan into a physicalPlan represented by a {@link DbIterator}.  Attempts to
      *   find the optimal plan by using {@link JoinOptimizer#orderJoins} to order the joins in the plan.
      *  @param t The transaction that the returned DbIterator will run as a part of
@@ -306,6 +389,15 @@ public class LogicalPlan {
 
         }
 
+        //per table, the filter an IndexScan answers instead of a scan, if that is cheaper
+        indexFilters = chooseIndexFilters(statsMap);
+        for (LogicalFilterNode lf : indexFilters.values()) {
+            BTreeFile index = Database.getCatalog().getIndex(getTableId(lf.tableAlias),
+                    Database.getCatalog().getTupleDesc(getTableId(lf.tableAlias)).fieldNameToIndex(lf.fieldPureName));
+            subplanMap.put(lf.tableAlias, new IndexScan(t, index, lf.tableAlias, lf.p,
+                    constant(index.getKeyType(), lf.c)));
+        }
+
         Iterator<LogicalFilterNode> filterIt = filters.iterator();        
         while (filterIt.hasNext()) {
             LogicalFilterNode lf = filterIt.next();
@@ -323,10 +415,7 @@ public class LogicalPlan {
             } catch (java.util.NoSuchElementException e) {
                 throw new ParsingException("Unknown field in filter expression " + lf.fieldQuantifiedName);
             }
-            if (ftyp == Type.INT_TYPE)
-                f = new IntField(new Integer(lf.c).intValue());
-            else
-                f = new StringField(lf.c, Type.STRING_LEN);
+            f = constant(ftyp, lf.c);
 
             Predicate p = null;
             try {
@@ -334,7 +423,8 @@ public class LogicalPlan {
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown field " + lf.fieldQuantifiedName);
             }
-            subplanMap.put(lf.tableAlias, new Filter(p, subplan));
+            if (indexFilters.get(lf.tableAlias) != lf)
+                subplanMap.put(lf.tableAlias, new Filter(p, subplan));
 
             TableStats s = statsMap.get(Database.getCatalog().getTableName(this.getTableId(lf.tableAlias)));
             
@@ -474,10 +564,28 @@ public class LogicalPlan {
             node = aggNode;
         }
 
+        boolean topN = false;
         if (hasOrderBy) {
-            node = new OrderBy(node.getTupleDesc().fieldNameToIndex(oByField), oByAsc, node);
+            int[] fields = new int[oByFields.size()];
+            boolean[] asc = new boolean[oByFields.size()];
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = node.getTupleDesc().fieldNameToIndex(oByFields.get(i));
+                asc[i] = oByAsc.get(i);
+            }
+            // with a LIMIT, only the first offset + limit tuples of the order are kept, if
+            // they fit in the memory of a sort; TopN cannot spill, so more are sorted
+            long kept = (long) offset + limit;
+            topN = limit != NO_LIMIT && kept * node.getTupleDesc().getSize()
+                    <= (long) OrderBy.DEFAULT_MEMORY_PAGES * BufferPool.PAGE_SIZE;
+            if (topN)
+                node = new TopN(fields, asc, (int) kept, node);
+            else
+                node = new OrderBy(fields, asc, node);
         }
 
+        if (limit != NO_LIMIT && (offset > 0 || !topN))
+            node = new Limit(limit, offset, node);
+
         return new Project(outFields, outTypes, node);
     }
 
@@ -4,21 +4,41 @@ import java.util.*;
 
 /**
  * OrderBy is an operator that implements a relational ORDER BY.
+ * <p>
+ * It sorts on one or more fields, each ascending or descending, with later
+ * fields breaking ties of earlier ones; tuples equal on all of them keep the
+ * order of the child. The child is read into memory up to a budget. If it
+ * all fits it is sorted there; otherwise this is an external merge sort:
+ * each budget's worth of tuples is sorted and written out as a run to a
+ * SpillFile, and the runs are merged with a heap, as many at a time as the
+ * budget has pages, in as many passes as it takes to leave that few.
  */
 public class OrderBy extends Operator {
 
     private static final long serialVersionUID = 1L;
+
+    /** The default memory budget of a sort, in pages of tuples */
+    public static final int DEFAULT_MEMORY_PAGES = 500;
+
     private DbIterator child;
     private TupleDesc td;
     private ArrayList<Tuple> childTups = new ArrayList<Tuple>();
-    private int orderByField;
+    private int[] orderByFields;
+    private boolean[] ascending;
     private String orderByFieldName;
     private Iterator<Tuple> it;
-    private boolean asc;
+    private final int memoryPages;
+    private final TupleComparator comparator;
+
+    //the sorted runs, if the child did not fit in memory, and the merge of them
+    private ArrayList<SpillFile> runs = new ArrayList<SpillFile>();
+    private ArrayList<DbIterator> readers;
+    private PriorityQueue<Head> heap;
+    private int spilledRuns;
 
     /**
      * Creates a new OrderBy node over the tuples from the iterator.
-     * 
+     *
      * @param orderbyField
      *            the field to which the sort is applied.
      * @param asc
@@ -27,28 +47,77 @@ public class OrderBy extends Operator {
      *            the tuples to sort.
      */
     public OrderBy(int orderbyField, boolean asc, DbIterator child) {
+        this(new int[] { orderbyField }, new boolean[] { asc }, child);
+    }
+
+    /**
+     * Creates a new OrderBy node that sorts on several fields.
+     *
+     * @param orderbyFields
+     *            the fields to which the sort is applied, most significant
+     *            first.
+     * @param asc
+     *            for each field, true if the sort order is ascending.
+     * @param child
+     *            the tuples to sort.
+     */
+    public OrderBy(int[] orderbyFields, boolean[] asc, DbIterator child) {
+        this(orderbyFields, asc, child, DEFAULT_MEMORY_PAGES);
+    }
+
+    /**
+     * Constructor with a memory budget.
+     *
+     * @param memoryPages
+     *            how many pages' worth of tuples the sort may hold in memory
+     *            before it spills runs
+     */
+    public OrderBy(int[] orderbyFields, boolean[] asc, DbIterator child, int memoryPages) {
+        if (orderbyFields.length == 0 || orderbyFields.length != asc.length)
+            throw new IllegalArgumentException("need one order for each of one or more fields");
         this.child = child;
         td = child.getTupleDesc();
-        this.orderByField = orderbyField;
-        this.orderByFieldName = td.getFieldName(orderbyField);
-        this.asc = asc;
+        this.orderByFields = orderbyFields.clone();
+        this.ascending = asc.clone();
+        this.orderByFieldName = td.getFieldName(orderbyFields[0]);
+        this.memoryPages = Math.max(1, memoryPages);
+        comparator = new TupleComparator(orderByFields, ascending);
     }
-    
+
+    /** @return true if the first sort field is in ascending order */
     public boolean isASC()
     {
-	return this.asc;
+	return this.ascending[0];
     }
-    
+
+    /** @return the first sort field */
     public int getOrderByField()
     {
-        return this.orderByField;
+        return this.orderByFields[0];
     }
-    
+
+    /** @return the sort fields, most significant first */
+    public int[] getOrderByFields()
+    {
+        return this.orderByFields.clone();
+    }
+
+    /** @return for each sort field, true if it is in ascending order */
+    public boolean[] getAscending()
+    {
+        return this.ascending.clone();
+    }
+
     public String getOrderFieldName()
     {
 	return this.orderByFieldName;
     }
-    
+
+    /** @return the number of runs the last open() spilled, 0 if it sorted in memory */
+    public int numRuns() {
+        return spilledRuns;
+    }
+
     public TupleDesc getTupleDesc() {
         return td;
     }
@@ -56,32 +125,149 @@ public class OrderBy extends Operator {
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         child.open();
-        // load all the tuples in a collection, and sort it
-        while (child.hasNext())
-            childTups.add((Tuple) child.next());
-        Collections.sort(childTups, new TupleComparator(orderByField, asc));
-        it = childTups.iterator();
+        clear();
+        // load the tuples a budget at a time, sort them, and spill them if there are more
+        long budget = (long) memoryPages * BufferPool.PAGE_SIZE;
+        while (child.hasNext()) {
+            childTups.add(child.next().detached());
+            if ((long) childTups.size() * td.getSize() >= budget && child.hasNext())
+                spillRun();
+        }
+        if (runs.isEmpty()) {
+            Collections.sort(childTups, comparator);
+            it = childTups.iterator();
+        } else {
+            if (!childTups.isEmpty())
+                spillRun();
+            int fanIn = Math.max(2, memoryPages - 1);
+            while (runs.size() > fanIn)
+                mergePass(fanIn);
+            startMerge();
+        }
         super.open();
     }
 
     public void close() {
         super.close();
-        it = null;
+        child.close();
+        clear();
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
-        it = childTups.iterator();
+        if (runs.isEmpty())
+            it = childTups.iterator();
+        else
+            startMerge();
+    }
+
+    //drops the tuples and runs of the last open
+    private void clear() {
+        it = null;
+        childTups = new ArrayList<Tuple>();
+        stopMerge();
+        for (SpillFile run : runs)
+            run.delete();
+        runs = new ArrayList<SpillFile>();
+        spilledRuns = 0;
+    }
+
+    private void spillRun() throws DbException {
+        Collections.sort(childTups, comparator);
+        SpillFile run = new SpillFile(td);
+        for (Tuple t : childTups)
+            run.add(t);
+        runs.add(run);
+        spilledRuns++;
+        childTups = new ArrayList<Tuple>();
+    }
+
+    /**
+     * Merges each fanIn consecutive runs into one, so that the order of
+     * equal tuples is kept.
+     */
+    private void mergePass(int fanIn) throws DbException, TransactionAbortedException {
+        ArrayList<SpillFile> merged = new ArrayList<SpillFile>();
+        for (int i = 0; i < runs.size(); i += fanIn) {
+            List<SpillFile> group = runs.subList(i, Math.min(runs.size(), i + fanIn));
+            PriorityQueue<Head> groupHeap = new PriorityQueue<Head>();
+            ArrayList<DbIterator> groupReaders = open(group, groupHeap);
+            SpillFile run = new SpillFile(td);
+            while (!groupHeap.isEmpty())
+                run.add(pop(groupHeap, groupReaders));
+            for (DbIterator reader : groupReaders)
+                reader.close();
+            for (SpillFile f : group)
+                f.delete();
+            merged.add(run);
+        }
+        runs = merged;
+    }
+
+    private void startMerge() throws DbException, TransactionAbortedException {
+        stopMerge();
+        heap = new PriorityQueue<Head>();
+        readers = open(runs, heap);
+    }
+
+    private void stopMerge() {
+        if (readers != null)
+            for (DbIterator reader : readers)
+                reader.close();
+        readers = null;
+        heap = null;
+    }
+
+    //opens a reader over each run, and puts the first tuple of each in heap
+    private ArrayList<DbIterator> open(List<SpillFile> files, PriorityQueue<Head> h)
+            throws DbException, TransactionAbortedException {
+        ArrayList<DbIterator> opened = new ArrayList<DbIterator>();
+        for (SpillFile f : files) {
+            DbIterator reader = f.iterator();
+            reader.open();
+            if (reader.hasNext())
+                h.add(new Head(reader.next(), opened.size()));
+            opened.add(reader);
+        }
+        return opened;
+    }
+
+    //takes the least tuple off h, and replaces it with the next of its run
+    private Tuple pop(PriorityQueue<Head> h, ArrayList<DbIterator> from)
+            throws DbException, TransactionAbortedException {
+        Head head = h.poll();
+        DbIterator reader = from.get(head.run);
+        if (reader.hasNext())
+            h.add(new Head(reader.next(), head.run));
+        return head.t;
+    }
+
+    /** The next tuple of a run, ordered by the sort and then by run. */
+    private class Head implements Comparable<Head> {
+        final Tuple t;
+        final int run;
+
+        Head(Tuple t, int run) {
+            this.t = t;
+            this.run = run;
+        }
+
+        public int compareTo(Head o) {
+            int c = comparator.compare(t, o.t);
+            return c != 0 ? c : run - o.run;
+        }
     }
 
     /**
      * Operator.fetchNext implementation. Returns tuples from the child operator
      * in order
-     * 
+     *
      * @return The next tuple in the ordering, or null if there are no more
      *         tuples
      */
     protected Tuple fetchNext() throws NoSuchElementException,
             TransactionAbortedException, DbException {
+        if (heap != null)
+            return heap.isEmpty() ? null : pop(heap, readers);
         if (it != null && it.hasNext()) {
             return it.next();
         } else
@@ -101,23 +287,30 @@ public class OrderBy extends Operator {
 }
 
 class TupleComparator implements Comparator<Tuple> {
-    int field;
-    boolean asc;
+    int[] fields;
+    boolean[] asc;
 
     public TupleComparator(int field, boolean asc) {
-        this.field = field;
+        this(new int[] { field }, new boolean[] { asc });
+    }
+
+    public TupleComparator(int[] fields, boolean[] asc) {
+        this.fields = fields;
         this.asc = asc;
     }
 
     public int compare(Tuple o1, Tuple o2) {
-        Field t1 = (o1).getField(field);
-        Field t2 = (o2).getField(field);
-        if (t1.compare(Predicate.Op.EQUALS, t2))
-            return 0;
-        if (t1.compare(Predicate.Op.GREATER_THAN, t2))
-            return asc ? 1 : -1;
-        else
-            return asc ? -1 : 1;
+        for (int i = 0; i < fields.length; i++) {
+            Field t1 = (o1).getField(fields[i]);
+            Field t2 = (o2).getField(fields[i]);
+            if (t1.compare(Predicate.Op.EQUALS, t2))
+                continue;
+            if (t1.compare(Predicate.Op.GREATER_THAN, t2))
+                return asc[i] ? 1 : -1;
+            else
+                return asc[i] ? -1 : 1;
+        }
+        return 0;
     }
-    
+
 }
@@ -1,5 +1,7 @@
 package simpledb;
 
+import java.nio.ByteBuffer;
+
 /**
  * Page is the interface used to represent pages that are resident in the
  * BufferPool.  Typically, DbFiles will read and write pages from disk.
@@ -46,6 +48,18 @@ public interface Page {
 
     public byte[] getPageData();
 
+    /**
+     * Writes the bytes getPageData would return into buf, starting at its
+     * position, so that callers can serialize pages into a buffer they
+     * reuse. Pages that can should override this to write their contents
+     * with bulk puts instead of allocating an array for them.
+     *
+     * @param buf the buffer to write to, with at least the page size remaining
+     */
+    default void writePageData(ByteBuffer buf) {
+        buf.put(getPageData());
+    }
+
     /** Provide a representation of this page before any modifications were made
         to it.  Used by recovery.
     */
@@ -4,6 +4,7 @@ import Zql.*;
 import java.io.*;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.regex.*;
 
 import jline.ArgumentCompletor;
 import jline.ConsoleReader;
@@ -253,18 +254,15 @@ public class Parser {
         if (q.getOrderBy() != null) {
             @SuppressWarnings("unchecked")
             Vector<ZOrderBy> obys = q.getOrderBy();
-            if (obys.size() > 1) {
-                throw new simpledb.ParsingException(
-                        "Multi-attribute ORDER BY is not supported.");
-            }
-            ZOrderBy oby = obys.elementAt(0);
-            if (!(oby.getExpression() instanceof ZConstant)) {
-                throw new simpledb.ParsingException(
-                        "Complex ORDER BY's are not supported");
-            }
-            ZConstant f = (ZConstant) oby.getExpression();
+            for (ZOrderBy oby : obys) {
+                if (!(oby.getExpression() instanceof ZConstant)) {
+                    throw new simpledb.ParsingException(
+                            "Complex ORDER BY's are not supported");
+                }
+                ZConstant f = (ZConstant) oby.getExpression();
 
-            lp.addOrderBy(f.getValue(), oby.getAscOrder());
+                lp.addOrderBy(f.getValue(), oby.getAscOrder());
+            }
 
         }
         return lp;
@@ -280,6 +278,7 @@ public class Parser {
         Query query = new Query(tId);
 
         LogicalPlan lp = parseQueryLogicalPlan(tId, s);
+        applyLimit(lp);
         DbIterator physicalPlan = lp.physicalPlan(tId,
                 TableStats.getStatsMap(), explain);
         query.setPhysicalPlan(physicalPlan);
@@ -388,6 +387,7 @@ public class Parser {
         } else {
             ZQuery zq = (ZQuery) s.getQuery();
             LogicalPlan lp = parseQueryLogicalPlan(tId, zq);
+            applyLimit(lp);
             newTups = lp.physicalPlan(tId, TableStats.getStatsMap(), explain);
         }
         Query insertQ = new Query(tId);
@@ -466,12 +466,13 @@ public class Parser {
 
     public LogicalPlan generateLogicalPlan(TransactionId tid, String s)
             throws simpledb.ParsingException {
-        ByteArrayInputStream bis = new ByteArrayInputStream(s.getBytes());
+        ByteArrayInputStream bis = new ByteArrayInputStream(stripLimit(s).getBytes());
         ZqlParser p = new ZqlParser(bis);
         try {
             ZStatement stmt = p.readStatement();
             if (stmt instanceof ZQuery) {
                 LogicalPlan lp = parseQueryLogicalPlan(tid, (ZQuery) stmt);
+                applyLimit(lp);
                 return lp;
             }
         } catch (Zql.ParseException e) {
@@ -504,7 +505,8 @@ public class Parser {
 
     public void processNextStatement(InputStream is) {
         try {
-            ZqlParser p = new ZqlParser(is);
+            ZqlParser p = new ZqlParser(new ByteArrayInputStream(stripLimit(
+                    readStatementText(is)).getBytes("UTF-8")));
             ZStatement s = p.readStatement();
 
             Query query = null;
@@ -579,10 +581,60 @@ public class Parser {
         }
     }
 
+    // Zql has no LIMIT, so a LIMIT n [OFFSET m], or LIMIT m, n, at the end of a
+    // statement is cut off before Zql reads it, and added to its plan after
+    private static final Pattern LIMIT = Pattern.compile(
+            "\\s+limit\\s+(\\d{1,9})(?:\\s*,\\s*(\\d{1,9})|\\s+offset\\s+(\\d{1,9}))?\\s*$",
+            Pattern.CASE_INSENSITIVE);
+    private int limit = LogicalPlan.NO_LIMIT;
+    private int offset = 0;
+
+    /**
+     * Cuts the LIMIT clause, if any, off the first statement of s, and keeps
+     * it for {@link #applyLimit}.
+     *
+     * @return s without the LIMIT clause
+     */
+    private String stripLimit(String s) {
+        limit = LogicalPlan.NO_LIMIT;
+        offset = 0;
+        int end = s.indexOf(';');
+        String stmt = end < 0 ? s : s.substring(0, end);
+        Matcher m = LIMIT.matcher(stmt);
+        if (!m.find())
+            return s;
+        if (m.group(2) != null) {
+            offset = Integer.parseInt(m.group(1));
+            limit = Integer.parseInt(m.group(2));
+        } else {
+            limit = Integer.parseInt(m.group(1));
+            if (m.group(3) != null)
+                offset = Integer.parseInt(m.group(3));
+        }
+        return stmt.substring(0, m.start()) + s.substring(stmt.length());
+    }
+
+    /** Adds the LIMIT clause cut off the statement being run, if any, to its plan, once. */
+    private void applyLimit(LogicalPlan lp) throws simpledb.ParsingException {
+        if (limit != LogicalPlan.NO_LIMIT)
+            lp.setLimit(limit, offset);
+        limit = LogicalPlan.NO_LIMIT;
+        offset = 0;
+    }
+
+    private static String readStatementText(InputStream is) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int n;
+        while ((n = is.read(buf)) > 0)
+            bytes.write(buf, 0, n);
+        return bytes.toString("UTF-8");
+    }
+
     // Basic SQL completions
     public static final String[] SQL_COMMANDS = { "select", "from", "where",
             "group by", "max(", "min(", "avg(", "count", "rollback", "commit",
-            "insert", "delete", "values", "into" };
+            "insert", "delete", "values", "into", "limit", "offset" };
 
     public static void main(String argv[]) throws IOException {
 
@@ -75,6 +75,9 @@ public class Predicate implements Serializable {
 
     private Field operand;
 
+    //the operand as a value of the dictionary of the last DictionaryField it was compared to
+    private transient DictionaryField boundOperand;
+
     public Predicate(int field, Op op, Field operand) {
         // some code goes here
         this.field = field;
@@ -123,7 +126,32 @@ public class Predicate implements Serializable {
      */
     public boolean filter(Tuple t) {
         // some code goes here
-        return t.getField(field).compare(op, operand);
+        Field f = t.getField(field);
+
+        //equality on a dictionary encoded column compares codes once the operand's code is known
+        if (f instanceof DictionaryField && (op == Op.EQUALS || op == Op.NOT_EQUALS))
+            return f.compare(op, bind((DictionaryField) f));
+
+        return f.compare(op, operand);
+    }
+
+    //the operand as a value of f's dictionary, or the operand itself if that has no code for it
+    private Field bind(DictionaryField f) {
+
+        DictionaryField bound = boundOperand;
+
+        if (bound != null && bound.getDictionary() == f.getDictionary()) return bound;
+
+        if (f.getDictionary() == null || !(operand instanceof StringField)) return operand;
+
+        //a value without a code may get one later, so only found values are kept
+        bound = f.getDictionary().lookup(((StringField) operand).getValue());
+
+        if (bound == null) return operand;
+
+        boundOperand = bound;
+
+        return bound;
     }
 
     /**
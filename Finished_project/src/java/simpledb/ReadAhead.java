@@ -0,0 +1,105 @@
+package simpledb;
+
+/**
+ * ReadAhead follows the pages one scan over a DbFile asks for and, while the
+ * scan is sequential, has the BufferPool read the next pages in the
+ * background so that they are cached by the time the scan gets to them.
+ * <p>
+ * Two consecutive pages make the scan sequential; from then on the window
+ * of pages after the current one is kept requested. The window starts at
+ * MIN_WINDOW pages. It doubles each time the scan finds its page uncached,
+ * i.e. read-ahead did not get far enough ahead, and halves when most of the
+ * pages it requests turn out to be cached already. It never exceeds
+ * MAX_WINDOW or a quarter of the pool, so that read-ahead does not push out
+ * the pages it read before the scan uses them. Any jump resets it.
+ */
+public class ReadAhead {
+
+    /** Smallest and largest number of pages read ahead of a scan. */
+    public static final int MIN_WINDOW = 2;
+    public static final int MAX_WINDOW = 64;
+
+    private final int tableId;
+
+    private int lastPage = -2;
+
+    //highest page read-ahead has been asked for
+    private int requestedTo = -1;
+
+    private int window = MIN_WINDOW;
+
+    //pages asked for since the window was last adapted, and how many were cached already
+    private int asked;
+
+    private int cached;
+
+    /**
+     * @param tableId the file the scan reads
+     */
+    public ReadAhead(int tableId) {
+
+        this.tableId = tableId;
+
+    }
+
+    /**
+     * Called before the scan fetches a page.
+     *
+     * @param pageNo the page the scan is about to fetch
+     * @param numPages the number of pages in the file
+     */
+    public void access(int pageNo, int numPages) {
+
+        if (pageNo == lastPage) return;
+
+        boolean sequential = pageNo == lastPage + 1;
+
+        lastPage = pageNo;
+
+        if (!sequential) {
+
+            window = MIN_WINDOW;
+
+            requestedTo = pageNo;
+
+            asked = cached = 0;
+
+            return;
+
+        }
+
+        BufferPool bp = Database.getBufferPool();
+
+        int max = Math.max(MIN_WINDOW, Math.min(MAX_WINDOW, bp.getCapacity() / 4));
+
+        //the scan caught up with read-ahead
+        if (!bp.isCached(pid(pageNo))) window = Math.min(window * 2, max);
+
+        int end = Math.min(numPages - 1, pageNo + Math.min(window, max));
+
+        for (int p = Math.max(requestedTo + 1, pageNo + 1); p <= end; p++) {
+
+            asked++;
+
+            if (!bp.prefetch(pid(p))) cached++;
+
+        }
+
+        requestedTo = Math.max(requestedTo, end);
+
+        if (asked >= window) {
+
+            //mostly cached: the file is warm and read-ahead is wasted effort
+            if (cached * 4 >= asked * 3) window = Math.max(MIN_WINDOW, window / 2);
+
+            asked = cached = 0;
+
+        }
+    }
+
+    private PageId pid(int pageNo) {
+
+        return new HeapPageId(tableId, pageNo);
+
+    }
+}
@@ -0,0 +1,64 @@
+package simpledb;
+
+/**
+ * ReplacementPolicy decides which cached page the BufferPool drops when it
+ * needs room. The BufferPool keeps one policy per shard of its page table and
+ * calls it only while holding that shard's latch, so implementations need no
+ * synchronization of their own.
+ */
+public interface ReplacementPolicy {
+
+    /** The replacement policies a BufferPool can be constructed with. */
+    public enum Kind {
+        LRU, TWO_Q, CLOCK;
+
+        /**
+         * Creates a policy of this kind.
+         *
+         * @param capacity the number of pages the policy is expected to track
+         */
+        public ReplacementPolicy create(int capacity) {
+            switch (this) {
+            case TWO_Q:
+                return new TwoQueuePolicy(capacity);
+            case CLOCK:
+                return new ClockPolicy();
+            default:
+                return new LRUPolicy();
+            }
+        }
+    }
+
+    /** Tells the policy which pages may be evicted right now. */
+    public interface Filter {
+        public boolean evictable(PageId pid);
+    }
+
+    /** Called when pid has been read into the cache. */
+    public void pageLoaded(PageId pid);
+
+    /** Called on every cache hit on pid. */
+    public void pageHit(PageId pid);
+
+    /** Called when pid leaves the cache other than through evict. */
+    public void pageRemoved(PageId pid);
+
+    /**
+     * Called when pid may not be evicted for a while, because it is pinned
+     * or dirty. The policy keeps what it knows about the page, such as its
+     * queue or reference bit, and goes on counting hits on it, but does not
+     * return it from evict until pageUnpinned.
+     */
+    public void pagePinned(PageId pid);
+
+    /** Called when a page passed to pagePinned may be evicted again. */
+    public void pageUnpinned(PageId pid);
+
+    /**
+     * Chooses a page to evict among the pages accepted by filter and forgets
+     * about it.
+     *
+     * @return the evicted page, or null if filter accepts none of the pages
+     */
+    public PageId evict(Filter filter);
+}
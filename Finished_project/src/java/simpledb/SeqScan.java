@@ -65,6 +65,11 @@ public class SeqScan implements DbIterator {
         return tableAlias;
     }
 
+    /** @return the transaction this scan is running as a part of */
+    public TransactionId getTransactionId() {
+        return tid;
+    }
+
     /**
      * Reset the tableid, and tableAlias of this operator.
      * @param tableid
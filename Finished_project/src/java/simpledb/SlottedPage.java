@@ -0,0 +1,397 @@
+package simpledb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * SlottedPage is a page format for SlottedHeapFile that stores variable
+ * length records, so that strings only take the space they need instead of
+ * the STRING_LEN bytes HeapPage reserves for them.
+ * <p>
+ * The page starts with a two byte count of slots and the two byte offset of
+ * the lowest record, 0 while the page is empty. A slot directory with a two
+ * byte record offset and a two byte record length per slot follows, and
+ * grows towards the records, which are packed against the end of the page.
+ * The offset of an empty slot is 0. A record holds its fields one after
+ * another: ints in four bytes, and strings as a two byte length followed by
+ * at most Type.STRING_LEN bytes. An all zero page is an empty page.
+ * <p>
+ * Slots keep their number, and so their tuples keep their RecordId, for as
+ * long as the tuples are on the page; records are moved together only when
+ * an insert would not fit otherwise.
+ *
+ * @see SlottedHeapFile
+ */
+public class SlottedPage implements TuplePage {
+
+    private static final int HEADER_SIZE = 4;
+    private static final int SLOT_SIZE = 4;
+
+    private HeapPageId pid;
+    private TupleDesc td;
+    private byte[] data;
+    //tuples decoded so far, by slot; grown as slots are added
+    private AtomicReferenceArray<Tuple> tuples;
+    private TransactionId tid;
+    //the bytes before the first change since the last setBeforeImage, or null if there was none; guarded by this
+    private byte[] oldData;
+    //bytes taken by the records of used slots
+    private int liveBytes;
+    //the smallest record the TupleDesc allows
+    private int minRecordSize;
+    //inserts into this page so far, and by slot the insert that last filled it; null until the first insert
+    private int inserts;
+    private int[] filled;
+
+    /**
+     * Create a SlottedPage from the bytes of a page read from disk.
+     *
+     * @see #SlottedPage(HeapPageId, ByteBuffer)
+     */
+    public SlottedPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Create a SlottedPage from the bytes between the position and the limit
+     * of a buffer, copying them into the page. The buffer's position is left
+     * unchanged.
+     */
+    public SlottedPage(HeapPageId id, ByteBuffer data) throws IOException {
+        this.pid = id;
+        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+
+        this.data = new byte[BufferPool.PAGE_SIZE];
+        data.duplicate().get(this.data, 0, Math.min(data.remaining(), BufferPool.PAGE_SIZE));
+
+        int slots = getNumSlots();
+        if (HEADER_SIZE + slots * SLOT_SIZE > recordStart())
+            throw new IOException("corrupt slotted page " + id.pageNumber());
+
+        for (int i = 0; i < slots; i++)
+            liveBytes += recordLength(i);
+        tuples = new AtomicReferenceArray<Tuple>(slots);
+
+        for (int i = 0; i < td.numFields(); i++)
+            minRecordSize += td.getFieldType(i) == Type.STRING_TYPE ? 2 : td.getFieldType(i).getLen();
+    }
+
+    public HeapPageId getId() {
+        return pid;
+    }
+
+    /** @return the number of slots in the directory, used or not */
+    public int getNumSlots() {
+        return getShort(0);
+    }
+
+    //offset of the lowest record, or the end of the page while there is none
+    private int recordStart() {
+        int start = getShort(2);
+        return start == 0 ? BufferPool.PAGE_SIZE : start;
+    }
+
+    private int recordOffset(int slot) {
+        return getShort(HEADER_SIZE + slot * SLOT_SIZE);
+    }
+
+    private int recordLength(int slot) {
+        return getShort(HEADER_SIZE + slot * SLOT_SIZE + 2);
+    }
+
+    private void setSlot(int slot, int offset, int length) {
+        putShort(HEADER_SIZE + slot * SLOT_SIZE, offset);
+        putShort(HEADER_SIZE + slot * SLOT_SIZE + 2, length);
+    }
+
+    private int getShort(int pos) {
+        return ((data[pos] & 0xff) << 8) | (data[pos + 1] & 0xff);
+    }
+
+    private void putShort(int pos, int value) {
+        data[pos] = (byte) (value >> 8);
+        data[pos + 1] = (byte) value;
+    }
+
+    /**
+     * Returns true if associated slot on this page is filled.
+     */
+    public boolean isSlotUsed(int i) {
+        return i >= 0 && i < getNumSlots() && recordOffset(i) != 0;
+    }
+
+    //the number of bytes t takes as a record
+    private int recordSize(Tuple t) {
+        int size = 0;
+        for (int i = 0; i < td.numFields(); i++) {
+            if (td.getFieldType(i) == Type.STRING_TYPE)
+                size += 2 + Math.min(((StringField) t.getField(i)).getValue().length(), Type.STRING_LEN);
+            else
+                size += td.getFieldType(i).getLen();
+        }
+        return size;
+    }
+
+    //a slot that can take a new record: the first empty one, or a new one at the end
+    private int freeSlot() {
+        int slots = getNumSlots();
+        for (int i = 0; i < slots; i++) {
+            if (recordOffset(i) == 0) return i;
+        }
+        return slots;
+    }
+
+    //whether a record of the given size fits, once the records are moved together
+    private boolean fits(int size, boolean newSlot) {
+        int directory = HEADER_SIZE + (getNumSlots() + (newSlot ? 1 : 0)) * SLOT_SIZE;
+        return directory + liveBytes + size <= BufferPool.PAGE_SIZE;
+    }
+
+    public synchronized boolean hasRoomFor(Tuple t) {
+        return fits(recordSize(t), freeSlot() == getNumSlots());
+    }
+
+    public synchronized boolean hasRoom() {
+        return fits(minRecordSize, freeSlot() == getNumSlots());
+    }
+
+    /**
+     * Adds the specified tuple to the page, in the first empty slot or in a
+     * new one.
+     *
+     * @throws DbException if the tuple does not fit or its TupleDesc does
+     *         not match the page's
+     */
+    public synchronized void insertTuple(Tuple t) throws DbException {
+        if (!td.equals(t.getTupleDesc()))
+            throw new DbException("Tupledesc is mismatch");
+
+        int size = recordSize(t);
+        int slot = freeSlot();
+        int slots = getNumSlots();
+        boolean newSlot = slot == slots;
+        if (!fits(size, newSlot))
+            throw new DbException("The page is full.");
+
+        beforeWrite();
+
+        int directoryEnd = HEADER_SIZE + (slots + (newSlot ? 1 : 0)) * SLOT_SIZE;
+        if (recordStart() - size < directoryEnd)
+            compact();
+
+        int offset = recordStart() - size;
+        writeRecord(offset, t);
+        putShort(2, offset);
+
+        if (newSlot) {
+            putShort(0, slots + 1);
+            growTuples(slots + 1);
+        }
+        setSlot(slot, offset, size);
+        liveBytes += size;
+
+        t.setRecordId(new RecordId(pid, slot));
+        tuples.set(slot, t);
+
+        if (filled == null || filled.length <= slot)
+            filled = Arrays.copyOf(filled == null ? new int[0] : filled, tuples.length());
+        filled[slot] = ++inserts;
+    }
+
+    /**
+     * Deletes the specified tuple from the page. Its record is reclaimed the
+     * next time the records are moved together.
+     *
+     * @throws DbException if this tuple is not on this page, or tuple slot is
+     *         already empty.
+     */
+    public synchronized void deleteTuple(Tuple t) throws DbException {
+        if (!t.getRecordId().getPageId().equals(pid))
+            throw new DbException("This tuple is not on this page.");
+
+        int slot = t.getRecordId().tupleno();
+        if (!isSlotUsed(slot))
+            throw new DbException("Tuple slot is already empty.");
+
+        beforeWrite();
+
+        liveBytes -= recordLength(slot);
+        setSlot(slot, 0, 0);
+        tuples.set(slot, null);
+    }
+
+    //moves the records of used slots against the end of the page, in place
+    private void compact() {
+        byte[] old = data.clone();
+        int end = BufferPool.PAGE_SIZE;
+        int slots = getNumSlots();
+        for (int i = 0; i < slots; i++) {
+            int offset = recordOffset(i);
+            if (offset == 0) continue;
+            int length = recordLength(i);
+            end -= length;
+            System.arraycopy(old, offset, data, end, length);
+            setSlot(i, end, length);
+        }
+        putShort(2, end == BufferPool.PAGE_SIZE ? 0 : end);
+    }
+
+    private void growTuples(int slots) {
+        if (slots <= tuples.length()) return;
+        AtomicReferenceArray<Tuple> grown = new AtomicReferenceArray<Tuple>(Math.max(slots, tuples.length() * 2));
+        for (int i = 0; i < tuples.length(); i++)
+            grown.set(i, tuples.get(i));
+        tuples = grown;
+    }
+
+    private void writeRecord(int offset, Tuple t) {
+        for (int i = 0; i < td.numFields(); i++) {
+            Field f = t.getField(i);
+            if (td.getFieldType(i) == Type.STRING_TYPE) {
+                String s = ((StringField) f).getValue();
+                int len = Math.min(s.length(), Type.STRING_LEN);
+                putShort(offset, len);
+                offset += 2;
+                //the low byte of each char, as StringField.serialize writes it
+                for (int j = 0; j < len; j++)
+                    data[offset++] = (byte) s.charAt(j);
+            } else {
+                int v = ((IntField) f).getValue();
+                data[offset++] = (byte) (v >> 24);
+                data[offset++] = (byte) (v >> 16);
+                data[offset++] = (byte) (v >> 8);
+                data[offset++] = (byte) v;
+            }
+        }
+    }
+
+    private Tuple readRecord(int slot) {
+        Tuple t = new Tuple(td);
+        int offset = recordOffset(slot);
+        for (int i = 0; i < td.numFields(); i++) {
+            if (td.getFieldType(i) == Type.STRING_TYPE) {
+                int len = getShort(offset);
+                t.setField(i, new StringField(new String(data, offset + 2, len), Type.STRING_LEN));
+                offset += 2 + len;
+            } else {
+                t.setField(i, td.getFieldType(i).parse(data, offset));
+                offset += td.getFieldType(i).getLen();
+            }
+        }
+        t.setRecordId(new RecordId(pid, slot));
+        return t;
+    }
+
+    //the tuple in a used slot, decoded the first time it is asked for
+    private synchronized Tuple tuple(int slot) {
+        Tuple t = tuples.get(slot);
+        if (t == null) {
+            t = readRecord(slot);
+            tuples.set(slot, t);
+        }
+        return t;
+    }
+
+    public synchronized Tuple getTuple(int slot) {
+        if (!isSlotUsed(slot)) return null;
+        return tuple(slot);
+    }
+
+    public synchronized byte[] getPageData() {
+        return data.clone();
+    }
+
+    public synchronized void writePageData(ByteBuffer buf) {
+        buf.put(data);
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        if (dirty) {
+            beforeWrite();
+            this.tid = tid;
+        } else {
+            this.tid = null;
+        }
+    }
+
+    public TransactionId isDirty() {
+        return tid;
+    }
+
+    public synchronized SlottedPage getBeforeImage() {
+        try {
+            return new SlottedPage(pid, oldData != null ? oldData : data);
+        } catch (IOException e) {
+            //we parsed it OK before
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Makes the current contents the before image; they are only copied
+     * aside once the page is changed again.
+     */
+    public synchronized void setBeforeImage() {
+        oldData = null;
+    }
+
+    private synchronized void beforeWrite() {
+        if (oldData == null) oldData = data.clone();
+    }
+
+    /**
+     * @return an iterator over the tuples on this page that does not return
+     *         tuples inserted after it was created, even into a slot it
+     *         had not reached yet, and skips tuples deleted since
+     */
+    public synchronized Iterator<Tuple> iterator() {
+        int slots = getNumSlots();
+        long[] used = new long[(slots + 63) / 64];
+        for (int i = 0; i < slots; i++) {
+            if (recordOffset(i) != 0) used[i >> 6] |= 1L << i;
+        }
+        return new SlotIterator(used, inserts);
+    }
+
+    //whether slot holds a tuple inserted no later than the given insert count
+    private boolean usedSince(int slot, int count) {
+        int[] f = filled;
+        return isSlotUsed(slot) && (f == null || slot >= f.length || f[slot] <= count);
+    }
+
+    private class SlotIterator implements Iterator<Tuple> {
+
+        private final long[] slots;
+        private final int created;
+
+        private int word = -1;
+        private long bits;
+
+        SlotIterator(long[] slots, int created) {
+            this.slots = slots;
+            this.created = created;
+        }
+
+        public boolean hasNext() {
+            while (true) {
+                while (bits == 0) {
+                    if (++word >= slots.length) return false;
+                    bits = slots[word];
+                }
+                if (usedSince(word * 64 + Long.numberOfTrailingZeros(bits), created)) return true;
+                bits &= bits - 1;
+            }
+        }
+
+        public Tuple next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            int slot = word * 64 + Long.numberOfTrailingZeros(bits);
+            bits &= bits - 1;
+            return tuple(slot);
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * SortMergeJoin joins two children that come sorted in ascending order of
+ * their join fields, by reading each of them once, side by side. An input
+ * that is not sorted yet can be put under an OrderBy with {@link #sorted}.
+ * <p>
+ * One child drives the merge and the other is read up to the tuples that
+ * match the current driving tuple, which are kept in memory. For an
+ * equality those are the run of tuples with the same key, so duplicates on
+ * both sides give every pair. For a range predicate the matches of each
+ * driving tuple are all the tuples of the other child read so far, so they
+ * are kept until the end: a range join costs memory for one input, and
+ * time for its output, but not a rescan of the inner child per outer tuple.
+ * <p>
+ * Tuples come in ascending order of the join field of the driving child:
+ * the left one for =, &gt; and &gt;=, the right one for &lt; and &lt;=.
+ */
+public class SortMergeJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final JoinPredicate p;
+
+    private DbIterator child1, child2;
+
+    private final TupleDesc td;
+
+    //the child whose tuples are each matched with a window of the other
+    private final boolean leftDrives;
+
+    //how a tuple of the other child has to compare to the driving tuple
+    private final Predicate.Op cond;
+
+    private ArrayList<Tuple> window;
+
+    //the next tuple of the other child, not in the window yet
+    private Tuple lookahead;
+
+    private Tuple current;
+
+    private int pos;
+
+    /**
+     * Constructor.
+     *
+     * @param p
+     *            the predicate to join on: =, &lt;, &lt;=, &gt; or &gt;=
+     * @param child1
+     *            the left relation, in ascending order of p's first field
+     * @param child2
+     *            the right relation, in ascending order of p's second field
+     * @throws IllegalArgumentException
+     *             if the operator of p cannot be merged
+     */
+    public SortMergeJoin(JoinPredicate p, DbIterator child1, DbIterator child2) {
+
+        if (!supports(p.getOperator()))
+            throw new IllegalArgumentException("cannot merge join on " + p.getOperator());
+
+        this.p = p;
+
+        this.child1 = child1;
+
+        this.child2 = child2;
+
+        td = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+
+        switch (p.getOperator()) {
+        case GREATER_THAN:
+            leftDrives = true;
+            cond = Predicate.Op.LESS_THAN;
+            break;
+        case GREATER_THAN_OR_EQ:
+            leftDrives = true;
+            cond = Predicate.Op.LESS_THAN_OR_EQ;
+            break;
+        case LESS_THAN:
+            leftDrives = false;
+            cond = Predicate.Op.LESS_THAN;
+            break;
+        case LESS_THAN_OR_EQ:
+            leftDrives = false;
+            cond = Predicate.Op.LESS_THAN_OR_EQ;
+            break;
+        default:
+            leftDrives = true;
+            cond = Predicate.Op.EQUALS;
+        }
+
+    }
+
+    /** @return true if a SortMergeJoin can join on op */
+    public static boolean supports(Predicate.Op op) {
+
+        return op == Predicate.Op.EQUALS || op == Predicate.Op.LESS_THAN || op == Predicate.Op.LESS_THAN_OR_EQ
+                || op == Predicate.Op.GREATER_THAN || op == Predicate.Op.GREATER_THAN_OR_EQ;
+    }
+
+    /**
+     * @return true if the tuples of plan are known to come in ascending order
+     *         of field: plan reads an index on it, sorts on it, or keeps the
+     *         order of a child that does
+     */
+    public static boolean isSorted(DbIterator plan, int field) {
+
+        if (plan instanceof Filter)
+            return isSorted(((Filter) plan).getChildren()[0], field);
+
+        if (plan instanceof IndexScan)
+            return ((IndexScan) plan).getIndex().getKeyField() == field;
+
+        if (plan instanceof OrderBy)
+            return ((OrderBy) plan).isASC() && ((OrderBy) plan).getOrderByField() == field;
+
+        if (plan instanceof SortMergeJoin) {
+
+            SortMergeJoin j = (SortMergeJoin) plan;
+
+            int width1 = j.child1.getTupleDesc().numFields();
+
+            if (j.cond == Predicate.Op.EQUALS)
+                return field == j.p.getField1() || field == width1 + j.p.getField2();
+
+            return field == (j.leftDrives ? j.p.getField1() : width1 + j.p.getField2());
+        }
+
+        //nested loops keep the order of the outer child
+        if (plan instanceof Join || plan instanceof IndexNestedLoopJoin) {
+
+            DbIterator outer = ((Operator) plan).getChildren()[0];
+
+            return field < outer.getTupleDesc().numFields() && isSorted(outer, field);
+        }
+
+        return false;
+    }
+
+    /**
+     * @return plan, if its tuples come in ascending order of field, or an
+     *         OrderBy that sorts them so
+     */
+    public static DbIterator sorted(DbIterator plan, int field) {
+
+        return isSorted(plan, field) ? plan : new OrderBy(field, true, plan);
+
+    }
+
+    public JoinPredicate getJoinPredicate() {
+
+        return p;
+
+    }
+
+    /** @return the field name of join field1, quantified by alias */
+    public String getJoinField1Name() {
+
+        return child1.getTupleDesc().getFieldName(p.getField1());
+
+    }
+
+    /** @return the field name of join field2, quantified by alias */
+    public String getJoinField2Name() {
+
+        return child2.getTupleDesc().getFieldName(p.getField2());
+
+    }
+
+    public TupleDesc getTupleDesc() {
+
+        return td;
+
+    }
+
+    public void open() throws DbException, NoSuchElementException, TransactionAbortedException {
+
+        child1.open();
+
+        child2.open();
+
+        super.open();
+
+        start();
+    }
+
+    public void close() {
+
+        super.close();
+
+        child2.close();
+
+        child1.close();
+
+        window = null;
+
+        lookahead = current = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+
+        child1.rewind();
+
+        child2.rewind();
+
+        start();
+    }
+
+    private void start() throws DbException, TransactionAbortedException {
+
+        window = new ArrayList<Tuple>();
+
+        current = null;
+
+        pos = 0;
+
+        lookahead = null;
+
+        advance();
+    }
+
+    private DbIterator driver() {
+
+        return leftDrives ? child1 : child2;
+
+    }
+
+    private DbIterator other() {
+
+        return leftDrives ? child2 : child1;
+
+    }
+
+    private Field driverKey(Tuple t) {
+
+        return t.getField(leftDrives ? p.getField1() : p.getField2());
+
+    }
+
+    private Field otherKey(Tuple t) {
+
+        return t.getField(leftDrives ? p.getField2() : p.getField1());
+
+    }
+
+    private void advance() throws DbException, TransactionAbortedException {
+
+        lookahead = other().hasNext() ? other().next() : null;
+
+    }
+
+    /**
+     * Returns the next pair of a driving tuple and a tuple in its window.
+     * Tuples are the concatenation of the left and the right tuple, as for
+     * Join.
+     *
+     * @return The next matching tuple, or null if there are no more.
+     * @see JoinPredicate#filter
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+
+        while (true) {
+
+            if (current != null && pos < window.size())
+                return leftDrives ? merge(current, window.get(pos++)) : merge(window.get(pos++), current);
+
+            //nothing left that an equal key could match
+            if (cond == Predicate.Op.EQUALS && lookahead == null && window.isEmpty()) return null;
+
+            if (!driver().hasNext()) return null;
+
+            Tuple t = driver().next();
+
+            Field key = driverKey(t);
+
+            if (cond == Predicate.Op.EQUALS) {
+
+                //a run of equal keys on the driving side reuses the window
+                if (window.isEmpty() || !otherKey(window.get(0)).compare(Predicate.Op.EQUALS, key)) {
+
+                    window.clear();
+
+                    while (lookahead != null && otherKey(lookahead).compare(Predicate.Op.LESS_THAN, key))
+                        advance();
+
+                    while (lookahead != null && otherKey(lookahead).compare(Predicate.Op.EQUALS, key)) {
+                        window.add(lookahead.detached());
+                        advance();
+                    }
+                }
+
+            } else {
+
+                //the keys only grow, so the window only grows
+                while (lookahead != null && otherKey(lookahead).compare(cond, key)) {
+                    window.add(lookahead.detached());
+                    advance();
+                }
+            }
+
+            current = t;
+
+            pos = 0;
+        }
+    }
+
+    private Tuple merge(Tuple t1, Tuple t2) {
+
+        Tuple res = new Tuple(td);
+
+        int l1 = t1.getTupleDesc().numFields();
+
+        for (int i = 0; i < l1; i++)
+            res.setField(i, t1.getField(i));
+
+        for (int i = 0; i < t2.getTupleDesc().numFields(); i++)
+            res.setField(l1 + i, t2.getField(i));
+
+        return res;
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+
+        return new DbIterator[] { child1, child2 };
+
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+
+        child1 = children[0];
+
+        child2 = children[1];
+
+    }
+}
@@ -0,0 +1,215 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * SpillFile is a temporary file of tuples that an operator writes once, in
+ * order, and reads back any number of times, for when its input does not
+ * fit in its memory budget. Tuples are stored compactly: ints as 4 bytes
+ * and strings as their length and characters, rather than padded to
+ * Type.STRING_LEN as on a page. The file is deleted by delete(), or when
+ * the JVM exits.
+ */
+public class SpillFile {
+
+    private final TupleDesc td;
+
+    //created with the first tuple, so that an empty SpillFile costs nothing
+    private File file;
+
+    private DataOutputStream out;
+
+    private int size;
+
+    /**
+     * Creates an empty SpillFile for tuples of td.
+     */
+    public SpillFile(TupleDesc td) {
+
+        this.td = td;
+
+    }
+
+    /** @return the number of tuples added */
+    public int size() {
+
+        return size;
+
+    }
+
+    /** Appends t to the file. */
+    public void add(Tuple t) throws DbException {
+
+        try {
+
+            if (file == null) {
+
+                file = File.createTempFile("spill", ".tmp");
+
+                file.deleteOnExit();
+
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BufferPool.PAGE_SIZE));
+
+            }
+
+            for (int i = 0; i < td.numFields(); i++) {
+
+                Field f = t.getField(i);
+
+                if (td.getFieldType(i) == Type.INT_TYPE)
+                    out.writeInt(((IntField) f).getValue());
+                else
+                    out.writeUTF(((StringField) f).getValue());
+
+            }
+
+        } catch (IOException e) {
+
+            throw new DbException("could not write a spill file: " + e.getMessage());
+
+        }
+
+        size++;
+    }
+
+    /**
+     * Returns an iterator over the tuples added, in the order they were
+     * added. No more tuples can be added once it is opened.
+     */
+    public DbIterator iterator() {
+
+        return new SpillIterator();
+
+    }
+
+    /** Deletes the file; open iterators over it can no longer be used. */
+    public void delete() {
+
+        try {
+
+            if (out != null) out.close();
+
+        } catch (IOException e) {
+
+            //the file is going anyway
+        }
+
+        out = null;
+
+        if (file != null) file.delete();
+
+        file = null;
+
+    }
+
+    private void finishWriting() throws DbException {
+
+        if (out == null) return;
+
+        try {
+
+            out.close();
+
+        } catch (IOException e) {
+
+            throw new DbException("could not write a spill file: " + e.getMessage());
+
+        }
+
+        out = null;
+
+    }
+
+    private class SpillIterator implements DbIterator {
+
+        private static final long serialVersionUID = 1L;
+
+        private DataInputStream in;
+
+        private int read;
+
+        public void open() throws DbException {
+
+            finishWriting();
+
+            read = 0;
+
+            if (size == 0) return;
+
+            try {
+
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BufferPool.PAGE_SIZE));
+
+            } catch (IOException e) {
+
+                throw new DbException("could not read a spill file: " + e.getMessage());
+
+            }
+
+        }
+
+        public boolean hasNext() {
+
+            return in != null && read < size;
+
+        }
+
+        public Tuple next() throws DbException, NoSuchElementException {
+
+            if (!hasNext()) throw new NoSuchElementException();
+
+            Tuple t = new Tuple(td);
+
+            try {
+
+                for (int i = 0; i < td.numFields(); i++) {
+
+                    if (td.getFieldType(i) == Type.INT_TYPE)
+                        t.setField(i, new IntField(in.readInt()));
+                    else
+                        t.setField(i, new StringField(in.readUTF(), Type.STRING_LEN));
+
+                }
+
+            } catch (IOException e) {
+
+                throw new DbException("could not read a spill file: " + e.getMessage());
+
+            }
+
+            read++;
+
+            return t;
+        }
+
+        public void rewind() throws DbException {
+
+            close();
+
+            open();
+
+        }
+
+        public TupleDesc getTupleDesc() {
+
+            return td;
+
+        }
+
+        public void close() {
+
+            try {
+
+                if (in != null) in.close();
+
+            } catch (IOException e) {
+
+                //nothing left to read
+            }
+
+            in = null;
+
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.HashMap;
+
+/**
+ * StringDictionary maps the distinct values of one string column of a table
+ * to int codes, given out as 0, 1, 2, ... in the order the values are first
+ * stored. Pages of the table then store a four byte code instead of the
+ * Type.STRING_LEN + 4 bytes of the string. Codes are never changed or
+ * reused, so a code on a page always means the same value.
+ * <p>
+ * The dictionary is kept next to the table's file, in a file named after it
+ * with the column number and ".dict", which holds the values in the order of
+ * their codes, each written by DataOutput.writeUTF. A new value is appended
+ * to that file as soon as it gets its code, before any page using the code
+ * can be written.
+ * <p>
+ * Values are handed out as DictionaryFields, one per code, so that reading
+ * a value from a page allocates nothing and compares by code.
+ *
+ * @see HeapFile#setDictionaryColumns
+ */
+public class StringDictionary {
+
+    private final File file;
+
+    //the field of each value, by code; replaced by a larger copy when full
+    private volatile DictionaryField[] fields = new DictionaryField[16];
+
+    private final HashMap<String, Integer> codes = new HashMap<String, Integer>();
+
+    //guarded by this
+    private int size;
+
+    private DataOutputStream out;
+
+    /** Returns the file the dictionary of a column of a heap file is kept in. */
+    public static File fileFor(File heapFile, int column) {
+
+        return new File(heapFile.getPath() + "." + column + ".dict");
+
+    }
+
+    /**
+     * Loads a dictionary from its file, or starts an empty one if there is
+     * no such file yet.
+     */
+    public StringDictionary(File file) throws IOException {
+
+        this.file = file;
+
+        if (!file.exists()) return;
+
+        byte[] bytes = Files.readAllBytes(file.toPath());
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+
+        //length of the values read whole
+        int end = 0;
+
+        try {
+
+            while (end < bytes.length) {
+
+                add(in.readUTF());
+
+                end = bytes.length - in.available();
+
+            }
+
+        } catch (EOFException e) {
+
+            //a value cut short by a crash, which no page can use; new values go in its place
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+
+                raf.setLength(end);
+
+            }
+        }
+    }
+
+    /** Returns the number of values in the dictionary. */
+    public synchronized int size() {
+
+        return size;
+
+    }
+
+    /** Returns the field for a code. */
+    public DictionaryField field(int code) {
+
+        return fields[code];
+
+    }
+
+    /** Returns the field of a value, or null if the value has no code. */
+    public synchronized DictionaryField lookup(String value) {
+
+        Integer code = codes.get(value);
+
+        return code == null ? null : fields[code];
+    }
+
+    /**
+     * Returns the code of a value, giving it the next code and appending it
+     * to the dictionary file if it has none yet.
+     */
+    public synchronized int encode(String value) throws IOException {
+
+        Integer code = codes.get(value);
+
+        if (code != null) return code;
+
+        if (out == null) out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+
+        out.writeUTF(value);
+
+        out.flush();
+
+        return add(value);
+    }
+
+    //gives a value the next code
+    private int add(String value) {
+
+        DictionaryField[] f = fields;
+
+        if (size == f.length) {
+
+            DictionaryField[] grown = new DictionaryField[f.length * 2];
+
+            System.arraycopy(f, 0, grown, 0, f.length);
+
+            f = grown;
+
+        }
+
+        f[size] = new DictionaryField(value, this, size);
+
+        fields = f;
+
+        codes.put(value, size);
+
+        return size++;
+    }
+
+    /** Reads a code as written by DataOutput.writeInt and returns its field. */
+    DictionaryField decode(byte[] data, int offset) {
+
+        int code = ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16)
+                | ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+
+        return fields[code];
+    }
+}
@@ -239,6 +239,27 @@ public class TableStats {
         return file.numPages()*ioCostPerPage;
     }
 
+    /**
+     * Estimates the cost of reading the tuples that satisfy a predicate of
+     * the given selectivity through an index on the table rather than by
+     * scanning it: a page read for each level of the tree, for the share of
+     * the index's pages that hold matching entries, and for each matching
+     * tuple, since tuples are not stored in the order of the index.
+     * 
+     * @return The estimated cost of the index scan, comparable to
+     *         estimateScanCost.
+     */
+    public double estimateIndexScanCost(BTreeFile index, double selectivityFactor) {
+
+        int fanout = BTreePage.maxKeys(index.getKeyType()) + 1;
+
+        double levels = 1 + Math.ceil(Math.log(Math.max(1, index.numPages())) / Math.log(fanout));
+
+        double pages = levels + Math.ceil(index.numPages() * selectivityFactor) + totalTuples() * selectivityFactor;
+
+        return pages * ioCostPerPage;
+    }
+
     /**
      * This method returns the number of tuples in the relation, given that a
      * predicate with selectivity selectivityFactor is applied.
@@ -0,0 +1,151 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * TopN is an operator that implements ORDER BY followed by LIMIT: it returns
+ * only the first n tuples of the order, in order.
+ * <p>
+ * The order is that of an {@link OrderBy} on the same fields, equal tuples
+ * keeping the order of the child. Instead of sorting the whole child it
+ * keeps the best n tuples seen so far in a heap with the worst of them on
+ * top, which each new tuple either replaces or is dropped against. So it
+ * holds at most n tuples, and costs O(m log n) comparisons for a child of m
+ * tuples rather than O(m log m).
+ */
+public class TopN extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private DbIterator child;
+    private TupleDesc td;
+    private int[] orderByFields;
+    private boolean[] ascending;
+    private final int limit;
+    private final TupleComparator comparator;
+    private ArrayList<Tuple> top = new ArrayList<Tuple>();
+    private Iterator<Tuple> it;
+
+    /**
+     * Creates a new TopN node over the tuples from the iterator.
+     *
+     * @param orderbyFields
+     *            the fields to which the sort is applied, most significant
+     *            first.
+     * @param asc
+     *            for each field, true if the sort order is ascending.
+     * @param limit
+     *            how many tuples to return.
+     * @param child
+     *            the tuples to sort.
+     */
+    public TopN(int[] orderbyFields, boolean[] asc, int limit, DbIterator child) {
+        if (orderbyFields.length == 0 || orderbyFields.length != asc.length)
+            throw new IllegalArgumentException("need one order for each of one or more fields");
+        if (limit < 0)
+            throw new IllegalArgumentException("limit must not be negative");
+        this.child = child;
+        td = child.getTupleDesc();
+        this.orderByFields = orderbyFields.clone();
+        this.ascending = asc.clone();
+        this.limit = limit;
+        comparator = new TupleComparator(orderByFields, ascending);
+    }
+
+    /** @return the sort fields, most significant first */
+    public int[] getOrderByFields()
+    {
+        return this.orderByFields.clone();
+    }
+
+    /** @return for each sort field, true if it is in ascending order */
+    public boolean[] getAscending()
+    {
+        return this.ascending.clone();
+    }
+
+    /** @return the number of tuples returned at most */
+    public int getLimit()
+    {
+        return this.limit;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child.open();
+        top = new ArrayList<Tuple>();
+        // the worst of the best tuples so far is on top, and of equal ones the latest
+        PriorityQueue<Entry> heap = new PriorityQueue<Entry>(Math.max(1, Math.min(limit, 1024)));
+        int seq = 0;
+        while (child.hasNext()) {
+            Tuple t = child.next();
+            if (heap.size() < limit)
+                heap.add(new Entry(t.detached(), seq++));
+            else if (limit > 0 && comparator.compare(t, heap.peek().t) < 0) {
+                heap.poll();
+                heap.add(new Entry(t.detached(), seq++));
+            }
+        }
+        Entry[] best = heap.toArray(new Entry[heap.size()]);
+        Arrays.sort(best, Collections.reverseOrder());
+        for (Entry e : best)
+            top.add(e.t);
+        it = top.iterator();
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        child.close();
+        top = new ArrayList<Tuple>();
+        it = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        it = top.iterator();
+    }
+
+    /** A kept tuple, ordered worst first: by the sort reversed, then latest first. */
+    private class Entry implements Comparable<Entry> {
+        final Tuple t;
+        final int seq;
+
+        Entry(Tuple t, int seq) {
+            this.t = t;
+            this.seq = seq;
+        }
+
+        public int compareTo(Entry o) {
+            int c = comparator.compare(o.t, t);
+            return c != 0 ? c : o.seq - seq;
+        }
+    }
+
+    /**
+     * Operator.fetchNext implementation. Returns the kept tuples in order
+     *
+     * @return The next tuple in the ordering, or null if there are no more
+     *         tuples
+     */
+    protected Tuple fetchNext() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        if (it != null && it.hasNext())
+            return it.next();
+        return null;
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[] { this.child };
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        this.child = children[0];
+    }
+
+}
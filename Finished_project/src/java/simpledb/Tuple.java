@@ -1,5 +1,7 @@
 package simpledb;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -18,6 +20,19 @@ public class Tuple implements Serializable {
     private Field[] fields;
     
     private RecordId recordId;
+
+    //page bytes that fields not set yet are read from when first asked for:
+    //field i is at sourceStart[i] + sourceSlot * sourceStride[i]
+    private transient byte[] source;
+
+    private transient int sourceSlot;
+
+    private transient int[] sourceStart;
+
+    private transient int[] sourceStride;
+
+    //dictionaries of the fields stored as codes, by field, or null if there are none
+    private transient StringDictionary[] sourceDictionaries;
     /**
      * Create a new tuple with the specified schema (type).
      * 
@@ -32,6 +47,28 @@ public class Tuple implements Serializable {
         fields = new Field[td.numFields()];
     }
 
+    /**
+     * Create a tuple whose fields are read from the given bytes, as Type.parse
+     * expects them, only when they are first asked for: field i from
+     * start[i] + slot * stride[i]. Used by HeapPage so that scans only decode
+     * the fields they use, whether the page is laid out by rows or by columns.
+     * Fields with a dictionary are read as codes of that dictionary.
+     */
+    Tuple(TupleDesc td, byte[] source, int slot, int[] start, int[] stride, StringDictionary[] dictionaries) {
+
+        this(td);
+
+        this.source = source;
+
+        this.sourceSlot = slot;
+
+        this.sourceStart = start;
+
+        this.sourceStride = stride;
+
+        this.sourceDictionaries = dictionaries;
+    }
+
     /**
      * @return The TupleDesc representing the schema of this tuple.
      */
@@ -97,9 +134,75 @@ public class Tuple implements Serializable {
         
         }
         
-        return fields[i];
+        Field f = fields[i];
+
+        byte[] src = source;
+
+        if (f == null && src != null) {
+
+            int offset = sourceStart[i] + sourceSlot * sourceStride[i];
+
+            if (sourceDictionaries != null && sourceDictionaries[i] != null)
+                f = sourceDictionaries[i].decode(src, offset);
+            else
+                f = tupleDesc.getFieldType(i).parse(src, offset);
+
+            fields[i] = f;
+
+        }
+
+        return f;
         
     }
+
+    /**
+     * Reads every field that has not been read yet, so that this tuple no
+     * longer depends on the bytes it was created from. HeapPage calls this
+     * before it overwrites the slot of a tuple it handed out.
+     */
+    void materialize() {
+
+        if (source == null) return;
+
+        readFields();
+
+        source = null;
+    }
+
+    /**
+     * Returns a tuple with the same fields and RecordId that does not keep
+     * the bytes it was read from: this tuple if it never did, or else a copy
+     * of it. Operators that hold on to the tuples of their children keep
+     * these, as they count a tuple at TupleDesc.getSize() and not at the
+     * page it was read from. This tuple itself is left as it is, since other
+     * scans of its page may be reading it.
+     */
+    Tuple detached() {
+
+        if (source == null) return this;
+
+        Tuple t = new Tuple(tupleDesc);
+
+        for (int i = 0; i < fields.length; i++) t.fields[i] = getField(i);
+
+        t.recordId = recordId;
+
+        return t;
+    }
+
+    //reads every field not read yet, keeping the bytes for others sharing this tuple
+    private void readFields() {
+
+        for (int i = 0; i < fields.length; i++) getField(i);
+
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+
+        readFields();
+
+        out.defaultWriteObject();
+    }
     
     private boolean isValidIndex(int i){
         
@@ -117,6 +220,8 @@ public class Tuple implements Serializable {
      */
     public String toString() {
         
+        readFields();
+
         StringBuffer sb = new StringBuffer();
 
         for(Field f : fields){
@@ -135,6 +240,8 @@ public class Tuple implements Serializable {
      *        An iterator which iterates over all the fields of this tuple
      * */
     public Iterator<Field> fields(){
+
+        readFields();
         
         return Arrays.asList(fields).iterator();
     }
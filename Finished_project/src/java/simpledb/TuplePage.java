@@ -0,0 +1,50 @@
+package simpledb;
+
+import java.util.Iterator;
+
+/**
+ * TuplePage is the interface HeapFile uses for its pages, so that the same
+ * file can be laid out in different page formats.
+ *
+ * @see HeapFile#createPage
+ * @see HeapPage
+ */
+public interface TuplePage extends Page {
+
+    /**
+     * Adds the specified tuple to the page and sets its RecordId.
+     *
+     * @throws DbException if the tuple does not fit or its TupleDesc does
+     *         not match the page's
+     */
+    public void insertTuple(Tuple t) throws DbException;
+
+    /**
+     * Deletes the specified tuple from the page.
+     *
+     * @throws DbException if the tuple is not on this page
+     */
+    public void deleteTuple(Tuple t) throws DbException;
+
+    /**
+     * @return an iterator over the tuples on this page that does not return
+     *         tuples inserted after it was created
+     */
+    public Iterator<Tuple> iterator();
+
+    /**
+     * @return the tuple in the specified slot, or null if the slot is not
+     *         in use
+     */
+    public Tuple getTuple(int slot);
+
+    /**
+     * @return whether insertTuple(t) would succeed
+     */
+    public boolean hasRoomFor(Tuple t);
+
+    /**
+     * @return whether the smallest tuple the page's TupleDesc allows would fit
+     */
+    public boolean hasRoom();
+}
@@ -0,0 +1,158 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * The 2Q replacement policy (Johnson and Shasha, VLDB 1994), which resists
+ * sequential scans. A page read for the first time goes to the FIFO queue
+ * A1in and is not promoted by hits there. When it is evicted from A1in its
+ * id is remembered in the ghost queue A1out; only a page read again while
+ * its id is in A1out goes to the LRU queue Am. Pages touched once by a scan
+ * therefore only ever compete with each other for the A1in share of the pool,
+ * and the hot pages in Am survive the scan.
+ */
+public class TwoQueuePolicy implements ReplacementPolicy {
+
+    //pages seen once, in load order
+    private final LinkedHashSet<PageId> a1in = new LinkedHashSet<PageId>();
+
+    //ids of pages recently evicted from a1in, which are no longer cached
+    private final LinkedHashSet<PageId> a1out = new LinkedHashSet<PageId>();
+
+    //pages seen again after leaving a1in, access ordered
+    private final LinkedHashMap<PageId, Boolean> am = new LinkedHashMap<PageId, Boolean>(16, 0.75f, true);
+
+    //pinned pages, out of both queues, and whether they came from am
+    private final HashMap<PageId, Boolean> pinned = new HashMap<PageId, Boolean>();
+
+    private final int kin;
+
+    private final int kout;
+
+    /**
+     * @param capacity the number of pages this policy is expected to hold;
+     *     A1in gets a quarter of it and A1out remembers half as many ids
+     */
+    public TwoQueuePolicy(int capacity) {
+
+        kin = Math.max(1, capacity / 4);
+
+        kout = Math.max(1, capacity / 2);
+
+    }
+
+    public void pageLoaded(PageId pid) {
+
+        if (a1out.remove(pid)) {
+
+            am.put(pid, Boolean.TRUE);
+
+        } else {
+
+            a1in.add(pid);
+
+        }
+    }
+
+    public void pageHit(PageId pid) {
+
+        //hits in a1in are usually correlated references, e.g. one scan, and do not count
+        am.get(pid);
+
+    }
+
+    public void pageRemoved(PageId pid) {
+
+        if (pinned.remove(pid) == null && !a1in.remove(pid)) am.remove(pid);
+
+    }
+
+    public void pagePinned(PageId pid) {
+
+        if (am.remove(pid) != null) {
+
+            pinned.put(pid, Boolean.TRUE);
+
+        } else if (a1in.remove(pid)) {
+
+            pinned.put(pid, Boolean.FALSE);
+
+        }
+    }
+
+    //back to the queue it was in, at the most recent end
+    public void pageUnpinned(PageId pid) {
+
+        Boolean inAm = pinned.remove(pid);
+
+        if (inAm == null) return;
+
+        if (inAm) am.put(pid, Boolean.TRUE);
+
+        else a1in.add(pid);
+
+    }
+
+    public PageId evict(Filter filter) {
+
+        PageId pid = null;
+
+        if (a1in.size() > kin || am.isEmpty()) {
+
+            pid = evictFrom(a1in.iterator(), filter);
+
+            if (pid != null) {
+
+                remember(pid);
+
+                return pid;
+
+            }
+        }
+
+        pid = evictFrom(am.keySet().iterator(), filter);
+
+        if (pid == null) {
+
+            pid = evictFrom(a1in.iterator(), filter);
+
+            if (pid != null) remember(pid);
+
+        }
+
+        return pid;
+    }
+
+    private void remember(PageId pid) {
+
+        a1out.add(pid);
+
+        if (a1out.size() > kout) {
+
+            Iterator<PageId> it = a1out.iterator();
+
+            it.next();
+
+            it.remove();
+
+        }
+    }
+
+    private static PageId evictFrom(Iterator<PageId> it, Filter filter) {
+
+        while (it.hasNext()) {
+
+            PageId pid = it.next();
+
+            if (filter.evictable(pid)) {
+
+                it.remove();
+
+                return pid;
+
+            }
+        }
+
+        return null;
+    }
+}
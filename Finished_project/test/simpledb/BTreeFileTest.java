@@ -0,0 +1,202 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class BTreeFileTest extends SimpleDbTestBase {
+
+    private HeapFile table;
+
+    private BTreeFile index;
+
+    @Before public void createTable() throws Exception {
+        File f = File.createTempFile("btree", ".dat");
+        f.deleteOnExit();
+        FreeSpaceMap.fileFor(f).deleteOnExit();
+        table = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(table);
+        index = openIndex(0);
+    }
+
+    private BTreeFile openIndex(int column) {
+        File f = BTreeFile.fileFor(table.getFile(), column);
+        f.delete();
+        f.deleteOnExit();
+        BTreeFile index = new BTreeFile(f, table.getId(), column);
+        Database.getCatalog().addIndex(index);
+        return index;
+    }
+
+    //inserts rows (i % keys, i) for i in [from, to) in one transaction
+    private void insert(int from, int to, int keys) throws Exception {
+        TransactionId tid = new TransactionId();
+        for (int i = from; i < to; i++)
+            Database.getBufferPool().insertTuple(tid, table.getId(), Utility.getHeapTuple(new int[] { i % keys, i }));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    //the keys of the entries of op operand, in the order the index returns them
+    private ArrayList<Integer> lookup(BTreeFile index, Predicate.Op op, int operand) throws Exception {
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = index.indexIterator(tid, op, new IntField(operand));
+        it.open();
+        ArrayList<Integer> keys = new ArrayList<Integer>();
+        while (it.hasNext())
+            keys.add(((IntField) it.next().getField(0)).getValue());
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return keys;
+    }
+
+    private static void assertSorted(ArrayList<Integer> keys) {
+        for (int i = 1; i < keys.size(); i++)
+            assertTrue(keys.get(i - 1) <= keys.get(i));
+    }
+
+    /**
+     * Unit test for BTreeFile.insertTuple(): enough duplicate keys to split
+     * leaves and the root, looked up by equality and by range.
+     */
+    @Test public void insertAndLookup() throws Exception {
+        insert(0, 3000, 500);
+        assertTrue(index.numPages() > 3);
+
+        ArrayList<Integer> all = lookup(index, Predicate.Op.GREATER_THAN_OR_EQ, Integer.MIN_VALUE);
+        assertEquals(3000, all.size());
+        assertSorted(all);
+
+        for (int key : new int[] { 0, 7, 250, 499 })
+            assertEquals(6, lookup(index, Predicate.Op.EQUALS, key).size());
+        assertEquals(0, lookup(index, Predicate.Op.EQUALS, 500).size());
+        assertEquals(60, lookup(index, Predicate.Op.LESS_THAN, 10).size());
+        assertEquals(66, lookup(index, Predicate.Op.LESS_THAN_OR_EQ, 10).size());
+        assertEquals(6 * 9, lookup(index, Predicate.Op.GREATER_THAN, 490).size());
+        assertEquals(6 * 10, lookup(index, Predicate.Op.GREATER_THAN_OR_EQ, 490).size());
+        assertEquals(3000 - 6, lookup(index, Predicate.Op.NOT_EQUALS, 3).size());
+    }
+
+    /**
+     * Unit test for BTreeFile.build(): a tree built from a table holds the
+     * same entries as one built by inserting its tuples.
+     */
+    @Test public void build() throws Exception {
+        insert(0, 2500, 1000);
+        insert(2500, 5000, 1000);
+
+        BTreeFile built = openIndex(1);
+        built.build();
+        assertTrue(built.numPages() > 2);
+        assertEquals(lookup(index, Predicate.Op.LESS_THAN, 1000).size(),
+                lookup(built, Predicate.Op.LESS_THAN, 5000).size());
+        ArrayList<Integer> all = lookup(built, Predicate.Op.GREATER_THAN_OR_EQ, 0);
+        assertEquals(5000, all.size());
+        assertSorted(all);
+        assertEquals(1, lookup(built, Predicate.Op.EQUALS, 1234).size());
+        assertEquals(50, lookup(built, Predicate.Op.LESS_THAN, 50).size());
+
+        //the built tree takes further inserts
+        insert(5000, 5100, 1000);
+        assertEquals(1, lookup(built, Predicate.Op.EQUALS, 5050).size());
+        assertEquals(5100, lookup(built, Predicate.Op.GREATER_THAN_OR_EQ, 0).size());
+    }
+
+    /**
+     * Unit test for BTreeFile.deleteTuple(), through BufferPool.deleteTuple.
+     */
+    @Test public void delete() throws Exception {
+        insert(0, 2000, 100);
+        TransactionId tid = new TransactionId();
+        Filter firstHalf = new Filter(new Predicate(1, Predicate.Op.LESS_THAN, new IntField(1000)),
+                new SeqScan(tid, table.getId()));
+        firstHalf.open();
+        while (firstHalf.hasNext())
+            Database.getBufferPool().deleteTuple(tid, firstHalf.next());
+        firstHalf.close();
+        Database.getBufferPool().transactionComplete(tid);
+
+        assertEquals(10, lookup(index, Predicate.Op.EQUALS, 42).size());
+        assertEquals(1000, lookup(index, Predicate.Op.GREATER_THAN_OR_EQ, 0).size());
+    }
+
+    /**
+     * Unit test for BTreeFile pages in the buffer pool: an aborted insert
+     * leaves no entries behind.
+     */
+    @Test public void abort() throws Exception {
+        insert(0, 100, 100);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 1000; i++)
+            Database.getBufferPool().insertTuple(tid, table.getId(), Utility.getHeapTuple(new int[] { 1000 + i, i }));
+        Database.getBufferPool().transactionComplete(tid, false);
+
+        assertEquals(0, lookup(index, Predicate.Op.GREATER_THAN_OR_EQ, 1000).size());
+        assertEquals(100, lookup(index, Predicate.Op.LESS_THAN, 1000).size());
+    }
+
+    /**
+     * Unit test for BTreeFile on a STRING key.
+     */
+    @Test public void stringKeys() throws Exception {
+        File f = File.createTempFile("btree", ".dat");
+        f.deleteOnExit();
+        FreeSpaceMap.fileFor(f).deleteOnExit();
+        TupleDesc td = new TupleDesc(new Type[] { Type.STRING_TYPE, Type.INT_TYPE });
+        table = new HeapFile(f, td);
+        Database.getCatalog().addTable(table);
+        BTreeFile names = openIndex(0);
+
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 600; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new StringField("name" + (i % 200), Type.STRING_LEN));
+            t.setField(1, new IntField(i));
+            Database.getBufferPool().insertTuple(tid, table.getId(), t);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        DbFileIterator it = names.indexIterator(tid, Predicate.Op.EQUALS, new StringField("name42", Type.STRING_LEN));
+        it.open();
+        int n = 0;
+        while (it.hasNext()) {
+            assertEquals("name42", ((StringField) it.next().getField(0)).getValue());
+            n++;
+        }
+        it.close();
+        assertEquals(3, n);
+
+        it = names.indexIterator(tid, Predicate.Op.LESS_THAN, new StringField("name2", Type.STRING_LEN));
+        it.open();
+        n = 0;
+        String last = "";
+        while (it.hasNext()) {
+            String s = ((StringField) it.next().getField(0)).getValue();
+            assertTrue(s.compareTo("name2") < 0);
+            assertFalse(s.compareTo(last) < 0);
+            last = s;
+            n++;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        //name0, name1 and name10..name19, name100..name199
+        assertEquals(3 * (2 + 10 + 100), n);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BTreeFileTest.class);
+    }
+}
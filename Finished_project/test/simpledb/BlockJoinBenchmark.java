@@ -0,0 +1,109 @@
+package simpledb;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Block nested-loop join benchmark over the sample IMDB database: times
+ * Movie.id = Actor.id, whose inner table Actor is larger than the default
+ * buffer pool, as a tuple-at-a-time Join and as a BlockNestedLoopJoin with
+ * outer blocks of several sizes, and counts the pages of Actor read from
+ * disk and the times it is rescanned.
+ * Usage: java simpledb.BlockJoinBenchmark [passes] [schemaFile]
+ */
+public class BlockJoinBenchmark {
+
+    private static final int[] BLOCK_PAGES = { 1, 4, BlockNestedLoopJoin.DEFAULT_BLOCK_PAGES };
+
+    public static void main(String[] args) throws Exception {
+        int passes = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        String schema = args.length > 1 ? args[1] : "sample-0.001/imdb.schema";
+
+        Database.getCatalog().loadSchema(schema);
+        int movieId = Database.getCatalog().getTableId("Movie");
+        int actorId = Database.getCatalog().getTableId("Actor");
+        System.out.printf("Movie: %d pages, Actor: %d pages, buffer pool: %d pages%n",
+                ((HeapFile) Database.getCatalog().getDbFile(movieId)).numPages(),
+                ((HeapFile) Database.getCatalog().getDbFile(actorId)).numPages(), BufferPool.DEFAULT_PAGES);
+
+        report("tuple at a time", movieId, actorId, 0, 1);
+        for (int pages : BLOCK_PAGES)
+            report("blocks of " + pages + " pages", movieId, actorId, pages, passes);
+    }
+
+    //times the join, tuple at a time if blockPages is 0
+    private static void report(String name, int movieId, int actorId, int blockPages, int passes)
+            throws Exception {
+        long nanos = 0;
+        int rows = 0;
+        long reads = 0;
+        Rescans actors = null;
+        for (int p = 0; p < passes; ++p) {
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            TransactionId tid = new TransactionId();
+            DbIterator movies = new SeqScan(tid, movieId, "m");
+            actors = new Rescans(new SeqScan(tid, actorId, "a"));
+            JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+            DbIterator it = blockPages == 0 ? new Join(pred, movies, actors)
+                    : new BlockNestedLoopJoin(pred, movies, actors, blockPages);
+            long before = Database.getBufferPool().getNumMisses();
+            long start = System.nanoTime();
+            rows = 0;
+            it.open();
+            while (it.hasNext()) {
+                it.next();
+                rows++;
+            }
+            it.close();
+            nanos += System.nanoTime() - start;
+            reads = Database.getBufferPool().getNumMisses() - before;
+            Database.getBufferPool().transactionComplete(tid);
+        }
+        System.out.printf("%-20s %4d rows %10.1f ms, %5d rescans of Actor, %7d pages read%n", name, rows,
+                nanos / 1e6 / passes, actors.count, reads);
+    }
+
+    //counts the times its child is rewound
+    private static class Rescans extends Operator {
+
+        private static final long serialVersionUID = 1L;
+
+        private DbIterator child;
+
+        int count;
+
+        Rescans(DbIterator child) {
+            this.child = child;
+        }
+
+        public void open() throws DbException, NoSuchElementException, TransactionAbortedException {
+            child.open();
+            super.open();
+        }
+
+        public void close() {
+            super.close();
+            child.close();
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            count++;
+            child.rewind();
+        }
+
+        protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+            return child.hasNext() ? child.next() : null;
+        }
+
+        public TupleDesc getTupleDesc() {
+            return child.getTupleDesc();
+        }
+
+        public DbIterator[] getChildren() {
+            return new DbIterator[] { child };
+        }
+
+        public void setChildren(DbIterator[] children) {
+            child = children[0];
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ColumnPageTest extends SimpleDbTestBase {
+
+    private HeapPageId pid;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void addTable() throws Exception {
+        this.pid = new HeapPageId(-1, -1);
+        Database.getCatalog().addTable(new SkeletonFile(-1, Utility.getTupleDesc(3)), SystemTestUtil.getUUID());
+    }
+
+    /**
+     * Unit test for the layout of ColumnPage: each column is stored
+     * contiguously after the header, and the page reads back its tuples.
+     */
+    @Test public void layout() throws Exception {
+        ColumnPage page = new ColumnPage(pid, HeapPage.createEmptyPageData());
+        int slots = page.getNumEmptySlots();
+        for (int i = 0; i < 10; ++i)
+            page.insertTuple(Utility.getHeapTuple(new int[] { i, 100 + i, 200 + i }));
+
+        int headerSize = (slots + 7) / 8;
+        ByteBuffer data = ByteBuffer.wrap(page.getPageData());
+        for (int i = 0; i < 10; ++i) {
+            assertEquals(i, data.getInt(headerSize + 4 * i));
+            assertEquals(100 + i, data.getInt(headerSize + 4 * slots + 4 * i));
+            assertEquals(200 + i, data.getInt(headerSize + 8 * slots + 4 * i));
+        }
+
+        ColumnPage reread = new ColumnPage(pid, page.getPageData());
+        assertEquals(slots - 10, reread.getNumEmptySlots());
+        Iterator<Tuple> it = reread.iterator();
+        for (int i = 0; i < 10; ++i)
+            assertTrue(TestUtil.compareTuples(Utility.getHeapTuple(new int[] { i, 100 + i, 200 + i }), it.next()));
+    }
+
+    /**
+     * Unit test for ColumnPage.deleteTuple() and getBeforeImage()
+     */
+    @Test public void deleteAndBeforeImage() throws Exception {
+        ColumnPage page = new ColumnPage(pid, HeapPage.createEmptyPageData());
+        for (int i = 0; i < 5; ++i)
+            page.insertTuple(Utility.getHeapTuple(new int[] { i, i, i }));
+        page.markDirty(false, null);
+        page.setBeforeImage();
+
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        for (Iterator<Tuple> it = page.iterator(); it.hasNext();)
+            tuples.add(it.next());
+        page.deleteTuple(tuples.get(1));
+        page.markDirty(true, new TransactionId());
+
+        ColumnPage before = page.getBeforeImage();
+        assertEquals(page.getNumEmptySlots() - 1, before.getNumEmptySlots());
+        assertTrue(before.isSlotUsed(1));
+        Iterator<Tuple> it = before.iterator();
+        it.next();
+        assertTrue(TestUtil.compareTuples(Utility.getHeapTuple(new int[] { 1, 1, 1 }), it.next()));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ColumnPageTest.class);
+    }
+}
@@ -0,0 +1,119 @@
+package simpledb;
+
+import java.io.File;
+
+/**
+ * Dictionary encoding benchmark over the sample IMDB database: copies tables
+ * with a low-cardinality string column into a plain HeapFile and into one
+ * that stores the column dictionary encoded, then reports their sizes and,
+ * with the tables cached, tuples per second of
+ * <ul>
+ * <li>filter: WHERE column = the first value of the column</li>
+ * <li>group: SELECT column, COUNT(*) ... GROUP BY column</li>
+ * <li>join: the grouped counts joined back to the table on column, with
+ * HashEquiJoin</li>
+ * </ul>
+ * Usage: java simpledb.DictionaryBenchmark [passes] [schemaFile]
+ */
+public class DictionaryBenchmark {
+
+    //table and column of each low-cardinality column benchmarked
+    private static final String[][] COLUMNS = { { "Genre", "genre" }, { "Actor", "gender" }, { "Casts", "role" } };
+
+    public static void main(String[] args) throws Exception {
+        int passes = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        String schema = args.length > 1 ? args[1] : "sample-0.001/imdb.schema";
+
+        Database.getCatalog().loadSchema(schema);
+        Database.resetBufferPool(2000);
+
+        for (String[] column : COLUMNS) {
+            HeapFile source = (HeapFile) Database.getCatalog().getDbFile(Database.getCatalog().getTableId(column[0]));
+            int field = source.getTupleDesc().fieldNameToIndex(column[1]);
+
+            for (boolean encoded : new boolean[] { false, true }) {
+                HeapFile f = copy(source, encoded ? field : -1);
+                String name = column[0] + "." + column[1];
+                Field value = firstValue(f, field);
+
+                // warm up the JIT and the pool
+                run(f, field, value, 3);
+                long[] nanos = run(f, field, value, passes);
+                double tuples = (double) passes * count(f) * 1e9;
+
+                System.out.printf("%-12s %-7s %4d pages: filter %9.0f, group %9.0f, join %9.0f tuples/s%n",
+                        name, encoded ? "dict" : "plain", f.numPages(),
+                        tuples / nanos[0], tuples / nanos[1], tuples / nanos[2]);
+            }
+        }
+    }
+
+    private static HeapFile copy(HeapFile source, int dictColumn) throws Exception {
+        File file = File.createTempFile("dict", ".dat");
+        file.deleteOnExit();
+        FreeSpaceMap.fileFor(file).deleteOnExit();
+        HeapFile f = new HeapFile(file, source.getTupleDesc());
+        if (dictColumn >= 0) {
+            StringDictionary.fileFor(file, dictColumn).deleteOnExit();
+            f.setDictionaryColumns(dictColumn);
+        }
+        Database.getCatalog().addTable(f, "copy" + f.getId());
+        TransactionId tid = new TransactionId();
+        f.load(source.iterator(tid));
+        Database.getBufferPool().transactionComplete(tid);
+        return f;
+    }
+
+    private static Field firstValue(HeapFile f, int field) throws Exception {
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = f.iterator(tid);
+        it.open();
+        Field value = new StringField(((StringField) it.next().getField(field)).getValue(), Type.STRING_LEN);
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return value;
+    }
+
+    private static int count(HeapFile f) throws Exception {
+        TransactionId tid = new TransactionId();
+        int n = drain(new SeqScan(tid, f.getId()));
+        Database.getBufferPool().transactionComplete(tid);
+        return n;
+    }
+
+    //nanoseconds spent filtering, grouping and joining
+    private static long[] run(HeapFile f, int field, Field value, int passes) throws Exception {
+        long[] nanos = new long[3];
+        for (int p = 0; p < passes; ++p) {
+            TransactionId tid = new TransactionId();
+
+            long start = System.nanoTime();
+            drain(new Filter(new Predicate(field, Predicate.Op.EQUALS, value), new SeqScan(tid, f.getId())));
+            nanos[0] += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            drain(new Aggregate(new SeqScan(tid, f.getId()), field, field, Aggregator.Op.COUNT));
+            nanos[1] += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            Aggregate counts = new Aggregate(new SeqScan(tid, f.getId()), field, field, Aggregator.Op.COUNT);
+            drain(new HashEquiJoin(new JoinPredicate(0, Predicate.Op.EQUALS, field),
+                    counts, new SeqScan(tid, f.getId())));
+            nanos[2] += System.nanoTime() - start;
+
+            Database.getBufferPool().transactionComplete(tid);
+        }
+        return nanos;
+    }
+
+    private static int drain(DbIterator it) throws Exception {
+        int n = 0;
+        it.open();
+        while (it.hasNext()) {
+            it.next();
+            n++;
+        }
+        it.close();
+        return n;
+    }
+}
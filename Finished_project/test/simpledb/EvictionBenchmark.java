@@ -0,0 +1,64 @@
+package simpledb;
+
+import java.io.File;
+
+/**
+ * Measures the cost of evicting a page when almost the whole buffer pool is
+ * held dirty by one open transaction. The transaction dirties all but a few
+ * pages of the pool, then a second table is scanned through the remaining
+ * frames so that every page read needs an eviction. Reports the mean time
+ * per page read for several pool sizes; it should not grow with the pool.
+ * <p>
+ * Usage: java simpledb.EvictionBenchmark [scanPasses] [poolSizes...]
+ */
+public class EvictionBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int passes = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int[] sizes = new int[] { 64, 256, 1024, 4096 };
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; ++i)
+                sizes[i - 1] = Integer.parseInt(args[i]);
+        }
+
+        for (int size : sizes)
+            run(size, passes);
+    }
+
+    private static void run(int poolPages, int passes) throws Exception {
+        Database.reset();
+        HeapFile dirtied = createFile(poolPages - 4);
+        HeapFile scanned = createFile(64);
+        BufferPool bp = Database.resetBufferPool(poolPages);
+
+        TransactionId writer = new TransactionId();
+        for (int i = 0; i < dirtied.numPages(); ++i)
+            bp.getPage(writer, new HeapPageId(dirtied.getId(), i), Permissions.READ_WRITE).markDirty(true, writer);
+
+        long reads = 0;
+        long start = System.nanoTime();
+        for (int p = 0; p < passes; ++p) {
+            for (int i = 0; i < scanned.numPages(); ++i) {
+                bp.getPage(null, new HeapPageId(scanned.getId(), i), Permissions.READ_ONLY);
+                reads++;
+            }
+        }
+        double nanos = (System.nanoTime() - start) / (double) reads;
+        bp.transactionComplete(writer, false);
+
+        System.out.printf("pool=%d pages, %d dirty: %.1f us per page read%n",
+                poolPages, dirtied.numPages(), nanos / 1e3);
+    }
+
+    //creates a table of the given number of full pages
+    private static HeapFile createFile(int pages) throws Exception {
+        File f = File.createTempFile("eviction", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = Utility.createEmptyHeapFile(f.getAbsolutePath(), 2);
+        byte[] data = HeapPage.createEmptyPageData();
+        for (int i = 0; i < pages; ++i)
+            hf.writePage(new HeapPage(new HeapPageId(hf.getId(), i), data));
+        return hf;
+    }
+}
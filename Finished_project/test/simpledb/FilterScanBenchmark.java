@@ -0,0 +1,75 @@
+package simpledb;
+
+import java.lang.management.ManagementFactory;
+
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Selective scan benchmark: runs "SELECT * FROM t WHERE t.field0 < 1% of
+ * the values" over a random table of int columns, with the table both cold
+ * (a fresh buffer pool for every scan, so every page is loaded) and cached.
+ * Reports tuples scanned per second and the bytes allocated by the scanning
+ * thread per tuple scanned.
+ * <p>
+ * Usage: java simpledb.FilterScanBenchmark [passes] [rows] [columns]
+ */
+public class FilterScanBenchmark {
+
+    private static final int MAX_VALUE = 100000;
+
+    public static void main(String[] args) throws Exception {
+        int passes = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int rows = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+        int columns = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+        HeapFile f = SystemTestUtil.createRandomHeapFile(columns, rows, MAX_VALUE, null, null);
+        int bufferPages = f.numPages() + 16;
+
+        // warm up the JIT
+        Database.resetBufferPool(bufferPages);
+        scan(f, 3);
+
+        for (String mode : new String[] { "cold", "cached" }) {
+            long tuples = 0;
+            long nanos = 0;
+            long bytes = 0;
+            Database.resetBufferPool(bufferPages);
+            if (mode.equals("cached"))
+                scan(f, 1);
+            for (int p = 0; p < passes; ++p) {
+                if (mode.equals("cold"))
+                    Database.resetBufferPool(bufferPages);
+                long allocated = allocatedBytes();
+                long start = System.nanoTime();
+                scan(f, 1);
+                nanos += System.nanoTime() - start;
+                bytes += allocatedBytes() - allocated;
+                tuples += rows;
+            }
+            System.out.printf("%-6s %5d pages: %9.0f tuples/s, %6.1f bytes allocated/tuple%n", mode,
+                    f.numPages(), tuples / (nanos / 1e9), (double) bytes / tuples);
+        }
+    }
+
+    private static int scan(HeapFile f, int times) throws Exception {
+        int matched = 0;
+        for (int i = 0; i < times; ++i) {
+            TransactionId tid = new TransactionId();
+            Filter filter = new Filter(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(MAX_VALUE / 100)),
+                    new SeqScan(tid, f.getId(), "t"));
+            filter.open();
+            while (filter.hasNext()) {
+                filter.next();
+                matched++;
+            }
+            filter.close();
+            Database.getBufferPool().transactionComplete(tid);
+        }
+        return matched;
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,107 @@
+package simpledb;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Hash join benchmark over the sample IMDB database: times Casts.pid =
+ * Actor.id with a cold buffer pool as a nested-loop Join and as a
+ * HashEquiJoin under a memory budget large enough to hold Casts and under
+ * budgets that make it spill partitions, and counts the tuples read from
+ * each child. The hash joins run once untimed first, to warm up the JIT.
+ * Usage: java simpledb.HashJoinBenchmark [passes] [schemaFile]
+ */
+public class HashJoinBenchmark {
+
+    private static final int[] BUDGETS = { HashEquiJoin.DEFAULT_MEMORY_PAGES, 64, 16, 4 };
+
+    public static void main(String[] args) throws Exception {
+        int passes = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        String schema = args.length > 1 ? args[1] : "sample-0.001/imdb.schema";
+
+        Database.getCatalog().loadSchema(schema);
+        int castsId = Database.getCatalog().getTableId("Casts");
+        int actorId = Database.getCatalog().getTableId("Actor");
+
+        report("nested loops", castsId, actorId, 0, 1, true);
+        for (boolean print : new boolean[] { false, true })
+            for (int budget : BUDGETS)
+                report("hash, " + budget + " pages", castsId, actorId, budget, passes, print);
+    }
+
+    //times the join, by nested loops if memoryPages is 0
+    private static void report(String name, int castsId, int actorId, int memoryPages, int passes,
+            boolean print) throws Exception {
+        long nanos = 0;
+        int rows = 0;
+        Counter casts = null, actors = null;
+        for (int p = 0; p < passes; ++p) {
+            Database.resetBufferPool(2000);
+            TransactionId tid = new TransactionId();
+            casts = new Counter(new SeqScan(tid, castsId, "c"));
+            actors = new Counter(new SeqScan(tid, actorId, "a"));
+            JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+            DbIterator it = memoryPages == 0 ? new Join(pred, casts, actors)
+                    : new HashEquiJoin(pred, casts, actors, memoryPages);
+            long start = System.nanoTime();
+            rows = 0;
+            it.open();
+            while (it.hasNext()) {
+                it.next();
+                rows++;
+            }
+            it.close();
+            nanos += System.nanoTime() - start;
+            Database.getBufferPool().transactionComplete(tid);
+        }
+        if (print)
+            System.out.printf("%-18s %5d rows %9.1f ms, read %7d Casts and %8d Actor tuples%n", name, rows,
+                    nanos / 1e6 / passes, casts.count, actors.count);
+    }
+
+    //counts the tuples read through it
+    private static class Counter extends Operator {
+
+        private static final long serialVersionUID = 1L;
+
+        private DbIterator child;
+
+        int count;
+
+        Counter(DbIterator child) {
+            this.child = child;
+        }
+
+        public void open() throws DbException, NoSuchElementException, TransactionAbortedException {
+            child.open();
+            super.open();
+        }
+
+        public void close() {
+            super.close();
+            child.close();
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            child.rewind();
+        }
+
+        protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+            if (!child.hasNext())
+                return null;
+            count++;
+            return child.next();
+        }
+
+        public TupleDesc getTupleDesc() {
+            return child.getTupleDesc();
+        }
+
+        public DbIterator[] getChildren() {
+            return new DbIterator[] { child };
+        }
+
+        public void setChildren(DbIterator[] children) {
+            child = children[0];
+        }
+    }
+}
@@ -79,6 +79,23 @@ public class HeapFileReadTest extends SimpleDbTestBase {
         assertFalse(page.isSlotUsed(20));
     }
 
+    /**
+     * Unit test for HeapFile.readPage() in memory-mapped mode: pages read
+     * from the mapping match pages read through the channel.
+     */
+    @Test
+    public void readPageMapped() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 2000, null, null);
+        HeapFile mapped = new HeapFile(f.getFile(), f.getTupleDesc(), true);
+        assertTrue(mapped.isMemoryMapped());
+        assertEquals(f.numPages(), mapped.numPages());
+
+        for (int i = 0; i < f.numPages(); ++i) {
+            HeapPageId pid = new HeapPageId(f.getId(), i);
+            assertArrayEquals(f.readPage(pid).getPageData(), mapped.readPage(pid).getPageData());
+        }
+    }
+
     @Test
     public void testIteratorBasic() throws Exception {
         HeapFile smallFile = SystemTestUtil.createRandomHeapFile(2, 3, null,
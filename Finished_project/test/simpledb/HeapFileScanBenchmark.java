@@ -0,0 +1,61 @@
+package simpledb;
+
+import java.util.Iterator;
+
+/**
+ * Cold-cache scan benchmark for HeapFile over the sample IMDB database.
+ * Scans every table repeatedly, each time through a freshly created buffer
+ * pool, so that every page of every scan is read through HeapFile.readPage,
+ * and reports pages scanned per second for each table. With "mapped" the
+ * tables are read through memory mappings; with "noreadahead" scans are not
+ * helped by background read-ahead.
+ * <p>
+ * Usage: java simpledb.HeapFileScanBenchmark [passes] [bufferPages]
+ *     [channel|mapped] [readahead|noreadahead] [schemaFile]
+ */
+public class HeapFileScanBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int passes = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int bufferPages = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        boolean mapped = args.length > 2 && args[2].equals("mapped");
+        boolean readAhead = !(args.length > 3 && args[3].equals("noreadahead"));
+        String schema = args.length > 4 ? args[4] : "sample-0.001/imdb.schema";
+
+        Database.getCatalog().loadSchema(schema);
+
+        long totalPages = 0;
+        long totalNanos = 0;
+        for (Iterator<Integer> it = Database.getCatalog().tableIdIterator(); it.hasNext();) {
+            int tableId = it.next();
+            HeapFile f = (HeapFile) Database.getCatalog().getDbFile(tableId);
+            f.setMemoryMapped(mapped);
+
+            long tuples = 0;
+            long nanos = 0;
+            for (int p = 0; p < passes; ++p) {
+                BufferPool bp = Database.resetBufferPool(bufferPages);
+                bp.setReadAheadEnabled(readAhead);
+                long start = System.nanoTime();
+                TransactionId tid = new TransactionId();
+                SeqScan scan = new SeqScan(tid, tableId, "");
+                scan.open();
+                while (scan.hasNext()) {
+                    scan.next();
+                    tuples++;
+                }
+                scan.close();
+                bp.transactionComplete(tid);
+                nanos += System.nanoTime() - start;
+            }
+
+            long pages = (long) f.numPages() * passes;
+            totalPages += pages;
+            totalNanos += nanos;
+            System.out.printf("%-16s %4d pages: %8.0f pages/s, %9.0f tuples/s%n",
+                    Database.getCatalog().getTableName(tableId), f.numPages(),
+                    pages / (nanos / 1e9), tuples / (nanos / 1e9));
+        }
+        System.out.printf("%-16s %4s       : %8.0f pages/s%n", "all", "", totalPages / (totalNanos / 1e9));
+    }
+}
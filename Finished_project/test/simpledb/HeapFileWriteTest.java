@@ -4,6 +4,8 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+
 import static org.junit.Assert.*;
 import junit.framework.JUnit4TestAdapter;
 
@@ -43,6 +45,87 @@ public class HeapFileWriteTest extends TestUtil.CreateHeapFile {
         assertEquals(3, empty.numPages());
     }
 
+    /**
+     * Unit test for HeapFile.writePage() extending the file: the cached page
+     * count follows, and the page reads back with the tuples written to it.
+     */
+    @Test public void writePageExtends() throws Exception {
+        HeapPageId pid = new HeapPageId(empty.getId(), 3);
+        HeapPage page = new HeapPage(pid, HeapPage.createEmptyPageData());
+        page.insertTuple(Utility.getHeapTuple(42, 2));
+        empty.writePage(page);
+        assertEquals(4, empty.numPages());
+        assertEquals(4 * BufferPool.PAGE_SIZE, empty.getFile().length());
+
+        HeapPage read = (HeapPage) empty.readPage(pid);
+        assertEquals(Utility.getHeapTuple(42, 2).getField(0), read.iterator().next().getField(0));
+        assertFalse(((HeapPage) empty.readPage(new HeapPageId(empty.getId(), 2))).iterator().hasNext());
+    }
+
+    /**
+     * Unit test for HeapFile.addTuple() in memory-mapped mode: pages added
+     * after the file was first mapped can be read through the mapping.
+     */
+    @Test public void addTupleMapped() throws Exception {
+        empty.setMemoryMapped(true);
+        empty.readPage(new HeapPageId(empty.getId(), 0));
+
+        for (int i = 0; i < 1100; ++i)
+            empty.insertTuple(tid, Utility.getHeapTuple(i, 2));
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(3, empty.numPages());
+
+        HeapPage last = (HeapPage) empty.readPage(new HeapPageId(empty.getId(), 2));
+        assertEquals(1100 - 2 * 504, 504 - last.getNumEmptySlots());
+    }
+
+    /**
+     * Unit test for HeapFile.addTuple() with a free space map: full pages are
+     * skipped without being locked, also after the file is opened again, and
+     * a page with a deleted tuple is filled again.
+     */
+    @Test public void addTupleFreeSpaceMap() throws Exception {
+        for (int i = 0; i < 1100; ++i)
+            empty.insertTuple(tid, Utility.getHeapTuple(i, 2));
+        Database.getBufferPool().transactionComplete(tid);
+        assertTrue(FreeSpaceMap.fileFor(empty.getFile()).exists());
+
+        HeapFile reopened = Utility.openHeapFile(2, empty.getFile());
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid2 = new TransactionId();
+        reopened.insertTuple(tid2, Utility.getHeapTuple(1, 2));
+        assertFalse(bp.holdsLock(tid2, new HeapPageId(reopened.getId(), 0)));
+        assertFalse(bp.holdsLock(tid2, new HeapPageId(reopened.getId(), 1)));
+        assertTrue(bp.holdsLock(tid2, new HeapPageId(reopened.getId(), 2)));
+
+        Tuple victim = ((HeapPage) bp.getPage(tid2, new HeapPageId(reopened.getId(), 1),
+                Permissions.READ_WRITE)).iterator().next();
+        reopened.deleteTuple(tid2, victim);
+        ArrayList<Page> dirtied = reopened.insertTuple(tid2, Utility.getHeapTuple(2, 2));
+        assertEquals(1, dirtied.get(0).getId().pageNumber());
+        bp.transactionComplete(tid2);
+    }
+
+    /**
+     * Unit test for HeapFile.addTuple() after an aborted insert filled a
+     * page: the page has room again, and is filled instead of a new page.
+     */
+    @Test public void addTupleAfterAbort() throws Exception {
+        for (int i = 0; i < 503; ++i)
+            empty.insertTuple(tid, Utility.getHeapTuple(i, 2));
+        Database.getBufferPool().transactionComplete(tid);
+
+        TransactionId tid2 = new TransactionId();
+        empty.insertTuple(tid2, Utility.getHeapTuple(503, 2));
+        Database.getBufferPool().transactionComplete(tid2, false);
+
+        TransactionId tid3 = new TransactionId();
+        ArrayList<Page> dirtied = empty.insertTuple(tid3, Utility.getHeapTuple(503, 2));
+        assertEquals(0, dirtied.get(0).getId().pageNumber());
+        assertEquals(1, empty.numPages());
+        Database.getBufferPool().transactionComplete(tid3);
+    }
+
     /**
      * JUnit suite target
      */
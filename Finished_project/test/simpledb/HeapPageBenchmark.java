@@ -0,0 +1,68 @@
+package simpledb;
+
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+
+/**
+ * Page-level benchmark for HeapPage slot bookkeeping: fills an empty page of
+ * two int columns with insertTuple, checking getNumEmptySlots before each
+ * insert as HeapFile does, scans it with iterator() several times, and
+ * empties it again with deleteTuple. Reports the time per insert and per
+ * tuple scanned, and the bytes allocated per scan of the full page.
+ * <p>
+ * Usage: java simpledb.HeapPageBenchmark [rounds]
+ */
+public class HeapPageBenchmark {
+
+    private static final int SCANS = 20;
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+
+        TupleDesc td = Utility.getTupleDesc(2);
+        Database.getCatalog().addTable(new TestUtil.SkeletonFile(-1, td), "page");
+        HeapPageId pid = new HeapPageId(-1, 0);
+        Tuple[] toInsert = new Tuple[BufferPool.PAGE_SIZE];
+        for (int i = 0; i < toInsert.length; ++i)
+            toInsert[i] = Utility.getHeapTuple(i, 2);
+
+        for (int pass = 0; pass < 3; ++pass) {
+            long insertNanos = 0, scanNanos = 0, scanBytes = 0;
+            long inserts = 0, scanned = 0, sum = 0;
+            for (int r = 0; r < rounds; ++r) {
+                HeapPage page = new HeapPage(pid, HeapPage.createEmptyPageData());
+
+                long start = System.nanoTime();
+                int n = 0;
+                while (page.getNumEmptySlots() > 0)
+                    page.insertTuple(toInsert[n++]);
+                insertNanos += System.nanoTime() - start;
+                inserts += n;
+
+                long allocated = allocatedBytes();
+                start = System.nanoTime();
+                Tuple last = null;
+                for (int s = 0; s < SCANS; ++s) {
+                    for (Iterator<Tuple> it = page.iterator(); it.hasNext();) {
+                        last = it.next();
+                        scanned++;
+                    }
+                }
+                scanNanos += System.nanoTime() - start;
+                scanBytes += allocatedBytes() - allocated;
+                sum += last.getRecordId().tupleno();
+
+                for (int i = 0; i < n; ++i)
+                    page.deleteTuple(toInsert[i]);
+            }
+            System.out.printf("insert %6.1f ns/tuple, scan %5.1f ns/tuple, %6.1f bytes allocated/scan (%d)%n",
+                    (double) insertNanos / inserts, (double) scanNanos / scanned,
+                    (double) scanBytes / (rounds * SCANS), sum % 10);
+        }
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
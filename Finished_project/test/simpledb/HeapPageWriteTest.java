@@ -129,6 +129,107 @@ public class HeapPageWriteTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Unit test for HeapPage.deleteTuple() followed by an insert into the
+     * freed slot: a tuple read from the slot before keeps its values, and the
+     * page bytes hold the new tuple.
+     */
+    @Test public void reuseSlotKeepsOldTuple() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        Tuple old = page.iterator().next();
+        Tuple expected = Utility.getHeapTuple(HeapPageReadTest.EXAMPLE_VALUES[0]);
+        page.deleteTuple(old);
+        Tuple addition = Utility.getHeapTuple(-1, 2);
+        page.insertTuple(addition);
+        assertEquals(old.getRecordId(), addition.getRecordId());
+        assertTrue(TestUtil.compareTuples(expected, old));
+
+        HeapPage reread = new HeapPage(pid, page.getPageData());
+        Tuple read = reread.iterator().next();
+        assertTrue(TestUtil.compareTuples(addition, read));
+    }
+
+    /**
+     * Unit test for HeapPage.getBeforeImage(): the before image holds the
+     * contents from before the first change, until setBeforeImage is called.
+     */
+    @Test public void beforeImage() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        assertTrue(java.util.Arrays.equals(HeapPageReadTest.EXAMPLE_DATA, page.getBeforeImage().getPageData()));
+
+        page.insertTuple(Utility.getHeapTuple(1, 2));
+        page.markDirty(true, new TransactionId());
+        page.insertTuple(Utility.getHeapTuple(2, 2));
+        assertTrue(java.util.Arrays.equals(HeapPageReadTest.EXAMPLE_DATA, page.getBeforeImage().getPageData()));
+
+        page.markDirty(false, null);
+        page.setBeforeImage();
+        assertTrue(java.util.Arrays.equals(page.getPageData(), page.getBeforeImage().getPageData()));
+        assertEquals(page.getNumEmptySlots(), page.getBeforeImage().getNumEmptySlots());
+    }
+
+    /**
+     * Unit test for HeapPage.writePageData()
+     */
+    @Test public void writePageData() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        page.insertTuple(Utility.getHeapTuple(1, 2));
+        java.nio.ByteBuffer buf = java.nio.ByteBuffer.allocate(BufferPool.PAGE_SIZE + 1);
+        buf.put((byte) 1);
+        page.writePageData(buf);
+        assertEquals(BufferPool.PAGE_SIZE + 1, buf.position());
+        byte[] written = new byte[BufferPool.PAGE_SIZE];
+        System.arraycopy(buf.array(), 1, written, 0, written.length);
+        assertTrue(java.util.Arrays.equals(page.getPageData(), written));
+    }
+
+    /**
+     * Unit test for HeapPage.iterator() while the page changes: tuples
+     * inserted after it was created are not returned, deleted ones are skipped.
+     */
+    @Test public void iteratorWhileModified() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        int count = HeapPageReadTest.EXAMPLE_VALUES.length;
+        Iterator<Tuple> it = page.iterator();
+        Tuple first = it.next();
+        page.deleteTuple(first);
+        page.insertTuple(Utility.getHeapTuple(1, 2));
+        page.insertTuple(Utility.getHeapTuple(2, 2));
+
+        Iterator<Tuple> again = page.iterator();
+        again.next();
+        Tuple second = again.next();
+        page.deleteTuple(second);
+        int seen = 1;
+        while (it.hasNext()) {
+            assertTrue(it.next() != second);
+            seen++;
+        }
+        assertEquals(count - 1, seen);
+    }
+
+    /**
+     * Unit test for HeapPage.iterator() when a slot it has not reached yet is
+     * emptied and filled again: the new tuple is not returned.
+     */
+    @Test public void iteratorSkipsReusedSlot() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        int count = HeapPageReadTest.EXAMPLE_VALUES.length;
+        Iterator<Tuple> it = page.iterator();
+        Tuple first = page.iterator().next();
+        page.deleteTuple(first);
+        Tuple reused = Utility.getHeapTuple(7, 2);
+        page.insertTuple(reused);
+        assertEquals(first.getRecordId().tupleno(), reused.getRecordId().tupleno());
+
+        int seen = 0;
+        while (it.hasNext()) {
+            assertTrue(it.next() != reused);
+            seen++;
+        }
+        assertEquals(count - 1, seen);
+    }
+
     /**
      * JUnit suite target
      */
@@ -0,0 +1,93 @@
+package simpledb;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Vector;
+
+/**
+ * Index nested-loop join benchmark over the sample IMDB database: builds an
+ * index on the id column of Movie and Actor, then times Casts.mid = Movie.id
+ * and Casts.pid = Actor.id with a cold buffer pool, as a nested-loop Join and
+ * as an IndexNestedLoopJoin, and prints the optimizer's cost of each and the
+ * operator it plans.
+ * Usage: java simpledb.IndexJoinBenchmark [passes] [schemaFile]
+ */
+public class IndexJoinBenchmark {
+
+    private static final String[][] JOINS = { { "mid", "Movie" }, { "pid", "Actor" } };
+
+    public static void main(String[] args) throws Exception {
+        int passes = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        String schema = args.length > 1 ? args[1] : "sample-0.001/imdb.schema";
+
+        Database.getCatalog().loadSchema(schema);
+        Database.resetBufferPool(2000);
+
+        int castsId = Database.getCatalog().getTableId("Casts");
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put("Casts", new TableStats(castsId, 1000));
+
+        for (String[] join : JOINS) {
+            int tableId = Database.getCatalog().getTableId(join[1]);
+            File f = File.createTempFile("index", ".idx");
+            f.delete();
+            f.deleteOnExit();
+            BTreeFile index = new BTreeFile(f, tableId, 0);
+            Database.getCatalog().addIndex(index);
+            index.build();
+            stats.put(join[1], new TableStats(tableId, 1000));
+
+            LogicalPlan lp = new LogicalPlan();
+            lp.addScan(castsId, "c");
+            lp.addScan(tableId, "t");
+            lp.addJoin("c." + join[0], "t.id", Predicate.Op.EQUALS);
+            lp.addProjectField("c." + join[0], null);
+            JoinOptimizer jo = new JoinOptimizer(lp, new Vector<LogicalJoinNode>());
+            LogicalJoinNode j = new LogicalJoinNode("c", "t", join[0], "id", Predicate.Op.EQUALS);
+            TableStats castsStats = stats.get("Casts"), innerStats = stats.get(join[1]);
+            int card1 = castsStats.totalTuples(), card2 = innerStats.totalTuples();
+            double cost1 = castsStats.estimateScanCost(), cost2 = innerStats.estimateScanCost();
+            double loopCost = jo.estimateJoinCost(j, LogicalJoinNode.Method.NESTED_LOOP, card1, card2, cost1, cost2,
+                    innerStats);
+            double indexCost = jo.estimateJoinCost(j, LogicalJoinNode.Method.INDEX_NESTED_LOOP, card1, card2, cost1,
+                    cost2, innerStats);
+            TransactionId tid = new TransactionId();
+            DbIterator plan = lp.physicalPlan(tid, stats, false);
+            String planned = ((Operator) plan).getChildren()[0].getClass().getSimpleName();
+            Database.getBufferPool().transactionComplete(tid);
+
+            double[] loop = time(castsId, join[0], tableId, null, passes);
+            double[] probe = time(castsId, join[0], tableId, index, passes);
+            System.out.printf("Casts.%s = %s.id: %d rows, nested loops %8.1f ms (cost %.3g), index join %8.1f ms (cost %.3g), planned %s%n",
+                    join[0], join[1], (int) loop[1], loop[0], loopCost, probe[0], indexCost, planned);
+        }
+    }
+
+    //milliseconds per join with a cold pool, and the number of rows
+    private static double[] time(int castsId, String field, int tableId, BTreeFile index, int passes)
+            throws Exception {
+        long nanos = 0;
+        int rows = 0;
+        for (int p = 0; p < passes; ++p) {
+            Database.resetBufferPool(2000);
+            TransactionId tid = new TransactionId();
+            DbIterator casts = new SeqScan(tid, castsId, "c");
+            JoinPredicate pred = new JoinPredicate(casts.getTupleDesc().fieldNameToIndex("c." + field),
+                    Predicate.Op.EQUALS, 0);
+            DbIterator inner = new SeqScan(tid, tableId, "t");
+            DbIterator it = index == null ? new Join(pred, casts, inner)
+                    : new IndexNestedLoopJoin(pred, casts, inner, index);
+            long start = System.nanoTime();
+            rows = 0;
+            it.open();
+            while (it.hasNext()) {
+                it.next();
+                rows++;
+            }
+            it.close();
+            nanos += System.nanoTime() - start;
+            Database.getBufferPool().transactionComplete(tid);
+        }
+        return new double[] { nanos / 1e6 / passes, rows };
+    }
+}
@@ -0,0 +1,112 @@
+package simpledb;
+
+import java.io.File;
+
+/**
+ * B+ tree index benchmark over the sample IMDB database: builds an index on
+ * the id column of Movie and Actor, then times, with a cold and with a warm
+ * buffer pool, each of
+ * <ul>
+ * <li>id = the id of a tuple in the middle of the table</li>
+ * <li>id &lt;= the id that 1% of the table is at or below</li>
+ * <li>id &lt;= the id that 10% of the table is at or below</li>
+ * </ul>
+ * as a SeqScan under a Filter and as an IndexScan, and prints what the
+ * optimizer's costs would pick.
+ * Usage: java simpledb.IndexScanBenchmark [passes] [schemaFile]
+ */
+public class IndexScanBenchmark {
+
+    private static final String[] TABLES = { "Movie", "Actor" };
+
+    private static final double[] SHARES = { 0, 0.01, 0.1 };
+
+    public static void main(String[] args) throws Exception {
+        int passes = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        String schema = args.length > 1 ? args[1] : "sample-0.001/imdb.schema";
+
+        Database.getCatalog().loadSchema(schema);
+        Database.resetBufferPool(2000);
+
+        for (String name : TABLES) {
+            int tableId = Database.getCatalog().getTableId(name);
+            HeapFile table = (HeapFile) Database.getCatalog().getDbFile(tableId);
+            File f = File.createTempFile("index", ".idx");
+            f.delete();
+            f.deleteOnExit();
+            BTreeFile index = new BTreeFile(f, tableId, 0);
+            Database.getCatalog().addIndex(index);
+            index.build();
+            TableStats stats = new TableStats(tableId, 1000);
+            int[] ids = sortedIds(index);
+
+            System.out.printf("%s: %d tuples, %d pages, index %d pages%n", name, ids.length, table.numPages(),
+                    index.numPages());
+
+            for (double share : SHARES) {
+                Predicate.Op op = share == 0 ? Predicate.Op.EQUALS : Predicate.Op.LESS_THAN_OR_EQ;
+                IntField key = new IntField(ids[share == 0 ? ids.length / 2 : (int) (ids.length * share)]);
+                double sel = stats.estimateSelectivity(0, op, key);
+                boolean useIndex = stats.estimateIndexScanCost(index, sel) < stats.estimateScanCost();
+
+                double[] seq = time(tableId, index, op, key, false, passes);
+                double[] idx = time(tableId, index, op, key, true, passes);
+                System.out.printf("  id %s %-6s %5d rows: scan cold %8.1f warm %8.1f us, index cold %8.1f warm %8.1f us, optimizer picks %s%n",
+                        op, key, (int) seq[2], seq[0], seq[1], idx[0], idx[1], useIndex ? "index" : "scan");
+            }
+        }
+    }
+
+    private static int[] sortedIds(BTreeFile index) throws Exception {
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = index.iterator(tid);
+        int n = 0;
+        it.open();
+        while (it.hasNext()) {
+            it.next();
+            n++;
+        }
+        int[] ids = new int[n];
+        it.rewind();
+        for (int i = 0; i < n; i++)
+            ids[i] = ((IntField) it.next().getField(0)).getValue();
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return ids;
+    }
+
+    //microseconds per query with a cold and a warm pool, and the number of rows
+    private static double[] time(int tableId, BTreeFile index, Predicate.Op op, Field key, boolean useIndex,
+            int passes) throws Exception {
+        long cold = 0, warm = 0;
+        int rows = 0;
+        for (int p = 0; p < passes; ++p) {
+            Database.resetBufferPool(2000);
+            for (int run = 0; run < 2; run++) {
+                TransactionId tid = new TransactionId();
+                DbIterator it = useIndex ? new IndexScan(tid, index, op, key)
+                        : new Filter(new Predicate(0, op, key), new SeqScan(tid, tableId));
+                long start = System.nanoTime();
+                rows = drain(it);
+                long nanos = System.nanoTime() - start;
+                Database.getBufferPool().transactionComplete(tid);
+                if (run == 0)
+                    cold += nanos;
+                else
+                    warm += nanos;
+            }
+        }
+        return new double[] { cold / 1e3 / passes, warm / 1e3 / passes, rows };
+    }
+
+    private static int drain(DbIterator it) throws Exception {
+        int n = 0;
+        it.open();
+        while (it.hasNext()) {
+            it.next();
+            n++;
+        }
+        it.close();
+        return n;
+    }
+}
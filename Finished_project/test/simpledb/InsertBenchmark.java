@@ -0,0 +1,40 @@
+package simpledb;
+
+import java.io.File;
+
+/**
+ * Bulk insert benchmark. Appends tuples to an initially empty table in
+ * transactions of a fixed size, committing each, and reports the insert
+ * rate as the table grows. With a free space map the cost of an insert
+ * should not depend on the size of the table.
+ * <p>
+ * Usage: java simpledb.InsertBenchmark [transactions] [tuplesPerTransaction] [reportEvery]
+ */
+public class InsertBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int transactions = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int perTxn = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int reportEvery = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        File f = File.createTempFile("insert", ".dat");
+        f.deleteOnExit();
+        FreeSpaceMap.fileFor(f).deleteOnExit();
+        HeapFile hf = Utility.createEmptyHeapFile(f.getAbsolutePath(), 2);
+        BufferPool bp = Database.getBufferPool();
+
+        long start = System.nanoTime();
+        for (int t = 1; t <= transactions; ++t) {
+            TransactionId tid = new TransactionId();
+            for (int i = 0; i < perTxn; ++i)
+                bp.insertTuple(tid, hf.getId(), Utility.getHeapTuple(i, 2));
+            bp.transactionComplete(tid);
+
+            if (t % reportEvery == 0) {
+                double elapsed = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%6d pages: %8.0f tuples/s%n", hf.numPages(), reportEvery * perTxn / elapsed);
+                start = System.nanoTime();
+            }
+        }
+    }
+}
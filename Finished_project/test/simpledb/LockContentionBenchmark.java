@@ -0,0 +1,108 @@
+package simpledb;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Multi-threaded lock contention benchmark for BufferPool.getPage, using the
+ * same three page table that LockingTest and DeadlockTest run against.
+ * <p>
+ * Every thread runs short transactions that lock two of the pages in page
+ * order (so they never deadlock), read every tuple on them while holding the
+ * locks, yield the CPU once as if waiting for I/O, and commit; a lock is
+ * exclusive with the given probability. Reports committed transactions per
+ * second and the mean and worst time spent in getPage, which are bounded by
+ * how quickly a released lock is handed to the next waiter.
+ * <p>
+ * Usage: java simpledb.LockContentionBenchmark [threads] [seconds] [writeFraction]
+ */
+public class LockContentionBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        final double writeFraction = args.length > 2 ? Double.parseDouble(args[2]) : 0.5;
+
+        File f = File.createTempFile("contention", ".dat");
+        f.deleteOnExit();
+        Database.reset();
+        HeapFile hf = Utility.createEmptyHeapFile(f.getAbsolutePath(), 2);
+
+        TransactionId loader = new TransactionId();
+        for (int i = 0; i < 1025; ++i)
+            hf.insertTuple(loader, Utility.getHeapTuple(i, 2));
+        final PageId[] pages = new PageId[hf.numPages()];
+        for (int i = 0; i < pages.length; ++i) {
+            pages[i] = new HeapPageId(hf.getId(), i);
+            Database.getBufferPool().getPage(loader, pages[i], Permissions.READ_WRITE).markDirty(true, loader);
+        }
+        Database.getBufferPool().flushAllPages();
+        final BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+
+        final AtomicLong commits = new AtomicLong();
+        final AtomicLong aborts = new AtomicLong();
+        final AtomicLong waitNanos = new AtomicLong();
+        final AtomicLong maxWaitNanos = new AtomicLong();
+        final long end = System.currentTimeMillis() + seconds * 1000L;
+
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; ++t) {
+            final Random rand = new Random(t);
+            workers[t] = new Thread() {
+                public void run() {
+                    while (System.currentTimeMillis() < end) {
+                        TransactionId tid = new TransactionId();
+                        int first = rand.nextInt(pages.length - 1);
+                        int second = first + 1 + rand.nextInt(pages.length - first - 1);
+                        try {
+                            for (int i : new int[] { first, second }) {
+                                long before = System.nanoTime();
+                                Page p = bp.getPage(tid, pages[i], perm(rand, writeFraction));
+                                long waited = System.nanoTime() - before;
+                                waitNanos.addAndGet(waited);
+                                if (waited > maxWaitNanos.get())
+                                    maxWaitNanos.set(waited);
+                                scan(p);
+                                Thread.yield();
+                            }
+                            bp.transactionComplete(tid);
+                            commits.incrementAndGet();
+                        } catch (TransactionAbortedException e) {
+                            aborts.incrementAndGet();
+                            try {
+                                bp.transactionComplete(tid, false);
+                            } catch (java.io.IOException e2) {
+                                throw new RuntimeException(e2);
+                            }
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                }
+            };
+        }
+
+        long start = System.nanoTime();
+        for (Thread w : workers)
+            w.start();
+        for (Thread w : workers)
+            w.join();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("threads=%d writeFraction=%.2f: %d commits, %d aborts, %.0f txn/s, "
+                + "getPage mean %.1f us, max %.1f ms%n",
+                threads, writeFraction, commits.get(), aborts.get(), commits.get() / elapsed,
+                waitNanos.get() / 1e3 / (2 * (commits.get() + aborts.get())), maxWaitNanos.get() / 1e6);
+    }
+
+    private static void scan(Page p) {
+        java.util.Iterator<Tuple> it = ((HeapPage) p).iterator();
+        while (it.hasNext())
+            it.next();
+    }
+
+    private static Permissions perm(Random rand, double writeFraction) {
+        return rand.nextDouble() < writeFraction ? Permissions.READ_WRITE : Permissions.READ_ONLY;
+    }
+}
@@ -0,0 +1,68 @@
+package simpledb;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput benchmark for the LockManager alone, without the BufferPool in
+ * front of it: many short, mostly read-only transactions each lock a few
+ * random pages out of a large table and then release all their locks at
+ * once, as on commit. Reports lock acquisitions per second.
+ * <p>
+ * Usage: java simpledb.LockManagerBenchmark [threads] [seconds] [pages]
+ *     [locksPerTransaction] [writeFraction]
+ */
+public class LockManagerBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        final int numPages = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+        final int locksPerTxn = args.length > 3 ? Integer.parseInt(args[3]) : 8;
+        final double writeFraction = args.length > 4 ? Double.parseDouble(args[4]) : 0.02;
+
+        final LockManager lm = new LockManager();
+        final PageId[] pages = new PageId[numPages];
+        for (int i = 0; i < numPages; ++i)
+            pages[i] = new HeapPageId(1, i);
+
+        final AtomicLong locks = new AtomicLong();
+        final AtomicLong aborts = new AtomicLong();
+        final long end = System.currentTimeMillis() + seconds * 1000L;
+
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; ++t) {
+            final Random rand = new Random(t);
+            workers[t] = new Thread() {
+                public void run() {
+                    long n = 0;
+                    while (System.currentTimeMillis() < end) {
+                        TransactionId tid = new TransactionId();
+                        try {
+                            for (int i = 0; i < locksPerTxn; ++i) {
+                                Permissions perm = rand.nextDouble() < writeFraction
+                                        ? Permissions.READ_WRITE : Permissions.READ_ONLY;
+                                lm.acquireLock(pages[rand.nextInt(numPages)], tid, perm);
+                                n++;
+                            }
+                        } catch (TransactionAbortedException e) {
+                            aborts.incrementAndGet();
+                        }
+                        lm.releaseTid(tid);
+                    }
+                    locks.addAndGet(n);
+                }
+            };
+        }
+
+        long start = System.nanoTime();
+        for (Thread w : workers)
+            w.start();
+        for (Thread w : workers)
+            w.join();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("threads=%d pages=%d locks/txn=%d writeFraction=%.2f: %.0f locks/s, %d aborts%n",
+                threads, numPages, locksPerTxn, writeFraction, locks.get() / elapsed, aborts.get());
+    }
+}
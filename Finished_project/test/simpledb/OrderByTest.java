@@ -0,0 +1,147 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class OrderByTest extends SimpleDbTestBase {
+
+  int width1 = 2;
+  DbIterator scan1;
+
+  /**
+   * Initialize each unit test
+   */
+  @Before public void createTupleLists() throws Exception {
+    this.scan1 = TestUtil.createTupleList(width1,
+        new int[] { 3, 2,
+                    1, 6,
+                    5, 7,
+                    1, 2,
+                    3, 6,
+                    1, 4 });
+  }
+
+  /**
+   * Unit test for OrderBy on one field
+   */
+  @Test public void sortOneField() throws Exception {
+    OrderBy op = new OrderBy(0, true, scan1);
+    op.open();
+    // equal keys keep the order of the child
+    TestUtil.compareDbIterators(TestUtil.createTupleList(width1,
+        new int[] { 1, 6,
+                    1, 2,
+                    1, 4,
+                    3, 2,
+                    3, 6,
+                    5, 7 }), op);
+    op.close();
+
+    op = new OrderBy(1, false, scan1);
+    op.open();
+    TestUtil.compareDbIterators(TestUtil.createTupleList(width1,
+        new int[] { 5, 7,
+                    1, 6,
+                    3, 6,
+                    1, 4,
+                    3, 2,
+                    1, 2 }), op);
+    op.close();
+  }
+
+  /**
+   * Unit test for OrderBy on several fields, ascending and descending
+   */
+  @Test public void sortFields() throws Exception {
+    OrderBy op = new OrderBy(new int[] { 0, 1 }, new boolean[] { false, true }, scan1);
+    op.open();
+    TestUtil.compareDbIterators(TestUtil.createTupleList(width1,
+        new int[] { 5, 7,
+                    3, 2,
+                    3, 6,
+                    1, 2,
+                    1, 4,
+                    1, 6 }), op);
+    op.close();
+  }
+
+  /**
+   * Unit test for OrderBy.rewind(), and for opening it again
+   */
+  @Test public void rewindAndReopen() throws Exception {
+    OrderBy op = new OrderBy(0, true, scan1);
+    for (int i = 0; i < 2; i++) {
+      op.open();
+      int count = 0;
+      while (op.hasNext()) {
+        op.next();
+        count++;
+      }
+      op.rewind();
+      while (op.hasNext()) {
+        op.next();
+        count--;
+      }
+      op.close();
+      assertEquals(0, count);
+    }
+
+    op.open();
+    int count = 0;
+    while (op.hasNext()) {
+      op.next();
+      count++;
+    }
+    op.close();
+    assertEquals(6, count);
+  }
+
+  /**
+   * Unit test for an OrderBy that spills runs and merges them in several
+   * passes, with a budget of one page
+   */
+  @Test public void externalSort() throws Exception {
+    int n = 5000;
+    int[] data = new int[n * width1];
+    for (int i = 0; i < n; i++) {
+      data[i * width1] = (i * 7919) % 97;
+      data[i * width1 + 1] = i;
+    }
+    OrderBy op = new OrderBy(new int[] { 0 }, new boolean[] { false }, TestUtil.createTupleList(width1, data), 1);
+    op.open();
+    assertTrue(op.numRuns() > 1);
+    for (int pass = 0; pass < 2; pass++) {
+      int count = 0;
+      Tuple prev = null;
+      while (op.hasNext()) {
+        Tuple t = op.next();
+        if (prev != null) {
+          int k0 = ((IntField) prev.getField(0)).getValue(), k1 = ((IntField) t.getField(0)).getValue();
+          assertTrue(k0 >= k1);
+          // equal keys keep the order of the child
+          if (k0 == k1)
+            assertTrue(((IntField) prev.getField(1)).getValue() < ((IntField) t.getField(1)).getValue());
+        }
+        prev = t;
+        count++;
+      }
+      assertEquals(n, count);
+      op.rewind();
+    }
+    op.close();
+    assertEquals(0, op.numRuns());
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(OrderByTest.class);
+  }
+}
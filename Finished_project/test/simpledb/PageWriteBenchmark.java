@@ -0,0 +1,61 @@
+package simpledb;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Page serialization benchmark: writes the same full HeapPage over and over
+ * with HeapFile.writePage, as a flush does, and logs it with
+ * LogFile.logWrite, as a committing transaction does. Reports pages per
+ * second and the bytes allocated by the writing thread per page.
+ * <p>
+ * Usage: java simpledb.PageWriteBenchmark [pages] [rounds]
+ */
+public class PageWriteBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        File f = File.createTempFile("pagewrite", ".dat");
+        f.deleteOnExit();
+        FreeSpaceMap.fileFor(f).deleteOnExit();
+        HeapFile hf = Utility.createEmptyHeapFile(f.getAbsolutePath(), 2);
+        HeapPage page = new HeapPage(new HeapPageId(hf.getId(), 0), HeapPage.createEmptyPageData());
+        for (int i = 0; page.getNumEmptySlots() > 0; ++i)
+            page.insertTuple(Utility.getHeapTuple(i, 2));
+        HeapPage before = page.getBeforeImage();
+
+        TransactionId tid = new TransactionId();
+
+        for (int r = 0; r < rounds; ++r) {
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < pages; ++i)
+                hf.writePage(page);
+            report("writePage", pages, start, allocated);
+
+            File log = File.createTempFile("pagewrite", ".log");
+            log.deleteOnExit();
+            LogFile lf = new LogFile(log);
+            allocated = allocatedBytes();
+            start = System.nanoTime();
+            for (int i = 0; i < pages / 2; ++i)
+                lf.logWrite(tid, before, page);
+            report("logWrite", pages, start, allocated);
+            lf.shutdown();
+            log.delete();
+        }
+    }
+
+    private static void report(String what, int pages, long start, long allocated) {
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-10s %8.0f pages/s, %7.1f bytes allocated/page%n", what,
+                pages / elapsed, (double) (allocatedBytes() - allocated) / pages);
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,95 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the buffer pool replacement policies on the sample IMDB database
+ * under a mix of point-like lookups and concurrent full scans. Lookup
+ * threads read random pages of the small tables (Movie, Director, Genre,
+ * Movie_Director), which fit in the pool together, pausing between
+ * transactions as if waiting for a client; scan threads repeatedly
+ * scan the big tables (Actor, Casts), which do not. A scan-resistant policy
+ * keeps the lookup pages cached while the scans stream past them.
+ * <p>
+ * Usage: java simpledb.ReplacementBenchmark [lookupThreads] [scanThreads]
+ *     [seconds] [bufferPages] [thinkMillis] [schemaFile]
+ */
+public class ReplacementBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int lookupThreads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int scanThreads = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int bufferPages = args.length > 3 ? Integer.parseInt(args[3]) : 96;
+        int thinkMillis = args.length > 4 ? Integer.parseInt(args[4]) : 2;
+        String schema = args.length > 5 ? args[5] : "sample-0.001/imdb.schema";
+
+        Database.getCatalog().loadSchema(schema);
+        Catalog catalog = Database.getCatalog();
+
+        ArrayList<PageId> hot = new ArrayList<PageId>();
+        for (String name : new String[] { "Movie", "Director", "Genre", "Movie_Director" }) {
+            HeapFile f = (HeapFile) catalog.getDbFile(catalog.getTableId(name));
+            for (int i = 0; i < f.numPages(); ++i)
+                hot.add(new HeapPageId(f.getId(), i));
+        }
+        int[] cold = new int[] { catalog.getTableId("Actor"), catalog.getTableId("Casts") };
+
+        for (ReplacementPolicy.Kind kind : ReplacementPolicy.Kind.values())
+            run(kind, lookupThreads, scanThreads, seconds, bufferPages, thinkMillis, hot, cold);
+    }
+
+    private static void run(ReplacementPolicy.Kind kind, int lookupThreads, int scanThreads, int seconds,
+            int bufferPages, final int thinkMillis, final ArrayList<PageId> hot, final int[] cold) throws Exception {
+        final BufferPool bp = Database.resetBufferPool(bufferPages, kind);
+        final AtomicLong lookups = new AtomicLong();
+        final AtomicLong scans = new AtomicLong();
+        final long end = System.currentTimeMillis() + seconds * 1000L;
+
+        Thread[] workers = new Thread[lookupThreads + scanThreads];
+        for (int t = 0; t < workers.length; ++t) {
+            final Random rand = new Random(t);
+            final boolean scanner = t >= lookupThreads;
+            workers[t] = new Thread() {
+                public void run() {
+                    try {
+                        while (System.currentTimeMillis() < end) {
+                            TransactionId tid = new TransactionId();
+                            if (scanner) {
+                                SeqScan scan = new SeqScan(tid, cold[rand.nextInt(cold.length)], "");
+                                scan.open();
+                                while (scan.hasNext())
+                                    scan.next();
+                                scan.close();
+                                scans.incrementAndGet();
+                            } else {
+                                for (int i = 0; i < 16; ++i)
+                                    bp.getPage(tid, hot.get(rand.nextInt(hot.size())), Permissions.READ_ONLY);
+                                lookups.addAndGet(16);
+                                Thread.sleep(thinkMillis);
+                            }
+                            bp.transactionComplete(tid);
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+        }
+
+        long start = System.nanoTime();
+        for (Thread w : workers)
+            w.start();
+        for (Thread w : workers)
+            w.join();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        long hits = bp.getNumHits();
+        long misses = bp.getNumMisses();
+        System.out.printf("%-6s pages=%d: hit ratio %.3f, %.0f lookups/s, %.1f scans/s%n",
+                kind, bufferPages, hits / (double) (hits + misses), lookups.get() / elapsed,
+                scans.get() / elapsed);
+    }
+}
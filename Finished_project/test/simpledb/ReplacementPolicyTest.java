@@ -0,0 +1,166 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class ReplacementPolicyTest extends SimpleDbTestBase {
+
+    private static final ReplacementPolicy.Filter ANY = new ReplacementPolicy.Filter() {
+        public boolean evictable(PageId pid) {
+            return true;
+        }
+    };
+
+    private static PageId pid(int pgNo) {
+        return new HeapPageId(1, pgNo);
+    }
+
+    private static void load(ReplacementPolicy policy, int from, int to) {
+        for (int i = from; i < to; ++i)
+            policy.pageLoaded(pid(i));
+    }
+
+    /**
+     * Unit test for LRUPolicy: the page hit longest ago goes first.
+     */
+    @Test public void lru() {
+        ReplacementPolicy policy = new LRUPolicy();
+        load(policy, 0, 3);
+        policy.pageHit(pid(0));
+        assertEquals(pid(1), policy.evict(ANY));
+        assertEquals(pid(2), policy.evict(ANY));
+        assertEquals(pid(0), policy.evict(ANY));
+        assertNull(policy.evict(ANY));
+    }
+
+    /**
+     * Unit test for ClockPolicy: a hit page gets a second chance.
+     */
+    @Test public void clock() {
+        ReplacementPolicy policy = new ClockPolicy();
+        load(policy, 0, 3);
+        policy.pageHit(pid(0));
+        assertEquals(pid(1), policy.evict(ANY));
+        policy.pageRemoved(pid(2));
+        assertEquals(pid(0), policy.evict(ANY));
+        assertNull(policy.evict(ANY));
+    }
+
+    /**
+     * Unit test for TwoQueuePolicy: a page read again after being evicted
+     * once outlives a scan of many more pages than the policy holds.
+     */
+    @Test public void twoQueueResistsScans() {
+        ReplacementPolicy policy = new TwoQueuePolicy(8);
+        policy.pageLoaded(pid(0));
+        assertEquals(pid(0), policy.evict(ANY));
+        policy.pageLoaded(pid(0));
+
+        // scan 100 pages through a policy holding at most 8 pages
+        int resident = 1;
+        for (int i = 1; i <= 100; ++i) {
+            if (resident == 8) {
+                assertFalse(pid(0).equals(policy.evict(ANY)));
+                resident--;
+            }
+            policy.pageLoaded(pid(i));
+            resident++;
+        }
+
+        HashSet<PageId> left = new HashSet<PageId>();
+        for (PageId p = policy.evict(ANY); p != null; p = policy.evict(ANY))
+            left.add(p);
+        assertTrue(left.contains(pid(0)));
+        assertEquals(8, left.size());
+    }
+
+    /**
+     * Every policy skips the pages the filter rejects and returns null if
+     * there is nothing else.
+     */
+    @Test public void filter() {
+        final PageId pinned = pid(0);
+        ReplacementPolicy.Filter notPinned = new ReplacementPolicy.Filter() {
+            public boolean evictable(PageId pid) {
+                return !pid.equals(pinned);
+            }
+        };
+        for (ReplacementPolicy.Kind kind : ReplacementPolicy.Kind.values()) {
+            ReplacementPolicy policy = kind.create(4);
+            load(policy, 0, 2);
+            assertEquals(kind.toString(), pid(1), policy.evict(notPinned));
+            assertNull(kind.toString(), policy.evict(notPinned));
+            assertEquals(kind.toString(), pinned, policy.evict(ANY));
+        }
+    }
+
+    /**
+     * Every policy keeps a pinned page until it is unpinned, and forgets it
+     * if it is removed meanwhile.
+     */
+    @Test public void pinned() {
+        for (ReplacementPolicy.Kind kind : ReplacementPolicy.Kind.values()) {
+            ReplacementPolicy policy = kind.create(4);
+            load(policy, 0, 3);
+            policy.pagePinned(pid(0));
+            policy.pagePinned(pid(2));
+            policy.pageHit(pid(0));
+            assertEquals(kind.toString(), pid(1), policy.evict(ANY));
+            assertNull(kind.toString(), policy.evict(ANY));
+            policy.pageRemoved(pid(2));
+            policy.pageUnpinned(pid(0));
+            assertEquals(kind.toString(), pid(0), policy.evict(ANY));
+            assertNull(kind.toString(), policy.evict(ANY));
+        }
+    }
+
+    /**
+     * Pinning a page keeps its CLOCK reference bit.
+     */
+    @Test public void clockPinKeepsReference() {
+        ReplacementPolicy policy = new ClockPolicy();
+        load(policy, 0, 2);
+        policy.pageHit(pid(0));
+        policy.pageHit(pid(1));
+        policy.pagePinned(pid(0));
+        policy.pageUnpinned(pid(0));
+        assertEquals(pid(1), policy.evict(ANY));
+    }
+
+    /**
+     * Pinning a page of the 2Q queue Am keeps it there, so it still outlives
+     * a scan.
+     */
+    @Test public void twoQueuePinKeepsAm() {
+        ReplacementPolicy policy = new TwoQueuePolicy(8);
+        policy.pageLoaded(pid(0));
+        assertEquals(pid(0), policy.evict(ANY));
+        policy.pageLoaded(pid(0));
+        policy.pagePinned(pid(0));
+        policy.pageUnpinned(pid(0));
+
+        int resident = 1;
+        for (int i = 1; i <= 100; ++i) {
+            if (resident == 8) {
+                assertFalse(pid(0).equals(policy.evict(ANY)));
+                resident--;
+            }
+            policy.pageLoaded(pid(i));
+            resident++;
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReplacementPolicyTest.class);
+    }
+}
@@ -0,0 +1,72 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Multi-threaded scan throughput benchmark over the sample IMDB database.
+ * Every thread repeatedly runs a read-only transaction that scans one of the
+ * tables, picked at random, and commits. With a buffer pool large enough to
+ * hold the hot tables almost every getPage is a hit, so throughput is bound
+ * by how well hits on the page table scale with the number of readers.
+ * <p>
+ * Usage: java simpledb.ScanBenchmark [threads] [seconds] [bufferPages] [schemaFile]
+ */
+public class ScanBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int bufferPages = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        String schema = args.length > 3 ? args[3] : "sample-0.001/imdb.schema";
+
+        Database.getCatalog().loadSchema(schema);
+        Database.resetBufferPool(bufferPages);
+
+        final ArrayList<Integer> tables = new ArrayList<Integer>();
+        for (java.util.Iterator<Integer> it = Database.getCatalog().tableIdIterator(); it.hasNext();)
+            tables.add(it.next());
+
+        final AtomicLong scans = new AtomicLong();
+        final AtomicLong tuples = new AtomicLong();
+        final long end = System.currentTimeMillis() + seconds * 1000L;
+
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; ++t) {
+            final Random rand = new Random(t);
+            workers[t] = new Thread() {
+                public void run() {
+                    try {
+                        long n = 0;
+                        while (System.currentTimeMillis() < end) {
+                            TransactionId tid = new TransactionId();
+                            SeqScan scan = new SeqScan(tid, tables.get(rand.nextInt(tables.size())), "");
+                            scan.open();
+                            while (scan.hasNext()) {
+                                scan.next();
+                                n++;
+                            }
+                            scan.close();
+                            Database.getBufferPool().transactionComplete(tid);
+                            scans.incrementAndGet();
+                        }
+                        tuples.addAndGet(n);
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+        }
+
+        long start = System.nanoTime();
+        for (Thread w : workers)
+            w.start();
+        for (Thread w : workers)
+            w.join();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("threads=%d bufferPages=%d: %d scans, %.0f scans/s, %.0f tuples/s%n",
+                threads, bufferPages, scans.get(), scans.get() / elapsed, tuples.get() / elapsed);
+    }
+}
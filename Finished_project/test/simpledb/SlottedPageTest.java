@@ -0,0 +1,165 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class SlottedPageTest extends SimpleDbTestBase {
+
+    private HeapPageId pid;
+    private TupleDesc td;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void addTable() throws Exception {
+        this.pid = new HeapPageId(-1, -1);
+        this.td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE });
+        Database.getCatalog().addTable(new SkeletonFile(-1, td), SystemTestUtil.getUUID());
+    }
+
+    private Tuple tuple(int n, String s) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(n));
+        t.setField(1, new StringField(s, Type.STRING_LEN));
+        return t;
+    }
+
+    private ArrayList<Tuple> contents(SlottedPage page) {
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        for (Iterator<Tuple> it = page.iterator(); it.hasNext();)
+            tuples.add(it.next());
+        return tuples;
+    }
+
+    /**
+     * Unit test for SlottedPage.insertTuple(): short records fill the page
+     * until it has no room, and the page reads back the same from its bytes.
+     */
+    @Test public void insertUntilFull() throws Exception {
+        SlottedPage page = new SlottedPage(pid, HeapPage.createEmptyPageData());
+        assertEquals(0, contents(page).size());
+        assertTrue(page.hasRoom());
+
+        int n = 0;
+        while (page.hasRoomFor(tuple(n, "M")))
+            page.insertTuple(tuple(n++, "M"));
+        // 4 byte slot, 4 byte int, 2 byte length and 1 byte string each
+        assertEquals((BufferPool.PAGE_SIZE - 4) / 11, n);
+        // a HeapPage only fits 30 of these
+        assertTrue(n > 10 * 30);
+
+        try {
+            page.insertTuple(tuple(n, "M"));
+            throw new Exception("page should be full; expected DbException");
+        } catch (DbException e) {
+            // explicitly ignored
+        }
+
+        SlottedPage reread = new SlottedPage(pid, page.getPageData());
+        ArrayList<Tuple> tuples = contents(reread);
+        assertEquals(n, tuples.size());
+        for (int i = 0; i < n; i++) {
+            assertTrue(TestUtil.compareTuples(tuple(i, "M"), tuples.get(i)));
+            assertEquals(i, tuples.get(i).getRecordId().tupleno());
+        }
+    }
+
+    /**
+     * Unit test for SlottedPage.deleteTuple(): deleted slots are reused, the
+     * other tuples keep their slots, and the space of deleted records is
+     * reclaimed once a long record would not fit otherwise.
+     */
+    @Test public void deleteAndReuse() throws Exception {
+        SlottedPage page = new SlottedPage(pid, HeapPage.createEmptyPageData());
+        String longString = "";
+        for (int i = 0; i < Type.STRING_LEN; i++)
+            longString += (char) ('a' + i % 26);
+
+        int n = 0;
+        while (page.hasRoomFor(tuple(n, longString)))
+            page.insertTuple(tuple(n++, longString));
+        assertFalse(page.hasRoomFor(tuple(n, longString)));
+
+        ArrayList<Tuple> tuples = contents(page);
+        page.deleteTuple(tuples.get(2));
+        page.deleteTuple(tuples.get(5));
+        assertFalse(page.isSlotUsed(2));
+
+        // a only fits once the records are moved together
+        Tuple a = tuple(100, longString);
+        Tuple b = tuple(101, "b");
+        page.insertTuple(a);
+        page.insertTuple(b);
+        assertEquals(2, a.getRecordId().tupleno());
+        assertEquals(5, b.getRecordId().tupleno());
+        assertEquals(n, contents(page).size());
+
+        SlottedPage reread = new SlottedPage(pid, page.getPageData());
+        ArrayList<Tuple> after = contents(reread);
+        assertEquals(n, after.size());
+        for (Tuple t : after) {
+            int slot = t.getRecordId().tupleno();
+            Tuple expected = slot == 2 ? a : slot == 5 ? b : tuple(slot, longString);
+            assertTrue(TestUtil.compareTuples(expected, t));
+        }
+    }
+
+    /**
+     * Unit test for SlottedPage.iterator() when a slot it has not reached yet
+     * is emptied and filled again: the new tuple is not returned.
+     */
+    @Test public void iteratorSkipsReusedSlot() throws Exception {
+        SlottedPage page = new SlottedPage(pid, HeapPage.createEmptyPageData());
+        for (int i = 0; i < 3; i++)
+            page.insertTuple(tuple(i, "t" + i));
+        Iterator<Tuple> it = page.iterator();
+        Tuple first = it.next();
+
+        page.deleteTuple(contents(page).get(1));
+        Tuple reused = tuple(10, "reused");
+        page.insertTuple(reused);
+        assertEquals(1, reused.getRecordId().tupleno());
+        page.insertTuple(tuple(11, "appended"));
+
+        ArrayList<Tuple> rest = new ArrayList<Tuple>();
+        while (it.hasNext())
+            rest.add(it.next());
+        assertEquals(0, first.getRecordId().tupleno());
+        assertEquals(1, rest.size());
+        assertEquals(2, rest.get(0).getRecordId().tupleno());
+    }
+
+    /**
+     * Unit test for SlottedPage.getBeforeImage()
+     */
+    @Test public void beforeImage() throws Exception {
+        SlottedPage page = new SlottedPage(pid, HeapPage.createEmptyPageData());
+        page.insertTuple(tuple(1, "one"));
+        page.markDirty(true, new TransactionId());
+        assertEquals(0, contents(page.getBeforeImage()).size());
+
+        page.markDirty(false, null);
+        page.setBeforeImage();
+        assertEquals(1, contents(page.getBeforeImage()).size());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SlottedPageTest.class);
+    }
+}
@@ -0,0 +1,57 @@
+package simpledb;
+
+/**
+ * External sort benchmark over the sample IMDB database: times a scan of
+ * Casts, and an OrderBy of it on mid ascending and pid descending, in memory
+ * and under memory budgets that make it spill runs and merge them in one or
+ * more passes. Run it with a small heap, say -Xmx16m, to see that only the
+ * budget is held in memory. Each sort runs once untimed first, to warm up
+ * the JIT.
+ * Usage: java simpledb.SortBenchmark [passes] [schemaFile]
+ */
+public class SortBenchmark {
+
+    private static final int[] BUDGETS = { OrderBy.DEFAULT_MEMORY_PAGES, 16, 4, 1 };
+
+    public static void main(String[] args) throws Exception {
+        int passes = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        String schema = args.length > 1 ? args[1] : "sample-0.001/imdb.schema";
+
+        Database.getCatalog().loadSchema(schema);
+        int castsId = Database.getCatalog().getTableId("Casts");
+
+        report("scan", castsId, 0, 1);
+        report("scan", castsId, 0, passes);
+        for (int budget : BUDGETS) {
+            report("sort, " + budget + " pages", castsId, budget, 1);
+            report("sort, " + budget + " pages", castsId, budget, passes);
+        }
+    }
+
+    //times the sort, or just the scan if memoryPages is 0
+    private static void report(String name, int castsId, int memoryPages, int passes) throws Exception {
+        long nanos = 0;
+        int rows = 0, runs = 0;
+        for (int p = 0; p < passes; ++p) {
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            TransactionId tid = new TransactionId();
+            DbIterator it = new SeqScan(tid, castsId, "c");
+            if (memoryPages > 0)
+                it = new OrderBy(new int[] { 1, 0 }, new boolean[] { true, false }, it, memoryPages);
+            long start = System.nanoTime();
+            rows = 0;
+            it.open();
+            while (it.hasNext()) {
+                it.next();
+                rows++;
+            }
+            if (memoryPages > 0)
+                runs = ((OrderBy) it).numRuns();
+            it.close();
+            nanos += System.nanoTime() - start;
+            Database.getBufferPool().transactionComplete(tid);
+        }
+        if (passes > 1)
+            System.out.printf("%-16s %5d rows %8.1f ms, %3d runs%n", name, rows, nanos / 1e6 / passes, runs);
+    }
+}
@@ -0,0 +1,67 @@
+package simpledb;
+
+/**
+ * Sort-merge join benchmark over the sample IMDB database: times an
+ * equality join with duplicate keys, Casts.pid = Actor.id, and a range
+ * join, Movie_Director.mid &lt; Movie.id, with a cold buffer pool, as a
+ * nested-loop Join and as a SortMergeJoin that sorts both inputs with
+ * OrderBy. The merge joins run once untimed first, to warm up the JIT.
+ * Usage: java simpledb.SortMergeJoinBenchmark [passes] [schemaFile]
+ */
+public class SortMergeJoinBenchmark {
+
+    //left table, its join field, operator, right table, its join field
+    private static final Object[][] JOINS = { { "Casts", 0, Predicate.Op.EQUALS, "Actor", 0 },
+            { "Movie_Director", 1, Predicate.Op.LESS_THAN, "Movie", 0 } };
+
+    public static void main(String[] args) throws Exception {
+        int passes = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        String schema = args.length > 1 ? args[1] : "sample-0.001/imdb.schema";
+
+        Database.getCatalog().loadSchema(schema);
+
+        for (Object[] join : JOINS) {
+            String name = join[0] + "." + fieldName((String) join[0], (Integer) join[1]) + " " + join[2] + " "
+                    + join[3] + "." + fieldName((String) join[3], (Integer) join[4]);
+            report(name + ", nested loops", join, false, 1, true);
+            report(name + ", sort-merge", join, true, 1, false);
+            report(name + ", sort-merge", join, true, passes, true);
+        }
+    }
+
+    private static String fieldName(String table, int field) {
+        return Database.getCatalog().getTupleDesc(Database.getCatalog().getTableId(table)).getFieldName(field);
+    }
+
+    //times the join, by sorting and merging if merge is set
+    private static void report(String name, Object[] join, boolean merge, int passes, boolean print)
+            throws Exception {
+        int leftId = Database.getCatalog().getTableId((String) join[0]);
+        int rightId = Database.getCatalog().getTableId((String) join[3]);
+        int leftField = (Integer) join[1], rightField = (Integer) join[4];
+        JoinPredicate pred = new JoinPredicate(leftField, (Predicate.Op) join[2], rightField);
+
+        long nanos = 0;
+        int rows = 0;
+        for (int p = 0; p < passes; ++p) {
+            Database.resetBufferPool(2000);
+            TransactionId tid = new TransactionId();
+            DbIterator left = new SeqScan(tid, leftId, "l");
+            DbIterator right = new SeqScan(tid, rightId, "r");
+            DbIterator it = merge ? new SortMergeJoin(pred, SortMergeJoin.sorted(left, leftField),
+                    SortMergeJoin.sorted(right, rightField)) : new Join(pred, left, right);
+            long start = System.nanoTime();
+            rows = 0;
+            it.open();
+            while (it.hasNext()) {
+                it.next();
+                rows++;
+            }
+            it.close();
+            nanos += System.nanoTime() - start;
+            Database.getBufferPool().transactionComplete(tid);
+        }
+        if (print)
+            System.out.printf("%-50s %8d rows %9.1f ms%n", name, rows, nanos / 1e6 / passes);
+    }
+}
@@ -0,0 +1,118 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class StringDictionaryTest extends SimpleDbTestBase {
+
+    private File file;
+
+    @Before public void createFile() throws Exception {
+        file = File.createTempFile("dictionary", ".dict");
+        file.delete();
+        file.deleteOnExit();
+    }
+
+    /**
+     * Unit test for StringDictionary.encode(): codes are given out in order,
+     * once per value, and survive reloading the dictionary.
+     */
+    @Test public void encodeAndReload() throws Exception {
+        StringDictionary d = new StringDictionary(file);
+        assertEquals(0, d.encode("Drama"));
+        assertEquals(1, d.encode("Comedy"));
+        assertEquals(0, d.encode("Drama"));
+        assertEquals(2, d.size());
+        assertNull(d.lookup("Horror"));
+
+        StringDictionary reloaded = new StringDictionary(file);
+        assertEquals(2, reloaded.size());
+        assertEquals("Comedy", reloaded.field(1).getValue());
+        assertEquals(2, reloaded.encode("Horror"));
+    }
+
+    /**
+     * Unit test for StringDictionary(): a value cut short at the end of the
+     * file is dropped, and the next value takes its place.
+     */
+    @Test public void truncatedValue() throws Exception {
+        StringDictionary d = new StringDictionary(file);
+        d.encode("Drama");
+        d.encode("Comedy");
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 2);
+        raf.close();
+
+        StringDictionary reloaded = new StringDictionary(file);
+        assertEquals(1, reloaded.size());
+        assertEquals(1, reloaded.encode("Horror"));
+        assertEquals("Horror", new StringDictionary(file).field(1).getValue());
+    }
+
+    /**
+     * Unit test for DictionaryField: values of one dictionary compare by
+     * code, and any value compares to a plain StringField by its string.
+     */
+    @Test public void fields() throws Exception {
+        StringDictionary d = new StringDictionary(file);
+        DictionaryField drama = d.field(d.encode("Drama"));
+        DictionaryField comedy = d.field(d.encode("Comedy"));
+        assertSame(drama, d.lookup("Drama"));
+
+        StringField plain = new StringField("Drama", Type.STRING_LEN);
+        assertTrue(drama.equals(plain));
+        assertTrue(plain.equals(drama));
+        assertEquals(plain.hashCode(), drama.hashCode());
+        assertFalse(drama.equals(comedy));
+        assertTrue(drama.compare(Predicate.Op.NOT_EQUALS, comedy));
+        assertTrue(comedy.compare(Predicate.Op.LESS_THAN, drama));
+
+        File other = File.createTempFile("dictionary", ".dict");
+        other.delete();
+        other.deleteOnExit();
+        StringDictionary d2 = new StringDictionary(other);
+        d2.encode("Comedy");
+        DictionaryField drama2 = d2.field(d2.encode("Drama"));
+        assertEquals(1, drama2.getCode());
+        assertTrue(drama.equals(drama2));
+    }
+
+    /**
+     * Unit test for Predicate.filter() on a dictionary encoded field.
+     */
+    @Test public void predicate() throws Exception {
+        StringDictionary d = new StringDictionary(file);
+        d.encode("Drama");
+        TupleDesc td = new TupleDesc(new Type[] { Type.STRING_TYPE });
+        Tuple t = new Tuple(td);
+        t.setField(0, d.lookup("Drama"));
+
+        assertTrue(new Predicate(0, Predicate.Op.EQUALS, new StringField("Drama", Type.STRING_LEN)).filter(t));
+        Predicate horror = new Predicate(0, Predicate.Op.EQUALS, new StringField("Horror", Type.STRING_LEN));
+        assertFalse(horror.filter(t));
+
+        // the operand gets a code after the predicate first saw the column
+        t.setField(0, d.field(d.encode("Horror")));
+        assertTrue(horror.filter(t));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(StringDictionaryTest.class);
+    }
+}
@@ -0,0 +1,95 @@
+package simpledb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * Storage format benchmark over the sample IMDB database: loads every table
+ * into each of the table formats below, then reports its size in pages and
+ * in bytes on disk, and how fast a projection of its first columns scans, both cold, through a
+ * buffer pool created afresh for every scan, and with the table cached.
+ * <p>
+ * Usage: java simpledb.TableFormatBenchmark [passes] [projectedColumns] [schemaFile]
+ */
+public class TableFormatBenchmark {
+
+    private static final String[] FORMATS = { "heap", "slotted", "columnar", "compressed" };
+
+    public static void main(String[] args) throws Exception {
+        int passes = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int projected = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        String schema = args.length > 2 ? args[2] : "sample-0.001/imdb.schema";
+
+        Database.getCatalog().loadSchema(schema);
+        ArrayList<Integer> tables = new ArrayList<Integer>();
+        for (Iterator<Integer> it = Database.getCatalog().tableIdIterator(); it.hasNext();)
+            tables.add(it.next());
+
+        for (int tableId : tables) {
+            String name = Database.getCatalog().getTableName(tableId);
+            HeapFile source = (HeapFile) Database.getCatalog().getDbFile(tableId);
+            for (String format : FORMATS) {
+                HeapFile f = source;
+                if (!format.equals("heap")) {
+                    f = create(format, source.getTupleDesc());
+                    Database.getCatalog().addTable(f, name + "_" + format);
+                    TransactionId tid = new TransactionId();
+                    f.load(source.iterator(tid));
+                    Database.getBufferPool().transactionComplete(tid);
+                }
+
+                double cold = scan(f, passes, projected, true);
+                double cached = scan(f, passes, projected, false);
+                System.out.printf("%-16s %-10s %5d pages %8d bytes: cold %9.0f tuples/s, cached %9.0f tuples/s%n",
+                        name, format, f.numPages(), f.getFile().length(), cold, cached);
+            }
+        }
+    }
+
+    //tuples per second of scans reading the first projected columns of every tuple
+    private static double scan(HeapFile f, int passes, int projected, boolean cold) throws Exception {
+        int columns = Math.min(projected, f.getTupleDesc().numFields());
+        long tuples = 0;
+        long nanos = 0;
+        long hash = 0;
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        for (int p = 0; p <= passes; ++p) {
+            if (cold)
+                Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            long start = System.nanoTime();
+            TransactionId tid = new TransactionId();
+            DbFileIterator it = f.iterator(tid);
+            it.open();
+            long n = 0;
+            while (it.hasNext()) {
+                Tuple t = it.next();
+                for (int i = 0; i < columns; ++i)
+                    hash += t.getField(i).hashCode();
+                n++;
+            }
+            it.close();
+            Database.getBufferPool().transactionComplete(tid);
+            // the first pass only warms up
+            if (p > 0) {
+                nanos += System.nanoTime() - start;
+                tuples += n;
+            }
+        }
+        return hash == 42 ? 0 : tuples / (nanos / 1e9);
+    }
+
+    private static HeapFile create(String format, TupleDesc td) throws Exception {
+        File file = File.createTempFile(format, ".dat");
+        file.deleteOnExit();
+        FreeSpaceMap.fileFor(file).deleteOnExit();
+        CompressedHeapFile.mapFileFor(file).deleteOnExit();
+        if (format.equals("slotted"))
+            return new SlottedHeapFile(file, td);
+        if (format.equals("columnar"))
+            return new ColumnHeapFile(file, td);
+        if (format.equals("compressed"))
+            return new CompressedHeapFile(file, td);
+        throw new IllegalArgumentException(format);
+    }
+}
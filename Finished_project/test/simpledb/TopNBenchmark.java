@@ -0,0 +1,58 @@
+package simpledb;
+
+/**
+ * Top-N benchmark over the sample IMDB database: times the first few tuples
+ * of Casts on mid descending and pid ascending, as an OrderBy of all of Casts
+ * cut off by a Limit and as a TopN. Run it with a small heap, say -Xmx16m, to
+ * see that TopN holds only the tuples it returns. Each plan runs once
+ * untimed first, to warm up the JIT.
+ * Usage: java simpledb.TopNBenchmark [passes] [schemaFile]
+ */
+public class TopNBenchmark {
+
+    private static final int[] LIMITS = { 1, 20, 1000 };
+
+    private static final int[] FIELDS = { 1, 0 };
+    private static final boolean[] ASC = { false, true };
+
+    public static void main(String[] args) throws Exception {
+        int passes = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        String schema = args.length > 1 ? args[1] : "sample-0.001/imdb.schema";
+
+        Database.getCatalog().loadSchema(schema);
+        int castsId = Database.getCatalog().getTableId("Casts");
+
+        for (int limit : LIMITS) {
+            for (boolean topN : new boolean[] { false, true }) {
+                String name = (topN ? "top-n, " : "sort, ") + limit;
+                report(name, castsId, limit, topN, 1);
+                report(name, castsId, limit, topN, passes);
+            }
+        }
+    }
+
+    //times the plan, a TopN if topN, or else a Limit over an OrderBy
+    private static void report(String name, int castsId, int limit, boolean topN, int passes)
+            throws Exception {
+        long nanos = 0;
+        int rows = 0;
+        for (int p = 0; p < passes; ++p) {
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            TransactionId tid = new TransactionId();
+            DbIterator it = new SeqScan(tid, castsId, "c");
+            it = topN ? new TopN(FIELDS, ASC, limit, it) : new Limit(limit, 0, new OrderBy(FIELDS, ASC, it));
+            long start = System.nanoTime();
+            rows = 0;
+            it.open();
+            while (it.hasNext()) {
+                it.next();
+                rows++;
+            }
+            it.close();
+            nanos += System.nanoTime() - start;
+            Database.getBufferPool().transactionComplete(tid);
+        }
+        if (passes > 1)
+            System.out.printf("%-14s %5d rows %8.1f ms%n", name, rows, nanos / 1e6 / passes);
+    }
+}
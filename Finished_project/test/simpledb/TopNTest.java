@@ -0,0 +1,139 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class TopNTest extends SimpleDbTestBase {
+
+  int width1 = 2;
+  DbIterator scan1;
+
+  /**
+   * Initialize each unit test
+   */
+  @Before public void createTupleLists() throws Exception {
+    this.scan1 = TestUtil.createTupleList(width1,
+        new int[] { 3, 2,
+                    1, 6,
+                    5, 7,
+                    1, 2,
+                    3, 6,
+                    1, 4 });
+  }
+
+  /**
+   * Unit test for TopN on one field
+   */
+  @Test public void topOneField() throws Exception {
+    TopN op = new TopN(new int[] { 0 }, new boolean[] { true }, 4, scan1);
+    op.open();
+    // equal keys keep the order of the child
+    TestUtil.compareDbIterators(TestUtil.createTupleList(width1,
+        new int[] { 1, 6,
+                    1, 2,
+                    1, 4,
+                    3, 2 }), op);
+    op.close();
+
+    op = new TopN(new int[] { 1 }, new boolean[] { false }, 3, scan1);
+    op.open();
+    TestUtil.compareDbIterators(TestUtil.createTupleList(width1,
+        new int[] { 5, 7,
+                    1, 6,
+                    3, 6 }), op);
+    op.close();
+  }
+
+  /**
+   * Unit test for TopN on several fields, ascending and descending
+   */
+  @Test public void topFields() throws Exception {
+    TopN op = new TopN(new int[] { 0, 1 }, new boolean[] { false, true }, 4, scan1);
+    op.open();
+    TestUtil.compareDbIterators(TestUtil.createTupleList(width1,
+        new int[] { 5, 7,
+                    3, 2,
+                    3, 6,
+                    1, 2 }), op);
+    op.close();
+  }
+
+  /**
+   * Unit test for TopN with a limit above the size of the child, and of 0
+   */
+  @Test public void limits() throws Exception {
+    TopN op = new TopN(new int[] { 0 }, new boolean[] { true }, 10, scan1);
+    op.open();
+    OrderBy sort = new OrderBy(0, true, scan1);
+    sort.open();
+    TestUtil.compareDbIterators(sort, op);
+    sort.close();
+    op.close();
+
+    op = new TopN(new int[] { 0 }, new boolean[] { true }, 0, scan1);
+    op.open();
+    assertFalse(op.hasNext());
+    op.close();
+  }
+
+  /**
+   * Unit test for TopN.rewind(), and for opening it again
+   */
+  @Test public void rewindAndReopen() throws Exception {
+    TopN op = new TopN(new int[] { 0 }, new boolean[] { true }, 3, scan1);
+    for (int i = 0; i < 2; i++) {
+      op.open();
+      for (int pass = 0; pass < 2; pass++) {
+        int count = 0;
+        while (op.hasNext()) {
+          op.next();
+          count++;
+        }
+        assertEquals(3, count);
+        op.rewind();
+      }
+      op.close();
+    }
+  }
+
+  /**
+   * Unit test for Limit with and without an offset
+   */
+  @Test public void limitOffset() throws Exception {
+    Limit op = new Limit(2, 0, scan1);
+    op.open();
+    TestUtil.compareDbIterators(TestUtil.createTupleList(width1,
+        new int[] { 3, 2,
+                    1, 6 }), op);
+    op.rewind();
+    TestUtil.compareDbIterators(TestUtil.createTupleList(width1,
+        new int[] { 3, 2,
+                    1, 6 }), op);
+    op.close();
+
+    op = new Limit(3, 4, scan1);
+    op.open();
+    TestUtil.compareDbIterators(TestUtil.createTupleList(width1,
+        new int[] { 3, 6,
+                    1, 4 }), op);
+    op.close();
+
+    op = new Limit(0, 1, scan1);
+    op.open();
+    assertFalse(op.hasNext());
+    op.close();
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(TopNTest.class);
+  }
+}
@@ -1,6 +1,8 @@
 package simpledb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import junit.framework.JUnit4TestAdapter;
 
 import org.junit.Test;
@@ -57,6 +59,31 @@ public class TupleTest extends SimpleDbTestBase {
 	}
     }
 
+    /**
+     * Unit test for Tuple.detached(): a tuple read lazily from bytes is
+     * copied into one that no longer reads them, and other tuples are kept.
+     */
+    @Test public void detached() {
+        TupleDesc td = Utility.getTupleDesc(2);
+        byte[] source = new byte[16];
+        source[11] = 5;
+        source[15] = 7;
+        Tuple lazy = new Tuple(td, source, 1, new int[] { 0, 4 }, new int[] { 8, 8 }, null);
+        RecordId rid = new RecordId(new HeapPageId(0, 0), 1);
+        lazy.setRecordId(rid);
+
+        Tuple copy = lazy.detached();
+        assertNotSame(lazy, copy);
+        assertEquals(rid, copy.getRecordId());
+
+        //the copy does not read the bytes any more
+        java.util.Arrays.fill(source, (byte) 0);
+        assertEquals(new IntField(5), copy.getField(0));
+        assertEquals(new IntField(7), copy.getField(1));
+
+        assertSame(copy, copy.detached());
+    }
+
     /**
      * JUnit suite target
      */
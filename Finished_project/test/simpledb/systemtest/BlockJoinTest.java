@@ -0,0 +1,145 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Joins tables with BlockNestedLoopJoin under several block sizes, checks
+ * that the inner child is rescanned once per block, and that the planner
+ * uses it for nested loops.
+ */
+public class BlockJoinTest extends SimpleDbTestBase {
+
+    /** Counts the times its child is rewound. */
+    private static class Rewinds extends Operator {
+
+        private static final long serialVersionUID = 1L;
+
+        private DbIterator child;
+
+        int count;
+
+        Rewinds(DbIterator child) {
+            this.child = child;
+        }
+
+        public void open() throws DbException, NoSuchElementException, TransactionAbortedException {
+            child.open();
+            super.open();
+        }
+
+        public void close() {
+            super.close();
+            child.close();
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            count++;
+            child.rewind();
+        }
+
+        protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+            return child.hasNext() ? child.next() : null;
+        }
+
+        public TupleDesc getTupleDesc() {
+            return child.getTupleDesc();
+        }
+
+        public DbIterator[] getChildren() {
+            return new DbIterator[] { child };
+        }
+
+        public void setChildren(DbIterator[] children) {
+            child = children[0];
+        }
+    }
+
+    /** Blocks of one tuple, of a few, of a page and of the whole outer table. */
+    @Test public void testJoin() throws Exception {
+        ArrayList<ArrayList<Integer>> t1Tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table1 = SystemTestUtil.createRandomHeapFile(2, 1000, 50, null, t1Tuples);
+        ArrayList<ArrayList<Integer>> t2Tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table2 = SystemTestUtil.createRandomHeapFile(2, 300, 50, null, t2Tuples);
+
+        for (Predicate.Op op : new Predicate.Op[] { Predicate.Op.EQUALS, Predicate.Op.LESS_THAN }) {
+            ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+            for (ArrayList<Integer> t1 : t1Tuples) {
+                for (ArrayList<Integer> t2 : t2Tuples) {
+                    if (new IntField(t1.get(0)).compare(op, new IntField(t2.get(0)))) {
+                        ArrayList<Integer> out = new ArrayList<Integer>(t1);
+                        out.addAll(t2);
+                        expected.add(out);
+                    }
+                }
+            }
+
+            for (int blockTuples : new int[] { 1, 7, 512, 1000 }) {
+                TransactionId tid = new TransactionId();
+                Rewinds inner = new Rewinds(new SeqScan(tid, table2.getId()));
+                BlockNestedLoopJoin join = BlockNestedLoopJoin.withBlockTuples(new JoinPredicate(0, op, 0),
+                        new SeqScan(tid, table1.getId()), inner, blockTuples);
+                SystemTestUtil.matchTuples(join, expected);
+
+                //the inner table is read once per block
+                int blocks = (1000 + blockTuples - 1) / blockTuples;
+                inner.count = 0;
+                join.open();
+                int n = 0;
+                while (join.hasNext()) {
+                    join.next();
+                    n++;
+                }
+                assertEquals(blocks - 1, inner.count);
+
+                //rewinding gives the same tuples again
+                join.rewind();
+                while (join.hasNext()) {
+                    join.next();
+                    n--;
+                }
+                join.close();
+                assertEquals(0, n);
+                Database.getBufferPool().transactionComplete(tid);
+            }
+        }
+    }
+
+    /** A block of pages holds as many tuples as fit on them. */
+    @Test public void testBlockPages() throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        TransactionId tid = new TransactionId();
+        BlockNestedLoopJoin join = new BlockNestedLoopJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+                new SeqScan(tid, table.getId()), new SeqScan(tid, table.getId()), 3);
+        assertEquals(3 * BufferPool.PAGE_SIZE / table.getTupleDesc().getSize(), join.getBlockTuples());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** The planner runs nested loops by blocks for a predicate nothing else answers. */
+    @Test public void testPlan() throws Exception {
+        HeapFile table1 = SystemTestUtil.createRandomHeapFile(2, 200, 50, null, null, "c");
+        Database.getCatalog().addTable(table1, "BlockJoinA");
+        HeapFile table2 = SystemTestUtil.createRandomHeapFile(2, 200, 50, null, null, "c");
+        Database.getCatalog().addTable(table2, "BlockJoinB");
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put("BlockJoinA", new TableStats(table1.getId(), 1000));
+        stats.put("BlockJoinB", new TableStats(table2.getId(), 1000));
+
+        TransactionId tid = new TransactionId();
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(table1.getId(), "a");
+        lp.addScan(table2.getId(), "b");
+        lp.addJoin("a.c0", "b.c0", Predicate.Op.NOT_EQUALS);
+        lp.addProjectField("a.c1", null);
+        DbIterator plan = lp.physicalPlan(tid, stats, false);
+        assertTrue(((Operator) plan).getChildren()[0] instanceof BlockNestedLoopJoin);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+}
@@ -0,0 +1,104 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Creates tables in the columnar ColumnHeapFile format with HeapFileEncoder
+ * and load, and checks that they scan, filter and change like HeapFiles.
+ */
+public class ColumnHeapFileTest extends SimpleDbTestBase {
+
+    private static final int HALF = 1 << 15;
+
+    private ColumnHeapFile encode(ArrayList<ArrayList<Integer>> tuples, int columns) throws Exception {
+        File text = File.createTempFile("columnar", ".txt");
+        text.deleteOnExit();
+        BufferedWriter w = new BufferedWriter(new FileWriter(text));
+        for (ArrayList<Integer> tuple : tuples) {
+            for (int i = 0; i < tuple.size(); ++i)
+                w.write((i > 0 ? "," : "") + tuple.get(i));
+            w.write("\n");
+        }
+        w.close();
+
+        File f = File.createTempFile("columnar", ".dat");
+        f.deleteOnExit();
+        FreeSpaceMap.fileFor(f).deleteOnExit();
+        Type[] types = Utility.getTypes(columns);
+        HeapFileEncoder.convert(text, f, BufferPool.PAGE_SIZE, columns, types, ',', true);
+
+        ColumnHeapFile cf = new ColumnHeapFile(f, Utility.getTupleDesc(columns));
+        Database.getCatalog().addTable(cf, SystemTestUtil.getUUID());
+        return cf;
+    }
+
+    /** A table written by HeapFileEncoder scans the same as its HeapFile. */
+    @Test public void testEncoder() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(4, 3000, null, tuples);
+        ColumnHeapFile cf = encode(tuples, 4);
+
+        assertEquals(hf.numPages(), cf.numPages());
+        assertEquals(hf.getFile().length(), cf.getFile().length());
+        SystemTestUtil.matchTuples(cf, tuples);
+    }
+
+    /** A table loaded from a HeapFile filters the same. */
+    @Test public void testLoadAndFilter() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(3, 3000, null, tuples);
+        File f = File.createTempFile("columnar", ".dat");
+        f.deleteOnExit();
+        FreeSpaceMap.fileFor(f).deleteOnExit();
+        ColumnHeapFile cf = new ColumnHeapFile(f, hf.getTupleDesc());
+        Database.getCatalog().addTable(cf, SystemTestUtil.getUUID());
+        TransactionId tid = new TransactionId();
+        cf.load(hf.iterator(tid));
+        Database.getBufferPool().transactionComplete(tid);
+
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> t : tuples)
+            if (t.get(1) < HALF)
+                expected.add(t);
+        tid = new TransactionId();
+        Filter filter = new Filter(new Predicate(1, Predicate.Op.LESS_THAN,
+                new IntField(HALF)), new SeqScan(tid, cf.getId(), ""));
+        SystemTestUtil.matchTuples(filter, expected);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** Inserts and deletes through the buffer pool survive a flush. */
+    @Test public void testInsertDelete() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        SystemTestUtil.createRandomHeapFile(2, 1000, null, tuples);
+        ColumnHeapFile cf = encode(tuples, 2);
+
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = cf.iterator(tid);
+        it.open();
+        Tuple first = it.next();
+        it.close();
+        Database.getBufferPool().deleteTuple(tid, first);
+        tuples.remove(SystemTestUtil.tupleToList(first));
+        for (int i = 0; i < 600; ++i) {
+            Database.getBufferPool().insertTuple(tid, cf.getId(), Utility.getHeapTuple(i, 2));
+            ArrayList<Integer> t = new ArrayList<Integer>();
+            t.add(i);
+            t.add(i);
+            tuples.add(t);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(cf, tuples);
+    }
+}
@@ -0,0 +1,198 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Loads, scans, inserts into and deletes from tables stored in the
+ * compressed CompressedHeapFile format.
+ */
+public class CompressedHeapFileTest extends SimpleDbTestBase {
+
+    private File createFile() throws Exception {
+        File f = File.createTempFile("compressed", ".dat");
+        f.deleteOnExit();
+        FreeSpaceMap.fileFor(f).deleteOnExit();
+        CompressedHeapFile.mapFileFor(f).deleteOnExit();
+        return f;
+    }
+
+    private CompressedHeapFile open(File f, TupleDesc td) {
+        CompressedHeapFile cf = new CompressedHeapFile(f, td);
+        Database.getCatalog().addTable(cf, SystemTestUtil.getUUID());
+        return cf;
+    }
+
+    /** A table loaded from a HeapFile scans the same, also once read back from disk. */
+    @Test public void testLoad() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile source = SystemTestUtil.createRandomHeapFile(3, 5000, null, tuples);
+        File f = createFile();
+        CompressedHeapFile cf = open(f, source.getTupleDesc());
+
+        TransactionId tid = new TransactionId();
+        cf.load(source.iterator(tid));
+        Database.getBufferPool().transactionComplete(tid);
+
+        assertEquals(source.numPages(), cf.numPages());
+        assertTrue(f.length() < source.getFile().length());
+        SystemTestUtil.matchTuples(cf, tuples);
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(open(f, source.getTupleDesc()), tuples);
+    }
+
+    /**
+     * Pages of short strings shrink many times over, and pages that grow
+     * past their slot move without losing tuples.
+     */
+    @Test public void testInsertDeleteStrings() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE },
+                new String[] { "id", "name" });
+        File f = createFile();
+        CompressedHeapFile cf = open(f, td);
+
+        //few enough pages for the deletes of one transaction to stay in the pool
+        int rows = 1200;
+        for (int i = 0; i < rows; ++i) {
+            //one transaction per tuple, so that pages are written again as they fill
+            TransactionId tid = new TransactionId();
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(i));
+            t.setField(1, new StringField("name" + i, Type.STRING_LEN));
+            Database.getBufferPool().insertTuple(tid, cf.getId(), t);
+            Database.getBufferPool().transactionComplete(tid);
+        }
+        assertEquals(rows / 30, cf.numPages());
+        assertTrue(f.length() < (long) cf.numPages() * BufferPool.PAGE_SIZE / 4);
+
+        // delete the even ids
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = cf.iterator(tid);
+        it.open();
+        ArrayList<Tuple> toDelete = new ArrayList<Tuple>();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            if (((IntField) t.getField(0)).getValue() % 2 == 0)
+                toDelete.add(t);
+        }
+        it.close();
+        for (Tuple t : toDelete)
+            Database.getBufferPool().deleteTuple(tid, t);
+        Database.getBufferPool().transactionComplete(tid);
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        cf = open(f, td);
+        tid = new TransactionId();
+        it = cf.iterator(tid);
+        it.open();
+        HashSet<String> seen = new HashSet<String>();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            assertEquals("name" + t.getField(0), ((StringField) t.getField(1)).getValue());
+            seen.add(((StringField) t.getField(1)).getValue());
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+
+        assertEquals(rows / 2, seen.size());
+        for (int i = 1; i < rows; i += 2)
+            assertTrue(seen.contains("name" + i));
+    }
+
+    /**
+     * Pages that grow a tuple at a time move to larger slots, and the slots
+     * they leave are used again, so the file stays smaller than the pages
+     * uncompressed, also after rows are deleted and added again.
+     */
+    @Test public void testSlotsReused() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE },
+                new String[] { "id", "name" });
+        File f = createFile();
+        CompressedHeapFile cf = open(f, td);
+        java.util.Random r = new java.util.Random(17);
+
+        int rows = 300;
+        for (int round = 0; round < 3; ++round) {
+            for (int i = 0; i < rows; ++i) {
+                //one transaction per tuple, so that pages are written again as they fill
+                TransactionId tid = new TransactionId();
+                Tuple t = new Tuple(td);
+                t.setField(0, new IntField(i));
+                String name = "";
+                for (int c = 0; c < 40; c++)
+                    name += (char) ('a' + r.nextInt(26));
+                t.setField(1, new StringField(name, Type.STRING_LEN));
+                Database.getBufferPool().insertTuple(tid, cf.getId(), t);
+                Database.getBufferPool().transactionComplete(tid);
+                assertTrue(f.length() <= (long) cf.numPages() * BufferPool.PAGE_SIZE);
+            }
+
+            //delete all but a few rows of each page
+            TransactionId tid = new TransactionId();
+            DbFileIterator it = cf.iterator(tid);
+            it.open();
+            ArrayList<Tuple> toDelete = new ArrayList<Tuple>();
+            while (it.hasNext()) {
+                Tuple t = it.next();
+                if (t.getRecordId().tupleno() >= 5)
+                    toDelete.add(t);
+            }
+            it.close();
+            for (Tuple t : toDelete)
+                Database.getBufferPool().deleteTuple(tid, t);
+            Database.getBufferPool().transactionComplete(tid);
+        }
+        assertTrue(f.length() <= (long) cf.numPages() * BufferPool.PAGE_SIZE);
+
+        //the free slots are found again when the file is opened again
+        long length = f.length();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        cf = open(f, td);
+        for (int i = 0; i < rows; ++i) {
+            TransactionId tid = new TransactionId();
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(i));
+            t.setField(1, new StringField("name" + i, Type.STRING_LEN));
+            Database.getBufferPool().insertTuple(tid, cf.getId(), t);
+            Database.getBufferPool().transactionComplete(tid);
+        }
+        assertTrue(f.length() <= Math.max(length, (long) cf.numPages() * BufferPool.PAGE_SIZE));
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        cf = open(f, td);
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = cf.iterator(tid);
+        it.open();
+        int added = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            if (((StringField) t.getField(1)).getValue().equals("name" + t.getField(0)))
+                added++;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(rows, added);
+    }
+
+    /** The catalog creates a CompressedHeapFile for a table marked "compressed". */
+    @Test public void testCatalog() throws Exception {
+        File schema = File.createTempFile("compressed", ".schema");
+        schema.deleteOnExit();
+        java.io.FileWriter w = new java.io.FileWriter(schema);
+        w.write("Compressed(a int, b string) compressed\n");
+        w.close();
+        Database.getCatalog().loadSchema(schema.getAbsolutePath());
+
+        Catalog c = Database.getCatalog();
+        assertTrue(c.getDbFile(c.getTableId("Compressed")) instanceof CompressedHeapFile);
+    }
+}
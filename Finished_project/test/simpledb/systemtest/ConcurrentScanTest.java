@@ -0,0 +1,168 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Runs many concurrent sequential scans of one table through a buffer pool
+ * much smaller than the table, so that the threads keep hitting and evicting
+ * pages of each other. Every scan must see every tuple exactly once.
+ */
+public class ConcurrentScanTest extends SimpleDbTestBase {
+    private static final int THREADS = 8;
+    private static final int SCANS_PER_THREAD = 5;
+    private static final int BUFFER_PAGES = 6;
+
+    private void validateConcurrentScans(int bufferPages) throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        final HeapFile f = SystemTestUtil.createRandomHeapFile(2, 20000, null, tuples);
+        long expected = 0;
+        for (ArrayList<Integer> t : tuples)
+            expected += t.get(0) + t.get(1);
+        final long expectedSum = expected;
+        final int expectedCount = tuples.size();
+
+        Database.resetBufferPool(bufferPages);
+
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread[] workers = new Thread[THREADS];
+        for (int i = 0; i < THREADS; ++i) {
+            workers[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int s = 0; s < SCANS_PER_THREAD; ++s) {
+                            TransactionId tid = new TransactionId();
+                            SeqScan scan = new SeqScan(tid, f.getId(), "");
+                            scan.open();
+                            int count = 0;
+                            long sum = 0;
+                            while (scan.hasNext()) {
+                                Tuple t = scan.next();
+                                sum += ((IntField) t.getField(0)).getValue()
+                                        + ((IntField) t.getField(1)).getValue();
+                                count++;
+                            }
+                            scan.close();
+                            Database.getBufferPool().transactionComplete(tid);
+                            assertEquals(expectedCount, count);
+                            assertEquals(expectedSum, sum);
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            };
+            workers[i].start();
+        }
+        for (Thread w : workers)
+            w.join();
+
+        if (!errors.isEmpty())
+            throw new AssertionError(errors.get(0));
+    }
+
+    /** Scans through a pool that holds only a few pages at a time. */
+    @Test public void testSmallPool() throws Exception {
+        validateConcurrentScans(BUFFER_PAGES);
+    }
+
+    /** Scans through a pool with a single page, so every shard but one is empty. */
+    @Test public void testSinglePagePool() throws Exception {
+        validateConcurrentScans(1);
+    }
+
+    /** Scans through a pool large enough to hold the whole table. */
+    @Test public void testTableFitsInPool() throws Exception {
+        validateConcurrentScans(BufferPool.DEFAULT_PAGES);
+    }
+
+    /**
+     * A page being read from disk holds up neither hits on the cached pages,
+     * whichever shard they are in, nor is it read twice: a second miss on it
+     * waits for the first read.
+     */
+    @Test public void testHitsDuringRead() throws Exception {
+        File file = SystemTestUtil.createRandomHeapFileUnopened(2, 30000, 1000, null, null);
+        final int blocked = 40;
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger reads = new AtomicInteger();
+        final HeapFile f = new HeapFile(file, Utility.getTupleDesc(2)) {
+            public Page readPage(PageId pid) {
+                if (pid.pageNumber() == blocked) {
+                    reads.incrementAndGet();
+                    reading.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+                return super.readPage(pid);
+            }
+        };
+        Database.getCatalog().addTable(f);
+        final BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        bp.setReadAheadEnabled(false);
+        for (int i = 0; i < blocked; ++i)
+            bp.getPage(null, new HeapPageId(f.getId(), i), Permissions.READ_ONLY);
+
+        final Page[] missed = new Page[2];
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread[] misses = new Thread[missed.length];
+        for (int i = 0; i < misses.length; ++i) {
+            final int n = i;
+            misses[i] = new Thread() {
+                public void run() {
+                    try {
+                        missed[n] = bp.getPage(null, new HeapPageId(f.getId(), blocked), Permissions.READ_ONLY);
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            };
+            misses[i].start();
+        }
+        assertTrue(reading.await(10, TimeUnit.SECONDS));
+
+        Thread hits = new Thread() {
+            public void run() {
+                try {
+                    for (int i = 0; i < blocked; ++i)
+                        bp.getPage(null, new HeapPageId(f.getId(), i), Permissions.READ_ONLY);
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }
+        };
+        hits.start();
+        hits.join(10000);
+        boolean blockedHits = hits.isAlive();
+        release.countDown();
+        hits.join();
+        for (Thread t : misses)
+            t.join();
+
+        if (!errors.isEmpty())
+            throw new AssertionError(errors.get(0));
+        assertFalse("hits waited for the read of another page", blockedHits);
+        assertEquals(1, reads.get());
+        assertSame(missed[0], missed[1]);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(ConcurrentScanTest.class);
+    }
+}
@@ -0,0 +1,177 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Stores, scans, filters and groups tables with dictionary encoded string
+ * columns.
+ */
+public class DictionaryEncodingTest extends SimpleDbTestBase {
+
+    private static final String[] GENRES = { "Drama", "Comedy", "Horror", "Western", "Musical" };
+
+    private static final int ROWS = 2000;
+
+    private final TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE },
+            new String[] { "mid", "genre" });
+
+    private HeapFile open(File f) throws Exception {
+        HeapFile hf = new HeapFile(f, td);
+        hf.setDictionaryColumns(1);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        return hf;
+    }
+
+    //a table of ROWS tuples whose genre cycles through GENRES
+    private File create() throws Exception {
+        File f = File.createTempFile("dictionary", ".dat");
+        f.deleteOnExit();
+        FreeSpaceMap.fileFor(f).deleteOnExit();
+        StringDictionary.fileFor(f, 1).deleteOnExit();
+        HeapFile hf = open(f);
+
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < ROWS; ++i) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(i));
+            t.setField(1, new StringField(GENRES[i % GENRES.length], Type.STRING_LEN));
+            Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        return f;
+    }
+
+    /** Codes take the place of the strings on disk, and read back as the strings. */
+    @Test public void testStoreAndReopen() throws Exception {
+        File f = create();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        HeapFile hf = open(f);
+
+        // 8 bytes a tuple instead of 140
+        assertTrue(hf.numPages() <= ROWS * 8 / BufferPool.PAGE_SIZE + 1);
+        assertEquals(GENRES.length, hf.getDictionaries()[1].size());
+
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        int n = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            int mid = ((IntField) t.getField(0)).getValue();
+            assertTrue(t.getField(1) instanceof DictionaryField);
+            assertEquals(GENRES[mid % GENRES.length], ((StringField) t.getField(1)).getValue());
+            n++;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(ROWS, n);
+    }
+
+    /** Equality filters and GROUP BY see the same values as on plain strings. */
+    @Test public void testFilterAndGroup() throws Exception {
+        HeapFile hf = open(create());
+        TransactionId tid = new TransactionId();
+
+        Filter filter = new Filter(new Predicate(1, Predicate.Op.EQUALS,
+                new StringField("Horror", Type.STRING_LEN)), new SeqScan(tid, hf.getId()));
+        filter.open();
+        int n = 0;
+        while (filter.hasNext()) {
+            assertEquals(2, ((IntField) filter.next().getField(0)).getValue() % GENRES.length);
+            n++;
+        }
+        filter.close();
+        assertEquals(ROWS / GENRES.length, n);
+
+        Aggregate agg = new Aggregate(new SeqScan(tid, hf.getId()), 0, 1, Aggregator.Op.COUNT);
+        agg.open();
+        HashMap<String, Integer> counts = new HashMap<String, Integer>();
+        while (agg.hasNext()) {
+            Tuple t = agg.next();
+            counts.put(((StringField) t.getField(0)).getValue(), ((IntField) t.getField(1)).getValue());
+        }
+        agg.close();
+        Database.getBufferPool().transactionComplete(tid);
+
+        assertEquals(GENRES.length, counts.size());
+        for (String genre : GENRES)
+            assertEquals(ROWS / GENRES.length, (int) counts.get(genre));
+    }
+
+    //a table like create's of a few pages, but with the genres stored as strings
+    private File createPlain() throws Exception {
+        File f = File.createTempFile("dictionary", ".dat");
+        f.deleteOnExit();
+        FreeSpaceMap.fileFor(f).deleteOnExit();
+        StringDictionary.fileFor(f, 1).deleteOnExit();
+        HeapFile hf = new HeapFile(f, td);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 100; ++i) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(i));
+            t.setField(1, new StringField(GENRES[i % GENRES.length], Type.STRING_LEN));
+            Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        return f;
+    }
+
+    /** A file written with the strings themselves is refused without a dictionary. */
+    @Test public void testMissingDictionary() throws Exception {
+        File f = createPlain();
+        try {
+            open(f);
+            fail("opened a file without its dictionary");
+        } catch (DbException e) {
+            //expected
+        }
+    }
+
+    /** Pages written without the dictionary fail to read rather than decode wrong values. */
+    @Test public void testMismatchedDictionary() throws Exception {
+        File f = createPlain();
+        new StringDictionary(StringDictionary.fileFor(f, 1)).encode(GENRES[0]);
+        HeapFile hf = open(f);
+
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        try {
+            it.open();
+            while (it.hasNext())
+                it.next();
+            fail("read pages written without the dictionary");
+        } catch (DbException e) {
+            //expected
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** The catalog encodes string columns annotated "dict". */
+    @Test public void testCatalog() throws Exception {
+        File schema = File.createTempFile("dictionary", ".schema");
+        schema.deleteOnExit();
+        java.io.FileWriter w = new java.io.FileWriter(schema);
+        w.write("Coded(a int pk, b string dict, c string)\n");
+        w.close();
+        Database.getCatalog().loadSchema(schema.getAbsolutePath());
+        StringDictionary.fileFor(new File(schema.getParent(), "Coded.dat"), 1).deleteOnExit();
+
+        Catalog c = Database.getCatalog();
+        StringDictionary[] dictionaries = ((HeapFile) c.getDbFile(c.getTableId("Coded"))).getDictionaries();
+        assertNull(dictionaries[0]);
+        assertNotNull(dictionaries[1]);
+        assertNull(dictionaries[2]);
+        assertEquals("a", c.getPrimaryKey(c.getTableId("Coded")));
+    }
+}
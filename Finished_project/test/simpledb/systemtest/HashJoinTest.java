@@ -0,0 +1,110 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Joins tables with HashEquiJoin, in memory and spilling partitions under
+ * small memory budgets, and checks that the planner uses it.
+ */
+public class HashJoinTest extends SimpleDbTestBase {
+
+    private static ArrayList<ArrayList<Integer>> expected(ArrayList<ArrayList<Integer>> t1Tuples,
+            ArrayList<ArrayList<Integer>> t2Tuples) {
+        ArrayList<ArrayList<Integer>> result = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> t1 : t1Tuples) {
+            for (ArrayList<Integer> t2 : t2Tuples) {
+                if (t1.get(0).equals(t2.get(0))) {
+                    ArrayList<Integer> out = new ArrayList<Integer>(t1);
+                    out.addAll(t2);
+                    result.add(out);
+                }
+            }
+        }
+        return result;
+    }
+
+    private void validateJoin(HeapFile table1, ArrayList<ArrayList<Integer>> t1Tuples, HeapFile table2,
+            ArrayList<ArrayList<Integer>> t2Tuples, int memoryPages) throws Exception {
+        TransactionId tid = new TransactionId();
+        HashEquiJoin join = new HashEquiJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+                new SeqScan(tid, table1.getId()), new SeqScan(tid, table2.getId()), memoryPages);
+        ArrayList<ArrayList<Integer>> expected = expected(t1Tuples, t2Tuples);
+        SystemTestUtil.matchTuples(join, expected);
+
+        //rewinding gives the same tuples again
+        join.open();
+        int n = 0;
+        while (join.hasNext()) {
+            join.next();
+            n++;
+        }
+        join.rewind();
+        while (join.hasNext()) {
+            join.next();
+            n--;
+        }
+        join.close();
+        assertEquals(0, n);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** A join that fits the budget, and ones that spill one or more levels of partitions. */
+    @Test public void testSpill() throws Exception {
+        ArrayList<ArrayList<Integer>> t1Tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table1 = SystemTestUtil.createRandomHeapFile(2, 5000, 2000, null, t1Tuples);
+        ArrayList<ArrayList<Integer>> t2Tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table2 = SystemTestUtil.createRandomHeapFile(3, 3000, 2000, null, t2Tuples);
+
+        for (int memoryPages : new int[] { HashEquiJoin.DEFAULT_MEMORY_PAGES, 8, 1 })
+            validateJoin(table1, t1Tuples, table2, t2Tuples, memoryPages);
+    }
+
+    /** Partitioning cannot split a single key, so it is joined a budget at a time. */
+    @Test public void testSkew() throws Exception {
+        HashMap<Integer, Integer> columnSpecification = new HashMap<Integer, Integer>();
+        columnSpecification.put(0, 1);
+        ArrayList<ArrayList<Integer>> t1Tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table1 = SystemTestUtil.createRandomHeapFile(2, 2000, columnSpecification, t1Tuples);
+        ArrayList<ArrayList<Integer>> t2Tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table2 = SystemTestUtil.createRandomHeapFile(2, 10, columnSpecification, t2Tuples);
+
+        validateJoin(table1, t1Tuples, table2, t2Tuples, 1);
+    }
+
+    /** The planner hashes an equality join that has no index to probe. */
+    @Test public void testPlan() throws Exception {
+        HeapFile table1 = SystemTestUtil.createRandomHeapFile(2, 2000, 500, null, null, "c");
+        Database.getCatalog().addTable(table1, "HashJoinA");
+        HeapFile table2 = SystemTestUtil.createRandomHeapFile(2, 2000, 500, null, null, "c");
+        Database.getCatalog().addTable(table2, "HashJoinB");
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put("HashJoinA", new TableStats(table1.getId(), 1000));
+        stats.put("HashJoinB", new TableStats(table2.getId(), 1000));
+
+        TransactionId tid = new TransactionId();
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(table1.getId(), "a");
+        lp.addScan(table2.getId(), "b");
+        lp.addJoin("a.c0", "b.c0", Predicate.Op.EQUALS);
+        lp.addProjectField("a.c1", null);
+        DbIterator plan = lp.physicalPlan(tid, stats, false);
+        assertTrue(((Operator) plan).getChildren()[0] instanceof HashEquiJoin);
+
+        //and sorts and merges for an inequality
+        lp = new LogicalPlan();
+        lp.addScan(table1.getId(), "a");
+        lp.addScan(table2.getId(), "b");
+        lp.addJoin("a.c0", "b.c0", Predicate.Op.LESS_THAN);
+        lp.addProjectField("a.c1", null);
+        plan = lp.physicalPlan(tid, stats, false);
+        assertTrue(((Operator) plan).getChildren()[0] instanceof SortMergeJoin);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+}
@@ -0,0 +1,137 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Joins tables by probing a B+ tree index on the inner join field, and
+ * checks that the planner does so when it is cheaper than nested loops.
+ */
+public class IndexJoinTest extends SimpleDbTestBase {
+
+    /** An IndexNestedLoopJoin returns the tuples a nested-loop Join would. */
+    @Test public void testIndexJoin() throws Exception {
+        ArrayList<ArrayList<Integer>> outerTuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile outer = SystemTestUtil.createRandomHeapFile(2, 50, 200, null, outerTuples);
+        ArrayList<ArrayList<Integer>> innerTuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile inner = SystemTestUtil.createRandomHeapFile(2, 1000, 200, null, innerTuples);
+        File f = BTreeFile.fileFor(inner.getFile(), 0);
+        f.deleteOnExit();
+        BTreeFile index = new BTreeFile(f, inner.getId(), 0);
+        Database.getCatalog().addIndex(index);
+        index.build();
+
+        Predicate.Op[] ops = { Predicate.Op.EQUALS, Predicate.Op.LESS_THAN, Predicate.Op.GREATER_THAN_OR_EQ };
+        for (Predicate.Op op : ops) {
+            //outer.1 op inner.0, for inner tuples with inner.1 < 100
+            ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+            for (ArrayList<Integer> t1 : outerTuples) {
+                for (ArrayList<Integer> t2 : innerTuples) {
+                    if (new IntField(t1.get(1)).compare(op, new IntField(t2.get(0))) && t2.get(1) < 100) {
+                        ArrayList<Integer> out = new ArrayList<Integer>(t1);
+                        out.addAll(t2);
+                        expected.add(out);
+                    }
+                }
+            }
+
+            TransactionId tid = new TransactionId();
+            DbIterator innerPlan = new Filter(new Predicate(1, Predicate.Op.LESS_THAN, new IntField(100)),
+                    new SeqScan(tid, inner.getId()));
+            IndexNestedLoopJoin join = new IndexNestedLoopJoin(new JoinPredicate(1, op, 0),
+                    new SeqScan(tid, outer.getId()), innerPlan, index);
+            SystemTestUtil.matchTuples(join, expected);
+
+            //rewinding gives the same tuples again
+            join.open();
+            int n = 0;
+            while (join.hasNext()) {
+                join.next();
+                n++;
+            }
+            join.rewind();
+            while (join.hasNext()) {
+                join.next();
+                n--;
+            }
+            join.close();
+            assertEquals(0, n);
+            Database.getBufferPool().transactionComplete(tid);
+        }
+    }
+
+    /**
+     * The planner probes an index on the primary key of the inner table for
+     * a few outer tuples.
+     */
+    @Test public void testPlan() throws Exception {
+        File schema = File.createTempFile("indexjoin", ".schema");
+        schema.deleteOnExit();
+        File deptData = new File(schema.getParent(), "IndexJoinDept.dat");
+        File empData = new File(schema.getParent(), "IndexJoinEmp.dat");
+        for (File data : new File[] { deptData, empData }) {
+            data.deleteOnExit();
+            FreeSpaceMap.fileFor(data).deleteOnExit();
+        }
+        BTreeFile.fileFor(deptData, 0).delete();
+        BTreeFile.fileFor(deptData, 0).deleteOnExit();
+
+        ArrayList<ArrayList<Integer>> depts = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < 10000; i++) {
+            ArrayList<Integer> t = new ArrayList<Integer>();
+            t.add(i);
+            t.add(i % 7);
+            depts.add(t);
+        }
+        HeapFileEncoder.convert(depts, deptData, BufferPool.PAGE_SIZE, 2);
+        ArrayList<ArrayList<Integer>> emps = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < 200; i++) {
+            ArrayList<Integer> t = new ArrayList<Integer>();
+            t.add(i);
+            t.add(i * 37);
+            emps.add(t);
+        }
+        HeapFileEncoder.convert(emps, empData, BufferPool.PAGE_SIZE, 2);
+        FileWriter w = new FileWriter(schema);
+        w.write("IndexJoinDept(id int pk index, v int)\n");
+        w.write("IndexJoinEmp(id int pk, dept int)\n");
+        w.close();
+        Database.getCatalog().loadSchema(schema.getAbsolutePath());
+
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        for (String name : new String[] { "IndexJoinDept", "IndexJoinEmp" })
+            stats.put(name, new TableStats(Database.getCatalog().getTableId(name), 1000));
+
+        TransactionId tid = new TransactionId();
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(Database.getCatalog().getTableId("IndexJoinEmp"), "e");
+        lp.addScan(Database.getCatalog().getTableId("IndexJoinDept"), "d");
+        lp.addFilter("e.id", Predicate.Op.LESS_THAN, "2");
+        lp.addJoin("e.dept", "d.id", Predicate.Op.EQUALS);
+        lp.addProjectField("e.id", null);
+        lp.addProjectField("d.v", null);
+        DbIterator plan = lp.physicalPlan(tid, stats, false);
+        DbIterator join = ((Operator) plan).getChildren()[0];
+        assertTrue(join instanceof IndexNestedLoopJoin);
+
+        int n = 0;
+        plan.open();
+        while (plan.hasNext()) {
+            Tuple t = plan.next();
+            int id = ((IntField) t.getField(0)).getValue();
+            assertEquals(new IntField(id * 37 % 7), t.getField(1));
+            n++;
+        }
+        plan.close();
+        assertEquals(2, n);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+}
@@ -0,0 +1,157 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Reads tables through B+ tree indexes, and checks that the planner uses
+ * them when they are cheaper than a scan.
+ */
+public class IndexScanTest extends SimpleDbTestBase {
+
+    private static final int ROWS = 10000;
+
+    private BTreeFile createIndex(HeapFile table, int column) throws Exception {
+        File f = BTreeFile.fileFor(table.getFile(), column);
+        f.deleteOnExit();
+        BTreeFile index = new BTreeFile(f, table.getId(), column);
+        Database.getCatalog().addIndex(index);
+        index.build();
+        return index;
+    }
+
+    //the rows of tuples whose column value satisfies op operand
+    private static ArrayList<ArrayList<Integer>> expected(ArrayList<ArrayList<Integer>> tuples, int column,
+            Predicate.Op op, int operand) {
+        ArrayList<ArrayList<Integer>> result = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> t : tuples) {
+            if (new IntField(t.get(column)).compare(op, new IntField(operand)))
+                result.add(t);
+        }
+        return result;
+    }
+
+    /** An IndexScan returns the tuples a scan and filter would, in key order. */
+    @Test public void testIndexScan() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, ROWS, 5000, null, tuples);
+        BTreeFile index = createIndex(table, 1);
+
+        Predicate.Op[] ops = { Predicate.Op.EQUALS, Predicate.Op.LESS_THAN, Predicate.Op.LESS_THAN_OR_EQ,
+                Predicate.Op.GREATER_THAN, Predicate.Op.GREATER_THAN_OR_EQ, Predicate.Op.NOT_EQUALS };
+        int operand = tuples.get(0).get(1);
+        for (Predicate.Op op : ops) {
+            TransactionId tid = new TransactionId();
+            IndexScan scan = new IndexScan(tid, index, op, new IntField(operand));
+            SystemTestUtil.matchTuples(scan, expected(tuples, 1, op, operand));
+
+            scan.open();
+            int last = Integer.MIN_VALUE;
+            while (scan.hasNext()) {
+                int value = ((IntField) scan.next().getField(1)).getValue();
+                assertTrue(last <= value);
+                last = value;
+            }
+            scan.close();
+            Database.getBufferPool().transactionComplete(tid);
+        }
+    }
+
+    /** Inserts and deletes through the buffer pool keep an index up to date. */
+    @Test public void testUpdates() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 1000, 100, null, tuples);
+        BTreeFile index = createIndex(table, 0);
+
+        TransactionId tid = new TransactionId();
+        Insert insert = new Insert(tid, TestUtil.createTupleList(2, new int[] { 1000, 7 }), table.getId());
+        insert.open();
+        insert.next();
+        insert.close();
+        //keys are below 100, so this deletes only tuples of the random table
+        Delete delete = new Delete(tid, new IndexScan(tid, index, Predicate.Op.EQUALS, new IntField(tuples.get(0).get(0))));
+        delete.open();
+        delete.next();
+        delete.close();
+        Database.getBufferPool().transactionComplete(tid);
+
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> t : tuples)
+            if (!t.get(0).equals(tuples.get(0).get(0))) expected.add(t);
+        ArrayList<Integer> inserted = new ArrayList<Integer>();
+        inserted.add(1000);
+        inserted.add(7);
+        expected.add(inserted);
+
+        tid = new TransactionId();
+        SystemTestUtil.matchTuples(new IndexScan(tid, index, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(0)), expected);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** The catalog builds indexes on columns annotated "index", and the planner picks them. */
+    @Test public void testCatalogAndPlan() throws Exception {
+        File schema = File.createTempFile("indexed", ".schema");
+        schema.deleteOnExit();
+        File data = new File(schema.getParent(), "Indexed.dat");
+        data.deleteOnExit();
+        FreeSpaceMap.fileFor(data).deleteOnExit();
+        BTreeFile.fileFor(data, 0).deleteOnExit();
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < ROWS; i++) {
+            ArrayList<Integer> t = new ArrayList<Integer>();
+            t.add(i);
+            t.add(i % 10);
+            tuples.add(t);
+        }
+        HeapFileEncoder.convert(tuples, data, BufferPool.PAGE_SIZE, 2);
+        BTreeFile.fileFor(data, 0).delete();
+        FileWriter w = new FileWriter(schema);
+        w.write("Indexed(id int pk index, v int)\n");
+        w.close();
+        Database.getCatalog().loadSchema(schema.getAbsolutePath());
+
+        int tableId = Database.getCatalog().getTableId("Indexed");
+        BTreeFile index = Database.getCatalog().getIndex(tableId, 0);
+        assertNotNull(index);
+        assertNull(Database.getCatalog().getIndex(tableId, 1));
+
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put("Indexed", new TableStats(tableId, 1000));
+
+        //a lookup by key reads a few pages through the index
+        TransactionId tid = new TransactionId();
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(tableId, "t");
+        lp.addFilter("t.id", Predicate.Op.EQUALS, "42");
+        lp.addFilter("t.v", Predicate.Op.EQUALS, "2");
+        lp.addProjectField("t.v", null);
+        DbIterator plan = lp.physicalPlan(tid, stats, false);
+        DbIterator filter = ((Operator) plan).getChildren()[0];
+        assertTrue(filter instanceof Filter);
+        assertTrue(((Operator) filter).getChildren()[0] instanceof IndexScan);
+        plan.open();
+        assertTrue(plan.hasNext());
+        assertEquals(new IntField(2), plan.next().getField(0));
+        assertFalse(plan.hasNext());
+        plan.close();
+
+        //most of the table is cheaper to scan
+        lp = new LogicalPlan();
+        lp.addScan(tableId, "t");
+        lp.addFilter("t.id", Predicate.Op.GREATER_THAN, "100");
+        lp.addProjectField("t.id", null);
+        plan = lp.physicalPlan(tid, stats, false);
+        filter = ((Operator) plan).getChildren()[0];
+        assertTrue(filter instanceof Filter);
+        assertTrue(((Operator) filter).getChildren()[0] instanceof SeqScan);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+}
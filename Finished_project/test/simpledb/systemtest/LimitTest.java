@@ -0,0 +1,126 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Parses queries with LIMIT and OFFSET, with and without an ORDER BY, and
+ * runs the plans, which find the top tuples with a TopN.
+ */
+public class LimitTest extends SimpleDbTestBase {
+
+    //field 1 descending, then field 0 ascending
+    private static final Comparator<ArrayList<Integer>> ORDER = new Comparator<ArrayList<Integer>>() {
+        public int compare(ArrayList<Integer> a, ArrayList<Integer> b) {
+            int c = b.get(1).compareTo(a.get(1));
+            return c != 0 ? c : a.get(0).compareTo(b.get(0));
+        }
+    };
+
+    private ArrayList<ArrayList<Integer>> tuples;
+    private HashMap<String, TableStats> stats;
+
+    @Before public void setUp() throws Exception {
+        tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(3, 2000, 50, null, tuples, "c");
+        Database.getCatalog().addTable(table, "LimitTable");
+        stats = new HashMap<String, TableStats>();
+        stats.put("LimitTable", new TableStats(table.getId(), 1000));
+    }
+
+    private DbIterator plan(TransactionId tid, String sql) throws Exception {
+        return new Parser().generateLogicalPlan(tid, sql).physicalPlan(tid, stats, false);
+    }
+
+    private static int count(DbIterator it, Class<?> op) {
+        int n = op.isInstance(it) ? 1 : 0;
+        if (it instanceof Operator)
+            for (DbIterator child : ((Operator) it).getChildren())
+                n += count(child, op);
+        return n;
+    }
+
+    private static void checkRows(DbIterator it, ArrayList<ArrayList<Integer>> expected) throws Exception {
+        it.open();
+        for (ArrayList<Integer> e : expected) {
+            assertTrue(it.hasNext());
+            Tuple t = it.next();
+            assertEquals(e.get(1).intValue(), ((IntField) t.getField(0)).getValue());
+            assertEquals(e.get(0).intValue(), ((IntField) t.getField(1)).getValue());
+        }
+        assertFalse(it.hasNext());
+        it.close();
+    }
+
+    /** ORDER BY ... LIMIT n OFFSET m is a TopN of n + m and a Limit, rather than an OrderBy. */
+    @Test public void testOrderByLimitOffset() throws Exception {
+        ArrayList<ArrayList<Integer>> sorted = new ArrayList<ArrayList<Integer>>(tuples);
+        Collections.sort(sorted, ORDER);
+
+        TransactionId tid = new TransactionId();
+        DbIterator it = plan(tid,
+                "SELECT l.c1, l.c0 FROM LimitTable l ORDER BY l.c1 DESC, l.c0 LIMIT 20 OFFSET 5;");
+        assertEquals(1, count(it, TopN.class));
+        assertEquals(1, count(it, Limit.class));
+        assertEquals(0, count(it, OrderBy.class));
+        checkRows(it, new ArrayList<ArrayList<Integer>>(sorted.subList(5, 25)));
+
+        // LIMIT offset, count, and no Limit operator without an offset
+        checkRows(plan(tid, "SELECT l.c1, l.c0 FROM LimitTable l ORDER BY l.c1 DESC, l.c0 limit 5, 20;"),
+                new ArrayList<ArrayList<Integer>>(sorted.subList(5, 25)));
+        it = plan(tid, "SELECT l.c1, l.c0 FROM LimitTable l ORDER BY l.c1 DESC, l.c0 LIMIT 20;");
+        assertEquals(0, count(it, Limit.class));
+        checkRows(it, new ArrayList<ArrayList<Integer>>(sorted.subList(0, 20)));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * ORDER BY with more LIMIT and OFFSET tuples than fit in a sort's memory
+     * is an OrderBy, which can spill, and a Limit, rather than a TopN.
+     */
+    @Test public void testOrderByLargeLimit() throws Exception {
+        ArrayList<ArrayList<Integer>> sorted = new ArrayList<ArrayList<Integer>>(tuples);
+        Collections.sort(sorted, ORDER);
+
+        TransactionId tid = new TransactionId();
+        DbIterator it = plan(tid, "SELECT l.c1, l.c0 FROM LimitTable l ORDER BY l.c1 DESC, l.c0 LIMIT 100000000;");
+        assertEquals(0, count(it, TopN.class));
+        assertEquals(1, count(it, OrderBy.class));
+        assertEquals(1, count(it, Limit.class));
+        checkRows(it, sorted);
+
+        it = plan(tid, "SELECT l.c1, l.c0 FROM LimitTable l ORDER BY l.c1 DESC, l.c0 LIMIT 10 OFFSET 100000000;");
+        assertEquals(0, count(it, TopN.class));
+        assertEquals(1, count(it, OrderBy.class));
+        checkRows(it, new ArrayList<ArrayList<Integer>>());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** LIMIT without ORDER BY takes the first tuples of the scan, and LIMIT past the end all of them. */
+    @Test public void testLimit() throws Exception {
+        TransactionId tid = new TransactionId();
+        DbIterator it = plan(tid, "SELECT l.c1, l.c0 FROM LimitTable l WHERE l.c2 > 10 LIMIT 7 OFFSET 3;");
+        assertEquals(0, count(it, TopN.class));
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> t : tuples)
+            if (t.get(2) > 10)
+                expected.add(t);
+        checkRows(it, new ArrayList<ArrayList<Integer>>(expected.subList(3, 10)));
+
+        checkRows(plan(tid, "SELECT l.c1, l.c0 FROM LimitTable l WHERE l.c2 > 10 LIMIT 100000;"), expected);
+
+        ArrayList<ArrayList<Integer>> sorted = new ArrayList<ArrayList<Integer>>(tuples);
+        Collections.sort(sorted, ORDER);
+        checkRows(plan(tid, "SELECT l.c1, l.c0 FROM LimitTable l ORDER BY l.c1 DESC, l.c0 LIMIT 100000;"), sorted);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+}
@@ -0,0 +1,68 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Scans tables with read-ahead turned on, through buffer pools of several
+ * sizes, and checks that prefetched pages end up in the pool.
+ */
+public class ReadAheadTest extends SimpleDbTestBase {
+
+    /** Scans return every tuple however small the pool is. */
+    @Test public void testScans() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 20000, null, tuples);
+        for (int pages : new int[] { 1, 4, 16, BufferPool.DEFAULT_PAGES }) {
+            Database.resetBufferPool(pages).setReadAheadEnabled(true);
+            SystemTestUtil.matchTuples(f, tuples);
+            SystemTestUtil.matchTuples(f, tuples);
+        }
+    }
+
+    /** A prefetched page is read in the background without counting a miss. */
+    @Test public void testPrefetch() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 2000, null, null);
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        bp.setReadAheadEnabled(true);
+
+        PageId pid = new HeapPageId(f.getId(), 2);
+        assertTrue(bp.prefetch(pid));
+        for (int i = 0; i < 500 && !bp.isCached(pid); ++i)
+            Thread.sleep(10);
+        assertTrue(bp.isCached(pid));
+        assertFalse(bp.prefetch(pid));
+
+        bp.getPage(new TransactionId(), pid, Permissions.READ_ONLY);
+        assertEquals(1, bp.getNumHits());
+        assertEquals(0, bp.getNumMisses());
+    }
+
+    /** Read-ahead does not evict dirty pages, nor fail when it cannot find room. */
+    @Test public void testFullOfDirtyPages() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 2000, null, null);
+        BufferPool bp = Database.resetBufferPool(1);
+        bp.setReadAheadEnabled(true);
+
+        TransactionId tid = new TransactionId();
+        PageId dirty = new HeapPageId(f.getId(), 0);
+        bp.getPage(tid, dirty, Permissions.READ_WRITE).markDirty(true, tid);
+
+        PageId other = new HeapPageId(f.getId(), 1);
+        assertTrue(bp.prefetch(other));
+        Thread.sleep(100);
+        assertTrue(bp.isCached(dirty));
+        assertFalse(bp.isCached(other));
+        bp.transactionComplete(tid);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(ReadAheadTest.class);
+    }
+}
@@ -0,0 +1,106 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Loads, scans, inserts into and deletes from tables stored in the
+ * variable-length SlottedHeapFile format.
+ */
+public class SlottedHeapFileTest extends SimpleDbTestBase {
+
+    private SlottedHeapFile createEmpty(TupleDesc td) throws Exception {
+        File f = File.createTempFile("slotted", ".dat");
+        f.deleteOnExit();
+        FreeSpaceMap.fileFor(f).deleteOnExit();
+        SlottedHeapFile sf = new SlottedHeapFile(f, td);
+        Database.getCatalog().addTable(sf, SystemTestUtil.getUUID());
+        return sf;
+    }
+
+    /** A table loaded from a HeapFile scans the same. */
+    @Test public void testLoad() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile source = SystemTestUtil.createRandomHeapFile(3, 5000, null, tuples);
+        SlottedHeapFile sf = createEmpty(source.getTupleDesc());
+
+        TransactionId tid = new TransactionId();
+        sf.load(source.iterator(tid));
+        Database.getBufferPool().transactionComplete(tid);
+
+        assertTrue(sf.numPages() > 0);
+        SystemTestUtil.matchTuples(sf, tuples);
+    }
+
+    /** Short strings take only the space they need, and survive a flush. */
+    @Test public void testInsertDeleteStrings() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE },
+                new String[] { "id", "name" });
+        SlottedHeapFile sf = createEmpty(td);
+
+        int rows = 3000;
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < rows; ++i) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(i));
+            t.setField(1, new StringField("name" + i, Type.STRING_LEN));
+            Database.getBufferPool().insertTuple(tid, sf.getId(), t);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        // a HeapPage holds 30 of these tuples
+        assertTrue(sf.numPages() < rows / 30 / 5);
+
+        // delete the even ids
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        tid = new TransactionId();
+        DbFileIterator it = sf.iterator(tid);
+        it.open();
+        ArrayList<Tuple> toDelete = new ArrayList<Tuple>();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            if (((IntField) t.getField(0)).getValue() % 2 == 0)
+                toDelete.add(t);
+        }
+        it.close();
+        for (Tuple t : toDelete)
+            Database.getBufferPool().deleteTuple(tid, t);
+        Database.getBufferPool().transactionComplete(tid);
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        tid = new TransactionId();
+        it = sf.iterator(tid);
+        it.open();
+        HashMap<Integer, String> seen = new HashMap<Integer, String>();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            seen.put(((IntField) t.getField(0)).getValue(), ((StringField) t.getField(1)).getValue());
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+
+        assertEquals(rows / 2, seen.size());
+        for (int i = 1; i < rows; i += 2)
+            assertEquals("name" + i, seen.get(i));
+    }
+
+    /** The catalog creates a SlottedHeapFile for a table marked "slotted". */
+    @Test public void testCatalog() throws Exception {
+        File schema = File.createTempFile("slotted", ".schema");
+        schema.deleteOnExit();
+        java.io.FileWriter w = new java.io.FileWriter(schema);
+        w.write("Fixed(a int, b string)\nSlotted(a int, b string) slotted\n");
+        w.close();
+        Database.getCatalog().loadSchema(schema.getAbsolutePath());
+
+        Catalog c = Database.getCatalog();
+        assertFalse(c.getDbFile(c.getTableId("Fixed")) instanceof SlottedHeapFile);
+        assertTrue(c.getDbFile(c.getTableId("Slotted")) instanceof SlottedHeapFile);
+    }
+}
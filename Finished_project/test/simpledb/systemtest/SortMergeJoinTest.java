@@ -0,0 +1,163 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Joins tables with SortMergeJoin on equalities and ranges, from sorted and
+ * unsorted inputs, and checks that the planner uses it.
+ */
+public class SortMergeJoinTest extends SimpleDbTestBase {
+
+    private static final Predicate.Op[] OPS = { Predicate.Op.EQUALS, Predicate.Op.LESS_THAN,
+            Predicate.Op.LESS_THAN_OR_EQ, Predicate.Op.GREATER_THAN, Predicate.Op.GREATER_THAN_OR_EQ };
+
+    private static ArrayList<ArrayList<Integer>> expected(ArrayList<ArrayList<Integer>> t1Tuples,
+            ArrayList<ArrayList<Integer>> t2Tuples, Predicate.Op op) {
+        ArrayList<ArrayList<Integer>> result = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> t1 : t1Tuples) {
+            for (ArrayList<Integer> t2 : t2Tuples) {
+                if (new IntField(t1.get(1)).compare(op, new IntField(t2.get(0)))) {
+                    ArrayList<Integer> out = new ArrayList<Integer>(t1);
+                    out.addAll(t2);
+                    result.add(out);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void validateJoin(SortMergeJoin join, ArrayList<ArrayList<Integer>> expected)
+            throws Exception {
+        SystemTestUtil.matchTuples(join, expected);
+
+        //rewinding gives the same tuples again
+        join.open();
+        int n = 0;
+        while (join.hasNext()) {
+            join.next();
+            n++;
+        }
+        join.rewind();
+        while (join.hasNext()) {
+            join.next();
+            n--;
+        }
+        join.close();
+        assertEquals(0, n);
+    }
+
+    /** Inputs sorted by OrderBy, with many duplicate keys on both sides. */
+    @Test public void testJoin() throws Exception {
+        ArrayList<ArrayList<Integer>> t1Tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table1 = SystemTestUtil.createRandomHeapFile(2, 300, 40, null, t1Tuples);
+        ArrayList<ArrayList<Integer>> t2Tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table2 = SystemTestUtil.createRandomHeapFile(2, 200, 40, null, t2Tuples);
+
+        for (Predicate.Op op : OPS) {
+            TransactionId tid = new TransactionId();
+            DbIterator scan1 = SortMergeJoin.sorted(new SeqScan(tid, table1.getId()), 1);
+            DbIterator scan2 = SortMergeJoin.sorted(new SeqScan(tid, table2.getId()), 0);
+            assertTrue(scan1 instanceof OrderBy);
+            SortMergeJoin join = new SortMergeJoin(new JoinPredicate(1, op, 0), scan1, scan2);
+            validateJoin(join, expected(t1Tuples, t2Tuples, op));
+            Database.getBufferPool().transactionComplete(tid);
+        }
+    }
+
+    /** An IndexScan on the join field is merged as it is, without sorting. */
+    @Test public void testSortedInput() throws Exception {
+        ArrayList<ArrayList<Integer>> t1Tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table1 = SystemTestUtil.createRandomHeapFile(2, 300, 40, null, t1Tuples);
+        ArrayList<ArrayList<Integer>> t2Tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table2 = SystemTestUtil.createRandomHeapFile(2, 200, 40, null, t2Tuples);
+        File f = BTreeFile.fileFor(table2.getFile(), 0);
+        f.deleteOnExit();
+        BTreeFile index = new BTreeFile(f, table2.getId(), 0);
+        Database.getCatalog().addIndex(index);
+        index.build();
+
+        //t2.0 >= 10, and t1.1 op t2.0
+        ArrayList<ArrayList<Integer>> t2Kept = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> t2 : t2Tuples)
+            if (t2.get(0) >= 10)
+                t2Kept.add(t2);
+
+        for (Predicate.Op op : OPS) {
+            TransactionId tid = new TransactionId();
+            DbIterator scan2 = new IndexScan(tid, index, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(10));
+            assertSame(scan2, SortMergeJoin.sorted(scan2, 0));
+            assertFalse(SortMergeJoin.isSorted(scan2, 1));
+            SortMergeJoin join = new SortMergeJoin(new JoinPredicate(1, op, 0),
+                    SortMergeJoin.sorted(new SeqScan(tid, table1.getId()), 1), scan2);
+            validateJoin(join, expected(t1Tuples, t2Kept, op));
+
+            //the join keeps the order of its driving side
+            int width1 = table1.getTupleDesc().numFields();
+            boolean leftDrives = op == Predicate.Op.EQUALS || op == Predicate.Op.GREATER_THAN
+                    || op == Predicate.Op.GREATER_THAN_OR_EQ;
+            assertEquals(leftDrives, SortMergeJoin.isSorted(join, 1));
+            assertEquals(op == Predicate.Op.EQUALS || !leftDrives, SortMergeJoin.isSorted(join, width1));
+            Database.getBufferPool().transactionComplete(tid);
+        }
+    }
+
+    /**
+     * The planner merges an inequality join rather than running nested
+     * loops, and does not sort a side an IndexScan reads in order.
+     */
+    @Test public void testPlan() throws Exception {
+        //every c0 twice, so that the estimate of the filter, and the plan, do not depend on the data
+        ArrayList<ArrayList<Integer>> t1Tuples = new ArrayList<ArrayList<Integer>>();
+        Random r = new Random();
+        for (int i = 0; i < 4000; ++i) {
+            ArrayList<Integer> tuple = new ArrayList<Integer>();
+            tuple.add(i % 2000);
+            for (int j = 1; j < 10; ++j)
+                tuple.add(r.nextInt(2000));
+            t1Tuples.add(tuple);
+        }
+        File f1 = File.createTempFile("table", ".dat");
+        f1.deleteOnExit();
+        FreeSpaceMap.fileFor(f1).deleteOnExit();
+        HeapFileEncoder.convert(t1Tuples, f1, BufferPool.PAGE_SIZE, 10);
+        HeapFile table1 = Utility.openHeapFile(10, "c", f1);
+        Database.getCatalog().addTable(table1, "MergeJoinA");
+        HeapFile table2 = SystemTestUtil.createRandomHeapFile(2, 2000, 500, null, null, "c");
+        Database.getCatalog().addTable(table2, "MergeJoinB");
+        File f = BTreeFile.fileFor(table1.getFile(), 0);
+        f.deleteOnExit();
+        BTreeFile index = new BTreeFile(f, table1.getId(), 0);
+        Database.getCatalog().addIndex(index);
+        index.build();
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put("MergeJoinA", new TableStats(table1.getId(), 1000));
+        stats.put("MergeJoinB", new TableStats(table2.getId(), 1000));
+
+        TransactionId tid = new TransactionId();
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(table1.getId(), "a");
+        lp.addScan(table2.getId(), "b");
+        lp.addFilter("a.c0", Predicate.Op.LESS_THAN, "10");
+        lp.addJoin("a.c0", "b.c1", Predicate.Op.LESS_THAN);
+        lp.addProjectField("a.c1", null);
+        DbIterator plan = lp.physicalPlan(tid, stats, false);
+        DbIterator join = ((Operator) plan).getChildren()[0];
+        assertTrue(join instanceof SortMergeJoin);
+
+        int sorts = 0;
+        for (DbIterator child : ((Operator) join).getChildren())
+            if (child instanceof OrderBy)
+                sorts++;
+        assertEquals(1, sorts);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+}
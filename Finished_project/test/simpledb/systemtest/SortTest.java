@@ -0,0 +1,77 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Sorts a table with OrderBy in memory and by an external merge sort under
+ * small memory budgets, on several fields, and through a query plan.
+ */
+public class SortTest extends SimpleDbTestBase {
+
+    //field 1 descending, then field 0 ascending
+    private static final Comparator<ArrayList<Integer>> ORDER = new Comparator<ArrayList<Integer>>() {
+        public int compare(ArrayList<Integer> a, ArrayList<Integer> b) {
+            int c = b.get(1).compareTo(a.get(1));
+            return c != 0 ? c : a.get(0).compareTo(b.get(0));
+        }
+    };
+
+    private static void checkOrder(DbIterator it, ArrayList<ArrayList<Integer>> expected, int[] columns)
+            throws Exception {
+        it.open();
+        for (ArrayList<Integer> e : expected) {
+            assertTrue(it.hasNext());
+            Tuple t = it.next();
+            for (int i = 0; i < columns.length; i++)
+                assertEquals(e.get(columns[i]).intValue(), ((IntField) t.getField(i)).getValue());
+        }
+        assertFalse(it.hasNext());
+        it.close();
+    }
+
+    /** The same order from memory, and from runs merged in one or more passes. */
+    @Test public void testSort() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(3, 20000, 1000, null, tuples);
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>(tuples);
+        Collections.sort(expected, ORDER);
+
+        for (int memoryPages : new int[] { OrderBy.DEFAULT_MEMORY_PAGES, 8, 1 }) {
+            TransactionId tid = new TransactionId();
+            OrderBy sort = new OrderBy(new int[] { 1, 0 }, new boolean[] { false, true },
+                    new SeqScan(tid, table.getId()), memoryPages);
+            checkOrder(sort, expected, new int[] { 0, 1 });
+            Database.getBufferPool().transactionComplete(tid);
+        }
+    }
+
+    /** ORDER BY on two fields of a query. */
+    @Test public void testPlan() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(3, 500, 20, null, tuples, "c");
+        Database.getCatalog().addTable(table, "SortTable");
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put("SortTable", new TableStats(table.getId(), 1000));
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>(tuples);
+        Collections.sort(expected, ORDER);
+
+        TransactionId tid = new TransactionId();
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(table.getId(), "s");
+        lp.addProjectField("s.c1", null);
+        lp.addProjectField("s.c0", null);
+        lp.addOrderBy("s.c1", false);
+        lp.addOrderBy("s.c0", true);
+        checkOrder(lp.physicalPlan(tid, stats, false), expected, new int[] { 1, 0 });
+        Database.getBufferPool().transactionComplete(tid);
+    }
+}
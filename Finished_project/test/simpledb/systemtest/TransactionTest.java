@@ -68,6 +68,9 @@ public class TransactionTest extends SimpleDbTestBase {
         it.close();
         Database.getBufferPool().transactionComplete(tid);
         Database.getBufferPool().flushAllPages();
+
+        // only deadlock victims are aborted
+        assertEquals(Database.getBufferPool().getNumDeadlocks(), Database.getBufferPool().getNumAborts());
     }
 
     private static class XactionTester extends Thread {
@@ -243,7 +246,9 @@ public class TransactionTest extends SimpleDbTestBase {
         try {
             EvictionTest.findMagicTuple(f, t);
             fail("Expected scan to run out of available buffer pages");
-        } catch (DbException e) {}
+        } catch (DbException e) {
+            assertEquals(1, Database.getBufferPool().getNumFailedEvictions());
+        }
         t.commit();
     }
 